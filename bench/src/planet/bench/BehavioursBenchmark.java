@@ -0,0 +1,118 @@
+package planet.bench;
+
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import planet.commonapi.Node;
+import planet.commonapi.NodeHandle;
+import planet.commonapi.RouteMessage;
+import planet.commonapi.behaviours.Behaviour;
+import planet.commonapi.behaviours.exception.NoBehaviourDispatchedException;
+import planet.commonapi.behaviours.exception.NoSuchBehaviourException;
+import planet.commonapi.exception.InitializationException;
+import planet.generic.commonapi.behaviours.BehavioursPatternImpl;
+import planet.generic.commonapi.behaviours.BehavioursPoolImpl;
+import planet.generic.commonapi.behaviours.BehavioursPropertiesImpl;
+import planet.generic.commonapi.factory.GenericFactory;
+import planet.symphony.SymphonyNode;
+import planet.util.Properties;
+
+/**
+ * Dispatch of messages with BehavioursPoolImpl.onMessage(), with the same
+ * patterns of the Symphony configuration. The behaviours are replaced by
+ * CountingBehaviour, so only the dispatch is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BehavioursBenchmark {
+
+    /**
+     * Behaviour that only counts its invocations.
+     */
+    public static class CountingBehaviour implements Behaviour {
+        public static long invocations = 0;
+
+        public void onMessage(RouteMessage msg, Node node) {
+            invocations++;
+        }
+
+        public String getName() {
+            return "CountingBehaviour";
+        }
+
+        public String toString() {
+            return getName();
+        }
+    }
+
+    /**
+     * Patterns of the Symphony configuration: type, mode and locality.
+     */
+    private static final String[][] PATTERNS = {
+        {BehavioursPatternImpl.COMPLEMENTARY_WILDCARD, BehavioursPatternImpl.UNIVERSAL_WILDCARD, BehavioursPatternImpl.RUN_REMOTE},
+        {"QUERY_JOIN", "REFRESH", BehavioursPatternImpl.RUN_LOCAL},
+        {"SET_INFO", "REFRESH", BehavioursPatternImpl.RUN_LOCAL},
+        {"QUERY_CONNECT", "REFRESH", BehavioursPatternImpl.RUN_LOCAL},
+        {"ACCEPT_CONNECT", "REFRESH", BehavioursPatternImpl.RUN_LOCAL},
+        {"CANCEL_CONNECT", "REFRESH", BehavioursPatternImpl.RUN_LOCAL},
+        {"CLOSE_LONG_CONNECT", "REFRESH", BehavioursPatternImpl.RUN_LOCAL},
+        {"CLOSE_NEIGHBOUR_CONNECT", "REFRESH", BehavioursPatternImpl.RUN_LOCAL},
+        {"DATA", BehavioursPatternImpl.UNIVERSAL_WILDCARD, BehavioursPatternImpl.RUN_ALWAYS},
+    };
+
+    private BehavioursPoolImpl pool;
+    private Node node;
+    private RouteMessage[] messages;
+    private int next;
+
+    /**
+     * Builds the pool, a node and a set of local and remote messages, with
+     * the Symphony configuration.
+     * @throws InitializationException if the context cannot be initialized.
+     */
+    @Setup
+    public void setUp() throws InitializationException {
+        BenchContext.start(BenchContext.SYMPHONY);
+        Vector patterns = new Vector();
+        for (int i = 0; i < PATTERNS.length; i++)
+            patterns.add(new BehavioursPatternImpl().setValues(CountingBehaviour.class,
+                    PATTERNS[i][0], PATTERNS[i][1], 1.0, PATTERNS[i][2], BehavioursPatternImpl.ROLE_NEUTRAL));
+        ((BehavioursPropertiesImpl)Properties.behavioursPropertiesInstance).patterns = patterns;
+        pool = new BehavioursPoolImpl();
+
+        node = GenericFactory.buildNode();
+        NodeHandle local = node.getLocalHandle();
+        NodeHandle remote = GenericFactory.buildNodeHandle(GenericFactory.buildRandomId(), true);
+        Vector built = new Vector();
+        for (int type = SymphonyNode.QUERY_JOIN; type <= SymphonyNode.CLOSE_NEIGHBOUR_CONNECT; type++) {
+            built.add(GenericFactory.getMessage("key", remote, local, type, SymphonyNode.REFRESH));
+            built.add(GenericFactory.getMessage("key", local, remote, type, SymphonyNode.REFRESH));
+        }
+        built.add(GenericFactory.getMessage("key", remote, local, SymphonyNode.DATA, SymphonyNode.REQUEST));
+        built.add(GenericFactory.getMessage("key", local, remote, SymphonyNode.DATA, SymphonyNode.REQUEST));
+        messages = (RouteMessage[])built.toArray(new RouteMessage[built.size()]);
+        next = 0;
+    }
+
+    @Benchmark
+    public long onMessage() throws NoSuchBehaviourException, NoBehaviourDispatchedException {
+        pool.onMessage(messages[next], node);
+        next = (next + 1) % messages.length;
+        return CountingBehaviour.invocations;
+    }
+}
@@ -0,0 +1,102 @@
+package planet.bench;
+
+import planet.commonapi.Network;
+import planet.commonapi.exception.InitializationException;
+import planet.generic.commonapi.GenericApp;
+import planet.generic.commonapi.factory.GenericFactory;
+import planet.generic.commonapi.factory.Topology;
+import planet.util.Properties;
+
+/**
+ * Builds the simulator context used by the benchmarks of this package.
+ * <br><br>
+ * The configuration of each overlay is taken from the master properties
+ * file, with the keys BENCH_CHORD and BENCH_SYMPHONY. As the rest of tests,
+ * the benchmarks must be run from the <b>bin</b> directory.
+ * <br><br>
+ * The stabilized rings used by the network benchmarks are built with the
+ * FACTORIES_NETWORKSTABILIZED mode, which computes the routing state of
+ * all nodes instead of simulating their joining.
+ */
+public class BenchContext {
+
+    /**
+     * Master properties file.
+     */
+    public static final String MASTER = "../conf/master.properties";
+    /**
+     * Key of the master properties file with the Chord configuration.
+     */
+    public static final String CHORD = "BENCH_CHORD";
+    /**
+     * Key of the master properties file with the Symphony configuration.
+     */
+    public static final String SYMPHONY = "BENCH_SYMPHONY";
+    /**
+     * Seed of the random generators of the benchmarks.
+     */
+    public static final long SEED = 0x504c414e4554L;
+
+    /**
+     * Returns the key of the master properties file for the <b>overlay</b>.
+     * @param overlay Name of the overlay: "chord" or "symphony".
+     * @return The key of the master properties file.
+     */
+    public static String getKey(String overlay) {
+        return "BENCH_" + overlay.toUpperCase();
+    }
+
+    /**
+     * Initializes the simulator context with the configuration of the
+     * master properties file key <b>key</b>.
+     * @param key CHORD or SYMPHONY.
+     * @throws InitializationException if any error occurs during the
+     * initialization.
+     */
+    public static void start(String key) throws InitializationException {
+        start(key, false);
+    }
+
+    /**
+     * Initializes the simulator context with the configuration of the
+     * master properties file key <b>key</b>, with or without the
+     * application level.
+     * @param key CHORD or SYMPHONY.
+     * @param application true to activate the application level.
+     * @throws InitializationException if any error occurs during the
+     * initialization.
+     */
+    public static void start(String key, boolean application) throws InitializationException {
+        //arguments: properties file, application level, events, results, serialization
+        GenericApp.start(MASTER, key, application, false, false, false);
+    }
+
+    /**
+     * Returns a stabilized ring of <b>size</b> nodes of the <b>overlay</b>,
+     * built already stabilized.
+     * @param overlay Name of the overlay: "chord" or "symphony".
+     * @param size Number of nodes.
+     * @return A stabilized network.
+     * @throws InitializationException if any error occurs building the
+     * network.
+     */
+    public static Network buildRing(String overlay, int size) throws InitializationException {
+        return buildRing(overlay, size, false);
+    }
+
+    /**
+     * Returns a stabilized ring of <b>size</b> nodes of the <b>overlay</b>,
+     * built already stabilized, with or without the application level.
+     * @param overlay Name of the overlay: "chord" or "symphony".
+     * @param size Number of nodes.
+     * @param application true to activate the application level.
+     * @return A stabilized network.
+     * @throws InitializationException if any error occurs building the
+     * network.
+     */
+    public static Network buildRing(String overlay, int size, boolean application) throws InitializationException {
+        start(getKey(overlay), application);
+        Properties.factoriesNetworkStabilized = true;
+        return GenericFactory.buildNetwork(size, Topology.RANDOM);
+    }
+}
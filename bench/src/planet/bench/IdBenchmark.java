@@ -0,0 +1,113 @@
+package planet.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import planet.chord.ChordId;
+import planet.commonapi.Id;
+import planet.commonapi.exception.InitializationException;
+import planet.generic.commonapi.factory.GenericFactory;
+import planet.symphony.SymphonyId;
+
+/**
+ * Arithmetic and ring comparisons of ChordId and SymphonyId. Each invocation
+ * takes the next three Ids of a fixed set of random Ids.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdBenchmark {
+
+    /**
+     * Number of random Ids (a power of two).
+     */
+    private static final int IDS = 1024;
+
+    private ChordId[] chord;
+    private SymphonyId[] symphony;
+    private ChordId result;
+    private int next;
+
+    /**
+     * Builds the random Ids, with the Chord configuration.
+     * @throws InitializationException if the context cannot be initialized.
+     */
+    @Setup
+    public void setUp() throws InitializationException {
+        BenchContext.start(BenchContext.CHORD);
+        Random random = new Random(BenchContext.SEED);
+        chord = new ChordId[IDS];
+        symphony = new SymphonyId[IDS];
+        for (int i = 0; i < IDS; i++) {
+            chord[i] = (ChordId)GenericFactory.buildId(random.nextInt());
+            symphony[i] = (SymphonyId)new SymphonyId().setValues(random);
+        }
+        result = new ChordId();
+        next = 0;
+    }
+
+    /**
+     * Moves to the next Ids.
+     * @return The position of the first Id.
+     */
+    private int next() {
+        next = (next + 1) & (IDS - 1);
+        return next;
+    }
+
+    @Benchmark
+    public Id chordAdd() {
+        int i = next();
+        return chord[i].add(chord[(i + 1) & (IDS - 1)], result);
+    }
+
+    @Benchmark
+    public Id chordAddNew() {
+        int i = next();
+        return chord[i].add(chord[(i + 1) & (IDS - 1)]);
+    }
+
+    @Benchmark
+    public Id chordSubtract() {
+        int i = next();
+        return chord[i].subtract(chord[(i + 1) & (IDS - 1)], result);
+    }
+
+    @Benchmark
+    public boolean chordBetween() {
+        int i = next();
+        return chord[i].between(chord[(i + 1) & (IDS - 1)], chord[(i + 2) & (IDS - 1)]);
+    }
+
+    @Benchmark
+    public boolean chordBetweenE() {
+        int i = next();
+        return chord[i].betweenE(chord[(i + 1) & (IDS - 1)], chord[(i + 2) & (IDS - 1)]);
+    }
+
+    @Benchmark
+    public Id symphonyAdd() {
+        int i = next();
+        return symphony[i].add(symphony[(i + 1) & (IDS - 1)]);
+    }
+
+    @Benchmark
+    public boolean symphonyBetween() {
+        int i = next();
+        return symphony[i].between(symphony[(i + 1) & (IDS - 1)], symphony[(i + 2) & (IDS - 1)]);
+    }
+}
@@ -0,0 +1,57 @@
+package planet.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import planet.commonapi.Network;
+import planet.commonapi.exception.InitializationException;
+
+/**
+ * Full simulation steps (Network.simulate()) on stabilized Chord and
+ * Symphony rings of <b>size</b> nodes. The class of the network is the one
+ * of the FACTORIES_NETWORK property of each configuration.
+ * <br><br>
+ * The rings are built already stabilized by BenchContext, without
+ * simulating the joining of their nodes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xms1024M", "-Xmx4096M"})
+public class NetworkBenchmark {
+
+    @Param({"chord", "symphony"})
+    public String overlay;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private Network network;
+
+    /**
+     * Loads or builds the stabilized ring.
+     * @throws InitializationException if the ring cannot be built.
+     */
+    @Setup
+    public void setUp() throws InitializationException {
+        network = BenchContext.buildRing(overlay, size);
+    }
+
+    @Benchmark
+    public boolean simulate() {
+        return network.simulate();
+    }
+}
@@ -0,0 +1,66 @@
+package planet.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import planet.util.Mailbox;
+import planet.util.Queue;
+import planet.util.QueueFull;
+
+/**
+ * Fills and drains a planet.util.Queue with <b>batch</b> values, compared
+ * with the Mailbox used now by the nodes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueBenchmark {
+
+    @Param({"16", "128"})
+    public int batch;
+
+    private Queue queue;
+    private Mailbox mailbox;
+    private Object value;
+
+    @Setup
+    public void setUp() {
+        queue = new Queue(batch);
+        mailbox = new Mailbox(batch, Mailbox.DROP_TAIL);
+        value = new Object();
+    }
+
+    @Benchmark
+    public Object queue() throws QueueFull {
+        for (int i = 0; i < batch; i++)
+            queue.add(value);
+        Object last = null;
+        while (!queue.isEmpty())
+            last = queue.remove();
+        return last;
+    }
+
+    @Benchmark
+    public Object mailbox() {
+        for (int i = 0; i < batch; i++)
+            mailbox.offer(value);
+        Object last = null;
+        while (!mailbox.isEmpty())
+            last = mailbox.poll();
+        return last;
+    }
+}
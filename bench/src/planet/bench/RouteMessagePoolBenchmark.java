@@ -0,0 +1,64 @@
+package planet.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import planet.commonapi.NodeHandle;
+import planet.commonapi.RouteMessage;
+import planet.commonapi.exception.InitializationException;
+import planet.generic.commonapi.factory.GenericFactory;
+import planet.generic.commonapi.factory.RouteMessagePoolImpl;
+
+/**
+ * Takes <b>batch</b> messages from a RouteMessagePoolImpl and frees them
+ * again, as the nodes do within a step.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteMessagePoolBenchmark {
+
+    @Param({"1", "64"})
+    public int batch;
+
+    private RouteMessagePoolImpl pool;
+    private RouteMessage[] messages;
+    private NodeHandle from;
+    private NodeHandle to;
+
+    /**
+     * Builds the pool and the NodeHandles, with the Chord configuration.
+     * @throws InitializationException if the context cannot be initialized.
+     */
+    @Setup
+    public void setUp() throws InitializationException {
+        BenchContext.start(BenchContext.CHORD);
+        pool = new RouteMessagePoolImpl();
+        messages = new RouteMessage[batch];
+        from = GenericFactory.buildNodeHandle(GenericFactory.buildId(1), true);
+        to = GenericFactory.buildNodeHandle(GenericFactory.buildId(2), true);
+    }
+
+    @Benchmark
+    public RouteMessage getAndFree() throws InitializationException {
+        for (int i = 0; i < batch; i++)
+            messages[i] = pool.getMessage("key", from, to, 0, 0);
+        for (int i = 0; i < batch; i++)
+            pool.freeMessage(messages[i]);
+        return messages[0];
+    }
+}
@@ -0,0 +1,78 @@
+package planet.bench;
+
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import planet.simulate.Event;
+import planet.simulate.Globals;
+import planet.simulate.Scheduler;
+
+/**
+ * Scheduler.addEvents() and Scheduler.getEvents() with <b>events</b> join
+ * events spread over <b>steps</b> steps.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchedulerBenchmark {
+
+    @Param({"1000", "100000"})
+    public int events;
+
+    @Param({"10000"})
+    public int steps;
+
+    private Vector unordered;
+
+    /**
+     * Builds the events at random steps.
+     */
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchContext.SEED);
+        unordered = new Vector(events);
+        for (int i = 0; i < events; i++)
+            unordered.add(new Event(null, null, Globals.JOIN, 1, random.nextInt(steps)));
+    }
+
+    /**
+     * Adds all events to a new scheduler.
+     * @return The scheduler.
+     */
+    @Benchmark
+    public Scheduler addEvents() {
+        Scheduler scheduler = new Scheduler();
+        scheduler.addEvents(unordered);
+        return scheduler;
+    }
+
+    /**
+     * Adds all events to a new scheduler and takes them step by step.
+     * @return The number of events taken.
+     */
+    @Benchmark
+    public int addAndGetEvents() {
+        Scheduler scheduler = new Scheduler();
+        scheduler.addEvents(unordered);
+        int taken = 0;
+        for (int step = 0; step < steps; step++)
+            taken += scheduler.getEvents(step).size();
+        return taken;
+    }
+}
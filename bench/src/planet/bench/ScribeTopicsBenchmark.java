@@ -0,0 +1,189 @@
+package planet.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import planet.commonapi.Application;
+import planet.commonapi.Id;
+import planet.commonapi.Network;
+import planet.commonapi.Node;
+import planet.commonapi.NodeHandle;
+import planet.commonapi.exception.InitializationException;
+import planet.generic.commonapi.factory.GenericFactory;
+import planet.scribe.ScribeClient;
+import planet.scribe.ScribeContent;
+import planet.scribe.ScribeImpl;
+import planet.scribe.Topic;
+
+/**
+ * Topic registry of a ScribeImpl with <b>topics</b> topics, on a node of a
+ * stabilized Chord ring. Each topic has one client, up to MAX_CHILDREN
+ * children and a path to the root taken from PATHS distinct paths, as the
+ * small topics of a large pub/sub workload.
+ * <br><br>
+ * The benchmark measures the lookup of the TopicManager of a topic. The
+ * main() method measures instead the memory used by the node for all its
+ * topics:
+ * <pre>
+ *    java -Xmx4096M planet.bench.ScribeTopicsBenchmark [topics]
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms1024M", "-Xmx4096M"})
+public class ScribeTopicsBenchmark {
+
+    /**
+     * Number of nodes of the ring.
+     */
+    public static final int RING_SIZE = 64;
+    /**
+     * Maximum number of children of each topic.
+     */
+    public static final int MAX_CHILDREN = 2;
+    /**
+     * Number of distinct paths to the root.
+     */
+    public static final int PATHS = 256;
+
+    /**
+     * Client that ignores all upcalls.
+     */
+    public static class NullClient implements ScribeClient {
+        public boolean anycast(Topic topic, ScribeContent content) {
+            return false;
+        }
+
+        public void deliver(Topic topic, ScribeContent content) {
+        }
+
+        public void childAdded(Topic topic, NodeHandle child) {
+        }
+
+        public void childRemoved(Topic topic, NodeHandle child) {
+        }
+
+        public void subscribeFailed(Topic topic) {
+        }
+    }
+
+    @Param({"1000000"})
+    public int topics;
+
+    private ScribeImpl scribe;
+    private Topic[] registered;
+    private int next;
+
+    /**
+     * Builds the ring and fills the topics of the ScribeImpl.
+     * @throws InitializationException if the ring cannot be built.
+     */
+    @Setup
+    public void setUp() throws InitializationException {
+        Network network = BenchContext.buildRing("chord", RING_SIZE, true);
+        scribe = new ScribeImpl("ScribeTopicsBenchmark");
+        registered = fill(network, scribe, topics);
+        next = 0;
+    }
+
+    @Benchmark
+    public Object lookup() {
+        next = (next + 1) % registered.length;
+        return scribe.topics.get(registered[next]);
+    }
+
+    /**
+     * Registers the <b>scribe</b> on a node of the <b>network</b> and adds
+     * <b>count</b> topics to it, without sending any message.
+     * @param network Stabilized network.
+     * @param scribe ScribeImpl to be filled.
+     * @param count Number of topics.
+     * @return The added topics.
+     * @throws InitializationException if the Ids of the topics cannot be
+     * built.
+     */
+    public static Topic[] fill(Network network, ScribeImpl scribe, int count) throws InitializationException {
+        Random random = new Random(BenchContext.SEED);
+        NodeHandle[] handles = new NodeHandle[network.size()];
+        java.util.Iterator it = network.iterator();
+        for (int i = 0; it.hasNext(); i++)
+            handles[i] = ((Node) it.next()).getLocalHandle();
+        ((Node) network.iterator().next()).registerApplication((Application) scribe, "ScribeTopicsBenchmark");
+
+        Id[][] paths = new Id[PATHS][];
+        for (int i = 0; i < PATHS; i++) {
+            paths[i] = new Id[1 + random.nextInt(3)];
+            for (int j = 0; j < paths[i].length; j++)
+                paths[i][j] = handles[random.nextInt(handles.length)].getId();
+        }
+
+        ScribeClient client = new NullClient();
+        Topic[] result = new Topic[count];
+        for (int i = 0; i < count; i++) {
+            //distinct Ids spread along the ring
+            result[i] = new Topic(GenericFactory.buildId(i * 0x9E3779B1));
+            ScribeImpl.TopicManager manager = scribe.new TopicManager(result[i], client);
+            //the path is set before adding children, to send them nothing
+            manager.setPathToRoot(paths[random.nextInt(PATHS)]);
+            int children = random.nextInt(MAX_CHILDREN + 1);
+            for (int j = 0; j < children; j++)
+                manager.addChild(handles[random.nextInt(handles.length)]);
+            scribe.topics.put(result[i], manager);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the used heap memory, after a few garbage collections.
+     * @return The used memory in bytes.
+     */
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Shows the memory used by a node with the given number of topics, or
+     * with 10^6 topics by default. It must be run from the <b>bin</b>
+     * directory.
+     * @param args Number of topics.
+     * @throws InitializationException if the ring cannot be built.
+     */
+    public static void main(String[] args) throws InitializationException {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        Network network = BenchContext.buildRing("chord", RING_SIZE, true);
+        ScribeImpl scribe = new ScribeImpl("ScribeTopicsBenchmark");
+        long before = usedMemory();
+        Topic[] registered = fill(network, scribe, count);
+        if (count > 0 && scribe.topics.get(registered[count - 1]) == null)
+            System.out.println("Missing topic");
+        //the Topic instances are kept only by the registry
+        registered = null;
+        long used = usedMemory() - before;
+        System.out.println("Topics: " + scribe.topics.size());
+        System.out.println("Memory of the node: " + (used / (1024 * 1024)) + " MB");
+        System.out.println("Memory per topic: " + (used / Math.max(count, 1)) + " bytes");
+    }
+}
@@ -0,0 +1 @@
+@java -Xms1024M -Xmx4096M -cp "../lib/planetsim.jar;../bench/planetsim-bench.jar;../lib/jmh/*" org.openjdk.jmh.Main -rf json -rff bench.json %*
@@ -1,5 +1,7 @@
 #                                             {filename}  {topology} {number of nodes} {steps between joins}
 # topology values: 'Distrib' or 'Random'
+# an optional fifth argument 'Binary' saves a binary events file, and
+# planet.simulate.BinaryEventWriter {textFile} {binaryFile} converts a text one
 java -cp ../../out planet.simulate.GenFileEvents test_join10000_distributed.txt Distrib 10000 2
 
 
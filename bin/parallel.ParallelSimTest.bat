@@ -0,0 +1 @@
+@java -Xms256M -Xmx1024M -cp ../lib/planetsim.jar;. planet.test.parallel.ParallelSimTest
@@ -1,5 +1,6 @@
 package planet.badchord;
 import planet.chord.ChordNode;
+import planet.chord.FingerTable;
 import planet.chord.message.BroadcastMessage;
 import planet.chord.message.IdMessage;
 import planet.chord.message.NodeMessage;
@@ -74,6 +75,7 @@ public class BadChordNode extends ChordNode {
 				succList.remove(finger[0]);
 				if (succList.size() > 0) {
 					finger[0] = (NodeHandle) succList.firstElement();
+					fingersChanged();
 					//send notify
 					msg.setSource(this.nodeHandle);
 					msg.setDestination(finger[0]);
@@ -154,33 +156,32 @@ public class BadChordNode extends ChordNode {
 					Id limitId = limit.getId();
 					planet.commonapi.Message info = bm.getInfo();
 					
-					for (int i = 0; i < bitsPerKey - 1; i++) {
-						//Skip a redundant finger
-						if (!finger[i].equals(finger[i + 1])) {
-							//Forward while within "Limit"
-							if (finger[i].getId().between(this.id, limitId)) {
-								r = finger[i];
-								//New Limit must not exceed Limit
-								if (finger[i + 1].getId().between(this.id, limitId)) {
-									new_limit = finger[i + 1];
-								} else {
-									new_limit = limit;
-								}
-								//no reuse of RouteMessage msg ==> send one
-								// message to different nodes ==> requires
-								// different messages
-								planet.commonapi.RouteMessage aMsg = null;
-								try {
-									// String appId,Id from, Id to, Id nextHop
-									aMsg = getBroadcastMessage(msg
-											.getApplicationId(), this.nodeHandle, r, r,
-											new BroadcastMessage(info,new_limit));
-									sendMessage(aMsg);
-								} catch (InitializationException e) {
-									Logger.log(
-											"ERROR: Cannot get a RouteMessage of MessagePool\n"
-											+ e.getMessage(), Logger.ERROR_LOG);
-								}
+					FingerTable fingers = getFingerTable();
+					//One finger per run: the redundant ones are skipped
+					for (int i = 0; i < fingers.size() - 1; i++) {
+						//Forward while within "Limit"
+						if (fingers.getHandle(i).getId().between(this.id, limitId)) {
+							r = fingers.getHandle(i);
+							//New Limit must not exceed Limit
+							if (fingers.getHandle(i + 1).getId().between(this.id, limitId)) {
+								new_limit = fingers.getHandle(i + 1);
+							} else {
+								new_limit = limit;
+							}
+							//no reuse of RouteMessage msg ==> send one
+							// message to different nodes ==> requires
+							// different messages
+							planet.commonapi.RouteMessage aMsg = null;
+							try {
+								// String appId,Id from, Id to, Id nextHop
+								aMsg = getBroadcastMessage(msg
+										.getApplicationId(), this.nodeHandle, r, r,
+										new BroadcastMessage(info,new_limit));
+								sendMessage(aMsg);
+							} catch (InitializationException e) {
+								Logger.log(
+										"ERROR: Cannot get a RouteMessage of MessagePool\n"
+										+ e.getMessage(), Logger.ERROR_LOG);
 							}
 						}
 					}
@@ -210,7 +211,7 @@ public class BadChordNode extends ChordNode {
 						}
 					} else {*/
 					
-						String key_fp = GenericFactory.generateKey(); //keyGen.generateKey();
+						String key_fp = generateKey(); //keyGen.generateKey();
 						//order of invokes is important!!
 						msg.setMessage(new IdMessage(msg.getSource().getId()));
 						msg.setDestination(closestPrecedingFinger(msg.getSource().getId()));
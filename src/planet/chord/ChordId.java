@@ -69,8 +69,6 @@ public class ChordId extends Id implements java.io.Serializable {
    * the id itself.
    */
   private int[] Id;
-  /** Auxiliar id. */
-  private ChordId offsetId = null;
 
   
   /**
@@ -159,8 +157,19 @@ public class ChordId extends Id implements java.io.Serializable {
    * @return the new Id
    */
   public Id add (Id offset) {
-    ChordId newId = new ChordId();
-    offsetId = (ChordId)offset;
+    return add (offset, new ChordId());
+  }
+
+  /**
+   * Sets the <b>result</b> to this Id plus a given offset, without building
+   * any new object. The <b>result</b> can be this Id or the <b>offset</b>.
+   *
+   * @param offset the offset to add
+   * @param result the Id where the sum is saved
+   * @return the <b>result</b> Id
+   */
+  public ChordId add (Id offset, ChordId result) {
+    ChordId offsetId = (ChordId)offset;
     long x;
     long y;
     long sum;
@@ -179,20 +188,29 @@ public class ChordId extends Id implements java.io.Serializable {
         carry = 0;
       }
 
-      newId.Id[i] = (int) sum;
-    }
-
-    // Overflow: have to do modulus 2^bitLength
-    if (carry == 1) {
-    	newId = (ChordId)newId.subtractWithCarry (getMaximum());
+      result.Id[i] = (int) sum;
     }
 
-    return newId;
+    // Overflow: the carry out of the last element is 2^bitLength,
+    // so dropping it leaves the sum modulus 2^bitLength
+    return result;
   }
 
   public Id subtractWithCarry (Id offset) {
-    ChordId newId = new ChordId();
-    offsetId = (ChordId)offset;
+    return subtractWithCarry (offset, new ChordId());
+  }
+
+  /**
+   * Sets the <b>result</b> to this Id minus a given offset, considering the
+   * carry bit of an overflowed sum, without building any new object.
+   * The <b>result</b> can be this Id or the <b>offset</b>.
+   *
+   * @param offset the offset to subtract
+   * @param result the Id where the subtraction is saved
+   * @return the <b>result</b> Id
+   */
+  public ChordId subtractWithCarry (Id offset, ChordId result) {
+    ChordId offsetId = (ChordId)offset;
     int carry = 1;
     long x;
     long y;
@@ -207,19 +225,28 @@ public class ChordId extends Id implements java.io.Serializable {
       y = offsetId.Id[i] & 0x0ffffffffL;
 
       sub = x - y - carry;
-      if (sub < 0) {
-        carry = 1;
-      }
-      newId.Id[i] = (int) sub;
+      carry = (sub < 0) ? 1 : 0;
+      result.Id[i] = (int) sub;
     }
 
-    return newId;
+    return result;
   }
 
 
   public Id subtract (Id offset) {
-    ChordId newId = new ChordId();
-    offsetId = (ChordId)offset;
+    return subtract (offset, new ChordId());
+  }
+
+  /**
+   * Sets the <b>result</b> to this Id minus a given offset, without building
+   * any new object. The <b>result</b> can be this Id or the <b>offset</b>.
+   *
+   * @param offset the offset to subtract
+   * @param result the Id where the subtraction is saved
+   * @return the <b>result</b> Id
+   */
+  public ChordId subtract (Id offset, ChordId result) {
+    ChordId offsetId = (ChordId)offset;
     int carry = 0;
     long x;
     long y;
@@ -230,13 +257,11 @@ public class ChordId extends Id implements java.io.Serializable {
       y = offsetId.Id[i] & 0x0ffffffffL;
 
       sub = x - y - carry;
-      if (sub < 0) {
-        carry = 1;
-      }
-      newId.Id[i] = (int) sub;
+      carry = (sub < 0) ? 1 : 0;
+      result.Id[i] = (int) sub;
     }
 
-    return newId;
+    return result;
   }
 
   public boolean equals (Object obj) {
@@ -271,12 +296,23 @@ public class ChordId extends Id implements java.io.Serializable {
    * @return negative if this < obj, 0 if they are equal and positive if this > obj.
    */
   public int compareTo (Object obj) {
-    ChordId oth = (ChordId) obj;
+    return compare (Id, ((ChordId) obj).Id, arrayElems);
+  }
 
-    for (int i = arrayElems - 1; i >= 0; i--) {
-      if (Id[i] != oth.Id[i]) {
-        long t = Id[i] & 0x0ffffffffL;
-        long o = oth.Id[i] & 0x0ffffffffL;
+  /**
+   * Numerical comparison of two internal values, as unsigned ints from
+   * the most significant position.
+   *
+   * @param x the first internal value.
+   * @param y the second internal value.
+   * @param length number of positions to compare.
+   * @return negative if x < y, 0 if they are equal and positive if x > y.
+   */
+  private static int compare (int[] x, int[] y, int length) {
+    for (int i = length - 1; i >= 0; i--) {
+      if (x[i] != y[i]) {
+        long t = x[i] & 0x0ffffffffL;
+        long o = y[i] & 0x0ffffffffL;
         if (t < o) {
           return -1;
         } else {
@@ -440,8 +476,25 @@ public class ChordId extends Id implements java.io.Serializable {
    * @return this
    */
   public Id shift (int cnt, int fill, boolean roundUp) {
-    ChordId newId = new ChordId();
-    newId.setValues(this.Id);
+    return shift (cnt, fill, roundUp, new ChordId());
+  }
+
+  /**
+   * Shift operator that sets the <b>result</b> without building any new object.
+   * shift(-1,0,false,result) multiplies value of this by two, shift(1,0,false,result)
+   * divides by 2. The <b>result</b> can be this Id.
+   *
+   * @param cnt the number of bits to shift, negative shifts left, positive shifts right
+   * @param fill value of bit shifted in (0 if fill == 0, 1 otherwise)
+   * @param roundUp if true, round up the results after right shifting
+   * @param result the Id where the shifted value is saved
+   * @return the <b>result</b> Id
+   */
+  public ChordId shift (int cnt, int fill, boolean roundUp, ChordId result) {
+    ChordId newId = result;
+    if (newId != this) {
+      System.arraycopy(Id, 0, newId.Id, 0, arrayElems);
+    }
     int carry = 0;
     int bit = 0;
     int lsb = 0;
@@ -462,7 +515,7 @@ public class ChordId extends Id implements java.io.Serializable {
       }
 
       if (roundUp && lsb > 0) {
-        newId = (ChordId)inc();
+        newId.inc(newId);
       }
     } else {
       for (int j = 0; j < -cnt; j++) {
@@ -478,8 +531,13 @@ public class ChordId extends Id implements java.io.Serializable {
     return newId;
   }
 
-  private Id inc() {
-    ChordId newId = new ChordId();
+  /**
+   * Sets the <b>result</b> to this Id plus one. The <b>result</b> can be this Id.
+   *
+   * @param result the Id where the sum is saved
+   * @return the <b>result</b> Id
+   */
+  private ChordId inc(ChordId result) {
     long x;
     long sum;
     int carry = 1;
@@ -493,23 +551,46 @@ public class ChordId extends Id implements java.io.Serializable {
       } else {
         carry = 0;
       }
-      newId.Id[i] = (int) sum;
+      result.Id[i] = (int) sum;
     }
-    return newId;
+    return result;
   }
 
+  /**
+   * Checks if this Id is between <b>ccw</b> and <b>cw</b> on the ring, comparing
+   * directly the internal values without building any object.
+   *
+   * @param ccw the counterclockwise bound (exclusive)
+   * @param cw the clockwise bound (exclusive)
+   * @return true if this Id is between both bounds or they are the same Id.
+   */
   public boolean between (Id ccw, Id cw) {
-        if (ccw.equals(cw)) {
+        int[] ccwId = ((ChordId)ccw).Id;
+        int[] cwId  = ((ChordId)cw).Id;
+        int bounds = compare (ccwId, cwId, arrayElems);
+        if (bounds == 0) {
           return true;
         }
-        else if (ccw.compareTo(cw) < 0) {
-          return ((this.compareTo (ccw) > 0 ) && (this.compareTo (cw) < 0));
+        else if (bounds < 0) {
+          return ((compare (Id, ccwId, arrayElems) > 0) && (compare (Id, cwId, arrayElems) < 0));
         }
         else {
-          return ((this.compareTo (ccw) > 0) || (this.compareTo (cw) < 0));
+          return ((compare (Id, ccwId, arrayElems) > 0) || (compare (Id, cwId, arrayElems) < 0));
         }
   }
 
+  /**
+   * Checks if this Id is between <b>init</b> (exclusive) and <b>end</b>
+   * (inclusive) on the ring, without building any object.
+   *
+   * @param init the counterclockwise bound (exclusive)
+   * @param end the clockwise bound (inclusive)
+   * @return true if this Id is equal to <b>end</b> or between both bounds.
+   */
+  public boolean betweenE (Id init, Id end) {
+        return compare (Id, ((ChordId)end).Id, arrayElems) == 0 || between (init, end);
+  }
+
   /**
    * Checks to see if the Id nid is clockwise or counterclockwise from this, on the ring. An Id is
    * clockwise if it is within the half circle clockwise from this on the ring. An Id is considered
@@ -576,7 +657,7 @@ public class ChordId extends Id implements java.io.Serializable {
      * the number of bits actually in use.
 	 * @see planet.commonapi.Id#getMaximum()
 	 */
-	public static Id getMaximum() {
+	public static synchronized Id getMaximum() {
 		if (MAX == null || ((ChordProperties)Properties.overlayPropertiesInstance).bitsPerKey != bitsKey) {
 			bitsKey = ((ChordProperties)Properties.overlayPropertiesInstance).bitsPerKey; //update values
             MAX = new ChordId();
@@ -611,11 +692,30 @@ public class ChordId extends Id implements java.io.Serializable {
      */
     public Id divideOn(int divisor)
     {
-        BigInteger thisId = new BigInteger(this.toString());
-        BigInteger div    = new BigInteger(Integer.toString(divisor)); 
-        ChordId toReturn  = new ChordId();
-        toReturn.setValues(thisId.divide(div));
-        return toReturn;
+        return divideOn(divisor, new ChordId());
+    }
+
+    /**
+     * Sets the <b>result</b> to the arithmetical result of this division:
+     * <br>
+     * <center>thisId/<b>divisor</b></center>
+     * <br>
+     * It is done with a long division over the internal int[], without
+     * building any new object. The <b>result</b> can be this Id.
+     * @param divisor The number of parts to divide this Id (greater than zero).
+     * @param result The Id where the division is saved.
+     * @return The <b>result</b> Id.
+     */
+    public ChordId divideOn(int divisor, ChordId result)
+    {
+        long rem = 0;
+        long current;
+        for (int i = arrayElems - 1; i >= 0; i--) {
+            current = (rem << 32) | (Id[i] & 0x0ffffffffL);
+            result.Id[i] = (int) (current / divisor);
+            rem = current % divisor;
+        }
+        return result;
     }
     
     
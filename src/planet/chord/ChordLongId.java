@@ -0,0 +1,638 @@
+package planet.chord;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import planet.commonapi.Id;
+import planet.util.Properties;
+import planet.util.Utilities;
+
+/**
+ * Chord Id implementation that saves its value into three primitive longs,
+ * up to 192 bits, instead of the int[] of the ChordId. The comparisons are
+ * done directly as unsigned longs, the hash code is cached and updated only
+ * when the value changes, and all the ring arithmetic (add, subtract, shift,
+ * division) is done with the longs, without BigInteger.
+ * <br><br>
+ * The values are always kept modulo 2^bitsPerKey. The conversions from and to
+ * int[], byte[], BigInteger and String, and the hash code, are the same than
+ * the ChordId ones, so the same events files and hashed keys build the same
+ * Ids with both implementations.
+ * <br><br>
+ * It is activated with the OVERLAY_ID property of the Chord configuration:
+ * <pre>
+ * OVERLAY_ID = planet.chord.ChordLongId
+ * </pre>
+ * @see planet.chord.ChordId
+ */
+public class ChordLongId extends Id implements java.io.Serializable {
+
+    /**
+     * Maximum number of bits for any Id of this implementation.
+     */
+    public static final int MAX_BITS = 192;
+    /**
+     * Number of bits of the int[] representation at each array position.
+     */
+    private static final int INT_BITS = 32;
+
+    /** Sets the number of bits used in last building of MAX. */
+    private static int bitsKey;
+    /** Maximum value for the ChordLongId implementation. */
+    private static Id MAX;
+
+    /**
+     * The number of bits per key as is shown in the current configuration.
+     */
+    protected int bitsPerKey = ((ChordProperties)Properties.overlayPropertiesInstance).bitsPerKey;
+    /**
+     * Bits 0..63 of the value.
+     */
+    private long low;
+    /**
+     * Bits 64..127 of the value.
+     */
+    private long middle;
+    /**
+     * Bits 128..191 of the value.
+     */
+    private long high;
+    /**
+     * Cached hash code of the current value.
+     */
+    private int hash;
+    /**
+     * int[] representation of the value, built by the first getValue() and
+     * updated with the value since then.
+     */
+    private transient int[] value = null;
+
+    /**
+     * Generates an Id initialized to zero.
+     */
+    public ChordLongId() {
+        low = 0;
+        middle = 0;
+        high = 0;
+        hash = 0;
+    }
+
+    /**
+     * Sets the value to the three longs, modulo 2^bitsPerKey, and updates
+     * the cached hash code.
+     * @param newLow Bits 0..63.
+     * @param newMiddle Bits 64..127.
+     * @param newHigh Bits 128..191.
+     * @return The Id itself.
+     */
+    private ChordLongId set(long newLow, long newMiddle, long newHigh) {
+        low = newLow & mask(0);
+        middle = newMiddle & mask(1);
+        high = newHigh & mask(2);
+        //the same hash code than the ChordId: XOR of all its ints
+        long h = low ^ middle ^ high;
+        hash = (int) (h ^ (h >>> INT_BITS));
+        if (value != null) fillValue();
+        return this;
+    }
+
+    /**
+     * Returns the mask of the valid bits of the long at <b>position</b>,
+     * according to the number of bits per key.
+     * @param position Position of the long (0 for the lowest).
+     * @return The mask of the valid bits.
+     */
+    private long mask(int position) {
+        int bits = bitsPerKey - position * 64;
+        if (bits >= 64) return -1L;
+        if (bits <= 0) return 0L;
+        return (1L << bits) - 1;
+    }
+
+    /**
+     * Unsigned comparison of two longs.
+     * @param x The first value.
+     * @param y The second value.
+     * @return true if x < y as unsigned values.
+     */
+    private static boolean lessThan(long x, long y) {
+        return (x ^ Long.MIN_VALUE) < (y ^ Long.MIN_VALUE);
+    }
+
+    /**
+     * Numerical comparison of the values of two Ids.
+     * @param x The first Id.
+     * @param y The second Id.
+     * @return negative if x < y, 0 if they are equal and positive if x > y.
+     */
+    private static int compare(ChordLongId x, ChordLongId y) {
+        return compare(x.high, x.middle, x.low, y.high, y.middle, y.low);
+    }
+
+    /**
+     * Numerical comparison of two values given as their three longs.
+     * @param xHigh Bits 128..191 of the first value.
+     * @param xMiddle Bits 64..127 of the first value.
+     * @param xLow Bits 0..63 of the first value.
+     * @param yHigh Bits 128..191 of the second value.
+     * @param yMiddle Bits 64..127 of the second value.
+     * @param yLow Bits 0..63 of the second value.
+     * @return negative if x < y, 0 if they are equal and positive if x > y.
+     */
+    private static int compare(long xHigh, long xMiddle, long xLow, long yHigh, long yMiddle, long yLow) {
+        if (xHigh != yHigh) return lessThan(xHigh, yHigh) ? -1 : 1;
+        if (xMiddle != yMiddle) return lessThan(xMiddle, yMiddle) ? -1 : 1;
+        if (xLow != yLow) return lessThan(xLow, yLow) ? -1 : 1;
+        return 0;
+    }
+
+    /**
+     * Returns an Id corresponding to this Id plus a given offset,
+     * modulo 2^bitsPerKey.
+     * @param offset the offset to add
+     * @return the new Id
+     * @see planet.commonapi.Id#add(planet.commonapi.Id)
+     */
+    public Id add(Id offset) {
+        return add(offset, new ChordLongId());
+    }
+
+    /**
+     * Sets the <b>result</b> to this Id plus a given offset, modulo
+     * 2^bitsPerKey. The <b>result</b> can be this Id or the <b>offset</b>.
+     * @param offset the offset to add
+     * @param result the Id where the sum is saved
+     * @return the <b>result</b> Id
+     */
+    public ChordLongId add(Id offset, ChordLongId result) {
+        ChordLongId o = (ChordLongId) offset;
+        long l = low + o.low;
+        long carry = lessThan(l, low) ? 1 : 0;
+        long m = middle + o.middle;
+        long nextCarry = lessThan(m, middle) ? 1 : 0;
+        m += carry;
+        if (m == 0 && carry == 1) nextCarry = 1;
+        long h = high + o.high + nextCarry;
+        return result.set(l, m, h);
+    }
+
+    /**
+     * Returns an Id corresponding to this Id minus a given offset,
+     * modulo 2^bitsPerKey.
+     * @param offset the offset to subtract
+     * @return the new Id
+     * @see planet.commonapi.Id#subtract(planet.commonapi.Id)
+     */
+    public Id subtract(Id offset) {
+        return subtract(offset, new ChordLongId());
+    }
+
+    /**
+     * Sets the <b>result</b> to this Id minus a given offset, modulo
+     * 2^bitsPerKey. The <b>result</b> can be this Id or the <b>offset</b>.
+     * @param offset the offset to subtract
+     * @param result the Id where the subtraction is saved
+     * @return the <b>result</b> Id
+     */
+    public ChordLongId subtract(Id offset, ChordLongId result) {
+        ChordLongId o = (ChordLongId) offset;
+        long l = low - o.low;
+        long borrow = lessThan(low, o.low) ? 1 : 0;
+        long m = middle - o.middle;
+        long nextBorrow = lessThan(middle, o.middle) ? 1 : 0;
+        if (m == 0 && borrow == 1) nextBorrow = 1;
+        m -= borrow;
+        long h = high - o.high - nextBorrow;
+        return result.set(l, m, h);
+    }
+
+    /**
+     * Returns the distance from this Id to <b>nid</b> going clockwise on
+     * the ring, that is, (nid - this) modulo 2^bitsPerKey.
+     * @param nid The final Id.
+     * @param result the Id where the distance is saved
+     * @return the <b>result</b> Id
+     */
+    public ChordLongId distance(Id nid, ChordLongId result) {
+        return ((ChordLongId) nid).subtract(this, result);
+    }
+
+    /**
+     * Shift operator. shift(-1,0) multiplies value of this by two, shift(1,0) divides by 2
+     * @param cnt the number of bits to shift, negative shifts left, positive shifts right
+     * @param fill value of bit shifted in (0 if fill == 0, 1 otherwise)
+     * @return the new Id
+     * @see planet.commonapi.Id#shift(int, int)
+     */
+    public Id shift(int cnt, int fill) {
+        return shift(cnt, fill, new ChordLongId());
+    }
+
+    /**
+     * Shift operator that sets the <b>result</b>. shift(-1,0,result) multiplies
+     * value of this by two, shift(1,0,result) divides by 2. The <b>result</b>
+     * can be this Id.
+     * @param cnt the number of bits to shift, negative shifts left, positive shifts right
+     * @param fill value of bit shifted in (0 if fill == 0, 1 otherwise)
+     * @param result the Id where the shifted value is saved
+     * @return the <b>result</b> Id
+     */
+    public ChordLongId shift(int cnt, int fill, ChordLongId result) {
+        long l = low;
+        long m = middle;
+        long h = high;
+        long bit;
+        if (cnt > 0) {
+            //the filled bits enter by the most significant bit of the key
+            int top = (bitsPerKey - 1) & 63;
+            int topPosition = (bitsPerKey - 1) >> 6;
+            for (int j = 0; j < cnt; j++) {
+                l = (l >>> 1) | (m << 63);
+                m = (m >>> 1) | (h << 63);
+                h = h >>> 1;
+                if (fill != 0) {
+                    bit = 1L << top;
+                    if (topPosition == 0) l |= bit;
+                    else if (topPosition == 1) m |= bit;
+                    else h |= bit;
+                }
+            }
+        } else {
+            bit = (fill == 0) ? 0 : 1;
+            for (int j = 0; j < -cnt; j++) {
+                h = (h << 1) | (m >>> 63);
+                m = (m << 1) | (l >>> 63);
+                l = (l << 1) | bit;
+            }
+        }
+        return result.set(l, m, h);
+    }
+
+    /**
+     * This method returns the arithmetical result of this division:
+     * <br>
+     * <center>thisId/<b>divisor</b></center>
+     * <br>
+     * @param divisor The number of parts to divide this Id (greater than zero).
+     * @return The result of division.
+     * @see planet.commonapi.Id#divideOn(int)
+     */
+    public Id divideOn(int divisor) {
+        ChordLongId result = new ChordLongId();
+        divide(this, divisor, result);
+        return result;
+    }
+
+    /**
+     * Long division of the value of <b>dividend</b> by <b>divisor</b>, over
+     * its halves of 32 bits.
+     * @param dividend The Id to divide.
+     * @param divisor The divisor (greater than zero).
+     * @param result The Id where the quotient is saved.
+     * @return The remainder of the division.
+     */
+    private static long divide(ChordLongId dividend, int divisor, ChordLongId result) {
+        long[] words = {dividend.high, dividend.middle, dividend.low};
+        long rem = 0;
+        long current;
+        long quotient;
+        for (int i = 0; i < words.length; i++) {
+            current = (rem << INT_BITS) | (words[i] >>> INT_BITS);
+            quotient = (current / divisor) << INT_BITS;
+            rem = current % divisor;
+            current = (rem << INT_BITS) | (words[i] & 0x0ffffffffL);
+            words[i] = quotient | (current / divisor);
+            rem = current % divisor;
+        }
+        result.set(words[2], words[1], words[0]);
+        return rem;
+    }
+
+    /**
+     * Checks if this Id is between <b>ccw</b> and <b>cw</b> on the ring.
+     * @param ccw the counterclockwise bound (exclusive)
+     * @param cw the clockwise bound (exclusive)
+     * @return true if this Id is between both bounds or they are the same Id.
+     * @see planet.commonapi.Id#between(planet.commonapi.Id, planet.commonapi.Id)
+     */
+    public boolean between(Id ccw, Id cw) {
+        ChordLongId a = (ChordLongId) ccw;
+        ChordLongId b = (ChordLongId) cw;
+        int bounds = compare(a, b);
+        if (bounds == 0) {
+            return true;
+        } else if (bounds < 0) {
+            return compare(this, a) > 0 && compare(this, b) < 0;
+        } else {
+            return compare(this, a) > 0 || compare(this, b) < 0;
+        }
+    }
+
+    /**
+     * Checks if this Id is between <b>init</b> (exclusive) and <b>end</b>
+     * (inclusive) on the ring.
+     * @param init the counterclockwise bound (exclusive)
+     * @param end the clockwise bound (inclusive)
+     * @return true if this Id is equal to <b>end</b> or between both bounds.
+     * @see planet.commonapi.Id#betweenE(planet.commonapi.Id, planet.commonapi.Id)
+     */
+    public boolean betweenE(Id init, Id end) {
+        return compare(this, (ChordLongId) end) == 0 || between(init, end);
+    }
+
+    /**
+     * Checks to see if the Id nid is clockwise or counterclockwise from this, on the ring,
+     * with the same criteria than the ChordId.
+     * @param nid The Id we are comparing to
+     * @return true if clockwise, false otherwise.
+     * @see planet.commonapi.Id#clockwise(planet.commonapi.Id)
+     */
+    public boolean clockwise(Id nid) {
+        ChordLongId n = (ChordLongId) nid;
+        //the most significant bit of the key, at the long of the position top
+        int top = (bitsPerKey - 1) >> 6;
+        long bit = 1L << ((bitsPerKey - 1) & 63);
+        long msbLow = (top == 0) ? bit : 0;
+        long msbMiddle = (top == 1) ? bit : 0;
+        long msbHigh = (top == 2) ? bit : 0;
+        boolean thisMSB = ((high & msbHigh) | (middle & msbMiddle) | (low & msbLow)) != 0;
+        boolean nidMSB = ((n.high & msbHigh) | (n.middle & msbMiddle) | (n.low & msbLow)) != 0;
+        boolean diffMSB = thisMSB != nidMSB;
+        int order = compare(high & ~msbHigh, middle & ~msbMiddle, low & ~msbLow,
+                n.high & ~msbHigh, n.middle & ~msbMiddle, n.low & ~msbLow);
+        if (order == 0) return diffMSB;
+        return (order < 0) ^ diffMSB;
+    }
+
+    /**
+     * Numerical comparison of this Id with <b>obj</b>.
+     * @param obj the Id to compare with.
+     * @return negative if this < obj, 0 if they are equal and positive if this > obj.
+     * @see java.lang.Comparable#compareTo(java.lang.Object)
+     */
+    public int compareTo(Object obj) {
+        return compare(this, (ChordLongId) obj);
+    }
+
+    /**
+     * Two ChordLongId are equal when they have the same value.
+     * @param obj Object to compare with.
+     * @return true if <b>obj</b> is a ChordLongId with the same value.
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ChordLongId)) return false;
+        ChordLongId o = (ChordLongId) obj;
+        return low == o.low && middle == o.middle && high == o.high;
+    }
+
+    /**
+     * Returns the cached hash code, the same than for the ChordId.
+     * @return a hash code.
+     * @see java.lang.Object#hashCode()
+     */
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Returns the int at <b>position</b> of the int[] representation.
+     * @param position Position of the int (0 for the least significant).
+     * @return The int at this position.
+     */
+    private int getInt(int position) {
+        long word = (position < 2) ? low : (position < 4) ? middle : high;
+        return (int) (((position & 1) == 0) ? word : (word >>> INT_BITS));
+    }
+
+    /**
+     * Gets the ith digit in base 2^b. i = 0 is the least significant digit.
+     * @param i which digit to get.
+     * @param b which power of 2 is the base to get it in.
+     * @return the ith digit in base 2^b.
+     */
+    public int getDigit(int i, int b) {
+        int bitIndex = b * i + (bitsPerKey % b);
+        int position = bitIndex >> 6;
+        int offset = bitIndex & 63;
+        if (position > 2) return 0;
+        long bits = getLong(position) >>> offset;
+        if (offset != 0 && position < 2) bits |= getLong(position + 1) << (64 - offset);
+        return ((int) bits) & ((1 << b) - 1);
+    }
+
+    /**
+     * Returns the long at <b>position</b> of the value.
+     * @param position Position of the long (0 for the lowest).
+     * @return The long at this position.
+     */
+    private long getLong(int position) {
+        return (position == 0) ? low : (position == 1) ? middle : high;
+    }
+
+    /**
+     * Returns the byte array representation of this Id, the same than the ChordId.
+     * @return The byte array representation of this id
+     * @see planet.commonapi.Id#toByteArray()
+     */
+    public byte[] toByteArray() {
+        byte[] target = new byte[bitsPerKey >> 3];
+        for (int j = 0; j < target.length; j++) {
+            target[j] = (byte) (getInt(j >> 2) >> ((j % 4) * 8));
+        }
+        return target;
+    }
+
+    /**
+     * Returns the decimal representation of this Id.
+     * @return The decimal representation of this Id.
+     * @see planet.commonapi.Id#toStringFull()
+     */
+    public String toStringFull() {
+        byte[] magnitude = new byte[24];
+        long[] words = {high, middle, low};
+        for (int i = 0; i < magnitude.length; i++) {
+            magnitude[i] = (byte) (words[i >> 3] >>> ((7 - (i & 7)) * 8));
+        }
+        return new BigInteger(1, magnitude).toString();
+    }
+
+    /**
+     * Returns the decimal representation of this Id.
+     * @return The decimal representation of this Id.
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return toStringFull();
+    }
+
+    /**
+     * Returns the int[] with the value of this Id, as the ChordId. The array
+     * is built only once and updated when the value changes, so it must not
+     * be modified.
+     * @return int[] with the value of this Id.
+     * @see planet.commonapi.Id#getValue()
+     */
+    public Object getValue() {
+        if (value == null || value.length != bitsPerKey / INT_BITS) {
+            value = new int[bitsPerKey / INT_BITS];
+            fillValue();
+        }
+        return value;
+    }
+
+    /**
+     * Copies the current value into its int[] representation.
+     */
+    private void fillValue() {
+        for (int i = 0; i < value.length; i++) {
+            value[i] = getInt(i);
+        }
+    }
+
+    /**
+     * Sets the new value with the int[] that appears at <b>newValue</b>.
+     * @param newValue New value as int[] representation.
+     * @see planet.commonapi.Id#setValue(java.lang.Object)
+     */
+    public void setValue(Object newValue) {
+        setValues((int[]) newValue);
+    }
+
+    /**
+     * Copies the value of <b>newValue</b>, without conversions when it is
+     * a ChordLongId.
+     * @param newValue Id with the new value.
+     * @see planet.commonapi.Id#setValue(planet.commonapi.Id)
+     */
+    public void setValue(Id newValue) {
+        if (newValue instanceof ChordLongId) {
+            ChordLongId o = (ChordLongId) newValue;
+            set(o.low, o.middle, o.high);
+        } else {
+            super.setValue(newValue);
+        }
+    }
+
+    /**
+     * This method returns the maximum value for a ChordLongId that is
+     * possible to build (2^bitsPerKey - 1), according the number of bits
+     * for key actually in use.
+     * @return The maximum value sets to an Id.
+     * @see planet.commonapi.Id#getMaximum()
+     */
+    public static synchronized Id getMaximum() {
+        if (MAX == null || ((ChordProperties)Properties.overlayPropertiesInstance).bitsPerKey != bitsKey) {
+            bitsKey = ((ChordProperties)Properties.overlayPropertiesInstance).bitsPerKey;
+            MAX = new ChordLongId().set(-1L, -1L, -1L);
+        }
+        return MAX;
+    }
+
+    /**
+     * Divides the maximum domain of the node Id in <b>numberOfNodes</b>,
+     * to offers the offset between two consecutive nodes.
+     * @param numberOfNodes Number of nodes in the network.
+     * @return The offset between two consecutive nodes, to get a network
+     * with equidistance nodes.
+     * @see planet.commonapi.Id#divide(int)
+     */
+    public static Id divide(int numberOfNodes) {
+        // 2^bits / n = (2^bits - 1) / n, plus one when the remainder is n - 1
+        ChordLongId toReturn = new ChordLongId();
+        long rem = divide((ChordLongId) getMaximum(), numberOfNodes, toReturn);
+        if (rem == numberOfNodes - 1) {
+            toReturn.add(new ChordLongId().set(1, 0, 0), toReturn);
+        }
+        return toReturn;
+    }
+
+    /**
+     * Sets the internal value from the BigInteger <b>newValue</b>, with the
+     * same conversion than the ChordId.
+     * @param newValue The new value
+     * @return The Id itself
+     * @see planet.commonapi.Id#setValues(java.math.BigInteger)
+     */
+    public Id setValues(BigInteger newValue) {
+        int[] data = new int[Math.max(ChordId.MAX_BITS, bitsPerKey) / INT_BITS];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = newValue.intValue();
+            newValue = newValue.shiftRight(INT_BITS);
+        }
+        return setValues(data);
+    }
+
+    /**
+     * Sets the internal value from the byte[] <b>newValue</b>, with the
+     * same conversion than the ChordId.
+     * @param newValue The new value
+     * @return The Id itself
+     * @see planet.commonapi.Id#setValues(byte[])
+     */
+    public Id setValues(byte[] newValue) {
+        return setValues(Utilities.toIntArray(newValue));
+    }
+
+    /**
+     * Always throws a NoSuchMethodError.
+     * @param newValue The new value
+     * @return The Id itself
+     * @see planet.commonapi.Id#setValues(double)
+     */
+    public Id setValues(double newValue) {
+        throw new NoSuchMethodError("No double value be applied to ChordLongId.");
+    }
+
+    /**
+     * Sets the <b>newValue</b> to the lowest 32 bits, and the rest of bits
+     * to zero.
+     * @param newValue The new value.
+     * @return The Id itself
+     * @see planet.commonapi.Id#setValues(int)
+     */
+    public Id setValues(int newValue) {
+        return set(newValue & 0x0ffffffffL, 0, 0);
+    }
+
+    /**
+     * Sets the internal value from the int[] <b>newValue</b>, with the same
+     * conversion than the ChordId: if the value has more significant ints than
+     * the current key, its most significant ints are captured.
+     * @param newValue The new value
+     * @return The Id itself
+     * @see planet.commonapi.Id#setValues(int[])
+     */
+    public Id setValues(int[] newValue) {
+        int elems = bitsPerKey / INT_BITS;
+        int dataLength = newValue.length - 1;
+        while (dataLength > 0 && newValue[dataLength] == 0) dataLength--;
+        dataLength++;
+        int offset = (elems < dataLength) ? dataLength - elems : 0;
+        long[] words = new long[3];
+        for (int i = 0; i < elems && i + offset < dataLength; i++) {
+            words[i >> 1] |= (newValue[i + offset] & 0x0ffffffffL) << ((i & 1) * INT_BITS);
+        }
+        return set(words[0], words[1], words[2]);
+    }
+
+    /**
+     * Uses the <b>valueGenerator</b> to radomly build a new value.
+     * @param valueGenerator A Random number generator.
+     * @return The Id itself
+     * @see planet.commonapi.Id#setValues(java.util.Random)
+     */
+    public Id setValues(Random valueGenerator) {
+        return setValues(new BigInteger(bitsPerKey, valueGenerator));
+    }
+
+    /**
+     * Copies the string representation of a number to the internal value.
+     * @param newValue The new value.
+     * @return The Id itself
+     * @see planet.commonapi.Id#setValues(java.lang.String)
+     */
+    public Id setValues(String newValue) {
+        return setValues(new BigInteger(newValue));
+    }
+}
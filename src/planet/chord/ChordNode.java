@@ -1,9 +1,11 @@
 package planet.chord;
+import java.io.IOException;
 import java.math.BigInteger;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.Random;
 import java.util.Set;
 import java.util.Vector;
 
@@ -20,13 +22,18 @@ import planet.commonapi.RouteMessage;
 import planet.commonapi.exception.InitializationException;
 import planet.commonapi.results.ResultsConstraint;
 import planet.commonapi.results.ResultsEdge;
+import planet.generic.commonapi.NetworkSnapshotReader;
+import planet.generic.commonapi.NetworkSnapshotWriter;
+import planet.generic.commonapi.SnapshotNode;
+import planet.generic.commonapi.StabilizedNode;
+import planet.generic.commonapi.StabilizedRing;
 import planet.generic.commonapi.factory.GenericFactory;
 import planet.simulate.Globals;
 import planet.simulate.Logger;
 import planet.simulate.MessageListener;
 import planet.simulate.Results;
+import planet.util.Mailbox;
 import planet.util.Properties;
-import planet.util.Queue;
 import planet.util.timer.TimerTaskImpl;
 
 
@@ -42,7 +49,7 @@ import planet.util.timer.TimerTaskImpl;
  * @author <a href="mailto:marc.sanchez@estudiants.urv.es">Marc Sanchez</a>
  *  
  */
-public class ChordNode extends planet.generic.commonapi.NodeImpl {
+public class ChordNode extends planet.generic.commonapi.NodeImpl implements SnapshotNode, StabilizedNode {
 	
 	/* ******************  CONSTANTS FOR MODE OF ROUTEMESSAGE *******/
 	
@@ -143,7 +150,24 @@ public class ChordNode extends planet.generic.commonapi.NodeImpl {
 	public static RouteMessage getDataMessage(String appId,
 			NodeHandle from, NodeHandle to, NodeHandle nextHop, Message msg) 
 				throws InitializationException {
-	  	RouteMessage toReturn = GenericFactory.getMessage(GenericFactory.generateKey(), from, to, nextHop, null, DATA, REQUEST, appId);
+		return getDataMessage(GenericFactory.generateKey(), appId, from, to, nextHop, msg);
+	}
+	
+	/**
+	 * Return a RouteMessage with the specified values. If there are RouteMessages free,
+	 * just build a new one. For generate new instances of RouteMessage will be used
+	 * the implementation class that appears in properties file.
+	 * @param key Key of the communication.
+	 * @param appId Application Id name.
+	 * @param from Source node.
+	 * @param to Destination node.
+	 * @param nextHop NextHop node.
+	 * @return A RouteMessage with the specified values.
+	 */
+	public static RouteMessage getDataMessage(String key, String appId,
+			NodeHandle from, NodeHandle to, NodeHandle nextHop, Message msg) 
+				throws InitializationException {
+	  	RouteMessage toReturn = GenericFactory.getMessage(key, from, to, nextHop, null, DATA, REQUEST, appId);
 	  	toReturn.setMessage(msg);
 	  	return toReturn;
 	}
@@ -180,9 +204,16 @@ public class ChordNode extends planet.generic.commonapi.NodeImpl {
 	 */
 	protected int fingerChanges = 0;
 	/**
-	 * Number of simulation steps without changes on finger table.
+	 * Value of <b>lastFingerChange</b> before the first process.
 	 */
-	protected int stabRate = 0;
+	protected static final int NO_STEP = Integer.MIN_VALUE;
+	/**
+	 * Step of the last change on finger table, or NO_STEP if the node has
+	 * not been processed yet. The number of steps without changes is
+	 * derived from it, so the steps where the node is not processed are
+	 * also counted.
+	 */
+	protected int lastFingerChange = NO_STEP;
     /**
      * Number of bits per key to use as current configuration.
      */
@@ -220,6 +251,11 @@ public class ChordNode extends planet.generic.commonapi.NodeImpl {
 	 */
 	public NodeHandle[] finger;
 	/**
+     * Compact view of the finger table, built on demand. Any direct write
+     * on <b>finger</b> must be notified with fingersChanged().
+	 */
+	private transient FingerTable fingerTable;
+	/**
      * The starting indices for the finger table (as Finger[k].start).
 	 */ 
 	public Id[] start;
@@ -276,6 +312,7 @@ public class ChordNode extends planet.generic.commonapi.NodeImpl {
 	 */
 	public void setSucc(NodeHandle handle) {
 		finger[0] = handle;
+		fingersChanged();
         
         //always the successor at the first position
         if (succList.size()>0)
@@ -353,9 +390,30 @@ public class ChordNode extends planet.generic.commonapi.NodeImpl {
 		if (finger[pos] == null || !finger[pos].equals(handle)) {
 			fingerChanges++;
 			finger[pos] = handle;
+			fingersChanged();
 		}
 	}
 	
+	/**
+	 * Returns the compact view of the finger table, with the distinct fingers
+	 * in finger order.
+	 * @return The FingerTable of this node.
+	 */
+	public FingerTable getFingerTable() {
+		if (fingerTable == null)
+			fingerTable = new FingerTable(finger, id);
+		return fingerTable;
+	}
+	
+	/**
+	 * Notifies that any position of the <b>finger</b> table has been written
+	 * directly, so its compact view must be rebuilt.
+	 */
+	protected void fingersChanged() {
+		if (fingerTable != null)
+			fingerTable.changed();
+	}
+	
 	public Hashtable getInfo() {
 		Hashtable info = new Hashtable();
 		info.put("predecessor", predecessor);
@@ -428,21 +486,18 @@ public class ChordNode extends planet.generic.commonapi.NodeImpl {
 	}
 	
 	/**
-	 * Finds the closest preceding finger of a node
+	 * Finds the closest preceding finger of a node, with a binary search on
+	 * the compact view of the finger table.
 	 * 
 	 * @param id
 	 *            Id of the one node
 	 * @return successor NodeHandle of the node successor
 	 */
 	protected NodeHandle closestPrecedingFinger(Id id) {
-		cpfFound = false;
-		temp[2] = this.nodeHandle; //n_id
-		for (int i = bitsPerKey - 1; (i > -1 && !cpfFound); i--) {
-			if (finger[i] != null && finger[i].getId().betweenE(this.id, id)) {
-				temp[2] = finger[i];
-				cpfFound = true;
-			}
-		}
+		temp[2] = getFingerTable().closestPreceding(id);
+		cpfFound = temp[2] != null;
+		if (!cpfFound)
+			temp[2] = this.nodeHandle; //n_id
 		return temp[2];
 	}
 	/**
@@ -479,7 +534,7 @@ public class ChordNode extends planet.generic.commonapi.NodeImpl {
 			return finger[0];
 		} else {
             temp[1] = closestPrecedingFinger(start[pos]); 
-            String key = GenericFactory.generateKey();
+            String key = generateKey();
             sendMessage(key,nodeHandle,temp[1],FIND_PRE,REQUEST,new IdMessage(start[pos]));
             addMessageListener(key, new FindPredListener(this, pos));
 		}
@@ -496,9 +551,10 @@ public class ChordNode extends planet.generic.commonapi.NodeImpl {
 			for (int i = 0; i < bitsPerKey; i++) {
 				finger[i] = this.nodeHandle;
 			}
+			fingersChanged();
 			predecessor = this.nodeHandle;
 		} else {
-            String key = GenericFactory.generateKey(); 
+            String key = generateKey(); 
             predecessor = null;
             NodeHandle boots = null;
             sendMessage(key,nodeHandle,bootstrap, FIND_SUCC,REQUEST,null);
@@ -525,7 +581,7 @@ public class ChordNode extends planet.generic.commonapi.NodeImpl {
 		if (hasReceivedSucc)
 		{
 			hasReceivedSucc = false;
-            String key = GenericFactory.generateKey(); 
+            String key = generateKey(); 
             sendMessage(key,nodeHandle,finger[0],GET_PRE,REQUEST,null);
             addMessageListener(key, new GetPreListener(this));
 		}
@@ -568,8 +624,21 @@ public class ChordNode extends planet.generic.commonapi.NodeImpl {
 	 */
 	protected void sendData(RouteMessage message, NodeHandle hint, int mode) {
 		message.setNextHopHandle(hint);
-		sendMessage(message);
+		//counted before, so a rejected message is discounted when it is dropped
 		Results.incTraffic();
+		sendMessage(message);
+	}
+	
+	/**
+	 * Discounts the traffic of the discarded DATA and BROADCAST messages,
+	 * evicted or rejected by any queue.
+	 * @param msg The discarded message.
+	 * @see planet.generic.commonapi.NodeImpl#messageDropped(planet.commonapi.RouteMessage)
+	 */
+	protected void messageDropped(RouteMessage msg) {
+		if (msg.getType() == DATA || msg.getType() == BROADCAST)
+			Results.decTraffic();
+		super.messageDropped(msg);
 	}
     
 	/**
@@ -608,7 +677,7 @@ public class ChordNode extends planet.generic.commonapi.NodeImpl {
 	public void routeData(String appId,NodeHandle to, NodeHandle nextHop, Message msg) {
 		RouteMessage toSend = null;
 		try {
-			toSend = getDataMessage(appId,nodeHandle,to,nextHop,msg);
+			toSend = getDataMessage(generateKey(),appId,nodeHandle,to,nextHop,msg);
 			if (nextHop != null) this.sendData(toSend, nextHop,REFRESH);
 			else this.routingData(toSend, to);
 		} catch (InitializationException e) {
@@ -628,22 +697,21 @@ public class ChordNode extends planet.generic.commonapi.NodeImpl {
 			NodeHandle to, NodeHandle nextHop, Message msg) {
 		NodeHandle limit;
 		NodeHandle r;
-		for (int i = 0; i < bitsPerKey - 1; i++) {
-			//Skip a redundant finger
-			if (!finger[i].equals(finger[i + 1])) {
-				r = finger[i];
-				limit = finger[i + 1];
-				RouteMessage aMsg = null;
-				try {
-					//String appId,Id from, Id to, Id nextHop
-					aMsg = getBroadcastMessage(appId,
-							this.nodeHandle, r, r,new BroadcastMessage(msg, limit));
-					sendMessage(aMsg);
-					Results.incTraffic();
-				} catch (InitializationException e) {
-					Logger.log("Cannot build a new instance of RouteMessage for BroadcastMessage",
-									Logger.ERROR_LOG);
-				}
+		FingerTable fingers = getFingerTable();
+		for (int i = 0; i < fingers.size() - 1; i++) {
+			//One finger per run: the redundant ones are skipped
+			r = fingers.getHandle(i);
+			limit = fingers.getHandle(i + 1);
+			RouteMessage aMsg = null;
+			try {
+				//String appId,Id from, Id to, Id nextHop
+				aMsg = getBroadcastMessage(appId,
+						this.nodeHandle, r, r,new BroadcastMessage(msg, limit));
+				Results.incTraffic();
+				sendMessage(aMsg);
+			} catch (InitializationException e) {
+				Logger.log("Cannot build a new instance of RouteMessage for BroadcastMessage",
+								Logger.ERROR_LOG);
 			}
 		}
 		//Process the last finger
@@ -655,8 +723,8 @@ public class ChordNode extends planet.generic.commonapi.NodeImpl {
 					finger[bitsPerKey - 1],
 					new BroadcastMessage(msg, nodeHandle));
 			//I'm the limit of the last finger
-			sendMessage(aMsg);
 			Results.incTraffic();
+			sendMessage(aMsg);
 		} catch (InitializationException e) {
 			Logger.log("ERROR: Cannot get a RouteMessage of MessagePool\n"
 					+ e.getMessage(), Logger.ERROR_LOG);
@@ -685,9 +753,10 @@ public class ChordNode extends planet.generic.commonapi.NodeImpl {
 		} else if (msg.getMode() == Globals.ERROR) {
 			if (msg.getKey() != null) {
 				String key_fp = msg.getKey();
-				Logger.log("Node " + this.id + " destroy message key " + key_fp
-						+ " type " + Globals.typeToString(msg.getType()) + " content "
-						+ msg.getMessage(), Logger.MSG_LOG);
+				if (Logger.isLoggable(Logger.MSG_LOG))
+					Logger.log("Node " + this.id + " destroy message key " + key_fp
+							+ " type " + Globals.typeToString(msg.getType()) + " content "
+							+ msg.getMessage(), Logger.MSG_LOG);
 				MessageListener lst = (MessageListener) listeners.get(key_fp);
 				if (lst != null) {
 					removeMessageListener(key_fp);
@@ -700,6 +769,7 @@ public class ChordNode extends planet.generic.commonapi.NodeImpl {
 				succList.remove(finger[0]);
 				if (succList.size() > 0) {
 					finger[0] = (NodeHandle) succList.firstElement();
+					fingersChanged();
 					//send notify
                     this.sendMessage(msg,null,nodeHandle,finger[0],finger[0],SET_PRE,REFRESH,new NodeMessage(nodeHandle));
 				}
@@ -734,39 +804,39 @@ public class ChordNode extends planet.generic.commonapi.NodeImpl {
 					Id limitId = limit.getId();
 					planet.commonapi.Message info = bm.getInfo();
 					
-					for (int i = 0; i < bitsPerKey - 1; i++) {
-						//Skip a redundant finger
-						if (!finger[i].equals(finger[i + 1])) {
-							//Forward while within "Limit"
-							if (finger[i].getId().between(this.id, limitId)) {
-								r = finger[i];
-								//New Limit must not exceed Limit
-								if (finger[i + 1].getId().between(this.id, limitId)) {
-									new_limit = finger[i + 1];
-								} else {
-									new_limit = limit;
-								}
-								//no reuse of RouteMessage msg ==> send one
-								// message to different nodes ==> requires
-								// different messages
-								planet.commonapi.RouteMessage aMsg = null;
-								try {
-									// String appId,Id from, Id to, Id nextHop
-									aMsg = getBroadcastMessage(msg
-											.getApplicationId(), this.nodeHandle, r, r,
-											new BroadcastMessage(info,new_limit));
-									sendMessage(aMsg);
-									Results.incTraffic();
-								} catch (InitializationException e) {
-									Logger.log(
-											"ERROR: Cannot get a RouteMessage of MessagePool\n"
-											+ e.getMessage(), Logger.ERROR_LOG);
-								}
+					FingerTable fingers = getFingerTable();
+					//One finger per run: the redundant ones are skipped
+					for (int i = 0; i < fingers.size() - 1; i++) {
+						//Forward while within "Limit"
+						if (fingers.getHandle(i).getId().between(this.id, limitId)) {
+							r = fingers.getHandle(i);
+							//New Limit must not exceed Limit
+							if (fingers.getHandle(i + 1).getId().between(this.id, limitId)) {
+								new_limit = fingers.getHandle(i + 1);
+							} else {
+								new_limit = limit;
+							}
+							//no reuse of RouteMessage msg ==> send one
+							// message to different nodes ==> requires
+							// different messages
+							planet.commonapi.RouteMessage aMsg = null;
+							try {
+								// String appId,Id from, Id to, Id nextHop
+								aMsg = getBroadcastMessage(msg
+										.getApplicationId(), this.nodeHandle, r, r,
+										new BroadcastMessage(info,new_limit));
+								Results.incTraffic();
+								sendMessage(aMsg);
+							} catch (InitializationException e) {
+								Logger.log(
+										"ERROR: Cannot get a RouteMessage of MessagePool\n"
+										+ e.getMessage(), Logger.ERROR_LOG);
 							}
 						}
 					}
-					Logger.log("Broadcast : Node " + this.id + " info : "
-							+ info, Logger.EVENT_LOG);
+					if (Logger.isLoggable(Logger.EVENT_LOG))
+						Logger.log("Broadcast : Node " + this.id + " info : "
+								+ info, Logger.EVENT_LOG);
 					msg.setMessage(info);
 					Results.decTraffic();
 					((EndPoint) endpoints.get(msg.getApplicationId())).scheduleMessage(msg, 0);
@@ -778,7 +848,7 @@ public class ChordNode extends planet.generic.commonapi.NodeImpl {
 					if (fSucc != null) {
                         this.sendMessage(msg,msg.getKey(),nodeHandle,msg.getSource(),msg.getSource(),msg.getType(),REPLY,new NodeMessage(fSucc));
 					} else {
-						String key_fp = GenericFactory.generateKey(); 
+						String key_fp = generateKey(); 
                         NodeHandle aux = closestPrecedingFinger(msg.getSource().getId());
                         addMessageListener(key_fp, new FindPredListener(this, msg.getKey()));
                         this.sendMessage(msg,key_fp,nodeHandle,aux,aux,FIND_PRE,REQUEST,new IdMessage(msg.getSource().getId()));
@@ -840,10 +910,11 @@ public class ChordNode extends planet.generic.commonapi.NodeImpl {
 		while (hasMoreMessages()) {
 			dispatcher(nextMessage());
 		}
-		if (getFingerChanges()>0) stabRate = 0;
-		else stabRate++;
+		if (getFingerChanges()>0) lastFingerChange = actualStep;
+		//a new node counts its steps from its first process
+		else if (lastFingerChange == NO_STEP) lastFingerChange = actualStep - 1;
 		invokeByStepToAllApplications();
-		return stabRate < realStabilizationRate; 
+		return actualStep - lastFingerChange < realStabilizationRate; 
 	}
 	
 	/**
@@ -869,6 +940,94 @@ public class ChordNode extends planet.generic.commonapi.NodeImpl {
 		return nodeHandle;
 	}
 	
+	/**
+	 * Saves the stabilization counters and flags, the predecessor, the finger
+	 * table and the successor list. The number of steps without finger changes
+	 * is derived from the step of the last change, that is saved as is, so
+	 * it does not change while the finger table is stable.
+	 * @see planet.generic.commonapi.SnapshotNode#writeState(planet.generic.commonapi.NetworkSnapshotWriter)
+	 * @param out Writer of the snapshot.
+	 * @throws IOException if occurs any problem writing the snapshot.
+	 */
+	public void writeState(NetworkSnapshotWriter out) throws IOException {
+		out.writeInt(nullPointers);
+		out.writeInt(fingerChanges);
+		out.writeInt(lastFingerChange);
+		out.writeHandle(predecessor);
+		out.writeBoolean(hasFailed);
+		out.writeBoolean(hasLeaved);
+		out.writeBoolean(hasReceivedSucc);
+		out.writeBoolean(cpfFound);
+		for (int i = 0; i < bitsPerKey; i++)
+			out.writeHandle(finger[i]);
+		out.writeHandles(succList);
+	}
+	
+	/**
+	 * Loads the state saved by writeState(). The finger starts are already
+	 * built from the Id of this node.
+	 * @see planet.generic.commonapi.SnapshotNode#readState(planet.generic.commonapi.NetworkSnapshotReader)
+	 * @param in Reader of the snapshot.
+	 * @throws IOException if occurs any problem reading the snapshot.
+	 */
+	public void readState(NetworkSnapshotReader in) throws IOException {
+		nullPointers = in.readInt();
+		fingerChanges = in.readInt();
+		lastFingerChange = in.readInt();
+		predecessor = in.readHandle();
+		hasFailed = in.readBoolean();
+		hasLeaved = in.readBoolean();
+		hasReceivedSucc = in.readBoolean();
+		cpfFound = in.readBoolean();
+		for (int i = 0; i < bitsPerKey; i++)
+			finger[i] = in.readHandle();
+		fingersChanged();
+		succList.clear();
+		in.readHandles(succList);
+	}
+	
+	
+	/**
+	 * Sets the state of a stabilized Chord ring: the predecessor and the
+	 * successor are the previous and next nodes of the ring, each finger is
+	 * the successor of its start, and the successor list has the next
+	 * nodes of the ring. The node is marked as stabilized, as it had no
+	 * finger changes during the stabilization rate.
+	 * @see planet.generic.commonapi.StabilizedNode#joinStabilized(planet.generic.commonapi.StabilizedRing, int, java.util.Random)
+	 * @param ring The sorted ring of all nodes.
+	 * @param position Position of this node at the <b>ring</b>.
+	 * @param random Not used.
+	 */
+	public void joinStabilized(StabilizedRing ring, int position, Random random) {
+		predecessor = ring.getHandle(position - 1);
+		finger[0] = ring.getHandle(position + 1);
+		for (int i = 1; i < bitsPerKey; i++)
+			finger[i] = ring.getHandle(ring.findSuccessor(start[i]));
+		fingersChanged();
+		succList.clear();
+		if (ring.size() > 1) {
+			//without wrapping around to this node on small rings
+			int succs = Math.min(((ChordProperties)Properties.overlayPropertiesInstance).succListMax,
+					ring.size() - 1);
+			for (int i = 1; i <= succs; i++)
+				succList.add(ring.getHandle(position + i));
+		}
+		nullPointers = 0;
+		fingerChanges = 0;
+		//as if the last change was realStabilizationRate steps before the first step
+		lastFingerChange = -realStabilizationRate;
+		hasReceivedSucc = true;
+	}
+	
+	/**
+	 * Does nothing: all the links of a Chord node are set by joinStabilized().
+	 * @see planet.generic.commonapi.StabilizedNode#linkStabilized(planet.generic.commonapi.StabilizedRing, int, java.util.Random)
+	 * @param ring The sorted ring of all nodes.
+	 * @param position Position of this node at the <b>ring</b>.
+	 * @param random Random generator of the network.
+	 */
+	public void linkStabilized(StabilizedRing ring, int position, Random random) {
+	}
 	
 	/* ************************* MESSAGE LISTENERS ********************/
 	
@@ -994,7 +1153,7 @@ public class ChordNode extends planet.generic.commonapi.NodeImpl {
 	 * @return null if the node has failed. The outgoing queue
 	 * if the node is alive or just has leaved at this simulation step.
 	 */
-	public Queue outMessages() {
+	public Mailbox outMessages() {
 		if (hasFailed) return null;
 		return super.outMessages();
 	}
@@ -1297,8 +1456,18 @@ public class ChordNode extends planet.generic.commonapi.NodeImpl {
      */
     public Node setValues(Id newId) throws InitializationException {
         super.setValues(newId);
-        for (int i = 0; i < bitsPerKey; i++) {
-            start[i] = (id.add(deux.shift(-(i - 1), 0)));
+        //power = 2^i, doubled at each position
+        Id power = GenericFactory.buildId(ChordId.ONE_CHORD);
+        if (id instanceof ChordId) {
+            for (int i = 0; i < bitsPerKey; i++) {
+                start[i] = ((ChordId)id).add(power, new ChordId());
+                ((ChordId)power).shift(-1, 0, false, (ChordId)power);
+            }
+        } else {
+            for (int i = 0; i < bitsPerKey; i++) {
+                start[i] = id.add(power);
+                power = power.shift(-1, 0);
+            }
         }
         return this;
     }
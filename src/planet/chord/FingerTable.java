@@ -0,0 +1,184 @@
+package planet.chord;
+
+import planet.commonapi.Id;
+import planet.commonapi.NodeHandle;
+
+/**
+ * Compact view of the finger table of a ChordNode. The bitsPerKey fingers
+ * of a node point to a few distinct nodes, so consecutive equal fingers are
+ * grouped into runs, each one with its NodeHandle and the first finger
+ * position of its start interval. The runs are kept in finger order, that
+ * is, sorted by their start.
+ * <br><br>
+ * The fingers that can be used as next hop (not null and different from the
+ * local node) are indexed apart. When their Ids follow the clockwise order
+ * from the local node, as in any stabilized node, the closest preceding
+ * finger of a key is found with a binary search over them. Otherwise, they
+ * are scanned from the last one, with the same result as scanning the whole
+ * finger table.
+ * <br><br>
+ * The finger array is still the table of the node: this view is rebuilt
+ * lazily, on its first use after any change notified with changed(). So,
+ * any number of finger updates between two lookups costs only one rebuild
+ * of O(bitsPerKey), without building any object.
+ * @see planet.chord.ChordNode
+ */
+public class FingerTable {
+
+    /**
+     * The finger table of the node.
+     */
+    private NodeHandle[] finger;
+    /**
+     * Id of the local node.
+     */
+    private Id local;
+    /**
+     * First finger position of each run.
+     */
+    private int[] first;
+    /**
+     * NodeHandle of each run.
+     */
+    private NodeHandle[] handles;
+    /**
+     * Number of runs.
+     */
+    private int runs = 0;
+    /**
+     * Runs that can be used as next hop, in finger order.
+     */
+    private int[] routes;
+    /**
+     * Number of <b>routes</b>.
+     */
+    private int routesCount = 0;
+    /**
+     * Shows if the <b>routes</b> follow the clockwise order from the local node.
+     */
+    private boolean ordered = true;
+    /**
+     * Shows if the finger table has changed since the last rebuild.
+     */
+    private boolean changed = true;
+
+    /**
+     * Builds the view of the <b>finger</b> table.
+     * @param finger The finger table of the node.
+     * @param local Id of the local node.
+     */
+    public FingerTable(NodeHandle[] finger, Id local) {
+        this.finger = finger;
+        this.local = local;
+        first = new int[finger.length];
+        handles = new NodeHandle[finger.length];
+        routes = new int[finger.length];
+    }
+
+    /**
+     * Notifies that any finger has changed.
+     */
+    public void changed() {
+        changed = true;
+    }
+
+    /**
+     * Returns the number of runs of equal consecutive fingers.
+     * @return The number of distinct fingers, in finger order.
+     */
+    public int size() {
+        if (changed) rebuild();
+        return runs;
+    }
+
+    /**
+     * Returns the NodeHandle of the run at <b>index</b>.
+     * @param index Index of the run, from zero to size()-1.
+     * @return The NodeHandle of all fingers of the run.
+     */
+    public NodeHandle getHandle(int index) {
+        if (changed) rebuild();
+        return handles[index];
+    }
+
+    /**
+     * Returns the position of the first finger of the run at <b>index</b>,
+     * that is, the start of its interval.
+     * @param index Index of the run, from zero to size()-1.
+     * @return The first finger position of the run.
+     */
+    public int getFirst(int index) {
+        if (changed) rebuild();
+        return first[index];
+    }
+
+    /**
+     * Finds the finger that most closely precedes the <b>key</b>: the last
+     * finger whose Id is between the local node (exclusive) and the key
+     * (inclusive).
+     * @param key Id to look for.
+     * @return The closest preceding finger, or null if there is not any.
+     */
+    public NodeHandle closestPreceding(Id key) {
+        if (changed) rebuild();
+        //all fingers are between the local node and itself
+        if (key.equals(local)) {
+            for (int i = runs - 1; i >= 0; i--)
+                if (handles[i] != null) return handles[i];
+            return null;
+        }
+        if (ordered) {
+            int low = 0;
+            int high = routesCount;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (handles[routes[middle]].getId().betweenE(local, key))
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            return (low == 0) ? null : handles[routes[low - 1]];
+        }
+        for (int i = routesCount - 1; i >= 0; i--)
+            if (handles[routes[i]].getId().betweenE(local, key))
+                return handles[routes[i]];
+        return null;
+    }
+
+    /**
+     * Builds the runs and the routes from the finger table.
+     */
+    private void rebuild() {
+        int previous = runs;
+        runs = 0;
+        routesCount = 0;
+        ordered = true;
+        for (int i = 0; i < finger.length; i++) {
+            NodeHandle handle = finger[i];
+            if (runs > 0 && same(handles[runs - 1], handle)) continue;
+            first[runs] = i;
+            handles[runs] = handle;
+            if (handle != null && !handle.getId().equals(local)) {
+                if (routesCount > 0 &&
+                        !handles[routes[routesCount - 1]].getId().betweenE(local, handle.getId()))
+                    ordered = false;
+                routes[routesCount++] = runs;
+            }
+            runs++;
+        }
+        //releases the NodeHandles of the old runs
+        for (int i = runs; i < previous; i++)
+            handles[i] = null;
+        changed = false;
+    }
+
+    /**
+     * Compares two fingers, any of them may be null.
+     * @param a A finger.
+     * @param b Another finger.
+     * @return true if both are null or they are equal.
+     */
+    private static boolean same(NodeHandle a, NodeHandle b) {
+        return (a == null) ? b == null : b != null && a.equals(b);
+    }
+}
@@ -6,7 +6,6 @@ import java.util.Vector;
 
 import planet.commonapi.exception.InitializationException;
 import planet.commonapi.results.ResultsConstraint;
-import planet.util.QueueFull;
 import planet.util.timer.TimerTask;
 
 /**
@@ -101,23 +100,27 @@ public interface Node extends java.io.Serializable {
 	 * This method is invoked to send a message <b>msg</b> to the
 	 * actual Node (another ----> me).
 	 * @param msg Message to be received for the actual Node.
-	 * @throws QueueFull if the incoming queue of the actual Node is full.
+	 * @return false if the incoming queue of the actual Node has rejected
+	 * the message, following its overflow policy.
+	 * @see planet.util.Mailbox
 	 */
-	public void receive(RouteMessage msg) throws QueueFull;
+	public boolean receive(RouteMessage msg);
 	
 	/**
 	 * This method is invoked to send a message <b>msg</b> to
 	 * another Node (me ---> another).
 	 * @param msg Message to be received for the remote Node.
-	 * @throws QueueFull if the outgoing queue of the actual Node is full.
+	 * @return false if the outgoing queue of the actual Node has rejected
+	 * the message, following its overflow policy.
+	 * @see planet.util.Mailbox
 	 */
-	public void send(RouteMessage msg) throws QueueFull;
+	public boolean send(RouteMessage msg);
 	
 	/**
 	 * Returns the outgoing queue with message to be send.
 	 * @return The queue with the outgoing messages to be send.
 	 */
-	public planet.util.Queue outMessages();
+	public planet.util.Mailbox outMessages();
 
 	/**
 	 * Shows for System.out all information of the node, including finger table.
@@ -0,0 +1,404 @@
+package planet.dht;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Compact StorageEngine. All pairs are saved one after another in a single
+ * ByteBuffer, the arena, as their key length, value length, key bytes and
+ * value bytes. An open addressing index, made only of two int arrays, keeps
+ * the hash of each key and the position of its pair at the arena. So, a
+ * stored pair takes only its bytes, eight bytes of header and its slots at
+ * the index, without any object.
+ * <br><br>
+ * The arena may be a direct ByteBuffer, out of the Java heap, so large
+ * stores do not load the garbage collector. Replaced and removed pairs
+ * leave garbage at the arena, which is compacted when it is greater than
+ * the half of the arena.
+ * <br><br>
+ * The arena is limited to 2GB. It is serialized as the list of its pairs.
+ */
+public class ByteArrayStorage implements StorageEngine {
+
+    /**
+     * Initial size of the arena, in bytes.
+     */
+    public static final int INITIAL_ARENA = 1024;
+    /**
+     * Initial number of slots of the index.
+     */
+    private static final int INITIAL_INDEX = 16;
+    /**
+     * Bytes of the header of each pair: key length and value length.
+     */
+    private static final int HEADER = 8;
+
+    /**
+     * Shows if the arena is a direct ByteBuffer.
+     */
+    private boolean offHeap;
+    /**
+     * Pairs of the store.
+     */
+    private transient ByteBuffer arena;
+    /**
+     * Number of bytes in use at the arena, including garbage.
+     */
+    private transient int end;
+    /**
+     * Number of bytes of replaced and removed pairs at the arena.
+     */
+    private transient int garbage;
+    /**
+     * Hash of the key at each slot of the index.
+     */
+    private transient int[] hashes;
+    /**
+     * Position of the pair at each slot, plus one, or zero for an empty slot.
+     */
+    private transient int[] offsets;
+    /**
+     * Number of stored keys.
+     */
+    private transient int size;
+
+    /**
+     * Builds an empty store in the Java heap.
+     */
+    public ByteArrayStorage() {
+        this(false);
+    }
+
+    /**
+     * Builds an empty store.
+     * @param offHeap true to save the pairs out of the Java heap.
+     */
+    public ByteArrayStorage(boolean offHeap) {
+        this.offHeap = offHeap;
+        init();
+    }
+
+    /**
+     * @see planet.dht.StorageEngine#put(byte[], byte[])
+     */
+    public synchronized boolean put(byte[] key, byte[] value) {
+        int hash = hash(key);
+        int slot = find(key, hash);
+        if (offsets[slot] != 0) {
+            int offset = offsets[slot] - 1;
+            int valueLength = arena.getInt(offset + 4);
+            if (valueLength == value.length) {
+                //same length: the value is replaced in place
+                arena.position(offset + HEADER + key.length);
+                arena.put(value);
+            } else {
+                garbage += HEADER + key.length + valueLength;
+                offsets[slot] = append(key, value) + 1;
+                compactIfRequired();
+            }
+            return false;
+        }
+        hashes[slot] = hash;
+        offsets[slot] = append(key, value) + 1;
+        size++;
+        //keeps the load factor up to 3/4
+        if (size * 4 > offsets.length * 3) resizeIndex(offsets.length * 2);
+        return true;
+    }
+
+    /**
+     * @see planet.dht.StorageEngine#putAll(byte[][], byte[][])
+     */
+    public synchronized int putAll(byte[][] keys, byte[][] values) {
+        int added = 0;
+        for (int i = 0; i < keys.length; i++)
+            if (put(keys[i], values[i])) added++;
+        return added;
+    }
+
+    /**
+     * @see planet.dht.StorageEngine#get(byte[])
+     */
+    public synchronized byte[] get(byte[] key) {
+        int slot = find(key, hash(key));
+        if (offsets[slot] == 0) return null;
+        int offset = offsets[slot] - 1;
+        byte[] value = new byte[arena.getInt(offset + 4)];
+        arena.position(offset + HEADER + key.length);
+        arena.get(value);
+        return value;
+    }
+
+    /**
+     * @see planet.dht.StorageEngine#getAll(byte[][])
+     */
+    public synchronized byte[][] getAll(byte[][] keys) {
+        byte[][] values = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++)
+            values[i] = get(keys[i]);
+        return values;
+    }
+
+    /**
+     * @see planet.dht.StorageEngine#containsKey(byte[])
+     */
+    public synchronized boolean containsKey(byte[] key) {
+        return offsets[find(key, hash(key))] != 0;
+    }
+
+    /**
+     * @see planet.dht.StorageEngine#remove(byte[])
+     */
+    public synchronized boolean remove(byte[] key) {
+        int slot = find(key, hash(key));
+        if (offsets[slot] == 0) return false;
+        int offset = offsets[slot] - 1;
+        garbage += HEADER + key.length + arena.getInt(offset + 4);
+        int mask = offsets.length - 1;
+        //moves back the next keys of the cluster to keep them reachable
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (offsets[next] == 0) break;
+            int home = hashes[next] & mask;
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                hashes[slot] = hashes[next];
+                offsets[slot] = offsets[next];
+                slot = next;
+            }
+        }
+        offsets[slot] = 0;
+        size--;
+        compactIfRequired();
+        return true;
+    }
+
+    /**
+     * @see planet.dht.StorageEngine#clear()
+     */
+    public synchronized void clear() {
+        init();
+    }
+
+    /**
+     * @see planet.dht.StorageEngine#size()
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @see planet.dht.StorageEngine#getReservedBytes()
+     */
+    public synchronized long getReservedBytes() {
+        return (long) arena.capacity() + 8L * offsets.length;
+    }
+
+    /**
+     * @see planet.dht.StorageEngine#isOffHeap()
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Returns the number of bytes in use at the arena, including the garbage
+     * not compacted yet.
+     * @return The used bytes of the arena.
+     */
+    public synchronized int getUsedBytes() {
+        return end;
+    }
+
+    /**
+     * Builds an empty arena and index.
+     */
+    private void init() {
+        arena = allocate(INITIAL_ARENA);
+        end = 0;
+        garbage = 0;
+        hashes = new int[INITIAL_INDEX];
+        offsets = new int[INITIAL_INDEX];
+        size = 0;
+    }
+
+    /**
+     * Builds a new arena.
+     * @param capacity Bytes of the arena.
+     * @return A direct or heap ByteBuffer.
+     */
+    private ByteBuffer allocate(int capacity) {
+        return offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Finds the slot of the <b>key</b>, or the empty slot where it must be
+     * inserted.
+     * @param key Key to look for.
+     * @param hash Hash of the key.
+     * @return The slot of the key, or an empty slot.
+     */
+    private int find(byte[] key, int hash) {
+        int mask = offsets.length - 1;
+        int slot = hash & mask;
+        while (offsets[slot] != 0) {
+            if (hashes[slot] == hash && sameKey(offsets[slot] - 1, key)) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Compares the key of the pair at <b>offset</b> with the <b>key</b>.
+     * @param offset Position of a pair at the arena.
+     * @param key Key to compare.
+     * @return true if both keys have the same bytes.
+     */
+    private boolean sameKey(int offset, byte[] key) {
+        if (arena.getInt(offset) != key.length) return false;
+        int start = offset + HEADER;
+        for (int i = 0; i < key.length; i++)
+            if (arena.get(start + i) != key[i]) return false;
+        return true;
+    }
+
+    /**
+     * Appends a pair at the end of the arena, growing it if required.
+     * @param key Key of the pair.
+     * @param value Value of the pair.
+     * @return The position of the pair.
+     */
+    private int append(byte[] key, byte[] value) {
+        long required = (long) end + HEADER + key.length + value.length;
+        if (required > arena.capacity()) {
+            if (required > Integer.MAX_VALUE)
+                throw new IllegalStateException("The storage cannot grow beyond 2GB.");
+            ByteBuffer grown = allocate(capacityFor(required));
+            arena.position(0);
+            arena.limit(end);
+            grown.put(arena);
+            arena = grown;
+        }
+        int offset = end;
+        arena.putInt(offset, key.length);
+        arena.putInt(offset + 4, value.length);
+        arena.position(offset + HEADER);
+        arena.put(key);
+        arena.put(value);
+        end = (int) required;
+        return offset;
+    }
+
+    /**
+     * Copies the live pairs to a new arena, if the garbage is greater than
+     * the half of the arena.
+     */
+    private void compactIfRequired() {
+        if (garbage <= INITIAL_ARENA || garbage * 2 <= end) return;
+        ByteBuffer compacted = allocate(capacityFor(end - garbage));
+        ByteBuffer source = arena.duplicate();
+        for (int slot = 0; slot < offsets.length; slot++) {
+            if (offsets[slot] == 0) continue;
+            int offset = offsets[slot] - 1;
+            int length = HEADER + arena.getInt(offset) + arena.getInt(offset + 4);
+            source.clear();
+            source.position(offset);
+            source.limit(offset + length);
+            offsets[slot] = compacted.position() + 1;
+            compacted.put(source);
+        }
+        end = compacted.position();
+        garbage = 0;
+        arena = compacted;
+    }
+
+    /**
+     * Moves all keys to a new index of <b>capacity</b> slots.
+     * @param capacity New number of slots, power of two.
+     */
+    private void resizeIndex(int capacity) {
+        int[] oldHashes = hashes;
+        int[] oldOffsets = offsets;
+        hashes = new int[capacity];
+        offsets = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldOffsets.length; i++) {
+            if (oldOffsets[i] == 0) continue;
+            int slot = oldHashes[i] & mask;
+            while (offsets[slot] != 0)
+                slot = (slot + 1) & mask;
+            hashes[slot] = oldHashes[i];
+            offsets[slot] = oldOffsets[i];
+        }
+    }
+
+    /**
+     * Computes the capacity of an arena for <b>bytes</b> bytes, doubling
+     * the initial size.
+     * @param bytes Required bytes.
+     * @return The capacity of the arena.
+     */
+    private static int capacityFor(long bytes) {
+        long capacity = INITIAL_ARENA;
+        while (capacity < bytes)
+            capacity *= 2;
+        return (int) Math.min(capacity, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Computes the hash of the <b>key</b>.
+     * @param key Any key.
+     * @return The hash of its bytes.
+     */
+    private static int hash(byte[] key) {
+        int h = 1;
+        for (int i = 0; i < key.length; i++)
+            h = 31 * h + key[i];
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Writes the number of pairs and then all pairs.
+     * @param out Stream to write to.
+     * @throws IOException if an error occurs writing.
+     */
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (int slot = 0; slot < offsets.length; slot++) {
+            if (offsets[slot] == 0) continue;
+            int offset = offsets[slot] - 1;
+            byte[] key = new byte[arena.getInt(offset)];
+            byte[] value = new byte[arena.getInt(offset + 4)];
+            arena.position(offset + HEADER);
+            arena.get(key);
+            arena.get(value);
+            out.writeInt(key.length);
+            out.write(key);
+            out.writeInt(value.length);
+            out.write(value);
+        }
+    }
+
+    /**
+     * Reads the pairs written by writeObject().
+     * @param in Stream to read from.
+     * @throws IOException if an error occurs reading.
+     * @throws ClassNotFoundException if the class of any object is not found.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        init();
+        int pairs = in.readInt();
+        for (int i = 0; i < pairs; i++) {
+            byte[] key = new byte[in.readInt()];
+            in.readFully(key);
+            byte[] value = new byte[in.readInt()];
+            in.readFully(value);
+            put(key, value);
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package planet.dht;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import planet.commonapi.Application;
+import planet.commonapi.EndPoint;
+import planet.commonapi.Id;
+import planet.commonapi.Message;
+import planet.commonapi.NodeHandle;
+import planet.commonapi.exception.InitializationException;
+import planet.generic.commonapi.factory.GenericFactory;
+import planet.simulate.Logger;
+import planet.util.timer.ControlTimer;
+
+/**
+ * Reusable DHT application: each instance keeps the key/value pairs its node
+ * is responsible for at a StorageEngine. The pairs are routed to the Id built
+ * with the SHA-1 hash of the key, so any node can insert and look up any key.
+ * <br><br>
+ * The operations with several keys are a shortcut that sends one message
+ * per key: each key is routed to its own Id, so the keys are not merged into
+ * fewer messages. The results of the lookups are informed to the
+ * DHTListener, if any, with their latency in simulation steps, and they are
+ * counted at this application.
+ * <br><br>
+ * It can be used as the FACTORIES_APPLICATION of any configuration. The
+ * pairs are stored by default in a ByteArrayStorage in the Java heap; use
+ * setStorage() to change it.
+ * @see planet.dht.StorageEngine
+ */
+public class DHTApplication implements Application {
+
+    /**
+     * Default identification of this application.
+     */
+    public static final String APPLICATION_ID = "DHTStorageApplication";
+
+    /**
+     * Identification of this instance.
+     */
+    private String appId = APPLICATION_ID;
+    /**
+     * EndPoint of the local node.
+     */
+    private EndPoint endPoint = null;
+    /**
+     * Id of the local node.
+     */
+    private Id id = null;
+    /**
+     * Pairs stored at this node.
+     */
+    private StorageEngine storage;
+    /**
+     * Receives the results of the lookups.
+     */
+    private transient DHTListener listener = null;
+    /**
+     * SHA-1 digest for the Ids of the keys.
+     */
+    private transient MessageDigest digest = null;
+    /**
+     * Number of keys sent to be inserted.
+     */
+    private long insertsSent = 0;
+    /**
+     * Number of keys sent to be looked up.
+     */
+    private long lookupsSent = 0;
+    /**
+     * Number of lookups finished.
+     */
+    private long lookupsCompleted = 0;
+    /**
+     * Number of finished lookups whose key was found.
+     */
+    private long lookupsFound = 0;
+    /**
+     * Sum of the latencies of the finished lookups, in steps.
+     */
+    private long totalLatency = 0;
+    /**
+     * Maximum latency of any finished lookup, in steps.
+     */
+    private int maxLatency = 0;
+
+    /**
+     * Builds the application with a ByteArrayStorage in the Java heap.
+     */
+    public DHTApplication() {
+        this(APPLICATION_ID, new ByteArrayStorage());
+    }
+
+    /**
+     * Builds the application with the given identification and storage.
+     * @param appId Identification of this application.
+     * @param storage Storage of the pairs.
+     */
+    public DHTApplication(String appId, StorageEngine storage) {
+        this.appId = appId;
+        this.storage = storage;
+    }
+
+    /**
+     * Inserts the <b>value</b> of the <b>key</b> at the DHT.
+     * @param key Key of the pair.
+     * @param value Value of the pair.
+     * @throws InitializationException if the Id of the key cannot be built.
+     */
+    public void insert(byte[] key, byte[] value) throws InitializationException {
+        insertsSent++;
+        endPoint.route(buildId(key), new DHTMessage(id, DHTMessage.INSERT,
+                key, value, ControlTimer.currentStep), null);
+    }
+
+    /**
+     * Inserts all pairs <b>keys[i]</b>, <b>values[i]</b> at the DHT, with
+     * a message for each pair.
+     * @param keys Keys of the pairs.
+     * @param values Values of the pairs.
+     * @throws InitializationException if the Id of any key cannot be built.
+     */
+    public void insert(byte[][] keys, byte[][] values) throws InitializationException {
+        for (int i = 0; i < keys.length; i++)
+            insert(keys[i], values[i]);
+    }
+
+    /**
+     * Looks up the value of the <b>key</b> at the DHT. The result is
+     * informed to the listener.
+     * @param key Key to look for.
+     * @throws InitializationException if the Id of the key cannot be built.
+     */
+    public void lookup(byte[] key) throws InitializationException {
+        lookupsSent++;
+        endPoint.route(buildId(key), new DHTMessage(id, DHTMessage.LOOKUP,
+                key, null, ControlTimer.currentStep), null);
+    }
+
+    /**
+     * Looks up the values of all <b>keys</b> at the DHT, with a message for
+     * each key. Each result is informed to the listener.
+     * @param keys Keys to look for.
+     * @throws InitializationException if the Id of any key cannot be built.
+     */
+    public void lookup(byte[][] keys) throws InitializationException {
+        for (int i = 0; i < keys.length; i++)
+            lookup(keys[i]);
+    }
+
+    /**
+     * Builds the Id of the <b>key</b>, with its SHA-1 hash.
+     * @param key Any key.
+     * @return The Id of the node responsible of the key.
+     * @throws InitializationException if the Id cannot be built.
+     */
+    public Id buildId(byte[] key) throws InitializationException {
+        if (digest == null) {
+            try {
+                digest = MessageDigest.getInstance("SHA");
+            } catch (NoSuchAlgorithmException e) {
+                throw new InitializationException("No SHA support to build the Ids of the keys.", e);
+            }
+        }
+        return GenericFactory.buildId(digest.digest(key));
+    }
+
+    /**
+     * Stores the pairs of an INSERT, replies a LOOKUP with the stored values
+     * and informs of the results of a REPLY.
+     * @see planet.commonapi.Application#deliver(planet.commonapi.Id, planet.commonapi.Message)
+     * @param id The destination Id of the message.
+     * @param message The DHTMessage.
+     */
+    public void deliver(Id id, Message message) {
+        DHTMessage msg = (DHTMessage) message;
+        switch (msg.getType()) {
+        case DHTMessage.INSERT:
+            storage.put(msg.getKey(), msg.getValue());
+            Logger.log("Stored a key at node ", this.id, Logger.EVENT_LOG);
+            break;
+        case DHTMessage.LOOKUP:
+            DHTMessage reply = new DHTMessage(msg.getSource(), DHTMessage.REPLY, msg.getKey(),
+                    storage.get(msg.getKey()), msg.getSentStep());
+            endPoint.route(msg.getSource(), reply, null);
+            break;
+        case DHTMessage.REPLY:
+            completed(msg);
+            break;
+        }
+    }
+
+    /**
+     * Counts and informs the result of the <b>reply</b>.
+     * @param reply REPLY message.
+     */
+    private void completed(DHTMessage reply) {
+        int latency = ControlTimer.currentStep - reply.getSentStep();
+        lookupsCompleted++;
+        if (reply.getValue() != null) lookupsFound++;
+        totalLatency += latency;
+        if (latency > maxLatency) maxLatency = latency;
+        if (listener != null) listener.lookupCompleted(reply.getKey(), reply.getValue(), latency);
+    }
+
+    /**
+     * Always forwards the messages.
+     * @see planet.commonapi.Application#forward(planet.commonapi.Message)
+     * @param message Message to be forwarded.
+     * @return true
+     */
+    public boolean forward(Message message) {
+        return true;
+    }
+
+    /**
+     * Nothing to do at the end of each step.
+     * @see planet.commonapi.Application#byStep()
+     */
+    public void byStep() {
+    }
+
+    /**
+     * Nothing to do when any node joins or leaves.
+     * @see planet.commonapi.Application#update(planet.commonapi.NodeHandle, boolean)
+     * @param node Node that has joined or left.
+     * @param joined true if the node has joined.
+     */
+    public void update(NodeHandle node, boolean joined) {
+    }
+
+    /**
+     * Returns the storage of the pairs of this node.
+     * @return The StorageEngine.
+     */
+    public StorageEngine getStorage() {
+        return storage;
+    }
+
+    /**
+     * Sets the storage of the pairs of this node. The pairs of the previous
+     * storage are discarded.
+     * @param storage The new StorageEngine.
+     */
+    public void setStorage(StorageEngine storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Sets the listener of the results of the lookups.
+     * @param listener The DHTListener, or null.
+     */
+    public void setListener(DHTListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the number of keys sent to be inserted.
+     * @return The number of inserted keys.
+     */
+    public long getInsertsSent() {
+        return insertsSent;
+    }
+
+    /**
+     * Returns the number of keys sent to be looked up.
+     * @return The number of lookups.
+     */
+    public long getLookupsSent() {
+        return lookupsSent;
+    }
+
+    /**
+     * Returns the number of finished lookups.
+     * @return The number of finished lookups.
+     */
+    public long getLookupsCompleted() {
+        return lookupsCompleted;
+    }
+
+    /**
+     * Returns the number of finished lookups whose key was found.
+     * @return The number of found keys.
+     */
+    public long getLookupsFound() {
+        return lookupsFound;
+    }
+
+    /**
+     * Returns the sum of the latencies of the finished lookups.
+     * @return The total latency in steps.
+     */
+    public long getTotalLatency() {
+        return totalLatency;
+    }
+
+    /**
+     * Returns the maximum latency of any finished lookup.
+     * @return The maximum latency in steps.
+     */
+    public int getMaxLatency() {
+        return maxLatency;
+    }
+
+    /**
+     * Returns a summary of the pairs stored at this node and the lookups
+     * sent from it.
+     * @return A String representation of the statistics.
+     */
+    public String gatherStatistics() {
+        StringBuffer sb = new StringBuffer(256);
+        sb.append("Node ").append(id).append(": keys[").append(storage.size())
+          .append("] reservedBytes[").append(storage.getReservedBytes())
+          .append("] offHeap[").append(storage.isOffHeap())
+          .append("] insertsSent[").append(insertsSent)
+          .append("] lookupsSent[").append(lookupsSent)
+          .append("] lookupsCompleted[").append(lookupsCompleted)
+          .append("] lookupsFound[").append(lookupsFound)
+          .append("] maxLatency[").append(maxLatency).append("]");
+        return sb.toString();
+    }
+
+    /**
+     * @see planet.commonapi.Application#getId()
+     */
+    public String getId() {
+        return appId;
+    }
+
+    /**
+     * @see planet.commonapi.Application#setId(java.lang.String)
+     */
+    public void setId(String appId) {
+        this.appId = appId;
+    }
+
+    /**
+     * Sets the EndPoint of the local node.
+     * @see planet.commonapi.Application#setEndPoint(planet.commonapi.EndPoint)
+     * @param endPoint The EndPoint of the local node.
+     */
+    public void setEndPoint(EndPoint endPoint) {
+        this.endPoint = endPoint;
+        this.id = endPoint.getId();
+    }
+
+    /**
+     * Sets the name for this applicaton.
+     * @see planet.commonapi.Application#setValues(java.lang.String)
+     * @param applicationName Name for this application.
+     * @return The same instance, once it has been updated.
+     */
+    public Application setValues(String applicationName) {
+        this.appId = applicationName;
+        return this;
+    }
+}
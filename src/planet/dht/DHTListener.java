@@ -0,0 +1,16 @@
+package planet.dht;
+
+/**
+ * Receives the results of the lookups sent by a DHTApplication.
+ * @see planet.dht.DHTApplication#setListener(planet.dht.DHTListener)
+ */
+public interface DHTListener {
+
+    /**
+     * Informs that the lookup of the <b>key</b> has finished.
+     * @param key Key of the lookup.
+     * @param value Found value, or null if the key is not stored.
+     * @param latency Number of steps since the lookup was sent.
+     */
+    public void lookupCompleted(byte[] key, byte[] value, int latency);
+}
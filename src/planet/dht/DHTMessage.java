@@ -0,0 +1,112 @@
+package planet.dht;
+
+import planet.commonapi.Id;
+
+/**
+ * Message exchanged by the DHTApplications. It carries one key, with its
+ * value for the INSERT and REPLY types. A LOOKUP and its REPLY
+ * keep the step when the lookup was sent, to measure its latency.
+ * @see planet.dht.DHTApplication
+ */
+public class DHTMessage implements planet.commonapi.Message {
+
+    /**
+     * Insert of the pair at the node responsible of the key.
+     */
+    public static final int INSERT = 0;
+    /**
+     * Lookup of the value of the key.
+     */
+    public static final int LOOKUP = 1;
+    /**
+     * Reply of a LOOKUP, with the found value.
+     */
+    public static final int REPLY = 2;
+
+    /**
+     * Id of the node that has sent the INSERT or the LOOKUP.
+     */
+    private Id source;
+    /**
+     * Type of the message.
+     */
+    private int type;
+    /**
+     * Key of the message.
+     */
+    private byte[] key;
+    /**
+     * Value of the key, or null for a LOOKUP. A REPLY has a null value if
+     * the key was not found.
+     */
+    private byte[] value;
+    /**
+     * Step when the LOOKUP was sent.
+     */
+    private int sentStep;
+
+    /**
+     * Builds a new message.
+     * @param source Id of the node that sends the INSERT or the LOOKUP.
+     * @param type INSERT, LOOKUP or REPLY.
+     * @param key Key of the message.
+     * @param value Value of the key, or null for a LOOKUP.
+     * @param sentStep Step when the LOOKUP was sent.
+     */
+    public DHTMessage(Id source, int type, byte[] key, byte[] value, int sentStep) {
+        this.source = source;
+        this.type = type;
+        this.key = key;
+        this.value = value;
+        this.sentStep = sentStep;
+    }
+
+    /**
+     * Returns the Id of the node that sent the INSERT or the LOOKUP.
+     * @return The source Id.
+     */
+    public Id getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the type of the message.
+     * @return INSERT, LOOKUP or REPLY.
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Returns the key of the message.
+     * @return The key.
+     */
+    public byte[] getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the value of the key.
+     * @return The value, or null for a LOOKUP or a key not found.
+     */
+    public byte[] getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the step when the LOOKUP was sent.
+     * @return The step of the LOOKUP.
+     */
+    public int getSentStep() {
+        return sentStep;
+    }
+
+    /**
+     * Shows the type and the key length of the message.
+     * @see java.lang.Object#toString()
+     * @return A String representation of the message.
+     */
+    public String toString() {
+        return "DHTMessage: Source[" + source + "] Type[" + type + "] KeyLength[" + key.length + "] SentStep[" + sentStep + "]";
+    }
+}
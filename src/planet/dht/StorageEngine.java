@@ -0,0 +1,80 @@
+package planet.dht;
+
+/**
+ * Per node storage of the key/value pairs of a DHTApplication. Both keys and
+ * values are byte arrays, compared by content. The arrays are copied when
+ * they are stored and when they are returned, so the caller can reuse them.
+ * @see planet.dht.ByteArrayStorage
+ * @see planet.dht.DHTApplication
+ */
+public interface StorageEngine extends java.io.Serializable {
+
+    /**
+     * Stores the <b>value</b> of the <b>key</b>, replacing its previous
+     * value if any.
+     * @param key Key of the pair.
+     * @param value Value of the pair.
+     * @return true if the key was not stored yet.
+     */
+    public boolean put(byte[] key, byte[] value);
+
+    /**
+     * Stores all pairs <b>keys[i]</b>, <b>values[i]</b>, in order.
+     * @param keys Keys of the pairs.
+     * @param values Values of the pairs, with the same length as <b>keys</b>.
+     * @return The number of keys that were not stored yet.
+     */
+    public int putAll(byte[][] keys, byte[][] values);
+
+    /**
+     * Returns the value of the <b>key</b>.
+     * @param key Key to look for.
+     * @return A copy of its value, or null if the key is not stored.
+     */
+    public byte[] get(byte[] key);
+
+    /**
+     * Returns the values of all <b>keys</b>.
+     * @param keys Keys to look for.
+     * @return A new array with the value of each key, or null for the keys
+     * not stored.
+     */
+    public byte[][] getAll(byte[][] keys);
+
+    /**
+     * Shows if the <b>key</b> is stored.
+     * @param key Key to look for.
+     * @return true if the key is stored.
+     */
+    public boolean containsKey(byte[] key);
+
+    /**
+     * Removes the <b>key</b> and its value.
+     * @param key Key to remove.
+     * @return true if the key was stored.
+     */
+    public boolean remove(byte[] key);
+
+    /**
+     * Removes all pairs.
+     */
+    public void clear();
+
+    /**
+     * Returns the number of stored keys.
+     * @return The number of keys.
+     */
+    public int size();
+
+    /**
+     * Returns the number of bytes reserved for the pairs and their index.
+     * @return The reserved bytes.
+     */
+    public long getReservedBytes();
+
+    /**
+     * Shows if the pairs are stored out of the Java heap.
+     * @return true if the pairs are stored off-heap.
+     */
+    public boolean isOffHeap();
+}
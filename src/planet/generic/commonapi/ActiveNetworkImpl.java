@@ -0,0 +1,369 @@
+package planet.generic.commonapi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+
+import planet.commonapi.Node;
+import planet.commonapi.NodeHandle;
+import planet.commonapi.exception.InitializationException;
+import planet.simulate.Logger;
+import planet.util.CalendarQueue;
+import planet.util.Mailbox;
+import planet.util.timer.ControlTimer;
+
+/**
+ * Network implementation that only processes, at each step, the nodes
+ * that have work to do, instead of visiting all nodes at every step.
+ * <br><br>
+ * A node is scheduled for a step when:
+ * <ul>
+ * <li>it receives or sends a message, or it sets a new timer task,</li>
+ * <li>the evaluation of its timer tasks is due,</li>
+ * <li>its last process informed that it requires to continue the
+ * stabilization, or it still has pending messages,</li>
+ * <li>it joins, leaves or fails.</li>
+ * </ul>
+ * The nodes of each step are processed following the ring order, as in
+ * NetworkImpl. The timer tasks of the nodes are kept at the shared
+ * TimingWheel, so they are run at the same steps. Only the nodes that
+ * extend NodeImpl can be skipped; the rest of nodes are processed at each
+ * step.
+ * <br><br>
+ * The <b>run(int)</b> method jumps directly to the next step that has
+ * any scheduled node. In a stabilized network, each node is only processed
+ * when its timer tasks are due and when its messages arrive.
+ * <br><br>
+ * It is activated with the FACTORIES_NETWORK property:
+ * <pre>
+ * FACTORIES_NETWORK = planet.generic.commonapi.ActiveNetworkImpl
+ * </pre>
+ * The applications must not do any work at their <b>byStep()</b> method,
+ * because it is only invoked when the node is processed. Overlays with
+ * behaviours share a random generator between all the nodes, so their
+ * results can be different than with NetworkImpl.
+ *
+ * @see planet.generic.commonapi.NetworkImpl
+ * @see planet.generic.commonapi.NodeImpl
+ */
+public class ActiveNetworkImpl extends NetworkImpl {
+	/**
+	 * Compares nodes by their NodeHandle, following the ring order.
+	 */
+	private static final Comparator RING_ORDER = new Comparator() {
+		public int compare(Object a, Object b) {
+			return ((Comparable)((Node)a).getLocalHandle()).compareTo(((Node)b).getLocalHandle());
+		}
+	};
+
+	/**
+	 * Scheduled nodes, with their step as order key. A node can appear at
+	 * old steps, if it has been scheduled before.
+	 */
+	private transient CalendarQueue calendar;
+	/**
+	 * Lowest step that can have scheduled nodes.
+	 */
+	private transient int calendarStep;
+	/**
+	 * Nodes that are processed at each step, because they do not extend
+	 * NodeImpl.
+	 */
+	private transient ArrayList alwaysActive;
+	/**
+	 * Nodes taken from the calendar at the current step.
+	 */
+	private transient ArrayList scheduled;
+	/**
+	 * Nodes processed at the current step, following the ring order.
+	 */
+	private transient ArrayList stepNodes;
+	/**
+	 * Result of the process of each node at the current step.
+	 */
+	private transient boolean[] stepContinue;
+	/**
+	 * Node in process, or null.
+	 */
+	private transient Node current;
+	/**
+	 * Shows if the current step is being simulated.
+	 */
+	private transient boolean inStep;
+	/**
+	 * Number of processed nodes since the network was built.
+	 */
+	private transient long processedNodes;
+
+	/**
+	 * Initialize the network with no nodes and wihtout simulation steps.
+	 */
+	public ActiveNetworkImpl() {
+		super();
+		init();
+	}
+
+	/**
+	 * Initializes the scheduling structures.
+	 */
+	private void init() {
+		calendar = new CalendarQueue();
+		calendarStep = 0;
+		alwaysActive = new ArrayList();
+		scheduled = new ArrayList();
+		stepNodes = new ArrayList();
+		stepContinue = new boolean[16];
+		current = null;
+		inStep = false;
+		processedNodes = 0;
+	}
+
+	/**
+	 * Schedules the <b>node</b>, that has new work to do. It is invoked
+	 * by the node itself.
+	 * @param node Node with new work to do.
+	 */
+	void wakeUp(NodeImpl node) {
+		//the node in process is scheduled at the end of the step
+		if (node == current) return;
+		schedule(node, inStep ? totalSteps + 1 : totalSteps);
+	}
+
+	/**
+	 * Schedules the <b>node</b> to be processed at the <b>step</b>, if it
+	 * is not scheduled before.
+	 * @param node Node to schedule.
+	 * @param step Step to process the node.
+	 */
+	private void schedule(NodeImpl node, long step) {
+		if (step > Integer.MAX_VALUE) return;
+		if (node.wakeStep >= 0 && node.wakeStep <= step) return;
+		node.wakeStep = (int)step;
+		calendar.insert((int)step,node);
+		if (step < calendarStep) calendarStep = (int)step;
+	}
+
+	/**
+	 * Builds the ring ordered list of the nodes to process at the current
+	 * step.
+	 */
+	private void collect() {
+		stepNodes.clear();
+		NodeImpl node = null;
+		int step = calendar.nextKey(calendarStep);
+		while (step <= totalSteps) {
+			calendar.extract(step,scheduled);
+			step = calendar.nextKey(step + 1);
+		}
+		calendarStep = totalSteps + 1;
+		for (int i = 0; i < scheduled.size(); i++) {
+			node = (NodeImpl)scheduled.get(i);
+			//discards the old and the repeated entries
+			if (node.wakeStep >= 0 && node.wakeStep <= totalSteps) {
+				node.wakeStep = -1;
+				stepNodes.add(node);
+			}
+		}
+		scheduled.clear();
+		stepNodes.addAll(alwaysActive);
+		if (stepNodes.size() > 1)
+			Collections.sort(stepNodes,RING_ORDER);
+		if (stepContinue.length < stepNodes.size())
+			stepContinue = new boolean[stepNodes.size() * 2];
+	}
+
+	/**
+	 * Process the scheduled nodes one step at this network.
+	 * @return true if continue the simulation. false in other case.
+	 */
+	protected boolean process() {
+		collect();
+		inStep = true;
+		boolean toContinue = false;
+		Node aNode = null;
+		for (int i = 0; i < stepNodes.size(); i++) {
+			aNode = (Node)stepNodes.get(i);
+			current = aNode;
+			stepContinue[i] = aNode.process(totalSteps);
+			current = null;
+			toContinue = toContinue | stepContinue[i];
+			if (!aNode.isAlive()) { //the node has failed or leaved??
+				toRemove.add(aNode.getLocalHandle());
+			}
+		}
+		processedNodes += stepNodes.size();
+		return toContinue;
+	}
+
+	/**
+	 * Sends the pending messages of the nodes processed at this step, and
+	 * schedules these nodes again for the next step with work to do.
+	 */
+	protected boolean sendMessages() {
+		Node aNode = null;
+		Mailbox messages = null;
+		boolean toContinue = false;
+		for (int i = 0; i < stepNodes.size(); i++) {
+			aNode = (Node)stepNodes.get(i);
+			messages = aNode.outMessages();
+			toContinue = toContinue | (messages==null || messages.size() > 0);
+			send(messages);
+		}
+		NodeImpl node = null;
+		long steps = 0;
+		for (int i = 0; i < stepNodes.size(); i++) {
+			if (!(stepNodes.get(i) instanceof NodeImpl)) continue;
+			node = (NodeImpl)stepNodes.get(i);
+			if (stepContinue[i] || node.hasPendingMessages())
+				schedule(node,totalSteps + 1);
+			else {
+				steps = node.getStepsToNextTask();
+				if (steps != Long.MAX_VALUE)
+					schedule(node,totalSteps + steps);
+			}
+		}
+		stepNodes.clear();
+		inStep = false;
+		return toContinue;
+	}
+
+	/**
+	 * Simulate a total number <b>steps</b> steps, jumping directly over the
+	 * steps without scheduled nodes.
+	 * @see planet.commonapi.Network#run(int)
+	 * @param steps Number of steps to simulate.
+	 * @return Number of actual stabilization steps after run <b>steps</b> steps.
+	 */
+	public int run(int steps) {
+		int last = totalSteps + steps;
+		int next = 0;
+		while (totalSteps < last) {
+			next = getNextStep();
+			if (next > totalSteps && toRemove.isEmpty()) {
+				next = Math.min(next,last);
+				ControlTimer.currentStep(ControlTimer.currentStep + next - totalSteps);
+				totalSteps = next;
+				Logger.setStep(totalSteps);
+			} else
+				simulate();
+		}
+		return totalSteps;
+	}
+
+	/**
+	 * Returns the next step with any scheduled node.
+	 * @return The next step with any scheduled node, or Integer.MAX_VALUE
+	 * if there are no scheduled nodes.
+	 */
+	public int getNextStep() {
+		if (!alwaysActive.isEmpty()) return totalSteps;
+		return calendar.nextKey(calendarStep);
+	}
+
+	/**
+	 * Returns the number of processed nodes since the network was built,
+	 * adding up all steps.
+	 * @return The number of processed nodes.
+	 */
+	public long getProcessedNodes() {
+		return processedNodes;
+	}
+
+	/**
+	 * Adds the <b>node</b> to the network and schedules it.
+	 * @param node Node to add.
+	 */
+	protected void putNode(Node node) {
+		super.putNode(node);
+		register(node);
+	}
+
+	/**
+	 * Removes the node with the NodeHandle <b>handle</b> from the network
+	 * and from the scheduled nodes.
+	 * @param handle NodeHandle of the node to remove.
+	 */
+	protected void removeNode(NodeHandle handle) {
+		Node node = getNode(handle);
+		super.removeNode(handle);
+		if (node instanceof NodeImpl) {
+			((NodeImpl)node).activeNetwork = null;
+			((NodeImpl)node).wakeStep = -1;
+		} else if (node != null)
+			alwaysActive.remove(node);
+	}
+
+	/**
+	 * Schedules the new <b>node</b> at the current step.
+	 * @param node Node of this network.
+	 */
+	private void register(Node node) {
+		if (node instanceof NodeImpl) {
+			NodeImpl nodeImpl = (NodeImpl)node;
+			nodeImpl.activeNetwork = this;
+			nodeImpl.wakeStep = -1;
+			wakeUp(nodeImpl);
+		} else if (!alwaysActive.contains(node))
+			alwaysActive.add(node);
+	}
+
+	/**
+	 * Leaves these <b>nodes</b> from the network and schedules them.
+	 * @see planet.commonapi.Network#leaveNodes(planet.commonapi.NodeHandle[])
+	 * @param nodes Ids for nodes to leave.
+	 * @throws InitializationException if exists some Id that not exists
+	 * in the network.
+	 */
+	public void leaveNodes(NodeHandle[] nodes) throws InitializationException {
+		try {
+			super.leaveNodes(nodes);
+		} finally {
+			wakeUp(nodes);
+		}
+	}
+
+	/**
+	 * Fails these <b>nodes</b> and schedules them.
+	 * @see planet.commonapi.Network#failNodes(planet.commonapi.NodeHandle[])
+	 * @param nodes Ids for nodes to fail.
+	 */
+	public void failNodes(NodeHandle[] nodes) throws InitializationException {
+		try {
+			super.failNodes(nodes);
+		} finally {
+			wakeUp(nodes);
+		}
+	}
+
+	/**
+	 * Schedules the existing nodes with these NodeHandles.
+	 * @param handles NodeHandles of the nodes.
+	 */
+	private void wakeUp(NodeHandle[] handles) {
+		Node node = null;
+		for (int i = 0; i < handles.length; i++) {
+			node = getNode(handles[i]);
+			if (node instanceof NodeImpl)
+				wakeUp((NodeImpl)node);
+		}
+	}
+
+	/**
+	 * Reads the serialized state of the network and schedules all its
+	 * nodes at the current step.
+	 * @param stream ObjectInputStream to read the state.
+	 * @throws IOException if occurs any problem during deserialization.
+	 * @throws ClassNotFoundException if the class of any serialized object
+	 * is not found.
+	 */
+	private void readObject(java.io.ObjectInputStream stream)
+	throws IOException, ClassNotFoundException {
+		stream.defaultReadObject();
+		init();
+		Iterator it = nodes.values().iterator();
+		while (it.hasNext())
+			register((Node)it.next());
+	}
+}
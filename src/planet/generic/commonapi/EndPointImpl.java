@@ -13,6 +13,8 @@ import planet.commonapi.exception.InitializationException;
 import planet.generic.commonapi.factory.GenericFactory;
 import planet.generic.commonapi.message.DataMessage;
 import planet.simulate.Logger;
+import planet.util.timer.DelayedDeliveryService;
+import planet.util.timer.TimerTaskImpl;
 
 /**
  * Interface which represents a node in a peer-to-peer system, regardless of
@@ -101,19 +103,43 @@ public class EndPointImpl implements EndPoint {
 	/**
 	 * Schedules a message to be delivered to this application after the provided number of
 	 * milliseconds.
+	 * The message is delivered by the shared DelayedDeliveryService, so the delay is
+	 * a number of steps in the SIMULATION environment.
 	 *
 	 * @param message The message to be delivered
 	 * @param delay The number of milliseconds to wait before delivering the message
 	 */
 	public void scheduleMessage(RouteMessage message, long delay) {
+		scheduleDelivery(message, delay);
+	}
+
+	/**
+	 * Schedules a message to be delivered to this application after the provided delay,
+	 * and returns the scheduled delivery to permit cancel it. A cancelled message is
+	 * released without being delivered.
+	 * @see planet.util.timer.DelayedDeliveryService
+	 * @param message The message to be delivered
+	 * @param delay The number of steps (SIMULATION) or milliseconds (EXPERIMENTAL) to wait
+	 * before delivering the message
+	 * @return The scheduled delivery, or null if the message has been delivered immediately
+	 * because the delay is not positive.
+	 */
+	public DelayedDeliveryService.Delivery scheduleDelivery(RouteMessage message, long delay) {
 		if (delay <= 0) {
-			DataMessage msg = (DataMessage)message.getMessage();
-			app.deliver(msg.getMessageKey(),msg.getMessage());
-            GenericFactory.freeMessage(message);
-		} else {
-			MessageScheduler ms = new MessageScheduler(message,delay,node);
-			ms.start();
+			deliverMessage(message);
+			return null;
 		}
+		return DelayedDeliveryService.schedule(new MessageScheduler(message), delay);
+	}
+
+	/**
+	 * Delivers the content of the <b>message</b> to the application and releases it.
+	 * @param message RouteMessage to deliver.
+	 */
+	private void deliverMessage(RouteMessage message) {
+		DataMessage msg = (DataMessage)message.getMessage();
+		app.deliver(msg.getMessageKey(),msg.getMessage());
+        GenericFactory.freeMessage(message);
 	}
 
 	/**
@@ -228,44 +254,45 @@ public class EndPointImpl implements EndPoint {
 	
 	/******************************   MESSAGE SCHEDULER *****************************/
 	/**
-	 * Implements an scheduler for sent messages to this application with a specified delay.
+	 * Implements the delivery of a message sent to this application with a specified
+	 * delay. It is scheduled on the shared DelayedDeliveryService.
 	 * @author Jordi Pujol
 	 */
-	public class MessageScheduler extends java.lang.Thread {
+	public class MessageScheduler extends TimerTaskImpl {
 		//Message to send
 		private RouteMessage message;
-		//Delay to apply at send
-		private long delay;
-		//Node
-		private Node node;
 		
 		/**
-		 * Fixes the message an delay to send the message.
-		 * @param message
-		 * @param delay
+		 * Fixes the message to send.
+		 * @param message Message to deliver.
 		 */
-		public MessageScheduler(RouteMessage message, long delay, Node node) {
+		public MessageScheduler(RouteMessage message) {
+			super(false);
 			this.message = message;
-			this.delay   = delay;
-			this.node    = node;
 		}
 		
 		/**
-		 * Sends the message after delays the specified time.
-		 * @see java.lang.Runnable#run()
+		 * Delivers the message to the application.
+		 * @see planet.util.timer.TimerTask#run()
 		 */
 		public void run() {
-			//delay
-			if (delay > 0) {
-				try {
-					Thread.sleep(delay);
-				} catch (InterruptedException e) {
-				}
+			super.run();
+			deliverMessage(message);
+			message = null;
+		}
+		
+		/**
+		 * Releases the message without delivering it.
+		 * @see planet.util.timer.TimerTask#cancel()
+		 * @return true if the message has not been delivered.
+		 */
+		public boolean cancel() {
+			boolean prevented = super.cancel();
+			if (message != null) {
+				GenericFactory.freeMessage(message);
+				message = null;
 			}
-			//deliver message to application
-			DataMessage msg = (DataMessage) message.getMessage();
-			app.deliver(msg.getMessageKey(), msg.getMessage());
-            GenericFactory.freeMessage(message);
+			return prevented;
 		}
 	}
 	
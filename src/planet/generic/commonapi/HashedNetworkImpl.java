@@ -0,0 +1,92 @@
+package planet.generic.commonapi;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import planet.commonapi.Node;
+import planet.commonapi.NodeHandle;
+
+/**
+ * Network implementation that indexes its nodes by NodeHandle with a
+ * hash table, so the lookup of the next hop of every message is done in
+ * constant time instead of with the two O(log n) searches over the ordered
+ * map of NetworkImpl.
+ * <br><br>
+ * The ordered map is kept as the ring ordered view of the network, and it is
+ * only used where the ring order matters: the iteration of the nodes at each
+ * step (which keeps the same results than NetworkImpl), the printing, the
+ * GML layout and the random selection of nodes. It is only updated when nodes
+ * join or are removed.
+ * <br><br>
+ * It is activated with the FACTORIES_NETWORK property:
+ * <pre>
+ * FACTORIES_NETWORK = planet.generic.commonapi.HashedNetworkImpl
+ * </pre>
+ *
+ * @see planet.generic.commonapi.NetworkImpl
+ */
+public class HashedNetworkImpl extends NetworkImpl {
+	/**
+	 * To contains (NodeHandle,Node) pairs for all nodes in the network,
+	 * indexed by the hash code of the NodeHandle.
+	 */
+	private transient HashMap index;
+
+	/**
+	 * Initialize the network with no nodes and wihtout simulation steps.
+	 */
+	public HashedNetworkImpl() {
+		super();
+		index = new HashMap();
+	}
+
+	/**
+	 * Returns the node with the NodeHandle <b>handle</b>, looking for it
+	 * in the hash table.
+	 * @param handle NodeHandle of the node to look for.
+	 * @return The node with this NodeHandle or null if it does not exist.
+	 */
+	protected Node getNode(NodeHandle handle) {
+		return (Node)index.get(handle);
+	}
+
+	/**
+	 * Adds the <b>node</b> to the ordered map and to the hash table.
+	 * @param node Node to add.
+	 */
+	protected void putNode(Node node) {
+		super.putNode(node);
+		index.put(node.getLocalHandle(),node);
+	}
+
+	/**
+	 * Removes the node with the NodeHandle <b>handle</b> from the ordered
+	 * map and from the hash table.
+	 * @param handle NodeHandle of the node to remove.
+	 */
+	protected void removeNode(NodeHandle handle) {
+		super.removeNode(handle);
+		index.remove(handle);
+	}
+
+	/**
+	 * Reads the serialized state of the network and rebuilds the hash table
+	 * from the ordered map.
+	 * @param stream ObjectInputStream to read the state.
+	 * @throws IOException if occurs any problem during deserialization.
+	 * @throws ClassNotFoundException if the class of any serialized object
+	 * is not found.
+	 */
+	private void readObject(java.io.ObjectInputStream stream)
+	throws IOException, ClassNotFoundException {
+		stream.defaultReadObject();
+		index = new HashMap(nodes.size() * 2);
+		Iterator it = nodes.values().iterator();
+		Node aNode = null;
+		while (it.hasNext()) {
+			aNode = (Node)it.next();
+			index.put(aNode.getLocalHandle(),aNode);
+		}
+	}
+}
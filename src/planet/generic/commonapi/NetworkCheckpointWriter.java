@@ -0,0 +1,283 @@
+package planet.generic.commonapi;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Vector;
+
+import planet.commonapi.Network;
+import planet.commonapi.Node;
+import planet.io.NoReplacingOutputStream;
+
+/**
+ * This class saves periodic checkpoints of a network. The first checkpoint
+ * is a complete snapshot, and the next ones are delta files with only the
+ * nodes whose state has changed since the previous checkpoint, with the
+ * format described in the NetworkSnapshotReader.
+ * <br><br>
+ * The snapshot file is named as the NoReplacingOutputStream does, and the
+ * delta files add the suffix "_deltaX" to the snapshot filename, where
+ * "X" is the sequence number of the delta file. So, the snapshot
+ * "network.psim" has the delta files "network_delta1.psim",
+ * "network_delta2.psim", ... The NetworkSnapshotReader.restore() method
+ * loads the snapshot and replays its delta files.
+ * <br><br>
+ * To find the changed nodes, the state of each node is encoded into a
+ * memory buffer and compared by a hash with its previous encoding. The
+ * nodes with pending messages with content are always saved.
+ * @see planet.generic.commonapi.NetworkSnapshotReader
+ * @see planet.io.NoReplacingOutputStream
+ */
+public class NetworkCheckpointWriter extends NetworkSnapshotWriter {
+
+    /**
+     * A memory buffer with access to its bytes. It is not synchronized,
+     * as the ByteArrayOutputStream is, because each node is encoded into it.
+     */
+    private static class Block extends OutputStream {
+        private byte[] buf = new byte[1024];
+        private int count = 0;
+
+        public void write(int b) {
+            if (count == buf.length) grow(count + 1);
+            buf[count++] = (byte) b;
+        }
+        public void write(byte[] b, int off, int len) {
+            if (count + len > buf.length) grow(count + len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+        public void reset() {
+            count = 0;
+        }
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(buf, 0, count);
+        }
+        private void grow(int size) {
+            byte[] grown = new byte[Math.max(size, buf.length * 2)];
+            System.arraycopy(buf, 0, grown, 0, count);
+            buf = grown;
+        }
+        /**
+         * Returns the 64 bits FNV-1a hash of the written bytes.
+         * @return The hash of the buffer.
+         */
+        public long hash() {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < count; i++) {
+                hash ^= buf[i] & 0xff;
+                hash *= 0x100000001b3L;
+            }
+            return hash;
+        }
+    }
+
+    /**
+     * Base filename of the snapshot.
+     */
+    private String fileName;
+    /**
+     * Shows if an existing snapshot file must be replaced.
+     */
+    private boolean replace;
+    /**
+     * Filename of the written snapshot, or null before the first checkpoint.
+     */
+    private String snapshotName = null;
+    /**
+     * Sequence number of the last delta file.
+     */
+    private int sequence = 0;
+    /**
+     * Number of simulated steps at the last checkpoint.
+     */
+    private int lastSteps = 0;
+    /**
+     * Hash of the last saved state of each node, by its index.
+     */
+    private long[] hashes = new long[0];
+    /**
+     * Buffer where each node is encoded.
+     */
+    private Block block = new Block();
+    /**
+     * Stream of the <b>block</b> buffer.
+     */
+    private DataOutputStream blockOut = new DataOutputStream(block);
+    /**
+     * Number of indexes assigned until the last checkpoint. The nodes with
+     * greater indexes have not been saved yet.
+     */
+    private int known = 0;
+    /**
+     * Number of nodes saved in the last checkpoint.
+     */
+    private int saved = 0;
+
+    /**
+     * Builds a writer of checkpoints with the snapshot filename
+     * <b>fileName</b>.
+     * @param fileName Base filename of the snapshot.
+     * @param replace Shows if an existing snapshot file must be replaced.
+     * If not, a new filename is used as the NoReplacingOutputStream does.
+     */
+    public NetworkCheckpointWriter(String fileName, boolean replace) {
+        this.fileName = fileName;
+        this.replace = replace;
+    }
+
+    /**
+     * Gets the filename of a delta file.
+     * @param snapshotName Filename of the snapshot.
+     * @param sequence Sequence number of the delta file, starting from 1.
+     * @return The filename of the delta file.
+     */
+    public static String getDeltaName(String snapshotName, int sequence) {
+        return NoReplacingOutputStream.getVersionName(snapshotName, "delta" + sequence);
+    }
+
+    /**
+     * Saves a checkpoint of the <b>network</b>: a snapshot the first time,
+     * and a delta file for the next ones.
+     * @param network The network to save.
+     * @return The filename of the written file.
+     * @throws IOException if the network cannot be saved as a snapshot or
+     * occurs any problem writing the file.
+     */
+    public String checkpoint(Network network) throws IOException {
+        if (!isSupported(network))
+            throw new NotSerializableException("The network cannot be saved as a snapshot.");
+        NetworkImpl net = (NetworkImpl)network;
+        String name;
+        if (snapshotName == null) {
+            NoReplacingOutputStream stream = new NoReplacingOutputStream(fileName, replace);
+            snapshotName = stream.getFilename();
+            //removes the delta files of any previous snapshot with the same name
+            File old = null;
+            for (int i = 1; (old = new File(getDeltaName(snapshotName, i))).exists(); i++)
+                old.delete();
+            out = new DataOutputStream(new BufferedOutputStream(stream, 65536));
+            write(net);
+            saved = indexes.size();
+            name = snapshotName;
+        } else {
+            name = getDeltaName(snapshotName, ++sequence);
+            out = new DataOutputStream(new BufferedOutputStream(new NoReplacingOutputStream(name, true), 65536));
+            writeDelta(net);
+        }
+        lastSteps = net.totalSteps;
+        known = handles.size();
+        return name;
+    }
+
+    /**
+     * Returns the number of nodes saved in the last checkpoint.
+     * @return The number of saved nodes.
+     */
+    public int getSavedNodes() {
+        return saved;
+    }
+
+    /**
+     * Writes a delta file with the changes since the last checkpoint, and
+     * closes the stream.
+     * @param net The network to save.
+     * @throws IOException if occurs any problem writing the file.
+     */
+    private void writeDelta(NetworkImpl net) throws IOException {
+        Node[] nodes = getNodes(net);
+        out.write(NetworkSnapshotReader.DELTA_MAGIC);
+        out.writeByte(NetworkSnapshotReader.VERSION);
+        out.writeInt(sequence);
+        out.writeInt(lastSteps);
+        out.writeInt(net.totalSteps);
+        steps = net.totalSteps;
+        out.writeUTF((nodes.length > 0) ? nodes[0].getClass().getName() : "");
+
+        //removed nodes: they are not at the network or they have been replaced
+        HashMap current = new HashMap(nodes.length * 2);
+        for (int i = 0; i < nodes.length; i++)
+            current.put(nodes[i].getId(), nodes[i]);
+        blockOut.flush();
+        block.reset();
+        int count = 0;
+        Iterator it = indexes.entrySet().iterator();
+        Map.Entry entry = null;
+        while (it.hasNext()) {
+            entry = (Map.Entry)it.next();
+            int index = ((Integer)entry.getValue()).intValue();
+            Node node = (Node)current.get(entry.getKey());
+            if (node == null || node.getLocalHandle() != handles.get(index)) {
+                blockOut.writeInt(index);
+                locals.remove(handles.get(index));
+                handles.set(index, null);
+                it.remove();
+                count++;
+            }
+        }
+        out.writeInt(count);
+        block.writeTo(out);
+
+        //added nodes
+        count = 0;
+        for (int i = 0; i < nodes.length; i++)
+            if (!indexes.containsKey(nodes[i].getId())) count++;
+        out.writeInt(count);
+        for (int i = 0; i < nodes.length; i++) {
+            if (!indexes.containsKey(nodes[i].getId())) {
+                addIndex(nodes[i]);
+                writeId(nodes[i].getId());
+            }
+        }
+
+        //changed nodes
+        contents = new Vector();
+        saved = 0;
+        for (int i = 0; i < nodes.length; i++)
+            writeNode(nodes[i]);
+        out.writeInt(NetworkSnapshotReader.NULL_HANDLE);
+        writeHandles(net.toRemove);
+        writeObjects(net);
+    }
+
+    /**
+     * Encodes the <b>node</b> and writes it when its state has changed. At
+     * delta files, the node is preceded by its index.
+     * @param node A node of the network.
+     * @throws IOException if occurs any problem writing the file.
+     */
+    void writeNode(Node node) throws IOException {
+        int index = ((Integer)indexes.get(node.getId())).intValue();
+        if (index >= hashes.length) {
+            long[] grown = new long[Math.max(index + 1, hashes.length * 2)];
+            System.arraycopy(hashes, 0, grown, 0, hashes.length);
+            hashes = grown;
+        }
+
+        //encodes the node into the buffer
+        DataOutputStream target = out;
+        int withContent = contents.size();
+        out = blockOut;
+        blockOut.flush();
+        block.reset();
+        super.writeNode(node);
+        blockOut.flush();
+        out = target;
+
+        long hash = block.hash();
+        if (sequence > 0) {
+            if (index < known && hash == hashes[index] && withContent == contents.size())
+                return;
+            out.writeInt(index);
+            saved++;
+        }
+        hashes[index] = hash;
+        block.writeTo(out);
+    }
+}
@@ -26,9 +26,9 @@ import planet.generic.commonapi.factory.GenericFactory;
 import planet.simulate.Globals;
 import planet.simulate.Logger;
 import planet.simulate.Results;
+import planet.util.Mailbox;
 import planet.util.Properties;
-import planet.util.Queue;
-import planet.util.QueueFull;
+import planet.util.timer.ControlTimer;
  
 /**
  * This implementation of Network interface pretends to abstract
@@ -54,11 +54,11 @@ public class NetworkImpl implements Network {
 	/**
 	 * To contains (NodeHandle,Node) pairs for all nodes in the network.
 	 */
-	private TreeMap nodes;
+	protected TreeMap nodes;
 	/**
 	 * Containts all nodes to remove from the network. 
 	 */
-	private Stack toRemove;
+	protected Stack toRemove;
 	/**
 	 * NodeFactory implementation which permits build new nodes.
 	 */
@@ -84,7 +84,7 @@ public class NetworkImpl implements Network {
 	/**
 	 * Shows the number of actually simulated steps.
 	 */
-	private int totalSteps;
+	protected int totalSteps;
 	
 	/**
 	 * Initialize the network with no nodes and wihtout simulation steps.
@@ -131,7 +131,7 @@ public class NetworkImpl implements Network {
 	 */
 	public void joinNode(Node node) throws InitializationException {
 		if (nodes.size()==0) {
-			nodes.put(node.getLocalHandle(),node); //it is its own bootstrap
+			putNode(node); //it is its own bootstrap
 			node.join(node.getLocalHandle());
 		} else {
 			Node boot = (Node)nodes.values().iterator().next(); //constant view of Id of nodes
@@ -151,12 +151,12 @@ public class NetworkImpl implements Network {
 	 */
 	public void joinNode(Node node, NodeHandle bootstrap) throws InitializationException {
 		//test if bootstrap exists
-		if ((nodes.size()==0 && !node.getId().equals(bootstrap.getId())) || (nodes.size()>0 && !nodes.containsKey(bootstrap))) 
+		if ((nodes.size()==0 && !node.getId().equals(bootstrap.getId())) || (nodes.size()>0 && getNode(bootstrap)==null)) 
         {
 			throw new InitializationException("The bootstrap Id ["+ bootstrap +"] not exists within the network.");
         }
 		//adds the node to Hash
-		nodes.put(node.getLocalHandle(),node);
+		putNode(node);
 		//joins node with this bootstrap
 		node.join(bootstrap);
 		size++;
@@ -195,15 +195,7 @@ public class NetworkImpl implements Network {
             network.add(toJoin);
         }
 
-        // BehaviourRoleSelector
-        BehavioursRoleSelector behSelector = GenericFactory.buildBehavioursRoleSelector();
-        
-        Set badSet =  behSelector.select(
-                        nodeSet.iterator(),                         // Iterator over the whole Network 
-                        ((BehavioursPropertiesImpl)Properties.behavioursPropertiesInstance).faultyNodes/100, // Percentage of Bad nodes.
-                        ((BehavioursPropertiesImpl)Properties.behavioursPropertiesInstance).maliciousDistributionAsInt  // Distrbution of Bad nodes.
-                      );
-        
+        Set badSet = selectBadNodes(nodeSet);
         
         Iterator it = network.iterator();
         Node toJoin = (Node) it.next();  // First Node to be inserted
@@ -216,7 +208,7 @@ public class NetworkImpl implements Network {
         }
         toJoin.setGoodRole(badSet==null || !badSet.contains(toJoin.getId()));
         toJoin.join(bootstrap);
-        nodes.put(toJoin.getLocalHandle(),toJoin);
+        putNode(toJoin);
         Vector boots = new Vector();    //the set of possible bootstrap nodes
         boots.add(bootstrap);
         this.size++;
@@ -227,7 +219,7 @@ public class NetworkImpl implements Network {
             toJoin.setGoodRole(badSet==null || !badSet.contains(toJoin.getId()));
             bootstrap = (NodeHandle)boots.get(randomGenerator.nextInt(boots.size()));
             toJoin.join(bootstrap);
-            nodes.put(toJoin.getLocalHandle(),toJoin);
+            putNode(toJoin);
             boots.add(toJoin.getLocalHandle());
             run(Properties.simulatorSimulationSteps);
             this.size++;
@@ -235,6 +227,24 @@ public class NetworkImpl implements Network {
         return totalSteps;
     }
     
+    /**
+     * Selects the bad nodes with the BehavioursRoleSelector.
+     * @param nodeSet Sorted set with the NodeHandles of all nodes.
+     * @return The set of bad nodes, or null.
+     * @throws InitializationException if the BehavioursRoleSelector cannot
+     * be built.
+     */
+    private Set selectBadNodes(TreeSet nodeSet) throws InitializationException {
+        // BehaviourRoleSelector
+        BehavioursRoleSelector behSelector = GenericFactory.buildBehavioursRoleSelector();
+        
+        return behSelector.select(
+                        nodeSet.iterator(),                         // Iterator over the whole Network 
+                        ((BehavioursPropertiesImpl)Properties.behavioursPropertiesInstance).faultyNodes/100, // Percentage of Bad nodes.
+                        ((BehavioursPropertiesImpl)Properties.behavioursPropertiesInstance).maliciousDistributionAsInt  // Distrbution of Bad nodes.
+                      );
+    }
+    
     /**
      * Adds the <b>size</b> nodes to the current network.
      * @param size Total number of nodes to add.
@@ -251,7 +261,7 @@ public class NetworkImpl implements Network {
 			if (this.size==0) {
 				//create new node
 				toJoin = nodeFactory.buildNode();
-				nodes.put(toJoin.getLocalHandle(),toJoin);
+				putNode(toJoin);
 				//updates number of nodes to join
 				size--;
 				this.size++;
@@ -267,7 +277,7 @@ public class NetworkImpl implements Network {
 				//create new node
 				toJoin = nodeFactory.buildNode();
 				//put it into hashmap
-				nodes.put(toJoin.getLocalHandle(),toJoin);
+				putNode(toJoin);
 				toJoin.join(bootstrap);
 				boots.add(bootstrap);
 				bootstrap = (NodeHandle)boots.get(randomGenerator.nextInt(boots.size()));
@@ -278,6 +288,54 @@ public class NetworkImpl implements Network {
 		return totalSteps;
 	}
 	
+	/**
+	 * Adds <b>size</b> nodes to an empty network, with the routing state
+	 * of an already stabilized network, without simulating their joining.
+	 * The nodes must implement the StabilizedNode interface, and their
+	 * state is computed from the sorted ring of all nodes by the
+	 * StabilizedRing. The periodic timers of the nodes are spread along
+	 * their period, as if the nodes had joined at different steps.
+	 * @param size Number of nodes to add to the network.
+	 * @return The number of simulated steps, that is not modified.
+	 * @throws InitializationException if the network is not empty, the
+	 * nodes cannot be built or they do not implement the StabilizedNode
+	 * interface.
+	 * @see planet.generic.commonapi.StabilizedNode
+	 * @see planet.generic.commonapi.StabilizedRing
+	 */
+	public int joinStabilizedNodes(int size) throws InitializationException {
+		if (this.size != 0)
+			throw new InitializationException("The stabilized nodes can only be joined to an empty network.");
+		if (size <= 0) return totalSteps;
+
+		TreeSet nodeSet = new TreeSet();
+		Vector network = new Vector(size);
+		Node toJoin = null;
+		for (int i = 0; i < size; i++) {
+			toJoin = nodeFactory.buildNode();
+			if (!(toJoin instanceof StabilizedNode))
+				throw new InitializationException("The nodes of class [" + toJoin.getClass().getName() +
+						"] cannot be joined as a stabilized network.");
+			nodeSet.add(toJoin.getLocalHandle());
+			network.add(toJoin);
+		}
+		Set badSet = Properties.overlayWithBehaviours ? selectBadNodes(nodeSet) : null;
+		for (int i = 0; i < size; i++) {
+			toJoin = (Node)network.get(i);
+			if (Properties.overlayWithBehaviours)
+				toJoin.setGoodRole(badSet==null || !badSet.contains(toJoin.getId()));
+			putNode(toJoin);
+		}
+		this.size = nodes.size();
+
+		Node[] ring = (Node[])nodes.values().toArray(new Node[nodes.size()]);
+		new StabilizedRing(ring).join(randomGenerator);
+		for (int i = 0; i < ring.length; i++)
+			if (ring[i] instanceof NodeImpl)
+				((NodeImpl)ring[i]).spreadTimers(randomGenerator);
+		return totalSteps;
+	}
+	
 	/**
 	 * Add <b>size</b> nodes to the actual network. Their class and their Ids
 	 * depends of the actual configuration of different factories. As bootstrap
@@ -298,7 +356,7 @@ public class NetworkImpl implements Network {
 			//create new node
 			toJoin = nodeFactory.buildNode();
 			//put it to hashmap
-			nodes.put(toJoin.getLocalHandle(),toJoin);
+			putNode(toJoin);
 			//reinitialize the iterator if it has no more elements
 			if (index==bootstrap.length)
 				index = 0;
@@ -323,11 +381,12 @@ public class NetworkImpl implements Network {
 	 */
 	public void leaveNodes(NodeHandle[] nodes) throws InitializationException {
 		Vector unknownNodes = new Vector(0,1);
-		Set nodesId = this.nodes.keySet(); //constant view of Id of nodes
+		Node node = null;
 		for (int i=0; i< nodes.length; i++) {
-			if (nodesId.contains(nodes[i])) {
+			node = getNode(nodes[i]);
+			if (node != null) {
 				//update its predecessor and successor
-				((Node)this.nodes.get(nodes[i])).leave();
+				node.leave();
 			} else
 				unknownNodes.add(nodes[i]);
 		}
@@ -341,7 +400,7 @@ public class NetworkImpl implements Network {
 	 */
 	public void failNodes(NodeHandle[] nodes) throws InitializationException {
 		for (int i=0; i < nodes.length; i++) {
-			((Node)this.nodes.get(nodes[i])).fail();
+			getNode(nodes[i]).fail();
 		}
 	}
 	
@@ -374,7 +433,7 @@ public class NetworkImpl implements Network {
 		Application app = null;
 		int registered = 0;
 		for (int i=0; i<nodes.length; i++) {
-			node = (Node)this.nodes.get(nodes[i]);
+			node = getNode(nodes[i]);
 			if (node!=null) {
 				app = GenericFactory.buildApplication();
 				node.registerApplication(app,app.getId());
@@ -402,7 +461,7 @@ public class NetworkImpl implements Network {
 			int[] selectedIds = makeRandomIndexes(nodes);
 			Application app   = null;
 			for (int i=0; i < nodes; i++) {
-				node = (Node)this.nodes.get(ids[selectedIds[i]]);
+				node = getNode(ids[selectedIds[i]]);
 				app = GenericFactory.buildApplication();
 				node.registerApplication(app,app.getId());
 			}
@@ -487,6 +546,45 @@ public class NetworkImpl implements Network {
 	 	throw new InvalidObjectException("Cannot deserialize the network state.");
 	}
 	
+	/**
+	 * Returns the NodeFactory of this network, to be saved into a snapshot.
+	 * @return The NodeFactory of this network.
+	 */
+	NodeFactory getNodeFactory() {
+		return nodeFactory;
+	}
+	
+	/**
+	 * Returns the random generator of this network, to be saved into a
+	 * snapshot.
+	 * @return The random generator of this network.
+	 */
+	Random getRandomGenerator() {
+		return randomGenerator;
+	}
+	
+	/**
+	 * Sets the state loaded from a network snapshot, as readObject() does
+	 * for a serialized network.
+	 * @param loaded The loaded nodes, in order.
+	 * @param toRemove NodeHandles of the nodes to remove.
+	 * @param random The random generator.
+	 * @param steps The number of simulated steps.
+	 * @see planet.generic.commonapi.NetworkSnapshotReader
+	 */
+	void restore(Node[] loaded, Stack toRemove, Random random, int steps) {
+		for (int i = 0; i < loaded.length; i++) {
+			if (loaded[i] instanceof NodeImpl)
+				((NodeImpl)loaded[i]).restoreTimers(steps);
+			putNode(loaded[i]);
+		}
+		this.toRemove = toRemove;
+		this.randomGenerator = random;
+		this.totalSteps = steps;
+		this.size = nodes.size();
+		this.stabLevel = 0;
+	}
+	
 	/* *************************** PRINTING BLOCK *******************************/
 	
 	/**
@@ -547,6 +645,8 @@ public class NetworkImpl implements Network {
 	 * to finish the stabilization.
 	 */
 	public boolean simulate() {
+		//run the timer tasks due at this step
+		ControlTimer.nextStep();
 	  	//process all nodes
 		boolean toContinue = process();
 	  	//send all messages
@@ -588,7 +688,7 @@ public class NetworkImpl implements Network {
 	protected boolean sendMessages() {
 		Iterator it = iterator();
 		Node aNode = null;
-		Queue messages = null;
+		Mailbox messages = null;
 		boolean toContinue = false;
 		// The simulator moves outgoing messages to target's incoming node queues
 		while (it.hasNext()){
@@ -603,13 +703,16 @@ public class NetworkImpl implements Network {
 	/**
 	 * Takes all messages of queue and send to all destination nodes. If any
 	 * destination of any message is not found, it is returned with mode sets
-	 * to Globals.ERROR.
+	 * to Globals.ERROR. With the BACKPRESSURE policy, the first message
+	 * rejected by its destination and the next ones remain into the queue
+	 * until the next step, and the overflow is counted only the first time
+	 * that the message is held back.
 	 * 
 	 * @param messages Queue with messages to send
-	 * @see planet.util.Queue
+	 * @see planet.util.Mailbox
 	 * @see planet.simulate.Globals Globals
 	 */
-	protected void send (Queue messages) {
+	protected void send (Mailbox messages) {
 		//There are messages to process??
 		if (messages==null) return;
 		
@@ -619,32 +722,36 @@ public class NetworkImpl implements Network {
 		Node aNode;
 		int processed = 0;
 		while (!messages.isEmpty() && processed < Properties.simulatorProcessedMessages){
-			aMessage = (RouteMessage) messages.remove();
+			aMessage = (RouteMessage) messages.peek();
+			if (aMessage==null) break;
 
 			target = aMessage.getNextHopHandle();
-			if (target!=null && nodes.containsKey(target)) {
-				aNode = (Node)nodes.get(target);
+			aNode = (target==null) ? null : getNode(target);
+			if (aNode!=null) {
 				
-				try {
-					aNode.receive(aMessage);
-				} catch (QueueFull ex){
-					Logger.log("Incoming queue of Node "+target+" is full",Logger.EVENT_LOG);
-					GenericFactory.freeMessage(aMessage);
-				}
+				if (!aNode.receive(aMessage)) {
+					if (messages.getPolicy()==Mailbox.BACKPRESSURE) {
+						messages.hold(aMessage);
+						break;
+					}
+					messages.poll();
+					Logger.log("Incoming queue of Node ",target," is full",Logger.EVENT_LOG);
+					((NodeImpl)aNode).messageDropped(aMessage);
+				} else
+					messages.poll();
 			} else {
-				Logger.log("Target of message ["+aMessage+"] is not found.",Logger.MSG_LOG);
+				messages.poll();
+				Logger.log("Target of message [",aMessage,"] is not found.",Logger.MSG_LOG);
 				from = aMessage.getSource();
-				if (nodes.containsKey(from)){
-					aNode = (Node)nodes.get(from);
+				aNode = getNode(from);
+				if (aNode!=null){
 					aMessage.setMode(Globals.ERROR);
-					try {
-						NodeHandle source = aMessage.getSource();
-						aMessage.setSource(aMessage.getDestination());
-						aMessage.setDestination(source);
-						aMessage.setNextHopHandle(source);
-						aNode.receive(aMessage);
-					} catch (QueueFull ex) {
-						Logger.log("Incoming queue of Node "+from+" is full",Logger.EVENT_LOG);
+					NodeHandle source = aMessage.getSource();
+					aMessage.setSource(aMessage.getDestination());
+					aMessage.setDestination(source);
+					aMessage.setNextHopHandle(source);
+					if (!aNode.receive(aMessage)) {
+						Logger.log("Incoming queue of Node ",from," is full",Logger.EVENT_LOG);
 						GenericFactory.freeMessage(aMessage);
 					}
 				}
@@ -660,10 +767,40 @@ public class NetworkImpl implements Network {
 		NodeHandle node = null;
 		while (!toRemove.isEmpty()){
 			node = (NodeHandle)toRemove.pop();
-			nodes.remove(node);
+			removeNode(node);
 			size--;
 		}
 	}
+
+	/**
+	 * Returns the node with the NodeHandle <b>handle</b>. It is used for
+	 * all lookups of nodes by NodeHandle, so subclasses can index the
+	 * nodes in other ways.
+	 * @param handle NodeHandle of the node to look for.
+	 * @return The node with this NodeHandle or null if it does not exist.
+	 */
+	protected Node getNode(NodeHandle handle) {
+		return (Node)nodes.get(handle);
+	}
+
+	/**
+	 * Adds the <b>node</b> to the set of nodes of this network.
+	 * @param node Node to add.
+	 */
+	protected void putNode(Node node) {
+		nodes.put(node.getLocalHandle(),node);
+	}
+
+	/**
+	 * Removes the node with the NodeHandle <b>handle</b> from the set of
+	 * nodes of this network.
+	 * @param handle NodeHandle of the node to remove.
+	 */
+	protected void removeNode(NodeHandle handle) {
+		Node node = (Node)nodes.remove(handle);
+		if (node instanceof NodeImpl)
+			((NodeImpl)node).stopTimers();
+	}
 	
 	
 	/**
@@ -686,7 +823,7 @@ public class NetworkImpl implements Network {
 	 * @see planet.commonapi.Network#existNode(planet.commonapi.NodeHandle)
 	 */
 	public boolean existNode(NodeHandle node) {
-		return nodes.containsKey(node);
+		return getNode(node)!=null;
 	}
 	
 	/**
@@ -12,10 +12,9 @@ import planet.commonapi.exception.InitializationException;
 import planet.generic.commonapi.factory.GenericFactory;
 import planet.simulate.Logger;
 import planet.simulate.MessageListener;
+import planet.util.Mailbox;
 import planet.util.Properties;
-import planet.util.Queue;
-import planet.util.QueueFull;
-import planet.util.timer.ThreadTimer;
+import planet.util.timer.SharedTimer;
 import planet.util.timer.Timer;
 import planet.util.timer.TimerTask;
 
@@ -23,14 +22,14 @@ import planet.util.timer.TimerTask;
  * Superclass which represents a node in a peer-to-peer system, regardless of
  * the underlying protocol. All nodes, implement the methods of this class.
  * 
- * This contains all required elements to use java.util.Timer (JDK standard)
- * for real execution context. Only the required concrete Node implementation
+ * This contains all required elements to use a SharedTimer, whose tasks are
+ * run by a pool of threads shared by all nodes, for real execution context. Only the required concrete Node implementation
  * must extend this abstract class, instead of planet.generic.commonapi.NodeImpl.
  * Another required action is shows at properties file for simulator the
  * class to use for Timer as follows:
  *  
  * # Default Timer Class
- * DEFAULT_TIMER = planet.util.timer.ThreadTimer
+ * DEFAULT_TIMER = planet.util.timer.SharedTimer
  * 
  * @author Pedro Garca
  * @author Carles Pairot
@@ -44,8 +43,8 @@ public abstract class NetworkNodeImpl
 	
 	protected Id id;
 	protected transient Hashtable listeners;
-	private transient Queue incoming;
-	private transient Queue outgoing;
+	private transient Mailbox incoming;
+	private transient Mailbox outgoing;
 	private int processed = 0;
 	protected boolean alive = true;
 	/**
@@ -71,7 +70,7 @@ public abstract class NetworkNodeImpl
 	public NetworkNodeImpl(Id id) throws InitializationException {
 		this.id = id;
 		try {
-			timer = new ThreadTimer();
+			timer = new SharedTimer();
 		} catch (Exception e) {
 			throw new InitializationException("Cannot build the Node's Timer", e);
 		}
@@ -84,8 +83,9 @@ public abstract class NetworkNodeImpl
 	 */
 	private void init() {
 		listeners = new Hashtable();
-		incoming = new Queue(Properties.simulatorQueueSize);
-		outgoing = new Queue(Properties.simulatorQueueSize);
+		incoming = new Mailbox(Properties.simulatorQueueSize, Properties.simulatorQueuePolicy);
+		outgoing = new Mailbox(Properties.simulatorQueuePolicy == Mailbox.BACKPRESSURE ?
+				Mailbox.UNBOUNDED : Properties.simulatorQueueSize, Properties.simulatorQueuePolicy);
 	}
 	
 	/**
@@ -97,10 +97,20 @@ public abstract class NetworkNodeImpl
 	public abstract void join(Id bootstrap);
 	
 	/**
-	 * The node leaves the network
+	 * The node leaves the network. The concrete implementations must
+	 * invoke cancelTimers().
 	 */
 	public abstract void leave();
 	
+	/**
+	 * Cancels all timer tasks of this node, without modifying the timer
+	 * tasks of the other nodes. It must be invoked when the node leaves
+	 * or fails.
+	 */
+	protected void cancelTimers() {
+		timer.cancel();
+	}
+	
 	/**
 	 * Lookup of a key
 	 * 
@@ -127,10 +137,11 @@ public abstract class NetworkNodeImpl
 	 * 
 	 * @param msg
 	 *            received Message
+	 * @return false if the incoming queue has rejected the message.
 	 */
-	public void receive(RouteMessage msg) throws QueueFull {
+	public boolean receive(RouteMessage msg) {
 		Logger.logReceive(id, msg, Logger.MSG_LOG);
-		incoming.add(msg);
+		return incoming.offer(msg);
 	}
 	
 	/**
@@ -138,14 +149,12 @@ public abstract class NetworkNodeImpl
 	 * 
 	 * @param msg
 	 *            sended Message
+	 * @return false if the outgoing queue has rejected the message.
 	 */
-	public void send(RouteMessage msg) throws QueueFull {
-		try {
-			outgoing.add(msg);
-		} catch (QueueFull e) {
-			System.exit(0);
-		}
+	public boolean send(RouteMessage msg) {
+		if (!outgoing.offer(msg)) return false;
 		Logger.logSend(id, msg, Logger.MSG_LOG);
+		return true;
 	}
 	
 	/**
@@ -153,7 +162,7 @@ public abstract class NetworkNodeImpl
 	 * 
 	 * @return outgoing Queue of Messages
 	 */
-	public Queue outMessages() {
+	public Mailbox outMessages() {
 		return outgoing;
 	}
 	
@@ -173,7 +182,7 @@ public abstract class NetworkNodeImpl
 	 */
 	protected RouteMessage nextMessage() {
 		processed++;
-		return (RouteMessage) incoming.remove();
+		return (RouteMessage) incoming.poll();
 	}
 	
 	/**
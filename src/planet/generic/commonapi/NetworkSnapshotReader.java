@@ -0,0 +1,526 @@
+package planet.generic.commonapi;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+import java.util.Stack;
+import java.util.Vector;
+
+import planet.commonapi.Id;
+import planet.commonapi.Message;
+import planet.commonapi.Node;
+import planet.commonapi.NodeHandle;
+import planet.commonapi.RouteMessage;
+import planet.commonapi.exception.InitializationException;
+import planet.commonapi.factory.NodeFactory;
+import planet.generic.commonapi.factory.GenericFactory;
+import planet.util.Properties;
+
+/**
+ * This class loads a network from a snapshot file, built by the
+ * NetworkSnapshotWriter, and optionally replays the delta files of the
+ * NetworkCheckpointWriter. The binary format of a snapshot is the following:
+ * <pre>
+ * header  : MAGIC (4 bytes) VERSION (1 byte) {NetworkClass} (UTF) {NodeClass} (UTF)
+ *           {IdClass} (UTF) {bits} (int) {valueKind} (1 byte) {totalSteps} (int) {nodes} (int)
+ * ids     : {nodeId} for each node, in order of the network
+ * nodes   : {common state} {overlay state} for each node
+ * removed : {count} (int) {handle} for each node to remove
+ * objects : Java serialization stream with the NodeFactory, the random
+ *           generator of the network and the contents of the pending messages
+ * </pre>
+ * where:
+ * <ul>
+ * <li><b>{handle}</b>: the index of the node (int), -1 (NULL_HANDLE) for
+ * null, or -2 (EXTERNAL_HANDLE) followed by the {nodeId} and the alive
+ * flag (boolean) for the NodeHandles of nodes out of the network.</li>
+ * <li><b>{common state}</b>: role (boolean), alive (boolean), the last
+ * message key of the node (int), the timers
+ * ({count} (int) and {period} (long) {step} (long) {flags} (1 byte) for
+ * each one) and the incoming and outgoing queues ({count} (int) and
+ * {message} for each one). The {step} is the step of the next activation,
+ * or -1 minus its phase (the step modulo the period) for the periodic
+ * timers.</li>
+ * <li><b>{message}</b>: {key} {source} {destination} {nextHop} {type} (int)
+ * {mode} (int) {applicationId} {hasContent} (boolean), where the Strings
+ * are saved as a boolean (not null) and its UTF value.</li>
+ * <li><b>{overlay state}</b>: saved by each SnapshotNode implementation.</li>
+ * </ul>
+ * The Ids are saved with its internal value: a sequence of ints for the
+ * ChordId or a double for the SymphonyId. The header has to match with
+ * the Id class of the current configuration.
+ * <br><br>
+ * A delta file only contains the nodes that have changed since the previous
+ * snapshot or delta file:
+ * <pre>
+ * header  : DELTA_MAGIC (4 bytes) VERSION (1 byte) {sequence} (int) {fromSteps} (int)
+ *           {totalSteps} (int) {NodeClass} (UTF)
+ * removed : {count} (int) {index} (int) for each removed node
+ * added   : {count} (int) {nodeId} for each new node, with the next free indexes
+ * nodes   : {index} (int) {common state} {overlay state} for each changed node,
+ *           and NULL_HANDLE as end mark
+ * removed : {count} (int) {handle} for each node to remove
+ * objects : as in the snapshot
+ * </pre>
+ * The indexes of the removed nodes are not reused, so the unchanged nodes
+ * keep their index. A delta file is only applied when its {fromSteps} is
+ * the number of steps of the loaded state.
+ * @see planet.generic.commonapi.NetworkSnapshotWriter
+ * @see planet.generic.commonapi.NetworkCheckpointWriter
+ * @see planet.generic.commonapi.SnapshotNode
+ */
+public class NetworkSnapshotReader {
+
+    /**
+     * Starting bytes of any snapshot file.
+     */
+    public static final byte[] MAGIC = {'P','S','N','S'};
+    /**
+     * Starting bytes of any delta file.
+     */
+    public static final byte[] DELTA_MAGIC = {'P','S','N','D'};
+    /**
+     * Version of the binary format.
+     */
+    public static final int VERSION = 4;
+    /**
+     * Value kind for Ids with an int[] value.
+     */
+    public static final int INT_ARRAY_VALUE = 'I';
+    /**
+     * Value kind for Ids with a Double value.
+     */
+    public static final int DOUBLE_VALUE = 'D';
+    /**
+     * Handle value for null NodeHandles.
+     */
+    public static final int NULL_HANDLE = -1;
+    /**
+     * Handle value for NodeHandles of nodes out of the network.
+     */
+    public static final int EXTERNAL_HANDLE = -2;
+    /**
+     * Timer flag: the timer is scheduled.
+     */
+    static final int SCHEDULED = 0x01;
+    /**
+     * Timer flag: the timer is due.
+     */
+    static final int DUE = 0x02;
+    /**
+     * Timer flag: the task of the timer is cancelled.
+     */
+    static final int FINISHED = 0x04;
+
+    /**
+     * Stream of the snapshot file.
+     */
+    private DataInputStream in = null;
+    /**
+     * Number of ints of the int[] Id values, or zero for Double values.
+     */
+    private int idInts;
+    /**
+     * Local NodeHandle of each node, by its index.
+     */
+    private Vector handles = null;
+    /**
+     * Each node by its index, or null for the removed nodes.
+     */
+    private Vector nodes = null;
+    /**
+     * Pending messages with content, in order of the file.
+     */
+    private Vector withContent = null;
+    /**
+     * Class name of the network.
+     */
+    private String networkClass = null;
+    /**
+     * Class of the nodes.
+     */
+    private Class nodeReference = null;
+    /**
+     * Number of simulated steps of the loaded network.
+     */
+    private int totalSteps;
+    /**
+     * NodeHandles of the nodes to remove.
+     */
+    private Stack toRemove = null;
+    /**
+     * NodeFactory of the network.
+     */
+    private NodeFactory nodeFactory = null;
+    /**
+     * Random generator of the network.
+     */
+    private Random random = null;
+
+    /**
+     * Builds a reader for the <b>stream</b>.
+     * @param stream Stream of the snapshot file.
+     */
+    public NetworkSnapshotReader(InputStream stream) {
+        in = new DataInputStream(new BufferedInputStream(stream, 65536));
+    }
+
+    /**
+     * Shows if the file <b>fileName</b> is a snapshot file, looking at its
+     * starting bytes.
+     * @param fileName Path to the file.
+     * @return true if the file starts as a snapshot file.
+     */
+    public static boolean isSnapshot(String fileName) {
+        byte[] magic = new byte[MAGIC.length];
+        try {
+            DataInputStream test = new DataInputStream(new FileInputStream(fileName));
+            try {
+                test.readFully(magic);
+            } finally {
+                test.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return Arrays.equals(magic, MAGIC);
+    }
+
+    /**
+     * Loads the network of the snapshot file <b>fileName</b> and replays
+     * its delta files, saved by a NetworkCheckpointWriter. The delta files
+     * are replayed in order while they exist and follow the last loaded
+     * state.
+     * @param fileName Path to the snapshot file.
+     * @return The loaded network, at the step of its last delta file.
+     * @throws IOException if any file is not valid or occurs any problem
+     * reading them.
+     */
+    public static NetworkImpl restore(String fileName) throws IOException {
+        NetworkSnapshotReader reader = new NetworkSnapshotReader(new FileInputStream(fileName));
+        reader.readBase();
+        File delta = null;
+        for (int i = 1; (delta = new File(NetworkCheckpointWriter.getDeltaName(fileName, i))).exists(); i++) {
+            reader.in = new DataInputStream(new BufferedInputStream(new FileInputStream(delta), 65536));
+            if (!reader.readDelta()) break;
+        }
+        return reader.build();
+    }
+
+    /**
+     * Loads the network and closes the stream.
+     * @return The loaded network.
+     * @throws IOException if the stream is not a snapshot, it does not
+     * match the current configuration or occurs any problem reading it.
+     */
+    public NetworkImpl read() throws IOException {
+        readBase();
+        return build();
+    }
+
+    /**
+     * Loads the state of the snapshot and closes the stream.
+     * @throws IOException if the stream is not a snapshot, it does not
+     * match the current configuration or occurs any problem reading it.
+     */
+    private void readBase() throws IOException {
+        //header
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC) || in.readUnsignedByte() != VERSION)
+            throw new IOException("The stream is not a network snapshot.");
+        networkClass = in.readUTF();
+        String nodeClass = in.readUTF();
+        String idClass = in.readUTF();
+        int bits = in.readInt();
+        int kind = in.readUnsignedByte();
+        if (!idClass.equals(Properties.overlayId.getName()) || bits != NetworkSnapshotWriter.getIdBits())
+            throw new IOException("The snapshot contains Ids [" + idClass + "] of [" + bits +
+                    "] bits, and the current configuration uses [" + Properties.overlayId.getName() + "] of [" +
+                    NetworkSnapshotWriter.getIdBits() + "] bits.");
+        idInts = (kind == INT_ARRAY_VALUE) ? bits / 32 : 0;
+        totalSteps = in.readInt();
+        int count = in.readInt();
+
+        //builds the nodes with their Ids
+        nodes = new Vector(count);
+        handles = new Vector(count);
+        setNodeClass(nodeClass);
+        for (int i = 0; i < count; i++)
+            addNode(readId());
+
+        //state of the nodes
+        withContent = new Vector();
+        for (int i = 0; i < count; i++)
+            readNode((Node)nodes.get(i));
+        toRemove = new Stack();
+        readHandles(toRemove);
+        readObjects();
+    }
+
+    /**
+     * Applies a delta file to the loaded state and closes the stream.
+     * @return false if the delta file does not follow the loaded state,
+     * and then it is not applied.
+     * @throws IOException if the stream is not a delta file or occurs any
+     * problem reading it.
+     */
+    private boolean readDelta() throws IOException {
+        byte[] magic = new byte[DELTA_MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, DELTA_MAGIC) || in.readUnsignedByte() != VERSION)
+            throw new IOException("The stream is not a network delta.");
+        in.readInt(); //sequence number
+        if (in.readInt() != totalSteps) {
+            in.close();
+            return false;
+        }
+        totalSteps = in.readInt();
+        setNodeClass(in.readUTF());
+
+        //removed and added nodes
+        int count = in.readInt();
+        Node node = null;
+        for (int i = 0; i < count; i++) {
+            int index = in.readInt();
+            node = (Node)nodes.get(index);
+            if (node instanceof NodeImpl) ((NodeImpl)node).stopTimers();
+            nodes.set(index, null);
+            handles.set(index, null);
+        }
+        count = in.readInt();
+        for (int i = 0; i < count; i++)
+            addNode(readId());
+
+        //changed nodes
+        withContent = new Vector();
+        for (int index = in.readInt(); index != NULL_HANDLE; index = in.readInt())
+            readNode((Node)nodes.get(index));
+        toRemove = new Stack();
+        readHandles(toRemove);
+        readObjects();
+        return true;
+    }
+
+    /**
+     * Builds the network with the loaded state.
+     * @return The loaded network.
+     * @throws IOException if the network cannot be built.
+     */
+    private NetworkImpl build() throws IOException {
+        Vector loaded = new Vector(nodes.size());
+        for (int i = 0; i < nodes.size(); i++)
+            if (nodes.get(i) != null) loaded.add(nodes.get(i));
+        try {
+            NetworkImpl network = (NetworkImpl)GenericFactory.newInstance(Class.forName(networkClass));
+            network.setValues(Properties.factoriesNetworkTopology, nodeFactory);
+            network.restore((Node[])loaded.toArray(new Node[loaded.size()]), toRemove, random, totalSteps);
+            return network;
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Cannot find the class: " + e.getMessage());
+        } catch (InitializationException e) {
+            throw new IOException("Cannot build the network: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sets the class of the new nodes.
+     * @param nodeClass Class name of the nodes, or empty when there are none.
+     * @throws IOException if the class is not found.
+     */
+    private void setNodeClass(String nodeClass) throws IOException {
+        if (nodeClass.length() == 0) return;
+        try {
+            nodeReference = Class.forName(nodeClass);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Cannot find the class: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Builds a new node with the Id <b>id</b>, at the next free index.
+     * @param id Id of the new node.
+     * @throws IOException if the node cannot be built.
+     */
+    private void addNode(Id id) throws IOException {
+        try {
+            Node node = ((Node)GenericFactory.newInstance(nodeReference)).setValues(id);
+            nodes.add(node);
+            handles.add(node.getLocalHandle());
+        } catch (InitializationException e) {
+            throw new IOException("Cannot build the node [" + id + "]: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads the common state and the overlay state of the <b>node</b>.
+     * @param node A loaded node.
+     * @throws IOException if occurs any problem reading the file.
+     */
+    private void readNode(Node node) throws IOException {
+        ((NodeImpl)node).readSnapshot(this);
+        ((SnapshotNode)node).readState(this);
+    }
+
+    /**
+     * Reads the Java objects of the end of the file, and closes the stream.
+     * @throws IOException if occurs any problem reading the file.
+     */
+    private void readObjects() throws IOException {
+        ObjectInputStream objects = new ObjectInputStream(in);
+        try {
+            nodeFactory = (NodeFactory)objects.readObject();
+            random = (Random)objects.readObject();
+            for (int i = 0; i < withContent.size(); i++)
+                ((RouteMessage)withContent.get(i)).setMessage((Message)objects.readObject());
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Cannot find the class: " + e.getMessage());
+        }
+        objects.close();
+    }
+
+    /**
+     * Returns the number of simulated steps of the loaded state, to load
+     * the counters of steps saved relative to it.
+     * @return The number of simulated steps.
+     */
+    public int getSteps() {
+        return totalSteps;
+    }
+
+    /**
+     * Reads a NodeHandle.
+     * @return The local NodeHandle of the node, a new NodeHandle for nodes
+     * out of the network, or null.
+     * @throws IOException if occurs any problem reading the file.
+     */
+    public NodeHandle readHandle() throws IOException {
+        int index = in.readInt();
+        if (index >= 0)
+            return (NodeHandle)handles.get(index);
+        if (index == NULL_HANDLE)
+            return null;
+        Id id = readId();
+        try {
+            return GenericFactory.buildNodeHandle(id, in.readBoolean());
+        } catch (InitializationException e) {
+            throw new IOException("Cannot build a NodeHandle: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads a number of NodeHandles and adds them to the <b>handles</b>
+     * collection.
+     * @param handles Collection where to add the NodeHandles.
+     * @throws IOException if occurs any problem reading the file.
+     */
+    public void readHandles(Collection handles) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++)
+            handles.add(readHandle());
+    }
+
+    /**
+     * Reads an Id.
+     * @return A new Id.
+     * @throws IOException if occurs any problem reading the file.
+     */
+    public Id readId() throws IOException {
+        Object value;
+        if (idInts == 0)
+            value = new Double(Double.longBitsToDouble(in.readLong()));
+        else {
+            int[] ints = new int[idInts];
+            for (int i = 0; i < idInts; i++)
+                ints[i] = in.readInt();
+            value = ints;
+        }
+        try {
+            Id id = (Id) GenericFactory.newInstance(Properties.overlayId);
+            id.setValue(value);
+            return id;
+        } catch (InitializationException e) {
+            throw new IOException("Cannot build an Id: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads a String that can be null.
+     * @return The String, or null.
+     * @throws IOException if occurs any problem reading the file.
+     */
+    public String readString() throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * @return The read int.
+     * @throws IOException if occurs any problem reading the file.
+     */
+    public int readInt() throws IOException {
+        return in.readInt();
+    }
+
+    /**
+     * @return The read long.
+     * @throws IOException if occurs any problem reading the file.
+     */
+    public long readLong() throws IOException {
+        return in.readLong();
+    }
+
+    /**
+     * @return The read double.
+     * @throws IOException if occurs any problem reading the file.
+     */
+    public double readDouble() throws IOException {
+        return in.readDouble();
+    }
+
+    /**
+     * @return The read boolean.
+     * @throws IOException if occurs any problem reading the file.
+     */
+    public boolean readBoolean() throws IOException {
+        return in.readBoolean();
+    }
+
+    /**
+     * @return The read unsigned byte.
+     * @throws IOException if occurs any problem reading the file.
+     */
+    int readByte() throws IOException {
+        return in.readUnsignedByte();
+    }
+
+    /**
+     * Reads a pending RouteMessage. Its content is set when the end of
+     * the file is read.
+     * @return A RouteMessage of the pool.
+     * @throws IOException if occurs any problem reading the file.
+     */
+    RouteMessage readMessage() throws IOException {
+        String key = readString();
+        NodeHandle source = readHandle();
+        NodeHandle destination = readHandle();
+        NodeHandle nextHop = readHandle();
+        int type = in.readInt();
+        int mode = in.readInt();
+        String appId = readString();
+        try {
+            RouteMessage msg = GenericFactory.getMessage(key, source, destination, nextHop, null, type, mode, appId);
+            if (in.readBoolean())
+                withContent.add(msg);
+            return msg;
+        } catch (InitializationException e) {
+            throw new IOException("Cannot build a RouteMessage: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package planet.generic.commonapi;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Vector;
+
+import planet.commonapi.Id;
+import planet.commonapi.Network;
+import planet.commonapi.Node;
+import planet.commonapi.NodeHandle;
+import planet.commonapi.RouteMessage;
+import planet.commonapi.exception.InitializationException;
+import planet.generic.commonapi.factory.GenericFactory;
+import planet.util.Properties;
+
+/**
+ * This class saves a network into a snapshot file, with the compact binary
+ * format described in the NetworkSnapshotReader. The Ids are saved with
+ * their internal value and the NodeHandles as the index of their node.
+ * <br><br>
+ * Only the NetworkImpl (and its subclasses) with nodes of the same
+ * class, which implement the SnapshotNode interface and have no
+ * registered applications, can be saved as a snapshot.
+ * @see planet.generic.commonapi.NetworkSnapshotReader
+ * @see planet.generic.commonapi.SnapshotNode
+ */
+public class NetworkSnapshotWriter {
+
+    /**
+     * Stream of the snapshot file.
+     */
+    DataOutputStream out = null;
+    /**
+     * Index of each node, by its Id.
+     */
+    HashMap indexes = null;
+    /**
+     * Local NodeHandle of each node, by its index.
+     */
+    Vector handles = null;
+    /**
+     * Index of each node, by its local NodeHandle. Most of the written
+     * NodeHandles are local ones, and they are found without the hash of
+     * their Id.
+     */
+    IdentityHashMap locals = null;
+    /**
+     * Contents of the pending messages, saved at the end of the file.
+     */
+    Vector contents = null;
+    /**
+     * Number of simulated steps of the saved network.
+     */
+    int steps;
+
+    /**
+     * Builds a writer without stream, for the subclasses that write
+     * several files.
+     */
+    NetworkSnapshotWriter() {
+    }
+
+    /**
+     * Builds a writer for the <b>stream</b>.
+     * @param stream Stream where to save the snapshot.
+     */
+    public NetworkSnapshotWriter(OutputStream stream) {
+        out = new DataOutputStream(new BufferedOutputStream(stream, 65536));
+    }
+
+    /**
+     * Shows if the <b>network</b> can be saved as a snapshot.
+     * @param network The network to save.
+     * @return true if the network can be saved as a snapshot.
+     */
+    public static boolean isSupported(Network network) {
+        if (!(network instanceof NetworkImpl)) return false;
+        Iterator it = ((NetworkImpl)network).nodes.values().iterator();
+        Class nodeClass = null;
+        Node node = null;
+        while (it.hasNext()) {
+            node = (Node)it.next();
+            if (!(node instanceof SnapshotNode) || !(node instanceof NodeImpl) ||
+                    !((NodeImpl)node).endpoints.isEmpty())
+                return false;
+            if (nodeClass == null)
+                nodeClass = node.getClass();
+            else if (nodeClass != node.getClass())
+                return false;
+        }
+        return getValueKind() != 0;
+    }
+
+    /**
+     * Saves the <b>network</b> and closes the stream.
+     * @param network The network to save.
+     * @throws IOException if the network cannot be saved as a snapshot or
+     * occurs any problem writing the file.
+     */
+    public void write(Network network) throws IOException {
+        if (!isSupported(network))
+            throw new NotSerializableException("The network cannot be saved as a snapshot.");
+        NetworkImpl net = (NetworkImpl)network;
+        Node[] nodes = getNodes(net);
+
+        //header
+        out.write(NetworkSnapshotReader.MAGIC);
+        out.writeByte(NetworkSnapshotReader.VERSION);
+        out.writeUTF(net.getClass().getName());
+        out.writeUTF((nodes.length > 0) ? nodes[0].getClass().getName() : "");
+        out.writeUTF(Properties.overlayId.getName());
+        out.writeInt(getIdBits());
+        out.writeByte(getValueKind());
+        out.writeInt(net.totalSteps);
+        out.writeInt(nodes.length);
+        steps = net.totalSteps;
+
+        //Ids
+        indexes = new HashMap(nodes.length * 2);
+        handles = new Vector(nodes.length);
+        locals = new IdentityHashMap(nodes.length * 2);
+        for (int i = 0; i < nodes.length; i++) {
+            addIndex(nodes[i]);
+            writeId(nodes[i].getId());
+        }
+
+        //state of the nodes
+        contents = new Vector();
+        for (int i = 0; i < nodes.length; i++)
+            writeNode(nodes[i]);
+        writeHandles(net.toRemove);
+        writeObjects(net);
+    }
+
+    /**
+     * Returns the number of simulated steps of the saved network. The
+     * counters of steps can be saved relative to it, so they do not change
+     * between checkpoints.
+     * @return The number of simulated steps.
+     */
+    public int getSteps() {
+        return steps;
+    }
+
+    /**
+     * Returns the nodes of the <b>network</b>, in the order of the network.
+     * @param network The network to save.
+     * @return The nodes of the network.
+     */
+    static Node[] getNodes(NetworkImpl network) {
+        return (Node[])network.nodes.values().toArray(new Node[network.nodes.size()]);
+    }
+
+    /**
+     * Assigns the next free index to the <b>node</b>.
+     * @param node A node of the network.
+     * @return The index of the node.
+     */
+    int addIndex(Node node) {
+        Integer index = new Integer(handles.size());
+        handles.add(node.getLocalHandle());
+        indexes.put(node.getId(), index);
+        locals.put(node.getLocalHandle(), index);
+        return index.intValue();
+    }
+
+    /**
+     * Writes the common state and the overlay state of the <b>node</b>.
+     * @param node A node of the network.
+     * @throws IOException if occurs any problem writing the file.
+     */
+    void writeNode(Node node) throws IOException {
+        ((NodeImpl)node).writeSnapshot(this);
+        ((SnapshotNode)node).writeState(this);
+    }
+
+    /**
+     * Writes the Java objects of the end of the file, and closes the stream.
+     * @param network The network to save.
+     * @throws IOException if occurs any problem writing the file.
+     */
+    void writeObjects(NetworkImpl network) throws IOException {
+        ObjectOutputStream objects = new ObjectOutputStream(out);
+        objects.writeObject(network.getNodeFactory());
+        objects.writeObject(network.getRandomGenerator());
+        for (int i = 0; i < contents.size(); i++)
+            objects.writeObject(contents.get(i));
+        objects.close();
+    }
+
+    /**
+     * Writes the <b>handle</b>: the index of its node when it is at the
+     * network with the same alive flag, or its Id in other case.
+     * @param handle NodeHandle to write, or null.
+     * @throws IOException if occurs any problem writing the file.
+     */
+    public void writeHandle(NodeHandle handle) throws IOException {
+        if (handle == null) {
+            out.writeInt(NetworkSnapshotReader.NULL_HANDLE);
+            return;
+        }
+        Integer index = (Integer)locals.get(handle);
+        if (index != null) {
+            out.writeInt(index.intValue());
+            return;
+        }
+        index = (Integer)indexes.get(handle.getId());
+        if (index != null && ((NodeHandle)handles.get(index.intValue())).isAlive() == handle.isAlive())
+            out.writeInt(index.intValue());
+        else {
+            out.writeInt(NetworkSnapshotReader.EXTERNAL_HANDLE);
+            writeId(handle.getId());
+            out.writeBoolean(handle.isAlive());
+        }
+    }
+
+    /**
+     * Writes the number of NodeHandles of the <b>handles</b> collection and
+     * all of them, in iteration order.
+     * @param handles Collection of NodeHandles.
+     * @throws IOException if occurs any problem writing the file.
+     */
+    public void writeHandles(Collection handles) throws IOException {
+        out.writeInt(handles.size());
+        Iterator it = handles.iterator();
+        while (it.hasNext())
+            writeHandle((NodeHandle)it.next());
+    }
+
+    /**
+     * Writes the internal value of the Id <b>id</b>.
+     * @param id Id to write.
+     * @throws IOException if occurs any problem writing the file.
+     */
+    public void writeId(Id id) throws IOException {
+        Object value = id.getValue();
+        if (value instanceof int[]) {
+            int[] ints = (int[]) value;
+            for (int i = 0; i < ints.length; i++)
+                out.writeInt(ints[i]);
+        } else
+            out.writeLong(Double.doubleToRawLongBits(((Double) value).doubleValue()));
+    }
+
+    /**
+     * Writes a String that can be null.
+     * @param value String to write, or null.
+     * @throws IOException if occurs any problem writing the file.
+     */
+    public void writeString(String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    /**
+     * @param value int to write.
+     * @throws IOException if occurs any problem writing the file.
+     */
+    public void writeInt(int value) throws IOException {
+        out.writeInt(value);
+    }
+
+    /**
+     * @param value long to write.
+     * @throws IOException if occurs any problem writing the file.
+     */
+    public void writeLong(long value) throws IOException {
+        out.writeLong(value);
+    }
+
+    /**
+     * @param value double to write.
+     * @throws IOException if occurs any problem writing the file.
+     */
+    public void writeDouble(double value) throws IOException {
+        out.writeDouble(value);
+    }
+
+    /**
+     * @param value boolean to write.
+     * @throws IOException if occurs any problem writing the file.
+     */
+    public void writeBoolean(boolean value) throws IOException {
+        out.writeBoolean(value);
+    }
+
+    /**
+     * @param value byte to write.
+     * @throws IOException if occurs any problem writing the file.
+     */
+    void writeByte(int value) throws IOException {
+        out.writeByte(value);
+    }
+
+    /**
+     * Writes a pending RouteMessage. Its content is saved at the end of
+     * the file with the Java serialization.
+     * @param msg RouteMessage to write.
+     * @throws IOException if occurs any problem writing the file.
+     */
+    void writeMessage(RouteMessage msg) throws IOException {
+        writeString(msg.getKey());
+        writeHandle(msg.getSource());
+        writeHandle(msg.getDestination());
+        writeHandle(msg.getNextHopHandle());
+        out.writeInt(msg.getType());
+        out.writeInt(msg.getMode());
+        writeString(msg.getApplicationId());
+        out.writeBoolean(msg.getMessage() != null);
+        if (msg.getMessage() != null)
+            contents.add(msg.getMessage());
+    }
+
+    /**
+     * Returns the number of bits of the Ids of the current configuration.
+     * @return The number of bits of the Ids, or zero if they cannot be
+     * saved into a snapshot.
+     */
+    static int getIdBits() {
+        Object value = getIdValue();
+        if (value instanceof int[])
+            return ((int[]) value).length * 32;
+        return (value instanceof Double) ? 64 : 0;
+    }
+
+    /**
+     * Returns the kind of value of the Ids of the current configuration.
+     * @return NetworkSnapshotReader.INT_ARRAY_VALUE,
+     * NetworkSnapshotReader.DOUBLE_VALUE or zero if the Ids cannot be saved.
+     */
+    private static int getValueKind() {
+        Object value = getIdValue();
+        if (value instanceof int[]) return NetworkSnapshotReader.INT_ARRAY_VALUE;
+        return (value instanceof Double) ? NetworkSnapshotReader.DOUBLE_VALUE : 0;
+    }
+
+    /**
+     * Returns the internal value of a new Id of the current configuration.
+     * @return The internal value, or null if the Id cannot be built.
+     */
+    private static Object getIdValue() {
+        try {
+            return ((Id) GenericFactory.newInstance(Properties.overlayId)).getValue();
+        } catch (InitializationException e) {
+            return null;
+        }
+    }
+}
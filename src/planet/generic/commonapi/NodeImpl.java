@@ -2,6 +2,7 @@ package planet.generic.commonapi;
 import java.util.Collection;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.Random;
 import java.util.Vector;
 
 import planet.commonapi.Application;
@@ -18,10 +19,11 @@ import planet.generic.commonapi.factory.GenericFactory;
 import planet.simulate.Logger;
 import planet.simulate.MessageListener;
 import planet.simulate.Results;
+import planet.util.Mailbox;
 import planet.util.Properties;
-import planet.util.Queue;
-import planet.util.QueueFull;
+import planet.util.timer.ControlTimer;
 import planet.util.timer.TimerTask;
+import planet.util.timer.TimingWheel;
 
 /**
  * Superclass which represents a node in a peer-to-peer system, regardless of
@@ -38,24 +40,42 @@ public abstract class NodeImpl
 	
 	protected Id id;
 	protected transient Hashtable listeners;
-	private transient Queue incoming;
-	private transient Queue outgoing;
+	private transient Mailbox incoming;
+	private transient Mailbox outgoing;
 	private int processed = 0;
+	/**
+	 * Last key generated by this node.
+	 */
+	private int lastKey = 0;
+	/**
+	 * Prefix of the keys generated by this node, built from its Id.
+	 */
+	private transient String keyPrefix = null;
 	/**
 	 * NodeHandle for the actual Node.
 	 */
 	protected NodeHandle nodeHandle = null;
 	/**
-	 * To contain int[] with [firstTime][period] values for each task.
-	 * If period is zero (0), corresponds with a task to execute only once.
+	 * To contain the timer tasks (as NodeTimer) of this node, in order of
+	 * registration. They are scheduled at the shared TimingWheel.
 	 */
-	private Vector timer = null;
+	private Vector timers = null;
 	/**
-	 * To contain the jobs (TimerTask) to execute at each time.
+	 * Number of timer tasks that are due, waiting for the next process.
 	 */
-	private Vector tasks = null;
-	private long timerCount = 0; //counter
-	private long timerNext = Long.MAX_VALUE; //next time to activate
+	private transient int dueTimers = 0;
+	
+	/**
+	 * Network that only processes this node when it has work to do, or
+	 * null if this node is processed at each step.
+	 * @see planet.generic.commonapi.ActiveNetworkImpl
+	 */
+	transient ActiveNetworkImpl activeNetwork = null;
+	/**
+	 * Step for which this node is scheduled at the <b>activeNetwork</b>,
+	 * or -1 if it is not scheduled.
+	 */
+	transient int wakeStep = -1;
 	
 	/**
 	 * Local EndPoints.
@@ -67,8 +87,7 @@ public abstract class NodeImpl
 	 * Initializes internal data structures.
 	 */
 	public NodeImpl()  {
-        timer = new Vector(2);
-        tasks = new Vector(2);
+        timers = new Vector(2);
         endpoints = new Hashtable();
         init();
     }
@@ -78,8 +97,18 @@ public abstract class NodeImpl
 	 */
 	private void init() {
 		listeners = new Hashtable();
-		incoming = new Queue(Properties.simulatorQueueSize);
-		outgoing = new Queue(Properties.simulatorQueueSize);
+		incoming = new Mailbox(Properties.simulatorQueueSize, Properties.simulatorQueuePolicy);
+		//with backpressure, the outgoing queue keeps the messages rejected by their targets
+		outgoing = new Mailbox(Properties.simulatorQueuePolicy == Mailbox.BACKPRESSURE ?
+				Mailbox.UNBOUNDED : Properties.simulatorQueueSize, Properties.simulatorQueuePolicy);
+		Mailbox.DropHandler dropHandler = new Mailbox.DropHandler() {
+			public void dropped(Object value) {
+				Logger.log("Queue of Node ", id, " is full", Logger.EVENT_LOG);
+				messageDropped((RouteMessage) value);
+			}
+		};
+		incoming.setDropHandler(dropHandler);
+		outgoing.setDropHandler(dropHandler);
 	}
 	
 	/**
@@ -126,10 +155,42 @@ public abstract class NodeImpl
 	 * 
 	 * @param msg
 	 *            received Message
+	 * @return false if the incoming queue has rejected the message.
 	 */
-	public void receive(RouteMessage msg) throws QueueFull {
+	public boolean receive(RouteMessage msg) {
+		if (!incoming.offer(msg)) return false;
 		Logger.logReceive(id, msg, Logger.MSG_LOG);
-		incoming.add(msg);
+		wakeUp();
+		return true;
+	}
+	
+	/**
+	 * Releases a discarded message: evicted by the DROP_HEAD policy of the
+	 * incoming or outgoing queue, or rejected by a full outgoing queue of
+	 * this node or a full incoming queue of its next hop. The overlays that
+	 * count the traffic of their data messages extend it to discount them,
+	 * so the traffic reaches zero although messages are lost.
+	 * 
+	 * @param msg The discarded message.
+	 * @see planet.util.Mailbox#DROP_HEAD
+	 * @see planet.util.Mailbox#DROP_TAIL
+	 */
+	protected void messageDropped(RouteMessage msg) {
+		GenericFactory.freeMessage(msg);
+	}
+	
+	/**
+	 * Generates a new key for a communication started by this node: its Id
+	 * followed by a counter of this node. So the keys are unique in the
+	 * whole network, as the listeners of a node are found by key, and they
+	 * do not depend on the order in which the nodes are processed.
+	 * 
+	 * @return A new key.
+	 */
+	protected String generateKey() {
+		if (keyPrefix == null) keyPrefix = id + ":";
+		if (lastKey == Integer.MAX_VALUE) lastKey = 0;
+		return keyPrefix + (++lastKey);
 	}
     
     /**
@@ -185,10 +246,13 @@ public abstract class NodeImpl
 	 * 
 	 * @param msg
 	 *            sended Message
+	 * @return false if the outgoing queue has rejected the message.
 	 */
-	public void send(RouteMessage msg) throws QueueFull {
-		outgoing.add(msg);
+	public boolean send(RouteMessage msg) {
+		if (!outgoing.offer(msg)) return false;
 		Logger.logSend(id, msg, Logger.MSG_LOG);
+		wakeUp();
+		return true;
 	}
 	
 	/**
@@ -197,12 +261,10 @@ public abstract class NodeImpl
 	 */
 	public boolean sendMessage(RouteMessage msg)
 	{
-		try {
-			send(msg);
-		} catch (QueueFull e){
-			Logger.log("Outgoing Queue of Node " + this.id + " is Full",
+		if (!send(msg)) {
+			Logger.log("Outgoing Queue of Node ", this.id, " is Full",
 					Logger.ERROR_LOG);
-			GenericFactory.freeMessage(msg);
+			messageDropped(msg);
             return false;
 		}
         return true;
@@ -281,11 +343,16 @@ public abstract class NodeImpl
 	 * 
 	 * @return outgoing Queue of Messages
 	 */
-	public Queue outMessages() {
+	public Mailbox outMessages() {
 		return outgoing;
 	}
     
-    public Queue inMessages()
+    /**
+     * Returns the present incoming queue of this node
+     * 
+     * @return incoming Queue of Messages
+     */
+    public Mailbox inMessages()
     {
         return incoming;
     }
@@ -306,7 +373,7 @@ public abstract class NodeImpl
 	 */
 	protected RouteMessage nextMessage() {
 		processed++;
-		return (RouteMessage) incoming.remove();
+		return (RouteMessage) incoming.poll();
 	}
 
 	/**
@@ -356,6 +423,13 @@ public abstract class NodeImpl
 			throws java.io.IOException, ClassNotFoundException {
 		in.defaultReadObject();
 		init();
+		//schedules again the timer tasks at the shared TimingWheel
+		NodeTimer timer = null;
+		for (int i = 0; i < timers.size(); i++) {
+			timer = (NodeTimer)timers.get(i);
+			if (timer.scheduled) timer.schedule(timer.delay);
+			if (timer.due) dueTimers++;
+		}
 	}
 	
 	/**
@@ -369,6 +443,7 @@ public abstract class NodeImpl
 	
 	/**
 	 * Sets a task to be executed periodicly at each <b>period</b> of time.
+	 * The task is scheduled at the TimingWheel shared by all timers.
 	 * @see planet.commonapi.Node#setTimer(planet.util.timer.TimerTask, long, long)
 	 * @param task Job to do at each activation of the task.
 	 * @param firstTime First activation of the task, measured in steps or millis.
@@ -376,9 +451,10 @@ public abstract class NodeImpl
 	 * @param period Number of steps or millis to periodicly execute the task.
 	 */
 	public void setTimer(TimerTask task, long firstTime, long period) {
-		timer.add(new long[]{firstTime,period});
-		tasks.add(task);
-		timerNext = (firstTime<timerNext)?firstTime:timerNext;
+		NodeTimer timer = new NodeTimer(task,period);
+		timer.schedule(firstTime);
+		timers.add(timer);
+		wakeUp();
 	}
 	
 	/**
@@ -393,35 +469,195 @@ public abstract class NodeImpl
 	}
 	
 	/**
-	 * Evaluates if requires any timertask. 
+	 * Runs the due timer tasks, in order of registration. 
 	 *
 	 */
 	private void processTasks() {
-		timerCount++;
-		if (timerNext>timerCount) return;
-		long[] temp = null;
-		boolean evaluate;
-		int i=0;
-		while(i< timer.size()) {
-			evaluate = true;
-			temp = (long[])timer.get(i);
-			temp[0]=temp[0]-timerCount;
-			if (temp[0]<=0) {
-				((TimerTask)tasks.get(i)).run();
-				if (temp[1]==0) { //if period==0 ==> only once
-					timer.remove(i);
-					tasks.remove(i);
-					i--; //update index
-					evaluate = false;
-				} else {
-					temp[0]=temp[1];
-				}
+		if (dueTimers == 0) return;
+		dueTimers = 0;
+		NodeTimer timer = null;
+		for (int i = 0; i < timers.size(); i++) {
+			timer = (NodeTimer)timers.get(i);
+			if (!timer.due) continue;
+			timer.due = false;
+			if (!timer.task.isFinished())
+				timer.task.run();
+			if (!timer.isScheduled()) { //only once or finished
+				timers.remove(i);
+				i--; //update index
 			}
-			if (evaluate)
-				timerNext = (timerNext>temp[0])?temp[0]:timerNext;
-			i++;
 		}
-		timerCount=0;
+	}
+	
+	/**
+	 * Returns the number of steps until the next activation of any timer
+	 * task. Until then, this node only has work to do when it has messages.
+	 * @return The number of steps until the next activation of any timer
+	 * task, or Long.MAX_VALUE if there are no timer tasks.
+	 */
+	protected long getStepsToNextTask() {
+		long next = Long.MAX_VALUE;
+		long now = ControlTimer.getWheel().getTime();
+		NodeTimer timer = null;
+		for (int i = timers.size() - 1; i >= 0; i--) {
+			timer = (NodeTimer)timers.get(i);
+			if (timer.due) return 1;
+			if (timer.isScheduled())
+				next = Math.min(next, timer.entry.getDeadline() - now);
+			else
+				timers.remove(i); //finished
+		}
+		return (next == Long.MAX_VALUE) ? next : Math.max(1, next);
+	}
+	
+	/**
+	 * Cancels all timer tasks of this node at the shared TimingWheel,
+	 * when it is removed from the network. The TimerTasks are not modified.
+	 */
+	void stopTimers() {
+		for (int i = 0; i < timers.size(); i++)
+			((NodeTimer)timers.get(i)).stop();
+		timers.clear();
+		dueTimers = 0;
+	}
+	
+	/**
+	 * Saves the common state of this node into a network snapshot: its
+	 * role, its alive flag, its timers and its pending messages. The timers
+	 * are saved with the step of their deadline, or with their phase when
+	 * they are periodic, so the state of a node does not change while its
+	 * timers are waiting or only repeat their activations.
+	 * @param out Writer of the snapshot.
+	 * @throws java.io.IOException if occurs any problem writing the snapshot.
+	 */
+	void writeSnapshot(NetworkSnapshotWriter out) throws java.io.IOException {
+		out.writeBoolean(role);
+		out.writeBoolean(nodeHandle.isAlive());
+		out.writeInt(lastKey);
+		out.writeInt(timers.size());
+		NodeTimer timer = null;
+		long delay = 0;
+		for (int i = 0; i < timers.size(); i++) {
+			timer = (NodeTimer)timers.get(i);
+			boolean scheduled = timer.isScheduled();
+			out.writeLong(timer.period);
+			delay = scheduled ? timer.entry.getDeadline() - ControlTimer.getWheel().getTime() : 0;
+			if (scheduled && timer.period > 0 && delay <= timer.period)
+				out.writeLong(-1 - (out.getSteps() + delay) % timer.period); //phase
+			else
+				out.writeLong(scheduled ? out.getSteps() + delay : 0);
+			out.writeByte((scheduled ? NetworkSnapshotReader.SCHEDULED : 0) |
+					(timer.due ? NetworkSnapshotReader.DUE : 0) |
+					(timer.task.isFinished() ? NetworkSnapshotReader.FINISHED : 0));
+		}
+		writeMessages(out, incoming);
+		writeMessages(out, outgoing);
+	}
+	
+	/**
+	 * Saves the pending messages of the <b>queue</b>.
+	 * @param out Writer of the snapshot.
+	 * @param queue Incoming or outgoing queue.
+	 * @throws java.io.IOException if occurs any problem writing the snapshot.
+	 */
+	private void writeMessages(NetworkSnapshotWriter out, Mailbox queue) throws java.io.IOException {
+		Object[] msgs = queue.toArray();
+		out.writeInt(msgs.length);
+		for (int i = 0; i < msgs.length; i++)
+			out.writeMessage((RouteMessage)msgs[i]);
+	}
+	
+	/**
+	 * Loads the common state of this node from a network snapshot. The
+	 * timers registered by the constructor are scheduled again at their
+	 * saved steps by restoreTimers(), when the whole network is loaded.
+	 * @param in Reader of the snapshot.
+	 * @throws java.io.IOException if the timers do not match or occurs any
+	 * problem reading the snapshot.
+	 */
+	void readSnapshot(NetworkSnapshotReader in) throws java.io.IOException {
+		role = in.readBoolean();
+		nodeHandle.setAlive(in.readBoolean());
+		lastKey = in.readInt();
+		int count = in.readInt();
+		if (count != timers.size())
+			throw new java.io.IOException("The node [" + id + "] has [" + timers.size() +
+					"] timers and the snapshot [" + count + "].");
+		NodeTimer timer = null;
+		for (int i = 0; i < count; i++) {
+			timer = (NodeTimer)timers.get(i);
+			timer.stop();
+			timer.period = in.readLong();
+			timer.delay = in.readLong(); //step or phase until restoreTimers()
+			int flags = in.readByte();
+			timer.scheduled = (flags & NetworkSnapshotReader.SCHEDULED) != 0;
+			boolean due = (flags & NetworkSnapshotReader.DUE) != 0;
+			if (due != timer.due) {
+				timer.due = due;
+				dueTimers += due ? 1 : -1;
+			}
+			if ((flags & NetworkSnapshotReader.FINISHED) != 0) timer.task.cancel();
+		}
+		incoming.clear();
+		count = in.readInt();
+		for (int i = 0; i < count; i++)
+			incoming.offer(in.readMessage());
+		outgoing.clear();
+		count = in.readInt();
+		for (int i = 0; i < count; i++)
+			outgoing.offer(in.readMessage());
+	}
+	
+	/**
+	 * Schedules again the periodic timers at a random step of their period,
+	 * for the nodes joined at the same step into a stabilized network.
+	 * @param random Random generator of the network.
+	 */
+	void spreadTimers(Random random) {
+		NodeTimer timer = null;
+		for (int i = 0; i < timers.size(); i++) {
+			timer = (NodeTimer)timers.get(i);
+			if (timer.period <= 0 || !timer.isScheduled()) continue;
+			timer.stop();
+			timer.schedule(1 + random.nextInt((int)timer.period));
+		}
+	}
+	
+	/**
+	 * Schedules the timers loaded from a network snapshot at their saved
+	 * steps.
+	 * @param steps Number of simulated steps of the loaded network.
+	 */
+	void restoreTimers(int steps) {
+		NodeTimer timer = null;
+		long delay = 0;
+		for (int i = 0; i < timers.size(); i++) {
+			timer = (NodeTimer)timers.get(i);
+			if (!timer.scheduled) continue;
+			if (timer.delay < 0) {
+				//next step with the phase of the periodic timer
+				delay = (-1 - timer.delay - steps) % timer.period;
+				if (delay <= 0) delay += timer.period;
+			} else
+				delay = timer.delay - steps;
+			timer.schedule(delay);
+		}
+	}
+	
+	/**
+	 * Shows if this node has messages at its incoming or outgoing queue.
+	 * @return true if any queue of this node is not empty.
+	 */
+	protected boolean hasPendingMessages() {
+		return !incoming.isEmpty() || !outgoing.isEmpty();
+	}
+	
+	/**
+	 * Informs to the <b>activeNetwork</b>, if any, that this node has new
+	 * work to do.
+	 */
+	private void wakeUp() {
+		if (activeNetwork != null) activeNetwork.wakeUp(this);
 	}
 	
 	/**
@@ -604,13 +840,12 @@ public abstract class NodeImpl
 				if (endpoint.forward(msg))
 				{
 					msg.setMode(refreshMode);
-					try {
-						send(msg);
+					if (send(msg)) {
 						Results.updateHopsMsg(msg.getSource().getId(),
 								msg.getKey());
-					} catch (QueueFull e) {
-						Logger.log("Outgoing Queue of Node " + this.id + " is Full", Logger.ERROR_LOG);
-						GenericFactory.freeMessage(msg);
+					} else {
+						Logger.log("Outgoing Queue of Node ", this.id, " is Full", Logger.ERROR_LOG);
+						messageDropped(msg);
 					}
 				} else
                 {
@@ -624,13 +859,12 @@ public abstract class NodeImpl
 				if (endpoint.forward(msg))
 				{
 					msg.setMode(requestMode);
-					try {
-						send(msg);
+					if (send(msg)) {
 						Results.updateHopsMsg(msg.getSource().getId(),
 								msg.getKey());
-					} catch (QueueFull e) {
-						Logger.log("Outgoing Queue of Node " + this.id + " is Full", Logger.ERROR_LOG);
-						GenericFactory.freeMessage(msg);
+					} else {
+						Logger.log("Outgoing Queue of Node ", this.id, " is Full", Logger.ERROR_LOG);
+						messageDropped(msg);
 					}
 				} else 
                 {
@@ -665,7 +899,112 @@ public abstract class NodeImpl
      */
     public Node setValues(Id newId) throws InitializationException {
         this.id = newId;
+        keyPrefix = null;
         nodeHandle = GenericFactory.buildNodeHandle(id, true);
         return this;
     }
+	
+	/**
+	 * Timer task of this node at the shared TimingWheel. When it is due,
+	 * it only marks itself and wakes up the node, so its inner TimerTask is
+	 * run at the beginning of the next process of the node.
+	 */
+	private class NodeTimer implements TimerTask {
+		/**
+		 * Job to do at each activation.
+		 */
+		private TimerTask task;
+		/**
+		 * Number of steps between activations, or zero for only once.
+		 */
+		private long period;
+		/**
+		 * Number of steps until the next activation, saved with the node.
+		 */
+		private long delay = 0;
+		/**
+		 * Shows if it is scheduled, saved with the node.
+		 */
+		private boolean scheduled = false;
+		/**
+		 * Shows if it is due and waiting for the next process.
+		 */
+		private boolean due = false;
+		/**
+		 * Entry at the shared TimingWheel.
+		 */
+		private transient TimingWheel.Entry entry = null;
+		
+		/**
+		 * Builds a not scheduled timer task.
+		 * @param task Job to do at each activation.
+		 * @param period Number of steps between activations, or zero.
+		 */
+		private NodeTimer(TimerTask task, long period) {
+			this.task = task;
+			this.period = period;
+		}
+		
+		/**
+		 * Schedules this timer task at the shared TimingWheel.
+		 * @param delay Number of steps until the first activation.
+		 */
+		private void schedule(long delay) {
+			entry = ControlTimer.getWheel().schedule(this,delay,period);
+		}
+		
+		/**
+		 * Cancels this timer task at the shared TimingWheel.
+		 */
+		private void stop() {
+			ControlTimer.getWheel().cancel(entry);
+		}
+		
+		/**
+		 * Shows if this timer task is waiting for any activation.
+		 * @return true if it is scheduled at the shared TimingWheel.
+		 */
+		private boolean isScheduled() {
+			return entry != null && entry.isScheduled();
+		}
+		
+		/**
+		 * Marks this timer task as due and wakes up the node.
+		 * @see planet.util.timer.TimerTask#run()
+		 */
+		public void run() {
+			if (!due) {
+				due = true;
+				dueTimers++;
+			}
+			wakeUp();
+		}
+		
+		/**
+		 * @see planet.util.timer.TimerTask#cancel()
+		 */
+		public boolean cancel() {
+			return task.cancel();
+		}
+		
+		/**
+		 * @see planet.util.timer.TimerTask#isFinished()
+		 */
+		public boolean isFinished() {
+			return task.isFinished();
+		}
+		
+		/**
+		 * Saves the number of steps until the next activation, relative
+		 * to the current step.
+		 * @param out ObjectOutputStream to save the actual state.
+		 * @throws java.io.IOException if occurs any problem during serialization.
+		 */
+		private void writeObject(java.io.ObjectOutputStream out)
+				throws java.io.IOException {
+			scheduled = isScheduled();
+			delay = scheduled ? entry.getDeadline() - ControlTimer.getWheel().getTime() : 0;
+			out.defaultWriteObject();
+		}
+	}
 }
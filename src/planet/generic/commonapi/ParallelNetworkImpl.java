@@ -0,0 +1,477 @@
+package planet.generic.commonapi;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import planet.commonapi.Node;
+import planet.commonapi.NodeHandle;
+import planet.commonapi.RouteMessage;
+import planet.simulate.Globals;
+import planet.simulate.LogBuffer;
+import planet.simulate.Logger;
+import planet.util.Mailbox;
+import planet.util.Properties;
+
+/**
+ * Network implementation that runs each simulation step over all the
+ * available processors. The ring is split in contiguous partitions of
+ * nodes (in ring order) and each partition is handled by a fork-join
+ * worker. The step barrier of NetworkImpl is kept: all nodes are processed,
+ * then all messages are delivered and finally the failed nodes are removed.
+ * <br><br>
+ * The messages are delivered in two phases to reproduce the serial
+ * arrival order: each source partition first drains its outgoing queues
+ * into per target partition buffers, and then each target partition
+ * receives its buffers following the ring order of the sources. In this way,
+ * every incoming queue contains the same messages, in the same order,
+ * than with the serial NetworkImpl.
+ * <br><br>
+ * It is activated with the FACTORIES_NETWORK property:
+ * <pre>
+ * FACTORIES_NETWORK = planet.generic.commonapi.ParallelNetworkImpl
+ * </pre>
+ * Overlays with behaviours share the behaviours pool and its random
+ * generator between all the nodes, so for them the processing of nodes
+ * remains serial and only the message delivery is parallelized.
+ * <br><br>
+ * The results are the same than with the serial NetworkImpl for the same
+ * events: the nodes generate the keys of their messages with their own
+ * sequence (see NodeImpl.generateKey()), and the workers defer their logs
+ * into a LogBuffer per partition, tagged with the position of the node or
+ * the message in the serial simulation. The logs of all partitions are
+ * written in that order after each phase. Only the counters of the
+ * RouteMessage pool depend on the thread scheduling.
+ *
+ * @see planet.generic.commonapi.NetworkImpl
+ */
+public class ParallelNetworkImpl extends NetworkImpl {
+	/**
+	 * Minimum number of nodes of a partition. Smaller networks are
+	 * simulated serially.
+	 */
+	public static final int MIN_PARTITION_SIZE = 128;
+	/**
+	 * Phase of the step: processing of nodes.
+	 */
+	private static final int PROCESS = 0;
+	/**
+	 * Phase of the step: draining of outgoing queues.
+	 */
+	private static final int COLLECT = 1;
+	/**
+	 * Phase of the step: delivering to incoming queues.
+	 */
+	private static final int DELIVER = 2;
+
+	/**
+	 * Worker threads. It is built the first time it is required, also
+	 * after a deserialization.
+	 */
+	private transient ForkJoinPool pool = null;
+	/**
+	 * Nodes of the current step in ring order.
+	 */
+	private transient Node[] stepNodes = null;
+	/**
+	 * NodeHandles of the current step in ring order.
+	 */
+	private transient NodeHandle[] stepHandles = null;
+	/**
+	 * Number of nodes in the current step.
+	 */
+	private transient int stepSize = 0;
+	/**
+	 * Number of nodes of every partition (except the last one).
+	 */
+	private transient int partitionSize = 0;
+	/**
+	 * Number of partitions in the current step.
+	 */
+	private transient int partitions = 0;
+	/**
+	 * Shows which nodes have failed or leaved during the processing.
+	 */
+	private transient boolean[] failed = null;
+	/**
+	 * Result of the last phase for each partition.
+	 */
+	private transient boolean[] toContinue = null;
+	/**
+	 * Messages to deliver, indexed by [source partition][target partition].
+	 */
+	private transient Deliveries[][] deliveries = null;
+	/**
+	 * Deferred logs of each partition: the first <b>partitions</b> buffers
+	 * for the processing and the draining of outgoing queues, and the next
+	 * ones for the delivering to incoming queues.
+	 */
+	private transient LogBuffer[] logs = null;
+
+	/**
+	 * Initialize the network with no nodes and wihtout simulation steps.
+	 */
+	public ParallelNetworkImpl() {
+		super();
+	}
+
+	/**
+	 * Process all nodes one step at this network, with a partition of
+	 * nodes per worker.
+	 * @return true if continue the simulation. false in other case.
+	 */
+	protected boolean process() {
+		buildPartitions();
+		if (partitions <= 1 || Properties.overlayWithBehaviours)
+			return super.process();
+
+		Arrays.fill(failed, 0, stepSize, false);
+		boolean cont = runPhase(PROCESS);
+		Logger.writeDeferred(logs, partitions);
+		//in ring order, as the serial implementation
+		for (int i = 0; i < stepSize; i++) {
+			if (failed[i])
+				toRemove.add(stepHandles[i]);
+		}
+		return cont;
+	}
+
+	/**
+	 * Sends all message pending to be delivered by all nodes, with a
+	 * partition of nodes per worker. The BACKPRESSURE policy is not
+	 * supported by the parallel delivery, because the rejected messages
+	 * must remain at the head of the queues of their sources, and the
+	 * sources are drained before the delivery. With it, the messages are
+	 * sent serially.
+	 */
+	protected boolean sendMessages() {
+		if (partitions <= 1 || Properties.simulatorQueuePolicy == Mailbox.BACKPRESSURE)
+			return super.sendMessages();
+		boolean cont = runPhase(COLLECT);
+		runPhase(DELIVER);
+		Logger.writeDeferred(logs, 2 * partitions);
+		return cont;
+	}
+
+	/**
+	 * Builds the ring ordered snapshot of the nodes for the current step and
+	 * splits it in partitions.
+	 */
+	private void buildPartitions() {
+		int size = nodes.size();
+		if (stepNodes == null || stepNodes.length < size) {
+			int capacity = size + (size >> 2) + 1;
+			stepNodes = new Node[capacity];
+			stepHandles = new NodeHandle[capacity];
+			failed = new boolean[capacity];
+		} else if (size < stepSize) {
+			//do not retain removed nodes
+			Arrays.fill(stepNodes, size, stepSize, null);
+			Arrays.fill(stepHandles, size, stepSize, null);
+		}
+		Iterator it = nodes.entrySet().iterator();
+		Map.Entry entry = null;
+		int i = 0;
+		while (it.hasNext()) {
+			entry = (Map.Entry) it.next();
+			stepHandles[i] = (NodeHandle) entry.getKey();
+			stepNodes[i] = (Node) entry.getValue();
+			i++;
+		}
+		stepSize = size;
+
+		int maxPartitions = getPool().getParallelism() * 4;
+		partitions = Math.min(maxPartitions, size / MIN_PARTITION_SIZE);
+		if (partitions <= 1) {
+			partitions = 1;
+			partitionSize = size;
+			return;
+		}
+		partitionSize = (size + partitions - 1) / partitions;
+		partitions = (size + partitionSize - 1) / partitionSize;
+
+		if (deliveries == null || deliveries.length != partitions) {
+			deliveries = new Deliveries[partitions][partitions];
+			for (int p = 0; p < partitions; p++)
+				for (int q = 0; q < partitions; q++)
+					deliveries[p][q] = new Deliveries();
+			toContinue = new boolean[partitions];
+			logs = new LogBuffer[2 * partitions];
+			for (int p = 0; p < logs.length; p++)
+				logs[p] = new LogBuffer();
+		}
+	}
+
+	/**
+	 * Returns the pool of workers, building it if necessary.
+	 * @return The pool of workers.
+	 */
+	private ForkJoinPool getPool() {
+		if (pool == null)
+			pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		return pool;
+	}
+
+	/**
+	 * Runs the <b>phase</b> for all partitions and waits until all them
+	 * have finished.
+	 * @param phase Phase to run.
+	 * @return The logical or of the results of all partitions.
+	 */
+	private boolean runPhase(int phase) {
+		getPool().invoke(new PhaseTask(phase, 0, partitions));
+		boolean cont = false;
+		for (int p = 0; p < partitions; p++)
+			cont = cont | toContinue[p];
+		return cont;
+	}
+
+	/**
+	 * Processes all nodes of the partition <b>p</b>. The logs are deferred
+	 * with the position of the node in the ring as order.
+	 * @param p Partition to process.
+	 */
+	private void processPartition(int p) {
+		int end = Math.min(stepSize, (p + 1) * partitionSize);
+		boolean cont = false;
+		Node aNode = null;
+		LogBuffer log = logs[p];
+		Logger.defer(log);
+		try {
+			for (int i = p * partitionSize; i < end; i++) {
+				log.setOrder(i);
+				aNode = stepNodes[i];
+				cont = cont | aNode.process(this.totalSteps);
+				failed[i] = !aNode.isAlive();
+			}
+		} finally {
+			Logger.defer(null);
+		}
+		toContinue[p] = cont;
+	}
+
+	/**
+	 * Drains the outgoing queues of all nodes of the partition <b>p</b>,
+	 * leaving each message in the buffer of the partition of its
+	 * recipient. If the target of any message is not found, it is returned
+	 * to its source with mode sets to Globals.ERROR. Each message is tagged
+	 * with its position in the serial delivery, which is used as order of
+	 * the deferred logs.
+	 * @param p Partition to drain.
+	 * @see planet.simulate.Globals Globals
+	 */
+	private void collectPartition(int p) {
+		int end = Math.min(stepSize, (p + 1) * partitionSize);
+		Deliveries[] row = deliveries[p];
+		boolean cont = false;
+		Mailbox messages = null;
+		RouteMessage aMessage = null;
+		NodeHandle target = null;
+		int index = 0;
+		int processed = 0;
+		int order = 0;
+		LogBuffer log = logs[p];
+		Logger.defer(log);
+		try {
+			for (int i = p * partitionSize; i < end; i++) {
+				messages = stepNodes[i].outMessages();
+				cont = cont | (messages == null || messages.size() > 0);
+				if (messages == null) continue;
+
+				processed = 0;
+				while (!messages.isEmpty() && processed < Properties.simulatorProcessedMessages) {
+					aMessage = (RouteMessage) messages.poll();
+					if (aMessage == null) break;
+					log.setOrder(order(p, order));
+					target = aMessage.getNextHopHandle();
+					index = (target == null) ? -1 : indexOf(target);
+					if (index < 0) {
+						Logger.log("Target of message [", aMessage, "] is not found.", Logger.MSG_LOG);
+						index = indexOf(aMessage.getSource());
+						if (index >= 0) {
+							aMessage.setMode(Globals.ERROR);
+							NodeHandle source = aMessage.getSource();
+							aMessage.setSource(aMessage.getDestination());
+							aMessage.setDestination(source);
+							aMessage.setNextHopHandle(source);
+						}
+					}
+					if (index >= 0)
+						row[index / partitionSize].add(index, aMessage, order);
+					order++;
+					processed++;
+				}
+			}
+		} finally {
+			Logger.defer(null);
+		}
+		toContinue[p] = cont;
+	}
+
+	/**
+	 * Puts into the incoming queues of the nodes of the partition <b>q</b>
+	 * all the messages addressed to them, following the ring order of their
+	 * sources. The rejected messages are released, so it cannot be used with
+	 * the BACKPRESSURE policy.
+	 * @param q Partition to deliver.
+	 * @throws IllegalStateException if an incoming queue with the
+	 * BACKPRESSURE policy rejects a message.
+	 */
+	private void deliverPartition(int q) {
+		Deliveries buffer = null;
+		int index = 0;
+		LogBuffer log = logs[partitions + q];
+		Logger.defer(log);
+		try {
+			for (int p = 0; p < partitions; p++) {
+				buffer = deliveries[p][q];
+				for (int k = 0; k < buffer.size; k++) {
+					log.setOrder(order(p, buffer.orders[k]));
+					index = buffer.targets[k];
+					if (!stepNodes[index].receive(buffer.messages[k])) {
+						//both queues of a node have the same policy
+						if (stepNodes[index].outMessages().getPolicy() == Mailbox.BACKPRESSURE)
+							throw new IllegalStateException("The BACKPRESSURE policy requires the serial delivery");
+						Logger.log("Incoming queue of Node ", stepHandles[index], " is full", Logger.EVENT_LOG);
+						((NodeImpl) stepNodes[index]).messageDropped(buffer.messages[k]);
+					}
+				}
+				buffer.clear();
+			}
+		} finally {
+			Logger.defer(null);
+		}
+		toContinue[q] = false;
+	}
+
+	/**
+	 * Returns the position in the serial delivery of the message number
+	 * <b>k</b> drained from the partition <b>p</b>.
+	 * @param p Source partition.
+	 * @param k Number of the message in the partition.
+	 * @return The order of the logs of the message.
+	 */
+	private static long order(int p, int k) {
+		return ((long) p << 32) | k;
+	}
+
+	/**
+	 * Returns the position in the ring of the node with the <b>handle</b>.
+	 * @param handle NodeHandle to look for.
+	 * @return The position of the node in the current step, or a negative
+	 * value if it does not exist.
+	 */
+	private int indexOf(NodeHandle handle) {
+		return Arrays.binarySearch(stepHandles, 0, stepSize, handle);
+	}
+
+	/**
+	 * Fork-join task that runs a phase of the step over a range of
+	 * partitions, splitting it in halves until a single partition remains.
+	 */
+	private class PhaseTask extends RecursiveAction {
+		/**
+		 * Phase to run.
+		 */
+		private int phase;
+		/**
+		 * First partition of the range.
+		 */
+		private int from;
+		/**
+		 * Last partition of the range (exclusive).
+		 */
+		private int to;
+
+		/**
+		 * Builds a task for the partitions in [<b>from</b>, <b>to</b>).
+		 * @param phase Phase to run.
+		 * @param from First partition of the range.
+		 * @param to Last partition of the range (exclusive).
+		 */
+		public PhaseTask(int phase, int from, int to) {
+			this.phase = phase;
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 * Runs the phase over the range of partitions.
+		 */
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new PhaseTask(phase, from, middle),
+						new PhaseTask(phase, middle, to));
+				return;
+			}
+			switch (phase) {
+			case PROCESS:
+				processPartition(from);
+				break;
+			case COLLECT:
+				collectPartition(from);
+				break;
+			default:
+				deliverPartition(from);
+			}
+		}
+	}
+
+	/**
+	 * Growable buffer of messages with the position in the ring of
+	 * their recipients and their number in the source partition.
+	 */
+	private static class Deliveries {
+		/**
+		 * Positions in the ring of the recipients.
+		 */
+		private int[] targets = new int[16];
+		/**
+		 * Messages to deliver.
+		 */
+		private RouteMessage[] messages = new RouteMessage[16];
+		/**
+		 * Number of each message in its source partition.
+		 */
+		private int[] orders = new int[16];
+		/**
+		 * Number of messages in the buffer.
+		 */
+		private int size = 0;
+
+		/**
+		 * Appends the message <b>msg</b> addressed to the node at <b>target</b>.
+		 * @param target Position in the ring of the recipient.
+		 * @param msg Message to deliver.
+		 * @param order Number of the message in its source partition.
+		 */
+		public void add(int target, RouteMessage msg, int order) {
+			if (size == targets.length) {
+				int[] newTargets = new int[size << 1];
+				RouteMessage[] newMessages = new RouteMessage[size << 1];
+				int[] newOrders = new int[size << 1];
+				System.arraycopy(targets, 0, newTargets, 0, size);
+				System.arraycopy(messages, 0, newMessages, 0, size);
+				System.arraycopy(orders, 0, newOrders, 0, size);
+				targets = newTargets;
+				messages = newMessages;
+				orders = newOrders;
+			}
+			targets[size] = target;
+			messages[size] = msg;
+			orders[size] = order;
+			size++;
+		}
+
+		/**
+		 * Empties the buffer, releasing the references to the messages.
+		 */
+		public void clear() {
+			Arrays.fill(messages, 0, size, null);
+			size = 0;
+		}
+	}
+}
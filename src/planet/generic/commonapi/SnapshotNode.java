@@ -0,0 +1,33 @@
+package planet.generic.commonapi;
+
+import java.io.IOException;
+
+/**
+ * Nodes whose overlay state can be saved into a network snapshot, with
+ * the compact binary format of the NetworkSnapshotWriter. The common
+ * state of the NodeImpl (timers and pending messages) is saved by the
+ * writer itself, so the implementations only save their routing state.
+ * <br><br>
+ * When any node of a network does not implement this interface, the
+ * network is saved with the Java serialization.
+ * @see planet.generic.commonapi.NetworkSnapshotWriter
+ * @see planet.generic.commonapi.NetworkSnapshotReader
+ */
+public interface SnapshotNode {
+
+    /**
+     * Saves the overlay state of this node.
+     * @param out Writer of the snapshot.
+     * @throws IOException if occurs any problem writing the snapshot.
+     */
+    public void writeState(NetworkSnapshotWriter out) throws IOException;
+
+    /**
+     * Loads the overlay state of this node, in the same order as it has
+     * been saved by writeState(). The node has been built with its Id
+     * before, as a new node.
+     * @param in Reader of the snapshot.
+     * @throws IOException if occurs any problem reading the snapshot.
+     */
+    public void readState(NetworkSnapshotReader in) throws IOException;
+}
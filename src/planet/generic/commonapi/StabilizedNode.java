@@ -0,0 +1,36 @@
+package planet.generic.commonapi;
+
+import java.util.Random;
+
+/**
+ * Nodes whose routing state can be computed directly from the sorted ring
+ * of all nodes, to build a network already stabilized without simulating
+ * the joining process. The state must be the same as the one reached by
+ * the overlay protocol after the stabilization.
+ * <br><br>
+ * The joinStabilized() method is invoked in parallel for the nodes of the
+ * ring, so it can only modify the state of the node itself. Then, the
+ * linkStabilized() method is invoked sequentially for all nodes, in ring
+ * order, to set the links that require the state of other nodes.
+ * @see planet.generic.commonapi.StabilizedRing
+ * @see planet.generic.commonapi.NetworkImpl#joinStabilizedNodes(int)
+ */
+public interface StabilizedNode {
+
+    /**
+     * Sets the local routing state of this node as in a stabilized ring.
+     * @param ring The sorted ring of all nodes.
+     * @param position Position of this node at the <b>ring</b>.
+     * @param random Random generator of this thread.
+     */
+    public void joinStabilized(StabilizedRing ring, int position, Random random);
+
+    /**
+     * Sets the links of this node that require the state of other nodes.
+     * It is invoked after the joinStabilized() of all nodes.
+     * @param ring The sorted ring of all nodes.
+     * @param position Position of this node at the <b>ring</b>.
+     * @param random Random generator of the network.
+     */
+    public void linkStabilized(StabilizedRing ring, int position, Random random);
+}
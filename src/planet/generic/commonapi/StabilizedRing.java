@@ -0,0 +1,196 @@
+package planet.generic.commonapi;
+
+import java.util.Random;
+
+import planet.commonapi.Id;
+import planet.commonapi.Node;
+import planet.commonapi.NodeHandle;
+import planet.commonapi.exception.InitializationException;
+
+/**
+ * The sorted ring of all nodes of a network that is built already
+ * stabilized. It offers the positions of the nodes by Id, so the
+ * StabilizedNode implementations compute their routing state with binary
+ * searches on the ring.
+ * <br><br>
+ * The ring is divided into chunks of CHUNK_SIZE nodes, each one with its own
+ * random generator, and the chunks are joined in parallel by one thread per
+ * available processor. The random generators are seeded in order from the
+ * random generator of the network, so the result does not depend on the
+ * number of threads.
+ * @see planet.generic.commonapi.StabilizedNode
+ */
+public class StabilizedRing {
+
+    /**
+     * Number of nodes of each chunk joined by a thread.
+     */
+    public static final int CHUNK_SIZE = 1024;
+
+    /**
+     * Nodes sorted by Id.
+     */
+    private Node[] nodes;
+    /**
+     * Local NodeHandles of the <b>nodes</b>.
+     */
+    private NodeHandle[] handles;
+    /**
+     * Random seed of each chunk.
+     */
+    private long[] seeds;
+    /**
+     * Next chunk to be joined.
+     */
+    private int nextChunk = 0;
+    /**
+     * First error thrown by any thread, or null.
+     */
+    private RuntimeException error = null;
+
+    /**
+     * Builds the ring of the <b>nodes</b>.
+     * @param nodes Nodes sorted by Id. All of them must implement the
+     * StabilizedNode interface.
+     */
+    public StabilizedRing(Node[] nodes) {
+        this.nodes = nodes;
+        handles = new NodeHandle[nodes.length];
+        for (int i = 0; i < nodes.length; i++)
+            handles[i] = nodes[i].getLocalHandle();
+    }
+
+    /**
+     * Returns the number of nodes of the ring.
+     * @return The number of nodes.
+     */
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * Returns the node at the <b>position</b>, modulo the ring size, so the
+     * positions before the first node or after the last one turn around.
+     * @param position Position at the ring.
+     * @return The node at the position.
+     */
+    public Node getNode(int position) {
+        return nodes[index(position)];
+    }
+
+    /**
+     * Returns the local NodeHandle of the node at the <b>position</b>,
+     * modulo the ring size.
+     * @param position Position at the ring.
+     * @return The NodeHandle of the node at the position.
+     */
+    public NodeHandle getHandle(int position) {
+        return handles[index(position)];
+    }
+
+    /**
+     * Finds the position of the successor of the <b>key</b>: the first node
+     * whose Id is equal to or greater than the key, or the first node of the
+     * ring if there is not any.
+     * @param key Id to look for.
+     * @return The position of the node responsible of the key.
+     */
+    public int findSuccessor(Id key) {
+        int low = 0;
+        int high = handles.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (handles[middle].getId().compareTo(key) < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return (low == handles.length) ? 0 : low;
+    }
+
+    /**
+     * Joins all nodes: runs the joinStabilized() of the nodes in parallel
+     * and then the linkStabilized() of all nodes in ring order.
+     * @param random Random generator of the network.
+     * @throws InitializationException if any node throws an exception or
+     * the joining process is interrupted.
+     */
+    public void join(Random random) throws InitializationException {
+        seeds = new long[(nodes.length + CHUNK_SIZE - 1) / CHUNK_SIZE];
+        for (int i = 0; i < seeds.length; i++)
+            seeds[i] = random.nextLong();
+        nextChunk = 0;
+        error = null;
+
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), seeds.length);
+        if (threads <= 1)
+            joinChunks();
+        else {
+            Thread[] workers = new Thread[threads];
+            for (int i = 0; i < threads; i++) {
+                workers[i] = new Thread("StabilizedRing-" + i) {
+                    public void run() {
+                        joinChunks();
+                    }
+                };
+                workers[i].start();
+            }
+            try {
+                for (int i = 0; i < threads; i++)
+                    workers[i].join();
+            } catch (InterruptedException e) {
+                throw new InitializationException("The joining of the stabilized ring has been interrupted.", e);
+            }
+        }
+        if (error != null)
+            throw new InitializationException("Cannot join the nodes of the stabilized ring.", error);
+
+        for (int i = 0; i < nodes.length; i++)
+            ((StabilizedNode)nodes[i]).linkStabilized(this, i, random);
+    }
+
+    /**
+     * Joins chunks of nodes until all of them have been joined.
+     */
+    private void joinChunks() {
+        try {
+            int chunk;
+            while ((chunk = takeChunk()) >= 0) {
+                Random random = new Random(seeds[chunk]);
+                int end = Math.min(nodes.length, (chunk + 1) * CHUNK_SIZE);
+                for (int i = chunk * CHUNK_SIZE; i < end; i++)
+                    ((StabilizedNode)nodes[i]).joinStabilized(this, i, random);
+            }
+        } catch (RuntimeException e) {
+            setError(e);
+        }
+    }
+
+    /**
+     * Takes the next chunk to be joined.
+     * @return The index of the chunk, or -1 if all of them have been taken
+     * or any thread has failed.
+     */
+    private synchronized int takeChunk() {
+        if (error != null || nextChunk == seeds.length) return -1;
+        return nextChunk++;
+    }
+
+    /**
+     * Keeps the first error thrown by any thread.
+     * @param e The thrown exception.
+     */
+    private synchronized void setError(RuntimeException e) {
+        if (error == null) error = e;
+    }
+
+    /**
+     * Returns the index of the <b>position</b> modulo the ring size.
+     * @param position Any position.
+     * @return The index at the nodes array.
+     */
+    private int index(int position) {
+        position %= nodes.length;
+        return (position < 0) ? position + nodes.length : position;
+    }
+}
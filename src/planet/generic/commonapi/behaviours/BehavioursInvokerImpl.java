@@ -11,6 +11,10 @@ import planet.commonapi.behaviours.BehavioursInvoker;
  * This class is used to invoke a behaviour. It acts 
  * like a facade calling a behaviour only when several preconditions are met. 
  * Pre-conditions on this default implementation are probability-based.  
+ * The probability is converted once to a threshold on the unsigned 32
+ * bits random integers, so each invocation draws only one random int, and
+ * none when the probability is 1. Each invoker counts its invocations and
+ * how many of them have been dispatched to the behaviour.
  * @author <a href="mailto: marc.sanchez@urv.net">Marc Sanchez</a>
  * @author <a href="mailto: jordi.pujol@estudiants.urv.es">Jordi Pujol</a>
  */
@@ -27,6 +31,24 @@ public class BehavioursInvokerImpl implements BehavioursInvoker {
 	 * Randomizer.
 	 */
 	private java.util.Random random = null;
+	/**
+	 * Threshold for the unsigned random ints: the behaviour is dispatched
+	 * when the random int is lower than it.
+	 */
+	private long threshold;
+	/**
+	 * Number of invocations.
+	 */
+	protected long invocations = 0;
+	/**
+	 * Number of invocations dispatched to the behaviour.
+	 */
+	protected long dispatched = 0;
+	
+	/**
+	 * Threshold of the behaviours that are always dispatched.
+	 */
+	private static final long ALWAYS = 1L << 32;
 
 	/**
      * Builds an uninitialized BehavioursInvoker. Requires to invoke
@@ -45,6 +67,11 @@ public class BehavioursInvokerImpl implements BehavioursInvoker {
 		this.beh = behaviour;
 		this.prob = probability;
         this.random = new Random();
+        if (probability >= 1.0) threshold = ALWAYS;
+        else if (probability <= 0.0) threshold = 0;
+        else threshold = (long) (probability * ALWAYS);
+        invocations = 0;
+        dispatched = 0;
         return this;
 	}
     
@@ -57,8 +84,10 @@ public class BehavioursInvokerImpl implements BehavioursInvoker {
 	 * was finally made.
 	 */
 	public boolean invoke(RouteMessage msg, Node node) {
-		if (random.nextDouble() <= prob)
+		invocations++;
+		if (threshold == ALWAYS || (random.nextInt() & 0xffffffffL) < threshold)
         {
+            dispatched++;
             beh.onMessage(msg,node);
             return true;
         }
@@ -71,6 +100,18 @@ public class BehavioursInvokerImpl implements BehavioursInvoker {
 	public String getName() {
 		return beh.getName();
 	}
+	/**
+	 * @return Returns the number of invocations.
+	 */
+	public long getInvocations() {
+		return invocations;
+	}
+	/**
+	 * @return Returns the number of invocations dispatched to the behaviour.
+	 */
+	public long getDispatched() {
+		return dispatched;
+	}
 	/**
 	 * @return Returns a string representation of the behaviour. In general, the toString
 	 * method returns a string that "textually represents" this behaviour. The result should 
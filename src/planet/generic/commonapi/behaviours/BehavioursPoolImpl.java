@@ -1,6 +1,8 @@
 package planet.generic.commonapi.behaviours;
 
 import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.Vector;
 
 import planet.commonapi.Node;
@@ -26,6 +28,13 @@ import planet.util.Properties;
  * Then, a message interceptor is build up and is ready to invoke  behaviours
  * when a message pattern matches to those provided by <b> Behaviour.properties </b>
  * file.  
+ * <br><br>
+ * The mapping is compiled once, at construction, into flat arrays of
+ * invokers, one per role, locality, type and mode, so the dispatch of each
+ * message only computes the array index. When the debug property is set,
+ * the compiled invokers are wrapped to print each invocation, so the debug
+ * output does not cost anything otherwise. The BehavioursInvokerImpl count
+ * their invocations, and getProfile() adds them up by behaviour.
  * @author <a href="mailto: marc.sanchez@urv.net">Marc Sanchez</a>
  * @author <a href="mailto: jordi.pujol@estudiants.urv.es">Jordi Pujol</a>
  * Date: 10/10/2004   
@@ -94,14 +103,23 @@ public class BehavioursPoolImpl implements BehavioursPool {
 	 * Number of behaviour's slots: numberTypes * numberModes;
 	 */
 	protected int behSlots;
-    /** 
-     * Auxiliar Vector to use in the onMessage() method.
-     */
-    protected Vector behaviours = null;
-    /**
-     * Auxiliar Iterator to use in the onMessage() method.
-     */
-    protected Iterator behIt    = null;
+	/**
+	 * Compiled form of <b>beh</b>: the invokers of each queue and slot, at
+	 * the position queue * behSlots + slot.
+	 */
+	protected BehavioursInvoker[][] dispatch;
+	/**
+	 * Number of RouteMessage types.
+	 */
+	protected int numberOfTypes;
+	/**
+	 * Number of RouteMessage modes.
+	 */
+	protected int numberOfModes;
+	/**
+	 * Compiled form of an empty slot.
+	 */
+	private static final BehavioursInvoker[] NO_INVOKERS = new BehavioursInvoker[0];
     
 	/**
 	 * Behaviour's Property: Always modifier applied to a behaviour ignores the
@@ -148,13 +166,78 @@ public class BehavioursPoolImpl implements BehavioursPool {
      */
 	public BehavioursPoolImpl() throws InitializationException {
        filter = GenericFactory.buildBehavioursFilter();
-       behSlots =  Properties.behavioursNumberOfTypes *
-                   Properties.behavioursNumberOfModes;
+       numberOfTypes = Properties.behavioursNumberOfTypes;
+       numberOfModes = Properties.behavioursNumberOfModes;
+       behSlots =  numberOfTypes * numberOfModes;
        props = (BehavioursPropertiesImpl)Properties.behavioursPropertiesInstance;
        build(props.patterns);
+       compile();
        if (props.debug) prettyPrintAll();
     }
     
+	/**
+	 * Compiles the <b>beh</b> mapping into the <b>dispatch</b> arrays. It
+	 * must be invoked again after any change of the mapping.
+	 */
+	protected void compile() {
+		dispatch = new BehavioursInvoker[BEH_MAPPINGS * behSlots][];
+		for (int queue = 0; queue < BEH_MAPPINGS; queue++) {
+			for (int slot = 0; slot < behSlots; slot++) {
+				Vector invokers = beh[queue][slot];
+				BehavioursInvoker[] compiled = NO_INVOKERS;
+				if (!invokers.isEmpty()) {
+					compiled = (BehavioursInvoker[]) invokers.toArray(new BehavioursInvoker[invokers.size()]);
+					if (props.debug)
+						for (int i = 0; i < compiled.length; i++)
+							compiled[i] = new DebugInvoker(compiled[i]);
+				}
+				dispatch[queue * behSlots + slot] = compiled;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the invocation counters of all behaviours, added up by the
+	 * name of the behaviour.
+	 * @return A map sorted by behaviour name, with a long[] for each one: the
+	 * number of invocations and the number of them that have been dispatched
+	 * by the probability of the behaviour.
+	 */
+	public Map getProfile() {
+		TreeMap profile = new TreeMap();
+		for (int queue = 0; queue < BEH_MAPPINGS; queue++) {
+			for (int slot = 0; slot < behSlots; slot++) {
+				Iterator it = beh[queue][slot].iterator();
+				while (it.hasNext()) {
+					Object invoker = it.next();
+					if (!(invoker instanceof BehavioursInvokerImpl)) continue;
+					BehavioursInvokerImpl behInvoker = (BehavioursInvokerImpl) invoker;
+					long[] counters = (long[]) profile.get(behInvoker.getName());
+					if (counters == null) {
+						counters = new long[2];
+						profile.put(behInvoker.getName(), counters);
+					}
+					counters[0] += behInvoker.getInvocations();
+					counters[1] += behInvoker.getDispatched();
+				}
+			}
+		}
+		return profile;
+	}
+	
+	/**
+	 * Prints the invocation counters of all behaviours, as getProfile().
+	 */
+	public void prettyPrintProfile() {
+		Iterator it = getProfile().entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry entry = (Map.Entry) it.next();
+			long[] counters = (long[]) entry.getValue();
+			System.out.println("[" + entry.getKey() + "]: " + counters[0] + " invocations, "
+					+ counters[1] + " dispatched");
+		}
+	}
+    
 	/**
 	 * The WhichQueue's method selects for a given pattern what Queues must
 	 * include a copy of the current behaviour.
@@ -341,38 +424,61 @@ public class BehavioursPoolImpl implements BehavioursPool {
 	 */
 	public void onMessage(RouteMessage msg, Node node) 
 										throws NoSuchBehaviourException, NoBehaviourDispatchedException {
+			int type = msg.getType();
+			int mode = msg.getMode();
 			// ______________Checking RouteMessage's Type and Mode Pattern______________________________
-			if (!inRangeOf(Properties.behavioursNumberOfModes, msg.getMode())) throw new OutOfRangeError("Mode [" + msg.getMode() + "] of RouteMessage Out of Range [0.." + Properties.behavioursNumberOfModes + ") \n" + msg);
-			if (!inRangeOf(Properties.behavioursNumberOfTypes, msg.getType())) throw new OutOfRangeError("Type [" + msg.getType() + "] of RouteMessage Out of Range [0.." + Properties.behavioursNumberOfTypes + ") \n" + msg);
+			if (mode < 0 || mode >= numberOfModes) throw new OutOfRangeError("Mode [" + mode + "] of RouteMessage Out of Range [0.." + numberOfModes + ") \n" + msg);
+			if (type < 0 || type >= numberOfTypes) throw new OutOfRangeError("Type [" + type + "] of RouteMessage Out of Range [0.." + numberOfTypes + ") \n" + msg);
 			
 			// ______________Filtering__________________________________________________________________
-			boolean toReject = false;
-			if (filter != null) { 
-				toReject = filter.filter(msg, node);
-			}
-			if (toReject) return;
+			if (filter != null && filter.filter(msg, node)) return;
 			
 			// _____________Dispatch Behaviour__________________________________________________________
 			int whichQueue = node.playsGoodRole()? ROLE_GOOD: ROLE_BAD; 
 			whichQueue = whichQueue * BEH_MAPPINGS / 2 + (node.isLocalMessage(msg)? TRAFFIC_LOCAL: TRAFFIC_REMOTE);
 			
-			behaviours = beh[whichQueue][msg.getType() * Properties.behavioursNumberOfModes + msg.getMode()];
+			BehavioursInvoker[] invokers = dispatch[whichQueue * behSlots + type * numberOfModes + mode];
 
-			if (behaviours.isEmpty()) throw new NoSuchBehaviourException();
+			if (invokers.length == 0) throw new NoSuchBehaviourException();
 			
 			boolean anyExec = false;
-//			behIt = behaviours.iterator();
-            BehavioursInvokerImpl behInvoker;
-            for (int i = 0; i < behaviours.size(); i++)
-            {
-//			while(behIt.hasNext()) {
-				behInvoker = (BehavioursInvokerImpl) behaviours.get(i);//behIt.next();
-				if (props.debug)
-					System.out.println("Invoking [" + behInvoker.getName() + "] On Node [" + node.getId() + "] " +
-						"For [" + planet.simulate.Globals.typeToString(msg.getType()) + "]" +
-							"[" + planet.simulate.Globals.modeToString(msg.getMode()) + "]");
-				anyExec |= behInvoker.invoke(msg, node);
-			}
+			for (int i = 0; i < invokers.length; i++)
+				anyExec |= invokers[i].invoke(msg, node);
 			if (!anyExec) throw new NoBehaviourDispatchedException();
 	}
+	
+	/**
+	 * Invoker that prints each invocation before invoking the compiled one.
+	 * It is used only when the debug property is set.
+	 */
+	private static class DebugInvoker implements BehavioursInvoker {
+		/**
+		 * The compiled invoker.
+		 */
+		private BehavioursInvoker invoker;
+		
+		/**
+		 * Wraps the <b>invoker</b>.
+		 * @param invoker The compiled invoker.
+		 */
+		public DebugInvoker(BehavioursInvoker invoker) {
+			this.invoker = invoker;
+		}
+		
+		/**
+		 * Prints the invocation and invokes the compiled invoker.
+		 * @see planet.commonapi.behaviours.BehavioursInvoker#invoke(planet.commonapi.RouteMessage, planet.commonapi.Node)
+		 * @param msg The RouteMessage recently arrived to the <b>node</b>.
+		 * @param node The Node which holds the behaviour.
+		 * @return The result of the compiled invoker.
+		 */
+		public boolean invoke(RouteMessage msg, Node node) {
+			String name = (invoker instanceof BehavioursInvokerImpl) ?
+					((BehavioursInvokerImpl) invoker).getName() : invoker.toString();
+			System.out.println("Invoking [" + name + "] On Node [" + node.getId() + "] " +
+				"For [" + planet.simulate.Globals.typeToString(msg.getType()) + "]" +
+					"[" + planet.simulate.Globals.modeToString(msg.getMode()) + "]");
+			return invoker.invoke(msg, node);
+		}
+	}
 }
@@ -34,6 +34,7 @@ import planet.commonapi.results.ResultsGenerator;
 import planet.simulate.Logger;
 import planet.util.KeyGen;
 import planet.util.Properties;
+import planet.util.timer.ControlTimer;
 
 /**
  * It is an abstraction class that follows the Factory Method pattern. It
@@ -146,6 +147,9 @@ public class GenericFactory {
         //---> Updating data into factories
         update();
         
+        //---> Timers: the new simulation starts at step zero
+        ControlTimer.init();
+        
         if (Properties.isApplicationLevelActivated())
         {
             factoryApplicationFactory = buildApplicationFactory();
@@ -178,6 +182,7 @@ public class GenericFactory {
         //---> others
         keyGen                    = new KeyGen(0, Integer.MAX_VALUE);
         Logger.setLevel(Properties.simulatorLogLevel);
+        Logger.setOutput(Properties.simulatorLogFile, Properties.simulatorLogTraceFile);
     }
 
     /**
@@ -8,6 +8,8 @@ import planet.commonapi.Network;
 import planet.commonapi.exception.InitializationException;
 import planet.commonapi.factory.NetworkFactory;
 import planet.commonapi.factory.NodeFactory;
+import planet.generic.commonapi.NetworkImpl;
+import planet.generic.commonapi.NetworkSnapshotReader;
 import planet.util.Properties;
 
 /**
@@ -152,7 +154,10 @@ public class NetworkFactoryImpl implements NetworkFactory {
 	/**
 	 * Builds a network with the specified parameters. If the <b>topology</b> is 
      * Topology.SERIALIZED, it loads the network state from the a file,
-     * found in Properties.SERIALIZATION_INPUT_FILE.
+     * found in Properties.SERIALIZATION_INPUT_FILE. The file can be a
+     * network snapshot, with the delta files of its checkpoints, or a Java
+     * serialized network. In other case, when the FACTORIES_NETWORKSTABILIZED
+     * property is activated, the nodes are joined already stabilized.
 	 * @param size Number of nodes to build under in the network.
 	 * @param nodeFactory NodeFactory to use to build new Nodes.
 	 * @param topology Topology of the new network.
@@ -169,6 +174,8 @@ public class NetworkFactoryImpl implements NetworkFactory {
 		if (topology.equalsIgnoreCase(Topology.SERIALIZED)) {
 			Network netToReturn = null;
 			try {
+				if (NetworkSnapshotReader.isSnapshot(Properties.serializedInputFile))
+					return NetworkSnapshotReader.restore(Properties.serializedInputFile);
 				ObjectInputStream ois = new ObjectInputStream(new FileInputStream(Properties.serializedInputFile));
 				netToReturn = (Network)ois.readObject();
 				ois.close();
@@ -182,7 +189,12 @@ public class NetworkFactoryImpl implements NetworkFactory {
         
         //builds a new Network instance
 		Network net = ((Network)GenericFactory.newInstance(network)).setValues(topology,nodeFactory);
-		net.joinNodes(size);
+		if (Properties.factoriesNetworkStabilized) {
+			if (!(net instanceof NetworkImpl))
+				throw new InitializationException("The network class '"+network.getName()+"' cannot be built already stabilized.");
+			((NetworkImpl)net).joinStabilizedNodes(size);
+		} else
+			net.joinNodes(size);
 		return net;
 	}
 }
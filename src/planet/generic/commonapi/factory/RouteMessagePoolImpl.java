@@ -30,10 +30,6 @@ public class RouteMessagePoolImpl implements RouteMessagePool {
      * RouteMessages just created.
      */
     private Stack messages           = null;
-    /**
-     * Only for temporal use.
-     */
-    private RouteMessage tmp         = null;
     /**
      * Total number of created messages.
      */
@@ -65,7 +61,7 @@ public class RouteMessagePoolImpl implements RouteMessagePool {
      * @param msg The RouteMessage to be released.
      * @see planet.commonapi.factory.RouteMessagePool#freeMessage(planet.commonapi.RouteMessage)
      */
-    public void freeMessage(RouteMessage msg) {
+    public synchronized void freeMessage(RouteMessage msg) {
         if (msg == null) return;
         messages.push (msg);
         freeMessages ++;
@@ -83,8 +79,9 @@ public class RouteMessagePoolImpl implements RouteMessagePool {
      * building process.
      * @see planet.commonapi.factory.RouteMessagePool#getMessage(java.lang.String, planet.commonapi.NodeHandle, planet.commonapi.NodeHandle, int, int)
      */
-    public RouteMessage getMessage(String key, NodeHandle from, NodeHandle to,
+    public synchronized RouteMessage getMessage(String key, NodeHandle from, NodeHandle to,
             int type, int mode) throws InitializationException {
+        RouteMessage tmp = null;
         if (messages.size() > 0) {
             tmp = (RouteMessage)messages.pop();
             tmp.setValues(key,from,to,to,type,mode,null,"");
@@ -116,9 +113,10 @@ public class RouteMessagePoolImpl implements RouteMessagePool {
      * of the RouteMessage.
      * @see planet.commonapi.factory.RouteMessagePool#getMessage(String, NodeHandle, NodeHandle, NodeHandle, int, int, Message, String)
      */
-    public RouteMessage getMessage(String key, NodeHandle from, NodeHandle to,
+    public synchronized RouteMessage getMessage(String key, NodeHandle from, NodeHandle to,
             NodeHandle nextHop, int type, int mode, Message msg, String appId)
             throws InitializationException {
+        RouteMessage tmp = null;
         if (messages.size() > 0) {
             tmp = (RouteMessage)messages.pop();
             tmp.setValues(key,from,to,nextHop,type,mode,msg,appId);
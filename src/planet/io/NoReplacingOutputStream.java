@@ -92,16 +92,29 @@ public class NoReplacingOutputStream extends OutputStream {
      * @return The new filename to use.
      */
     private static String getNewVersion(String baseName, int newVersion)
+    {
+        return getVersionName(baseName, String.valueOf(newVersion));
+    }
+    
+    /**
+     * Gets the name for the file adding the suffix "_<b>version</b>" to the
+     * <b>baseName</b>, before its extension. It is the same naming used for
+     * the numbered versions, so related files can be named as "out_x".
+     * @param baseName Original filename.
+     * @param version Version to add to the filename.
+     * @return The new filename to use.
+     */
+    public static String getVersionName(String baseName, String version)
     {
         //there are extension part
         int index = baseName.lastIndexOf('.');
         if (index != -1)
         {
             return  baseName.substring(0,index)+
-                    "_" + newVersion +
+                    "_" + version +
                     baseName.substring(index,baseName.length());
         }
-        return baseName + "_" + newVersion;
+        return baseName + "_" + version;
     }
     
 	/**
@@ -1,126 +1,305 @@
 package planet.results;
 
-import java.util.Collection;
-import java.util.Hashtable;
+import java.util.HashMap;
 
 import planet.commonapi.RouteMessage;
 import planet.commonapi.Id;
+import planet.simulate.Globals;
+import planet.util.Properties;
 
 /**
  *  LinkStateResults is a class which shows how many incoming messages
- *  has been dropped by nodes and how many has been retransmitted towards 
+ *  has been dropped by nodes and how many has been retransmitted towards
  *  its destination. It showns the expected number of hops for whatever
  *  message to reach its destination. Also classifies the messages according
  *  to type and mode of <b>RouteMessageImpl</b>.
- *    
+ *  <br><br>
+ *  The statistics are kept into primitive counters: the counters of the
+ *  messages are indexed by their [type][mode], and the counters of the
+ *  nodes by a dense index given to each node the first time it appears.
+ *  No object is built when a message is counted. The bounds of the arrays
+ *  are taken from <b>Properties.behavioursNumberOfTypes</b> and
+ *  <b>Properties.behavioursNumberOfModes</b>, and they grow on demand.
+ *
  *  @author Marc Sanchez	   <marc.sanchez@estudiants.urv.es>
  *  @version 1.0
  */
 public class LinkStateResults {
 	/**
-	 * LinkStateResults property: stores how many hops per RouteMessage's 
-	 * type and mode.
+	 * Number of slots reserved to the simulator types and modes (from
+	 * Globals.JOIN to Globals.ERROR). They are saved at the first slots.
 	 */
-	protected static Hashtable hopsByTypeOf = new Hashtable();
-	protected static Hashtable flowOfMessages = new Hashtable();
+	private static final int GLOBALS = Globals.ERROR - Globals.JOIN + 1;
 	/**
-	 * Resets the LinkState results; 
-	 */	
-	public static void resetLinkState() {
-		hopsByTypeOf = new Hashtable();
-		flowOfMessages = new Hashtable();
+	 * Initial number of slots for the nodes.
+	 */
+	private static final int NODES = 256;
+	/**
+	 * Mode shown for the statistics only by type.
+	 */
+	private static final String ANY_MODE = "'*'";
+	/**
+	 * LinkStateResults property: stores how many messages per RouteMessage's
+	 * type and mode, as [type][mode]. Zero means no message of this pattern.
+	 */
+	protected static int[][] messagesByTypeOf;
+	/**
+	 * LinkStateResults property: stores how many hops per RouteMessage's
+	 * type and mode, as [type][mode].
+	 */
+	protected static int[][] hopsByTypeOf;
+	/**
+	 * LinkStateResults property: stores how many messages per RouteMessage's
+	 * type only.
+	 */
+	protected static int[] messagesByTypeOnly;
+	/**
+	 * LinkStateResults property: stores how many hops per RouteMessage's
+	 * type only.
+	 */
+	protected static int[] hopsByTypeOnly;
+	/**
+	 * Index (as Integer values) of each node (as Id keys).
+	 */
+	protected static HashMap nodeIndexes;
+	/**
+	 * Id of each node, by its index.
+	 */
+	protected static Id[] nodeIds;
+	/**
+	 * Number of incoming messages, by node index.
+	 */
+	protected static int[] incoming;
+	/**
+	 * Number of outcoming messages, by node index.
+	 */
+	protected static int[] outcoming;
+	/**
+	 * Number of dropped messages, by node index.
+	 */
+	protected static int[] dropped;
+	/**
+	 * Number of nodes with an index.
+	 */
+	protected static int nodes;
+
+	static {
+		resetLinkState();
+	}
+
+	/**
+	 * Resets the LinkState results;
+	 */
+	public static synchronized void resetLinkState() {
+		int types = GLOBALS + Math.max(Properties.behavioursNumberOfTypes, 1);
+		int modes = GLOBALS + Math.max(Properties.behavioursNumberOfModes, 1);
+		messagesByTypeOf = new int[types][modes];
+		hopsByTypeOf = new int[types][modes];
+		messagesByTypeOnly = new int[types];
+		hopsByTypeOnly = new int[types];
+		nodeIndexes = new HashMap();
+		nodeIds = new Id[NODES];
+		incoming = new int[NODES];
+		outcoming = new int[NODES];
+		dropped = new int[NODES];
+		nodes = 0;
+	}
+	/**
+	 * Returns the slot of the type or mode <b>value</b>.
+	 * @param value Type or mode of a RouteMessage.
+	 * @return The slot of the <b>value</b> at the counters.
+	 */
+	private static int slot(int value) {
+		return (value >= Globals.JOIN) ? value - Globals.JOIN : value + GLOBALS;
+	}
+	/**
+	 * Returns the type or mode saved at the <b>slot</b>.
+	 * @param slot Slot at the counters.
+	 * @return The type or mode of the <b>slot</b>.
+	 */
+	private static int value(int slot) {
+		return (slot < GLOBALS) ? slot + Globals.JOIN : slot - GLOBALS;
+	}
+	/**
+	 * Returns the slot of the <b>type</b>, growing the counters if necessary.
+	 * @param type Type of a RouteMessage.
+	 * @return The slot of the <b>type</b>.
+	 */
+	private static int typeSlot(int type) {
+		int slot = slot(type);
+		if (slot >= messagesByTypeOnly.length) {
+			int length = Math.max(slot + 1, messagesByTypeOnly.length * 2);
+			messagesByTypeOnly = grow(messagesByTypeOnly, length);
+			hopsByTypeOnly = grow(hopsByTypeOnly, length);
+			messagesByTypeOf = grow(messagesByTypeOf, length, messagesByTypeOf[0].length);
+			hopsByTypeOf = grow(hopsByTypeOf, length, hopsByTypeOf[0].length);
+		}
+		return slot;
+	}
+	/**
+	 * Returns the slot of the <b>mode</b>, growing the counters if necessary.
+	 * @param mode Mode of a RouteMessage.
+	 * @return The slot of the <b>mode</b>.
+	 */
+	private static int modeSlot(int mode) {
+		int slot = slot(mode);
+		if (slot >= messagesByTypeOf[0].length) {
+			int length = Math.max(slot + 1, messagesByTypeOf[0].length * 2);
+			messagesByTypeOf = grow(messagesByTypeOf, messagesByTypeOf.length, length);
+			hopsByTypeOf = grow(hopsByTypeOf, hopsByTypeOf.length, length);
+		}
+		return slot;
+	}
+	/**
+	 * Copies the <b>counters</b> into a new array of <b>length</b> slots.
+	 * @param counters Current counters.
+	 * @param length New length.
+	 * @return The new array.
+	 */
+	private static int[] grow(int[] counters, int length) {
+		int[] grown = new int[length];
+		System.arraycopy(counters, 0, grown, 0, counters.length);
+		return grown;
+	}
+	/**
+	 * Copies the <b>counters</b> into a new array of <b>types</b> x
+	 * <b>modes</b> slots.
+	 * @param counters Current counters.
+	 * @param types New number of types.
+	 * @param modes New number of modes.
+	 * @return The new array.
+	 */
+	private static int[][] grow(int[][] counters, int types, int modes) {
+		int[][] grown = new int[types][];
+		for (int i = 0; i < types; i++)
+			grown[i] = (i < counters.length) ? grow(counters[i], modes) : new int[modes];
+		return grown;
 	}
 	/**
 	 * Updates the number of hops per RouteMessage's type only.
 	 * @param msg The RouteMessage taken as input.
 	 */
-	public static void updateHopsByTypeOnly(RouteMessage msg) {
-		String typeOf = planet.simulate.Globals.typeToString(msg.getType());
-		if (hopsByTypeOf.containsKey(typeOf)) {
-			PatternStatus status = (PatternStatus) hopsByTypeOf.get(typeOf);
-			status.updateHops();		  		  		  	  
-		} else hopsByTypeOf.put(typeOf, new PatternStatus(typeOf));
+	public static synchronized void updateHopsByTypeOnly(RouteMessage msg) {
+		int type = typeSlot(msg.getType());
+		if (messagesByTypeOnly[type] == 0) messagesByTypeOnly[type] = 1;
+		else hopsByTypeOnly[type]++;
 	}
 	/**
 	 * Updates the number of hops per RouteMessage's type and mode.
 	 * @param msg The RouteMessage taken as input.
 	 */
-	public static void updateHopsByTypeOf(RouteMessage msg){      
-		String typeOf = planet.simulate.Globals.typeToString(msg.getType());
-		String modeOf = planet.simulate.Globals.modeToString(msg.getMode());
-      
-		String patternBy = typeOf + " and " + modeOf;
- 	    
-		if (hopsByTypeOf.containsKey(patternBy)) {
-			PatternStatus status = (PatternStatus) hopsByTypeOf.get(patternBy);
-			status.updateHops();		  		  		  	  
-		}  else	hopsByTypeOf.put(patternBy, new PatternStatus(typeOf, modeOf));
+	public static synchronized void updateHopsByTypeOf(RouteMessage msg){
+		int type = typeSlot(msg.getType());
+		int mode = modeSlot(msg.getMode());
+		if (messagesByTypeOf[type][mode] == 0) messagesByTypeOf[type][mode] = 1;
+		else hopsByTypeOf[type][mode]++;
 	}
 	/**
 	 * Stores a new RouteMessage has built up in order to be sent in a few steps.
 	 * @param msg The RouteMessage taken as input.
 	 */
-	public static void newMessageOnlyByType(RouteMessage msg) {
-		String typeOf = planet.simulate.Globals.typeToString(msg.getType());
-		if (hopsByTypeOf.containsKey(typeOf)) {
-			PatternStatus status = (PatternStatus) hopsByTypeOf.get(typeOf);
-			status.updateMessages();		  		  		  	  
-		}  else	hopsByTypeOf.put(typeOf, new PatternStatus(typeOf));
+	public static synchronized void newMessageOnlyByType(RouteMessage msg) {
+		messagesByTypeOnly[typeSlot(msg.getType())]++;
 	}
 	/**
 	 * Stores a new RouteMessage has built up in order to be sent in a few steps.
 	 * @param msg The RouteMessage taken as input.
 	 */
-	public static void newMessage(RouteMessage msg) {
-		String typeOf = planet.simulate.Globals.typeToString(msg.getType());
-		String modeOf = planet.simulate.Globals.modeToString(msg.getMode());
-      
-		String patternBy = typeOf + " and " + modeOf;
-		if (hopsByTypeOf.containsKey(patternBy)) {
-			PatternStatus status = (PatternStatus) hopsByTypeOf.get(patternBy);
-			status.updateMessages();		  		  		  	  
-		}  else	hopsByTypeOf.put(patternBy, new PatternStatus(typeOf, modeOf));
+	public static synchronized void newMessage(RouteMessage msg) {
+		int type = typeSlot(msg.getType());
+		messagesByTypeOf[type][modeSlot(msg.getMode())]++;
+	}
+	/**
+	 * Returns the index of the <b>node</b> at the counters of the nodes,
+	 * giving it a new one the first time. The nodes can keep their index
+	 * to update their counters without any lookup.
+	 * @param node Id of the node.
+	 * @return The index of the node.
+	 */
+	public static synchronized int getNodeIndex(Id node) {
+		Integer index = (Integer) nodeIndexes.get(node);
+		if (index != null) return index.intValue();
+		if (nodes == nodeIds.length) {
+			Id[] ids = new Id[nodes * 2];
+			System.arraycopy(nodeIds, 0, ids, 0, nodes);
+			nodeIds = ids;
+			incoming = grow(incoming, nodes * 2);
+			outcoming = grow(outcoming, nodes * 2);
+			dropped = grow(dropped, nodes * 2);
+		}
+		nodeIds[nodes] = node;
+		nodeIndexes.put(node, new Integer(nodes));
+		return nodes++;
 	}
 	/**
 	 * Stores the number of incoming messages received by the node.
 	 * @param node Node to overhear.
 	 */
-	public static void updateIncoming(Id node) {
-		if (flowOfMessages.containsKey(node)) {
-			NodeFlowStatus status = (NodeFlowStatus) flowOfMessages.get(node);
-			status.updateIncoming();		  		  		  	  
-		}  else	{
-			NodeFlowStatus status = new NodeFlowStatus(node);
-			flowOfMessages.put(node, status);
-		}
+	public static synchronized void updateIncoming(Id node) {
+		incoming[getNodeIndex(node)]++;
+	}
+	/**
+	 * Stores the number of incoming messages received by the node.
+	 * @param node Index of the node to overhear.
+	 * @see #getNodeIndex(Id)
+	 */
+	public static synchronized void updateIncoming(int node) {
+		incoming[node]++;
 	}
 	/**
 	 * Stores the number of outcoming messages sent by the node.
 	 * @param node Node to overhear.
 	 */
-	public static void updateOutcoming(Id node) {
-		if (flowOfMessages.containsKey(node)) {
-			NodeFlowStatus status = (NodeFlowStatus) flowOfMessages.get(node);
-			status.updateOutcoming();		  		  		  	  
-		}  else	{
-			NodeFlowStatus status = new NodeFlowStatus(node);
-			status.updateOutcoming();
-			flowOfMessages.put(node, status);
-		}
+	public static synchronized void updateOutcoming(Id node) {
+		outcoming[getNodeIndex(node)]++;
+	}
+	/**
+	 * Stores the number of outcoming messages sent by the node.
+	 * @param node Index of the node to overhear.
+	 * @see #getNodeIndex(Id)
+	 */
+	public static synchronized void updateOutcoming(int node) {
+		outcoming[node]++;
 	}
 	/**
 	 * Stores the number of messages dropped by the node.
 	 * @param node Node to overhear.
 	 */
-	public static void updateDropped(Id node) {
-		if (flowOfMessages.containsKey(node)) {
-			NodeFlowStatus status = (NodeFlowStatus) flowOfMessages.get(node);
-			status.updateDropped();		  		  		  	  
-		}  else	{
-			NodeFlowStatus status = new NodeFlowStatus(node);
-			status.updateDropped();
-			flowOfMessages.put(node, status);
-		}
+	public static synchronized void updateDropped(Id node) {
+		dropped[getNodeIndex(node)]++;
+	}
+	/**
+	 * Stores the number of messages dropped by the node.
+	 * @param node Index of the node to overhear.
+	 * @see #getNodeIndex(Id)
+	 */
+	public static synchronized void updateDropped(int node) {
+		dropped[node]++;
+	}
+	/**
+	 * Finds the slot of the type with the string representation <b>typeOf</b>.
+	 * @param typeOf Type of the Message.
+	 * @param counters Messages by type, to skip the types without messages.
+	 * @return The slot of the type, or -1 if it is not found.
+	 */
+	private static int findType(String typeOf, int[] counters) {
+		for (int type = 0; type < counters.length; type++)
+			if (counters[type] > 0 && typeOf.equals(Globals.typeToString(value(type))))
+				return type;
+		return -1;
+	}
+	/**
+	 * Finds the slot of the mode with the string representation <b>modeOf</b>.
+	 * @param modeOf Mode of the Message.
+	 * @param counters Messages by mode of a type, to skip the modes without
+	 * messages.
+	 * @return The slot of the mode, or -1 if it is not found.
+	 */
+	private static int findMode(String modeOf, int[] counters) {
+		for (int mode = 0; mode < counters.length; mode++)
+			if (counters[mode] > 0 && modeOf.equals(Globals.modeToString(value(mode))))
+				return mode;
+		return -1;
 	}
 	/**
 	 * Gets the average of hops for the Message Performative specified by "<b> typeOf </b>" and "<b> modeOf </b>".
@@ -131,29 +310,19 @@ public class LinkStateResults {
 	 * any Message.
 	 */
 	public static double getMeanByTypeOf(String typeOf, String modeOf) throws NoSuchMessagePerformative {
-		String patternBy = typeOf + " and " + modeOf;
-		
-		if (hopsByTypeOf.containsKey(patternBy)) {
-			PatternStatus status = (PatternStatus) hopsByTypeOf.get(patternBy);
-			double mean = (double) status.getHopsPerType() / (double) status.getMessagesPerType();
-			return mean;
-		}
-		throw new  NoSuchMessagePerformative();
+		PatternStatus status = getStatisticsByTypeOf(typeOf, modeOf);
+		return (double) status.getHopsPerType() / (double) status.getMessagesPerType();
 	}
 	/**
-	 * Gets the average of hops for the Message Performative specified only by the type. 
+	 * Gets the average of hops for the Message Performative specified only by the type.
 	 * @param typeOf Type of the Message.
 	 * @return Returns the average measured in hops for the current message performative.
 	 * @throws NoSuchMessagePerformative Whenever the Message Performative does not match
 	 * any Message.
 	 */
 	public static double getMeanByTypeOnly(String typeOf) throws NoSuchMessagePerformative {
-		if (hopsByTypeOf.containsKey(typeOf)) {
-			PatternStatus status = (PatternStatus) hopsByTypeOf.get(typeOf);
-			double mean = (double) status.getHopsPerType() / (double) status.getMessagesPerType();
-			return mean;
-		}
-		throw new NoSuchMessagePerformative();
+		PatternStatus status = getStatisticsByTypeOnly(typeOf);
+		return (double) status.getHopsPerType() / (double) status.getMessagesPerType();
 	}
 	/**
 	 * Gets the PatternStatus of the Message Performative specified by "<b>TypeOf</b>" and "<b>ModeOf</b>".
@@ -163,11 +332,13 @@ public class LinkStateResults {
 	 * @see planet.results.PatternStatus for more details.
 	 * @throws NoSuchMessagePerformative Whenever the Message Performative does not match any Message.
 	 */
-	public static PatternStatus getStatisticsByTypeOf(String typeOf, String modeOf) throws NoSuchMessagePerformative {
-		String patternBy = typeOf + " and " + modeOf;
-		if (hopsByTypeOf.containsKey(patternBy)) return (PatternStatus) hopsByTypeOf.get(patternBy);
-		else throw new NoSuchMessagePerformative();
-		
+	public static synchronized PatternStatus getStatisticsByTypeOf(String typeOf, String modeOf) throws NoSuchMessagePerformative {
+		for (int type = 0; type < messagesByTypeOf.length; type++) {
+			int mode = findMode(modeOf, messagesByTypeOf[type]);
+			if (mode >= 0 && typeOf.equals(Globals.typeToString(value(type))))
+				return new PatternStatus(typeOf, modeOf, messagesByTypeOf[type][mode], hopsByTypeOf[type][mode]);
+		}
+		throw new NoSuchMessagePerformative();
 	}
 	/**
 	 * Gets the PatternStatus of the Message Performative specified only by the type.
@@ -175,55 +346,75 @@ public class LinkStateResults {
 	 * @return Return the statistics mapped to this Message Performative.
 	 * @throws NoSuchMessagePerformative Whenever the Message Performative does not match any Message.
 	 */
-	public static PatternStatus getStatisticsByTypeOnly(String typeOf) throws NoSuchMessagePerformative {
-		if (hopsByTypeOf.containsKey(typeOf)) return (PatternStatus) hopsByTypeOf.get(typeOf);
-		else throw new NoSuchMessagePerformative(); 
+	public static synchronized PatternStatus getStatisticsByTypeOnly(String typeOf) throws NoSuchMessagePerformative {
+		int type = findType(typeOf, messagesByTypeOnly);
+		if (type < 0) throw new NoSuchMessagePerformative();
+		return new PatternStatus(typeOf, ANY_MODE, messagesByTypeOnly[type], hopsByTypeOnly[type]);
+	}
+	/**
+	 * Gets the NodeFlowStatus of the <b>node</b>.
+	 * @param node Id of the node.
+	 * @return The flow of messages of the node, or null if the node has no
+	 * messages.
+	 */
+	public static synchronized NodeFlowStatus getStatisticsByNode(Id node) {
+		Integer index = (Integer) nodeIndexes.get(node);
+		if (index == null) return null;
+		int i = index.intValue();
+		return new NodeFlowStatus(nodeIds[i], incoming[i], outcoming[i], dropped[i]);
 	}
 	/**
 	 * Prints Link State Results per RouteMessage's type and node.
 	 */
-	public static void printByType() {
+	public static synchronized void printByType() {
 		System.out.println("\nprintByType____________________________________________________________________________________\n");
-		Collection c = hopsByTypeOf.values();
-		java.util.Iterator it = c.iterator();
-		java.text.DecimalFormat formatter = new java.text.DecimalFormat("########");
 		System.out.println("Pattern                                  Hops       Messages   Mean\n");
-		while(it.hasNext()) {
-			PatternStatus status = (PatternStatus) it.next();
-			String pattern = status.getType() + " and " + status.getMode();
-			while (pattern.length() < 40) pattern += ' ';
-			String hops = formatter.format(status.getHopsPerType());
-			while (hops.length() < 10) hops += ' ';
-			String messages = formatter.format(status.getMessagesPerType());
-			while (messages.length() < 10) messages += ' ';
-			formatter.applyPattern("#####.####");
-			double mean = (double) status.getHopsPerType() / (double) status.getMessagesPerType();
-			System.out.println(pattern + " " +  hops + " " + messages + " " + formatter.format(mean)); 
-		}
+		for (int type = 0; type < messagesByTypeOf.length; type++)
+			for (int mode = 0; mode < messagesByTypeOf[type].length; mode++)
+				if (messagesByTypeOf[type][mode] > 0)
+					printPattern(Globals.typeToString(value(type)) + " and " + Globals.modeToString(value(mode)),
+							hopsByTypeOf[type][mode], messagesByTypeOf[type][mode]);
+		for (int type = 0; type < messagesByTypeOnly.length; type++)
+			if (messagesByTypeOnly[type] > 0)
+				printPattern(Globals.typeToString(value(type)) + " and " + ANY_MODE,
+						hopsByTypeOnly[type], messagesByTypeOnly[type]);
 		System.out.println("\n_______________________________________________________________________________________________");
 	}
+	/**
+	 * Prints a line of the report per RouteMessage's type.
+	 * @param pattern Type and mode of the messages.
+	 * @param hopsPerType Total number of hops.
+	 * @param messagesPerType Total number of messages.
+	 */
+	private static void printPattern(String pattern, int hopsPerType, int messagesPerType) {
+		java.text.DecimalFormat formatter = new java.text.DecimalFormat("########");
+		while (pattern.length() < 40) pattern += ' ';
+		String hops = formatter.format(hopsPerType);
+		while (hops.length() < 10) hops += ' ';
+		String messages = formatter.format(messagesPerType);
+		while (messages.length() < 10) messages += ' ';
+		formatter.applyPattern("#####.####");
+		double mean = (double) hopsPerType / (double) messagesPerType;
+		System.out.println(pattern + " " +  hops + " " + messages + " " + formatter.format(mean));
+	}
 	/**
 	* Prints Link State Results per Node's flow.
 	*/
-	public static void printByNode() {
+	public static synchronized void printByNode() {
 		System.out.println("\nprintByNode____________________________________________________________________________________\n");
-		Collection c = flowOfMessages.values();
-		java.util.Iterator it = c.iterator();
 		java.text.DecimalFormat formatter = new java.text.DecimalFormat("########");
 		System.out.println("Id                                       Incoming   Outcoming  Dropped\n");
-		while(it.hasNext()) {
-			NodeFlowStatus status = (NodeFlowStatus) it.next();
-			String id = status.getId().toString();
+		for (int node = 0; node < nodes; node++) {
+			String id = nodeIds[node].toString();
 			while (id.length() < 40) id += ' ';
-			String incoming = formatter.format(status.getIncoming());
-			while (incoming.length() < 10) incoming += ' ';
-			String outcoming = formatter.format(status.getOutcoming());
-			while (outcoming.length() < 10) outcoming += ' ';
-			String dropped = formatter.format(status.getDropped());
-			while (dropped.length() < 10) dropped += ' ';
-			System.out.println(id + " " + incoming + " " + outcoming + " " + dropped); 
+			String in = formatter.format(incoming[node]);
+			while (in.length() < 10) in += ' ';
+			String out = formatter.format(outcoming[node]);
+			while (out.length() < 10) out += ' ';
+			String drop = formatter.format(dropped[node]);
+			while (drop.length() < 10) drop += ' ';
+			System.out.println(id + " " + in + " " + out + " " + drop);
 		}
 		System.out.println("\n_______________________________________________________________________________________________");
 	}
 }
-
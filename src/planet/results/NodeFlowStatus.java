@@ -32,6 +32,19 @@ public class NodeFlowStatus implements java.io.Serializable {
 	public NodeFlowStatus(Id node) {
 		this.node = node;
 	}
+	/**
+	 * Builds the flow of the node with the collected counters.
+	 * @param node Id of the node.
+	 * @param incoming Total number of incoming messages.
+	 * @param outcoming Total number of outcoming messages.
+	 * @param dropped Total number of dropped messages.
+	 */
+	public NodeFlowStatus(Id node, int incoming, int outcoming, int dropped) {
+		this.node = node;
+		this.incoming = incoming;
+		this.outcoming = outcoming;
+		this.dropped = dropped;
+	}
 	/**
 	 * Updates the number incoming messages by this node.
 	 */
@@ -44,6 +44,20 @@ public class PatternStatus implements Serializable {
 		this.modeOf = modeOf;
 	}
 	
+	/**
+	 * Builds the statistics of a pattern with the collected counters.
+	 * @param typeOf Type of the RouteMessages.
+	 * @param modeOf Mode of the RouteMessages.
+	 * @param messagesPerType Total number of messages.
+	 * @param hopsPerType Total number of hops.
+	 */
+	public PatternStatus(String typeOf, String modeOf, int messagesPerType, int hopsPerType) {
+		this.typeOf = typeOf;
+		this.modeOf = modeOf;
+		this.messagesPerType = messagesPerType;
+		this.hopsPerType = hopsPerType;
+	}
+	
 	public void updateHops() { hopsPerType++;  }
 	public void updateMessages() { messagesPerType++; }
 	/**
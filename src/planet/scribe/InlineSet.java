@@ -0,0 +1,148 @@
+package planet.scribe;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Insertion ordered set for the clients and the children of a topic. Most
+ * topics have only a few of them, so up to INLINE elements are kept in a
+ * small array, which grows only as required, and the set spills to a
+ * LinkedHashSet only when it grows beyond. An empty set does not have any
+ * array.
+ * <br><br>
+ * Once spilled, the set keeps its LinkedHashSet even if it shrinks again.
+ * @see planet.scribe.ScribeImpl.TopicManager
+ */
+public class InlineSet implements java.io.Serializable {
+
+    /**
+     * Maximum number of elements kept in the inline array.
+     */
+    public static final int INLINE = 8;
+
+    /**
+     * Inline elements, or null if the set is empty or it has spilled.
+     */
+    private Object[] elements = null;
+    /**
+     * Number of elements.
+     */
+    private int size = 0;
+    /**
+     * Elements of a spilled set, or null.
+     */
+    private LinkedHashSet spill = null;
+
+    /**
+     * Returns the number of elements.
+     * @return The size of the set.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Shows if the set is empty.
+     * @return true if the set has not any element.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Shows if the set contains the <b>o</b> element.
+     * @param o Element to look for.
+     * @return true if the set contains the element.
+     */
+    public boolean contains(Object o) {
+        if (spill != null) return spill.contains(o);
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * Adds the <b>o</b> element at the end, if it is not in the set.
+     * @param o Element to add.
+     * @return true if the element has been added.
+     */
+    public boolean add(Object o) {
+        if (spill != null) {
+            if (!spill.add(o)) return false;
+        } else {
+            if (indexOf(o) >= 0) return false;
+            if (size < INLINE) {
+                if (elements == null || size == elements.length) {
+                    Object[] grown = new Object[(size == 0) ? 1 : size * 2];
+                    if (size > 0) System.arraycopy(elements, 0, grown, 0, size);
+                    elements = grown;
+                }
+                elements[size] = o;
+            } else {
+                spill = new LinkedHashSet(INLINE * 4);
+                for (int i = 0; i < size; i++)
+                    spill.add(elements[i]);
+                spill.add(o);
+                elements = null;
+            }
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes the <b>o</b> element, keeping the order of the rest.
+     * @param o Element to remove.
+     * @return true if the element was in the set.
+     */
+    public boolean remove(Object o) {
+        if (spill != null) {
+            if (!spill.remove(o)) return false;
+        } else {
+            int index = indexOf(o);
+            if (index < 0) return false;
+            System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+            elements[size - 1] = null;
+            if (size == 1) elements = null;
+        }
+        size--;
+        return true;
+    }
+
+    /**
+     * Returns the first element, in insertion order.
+     * @return The first element, or null if the set is empty.
+     */
+    public Object first() {
+        if (size == 0) return null;
+        if (spill != null) return spill.iterator().next();
+        return elements[0];
+    }
+
+    /**
+     * Copies the elements, in insertion order, to a new array of the same
+     * type as <b>a</b>.
+     * @param a Array of the required type.
+     * @return A new array with all elements.
+     */
+    public Object[] toArray(Object[] a) {
+        Object[] result = (Object[]) java.lang.reflect.Array.newInstance(a.getClass().getComponentType(), size);
+        if (spill != null) {
+            Iterator it = spill.iterator();
+            for (int i = 0; it.hasNext(); i++)
+                result[i] = it.next();
+        } else if (size > 0) {
+            System.arraycopy(elements, 0, result, 0, size);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the position of the <b>o</b> element at the inline array.
+     * @param o Element to look for.
+     * @return Its position, or -1 if it is not in the inline array.
+     */
+    private int indexOf(Object o) {
+        for (int i = 0; i < size; i++)
+            if (elements[i].equals(o)) return i;
+        return -1;
+    }
+}
@@ -81,6 +81,15 @@ public interface Scribe {
    */
   public void publish(Topic topic, ScribeContent content);
 
+  /**
+   * Publishes a batch of contents to the topic, with only one traversal of
+   * the multicast tree for all of them.
+   *
+   * @param topic The topic to publish to
+   * @param contents The contents to publish
+   */
+  public void publish(Topic topic, ScribeContent[] contents);
+
   /**
    * Anycasts the given content to a member of the given topic
    *
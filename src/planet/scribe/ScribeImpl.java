@@ -38,11 +38,9 @@ package planet.scribe;
 
 import java.util.Arrays;
 import java.util.Hashtable;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
-import java.util.Set;
 import java.util.Vector;
 
 import planet.commonapi.Application;
@@ -78,9 +76,14 @@ public class ScribeImpl implements Scribe, Application {
   public static long MESSAGE_TIMEOUT = 15000;
 
   /**
-   * the hashtable of topic -> TopicManager
+   * Empty path to the root, for the topics without parent
    */
-  public Hashtable topics;
+  private static final Id[] EMPTY_PATH = new Id[0];
+
+  /**
+   * the registry of topic -> TopicManager
+   */
+  public TopicRegistry topics;
 
   /**
    * this scribe's policy
@@ -135,7 +138,7 @@ public class ScribeImpl implements Scribe, Application {
   public ScribeImpl(String appId,ScribePolicy policy) {
     //this.endpoint = node.registerApplication(this, appId);
   	this.appId = appId;
-    this.topics = new Hashtable();
+    this.topics = new TopicRegistry();
     this.outstanding = new Hashtable();
     this.policy = policy;
     //this.handle = endpoint.getLocalNodeHandle();
@@ -286,7 +289,7 @@ public class ScribeImpl implements Scribe, Application {
   private void sendSubscribe(Topic topic, ScribeClient client, ScribeContent content, Id previousParent) {
     id++;
 
-    Logger.log(endpoint.getId() + ": Sending subscribe message for topic " + topic,Logger.EVENT_LOG);
+    Logger.log(endpoint.getId(), ": Sending subscribe message for topic ", topic,Logger.EVENT_LOG);
 
     if (client != null)
       outstanding.put(new Integer(id), client);
@@ -348,7 +351,7 @@ public class ScribeImpl implements Scribe, Application {
    * @param client The client to give messages to
    */
   public void subscribe(Topic topic, ScribeClient client, ScribeContent content) {
-    Logger.log(endpoint.getId() + ": Subscribing client " + client + " to topic " + topic,Logger.EVENT_LOG);
+    Logger.log(endpoint.getId(), ": Subscribing client ", client, " to topic ", topic,Logger.EVENT_LOG);
   	//System.out.println(endpoint.getId() + ": Subscribing client " + client + " to topic " + topic);
 
     // if we don't know about this topic, subscribe
@@ -401,11 +404,31 @@ public class ScribeImpl implements Scribe, Application {
    * @param content The content to publish
    */
   public void publish(Topic topic, ScribeContent content) {
-    Logger.log(endpoint.getId() + ": Publishing content " + content + " to topic " + topic,Logger.EVENT_LOG);
+    Logger.log(endpoint.getId(), ": Publishing content ", content, " to topic ", topic,Logger.EVENT_LOG);
 
     endpoint.route(topic.getId(), new PublishRequestMessage(handle, topic, content), null);
   }
 
+  /**
+   * Publishes a batch of contents to the topic. All contents travel together
+   * in only one message to the root and along the multicast tree, and they
+   * are delivered to each client in the given order.
+   *
+   * @param topic The topic to publish to
+   * @param contents The contents to publish
+   */
+  public void publish(Topic topic, ScribeContent[] contents) {
+    if (contents.length == 0) return;
+    if (contents.length == 1) {
+      publish(topic, contents[0]);
+      return;
+    }
+    if (Logger.isLoggable(Logger.EVENT_LOG))
+      Logger.log(endpoint.getId(), ": Publishing a batch of contents ", new Integer(contents.length), " to topic ", topic,Logger.EVENT_LOG);
+
+    endpoint.route(topic.getId(), new PublishRequestMessage(handle, topic, contents), null);
+  }
+
   /**
    * Anycasts the given content to a member of the given topic
    *
@@ -413,7 +436,7 @@ public class ScribeImpl implements Scribe, Application {
    * @param content The content to anycast
    */
   public void anycast(Topic topic, ScribeContent content) {
-    Logger.log(endpoint.getId() + ": Anycasting content " + content + " to topic " + topic,Logger.EVENT_LOG);
+    Logger.log(endpoint.getId(), ": Anycasting content ", content, " to topic ", topic,Logger.EVENT_LOG);
 
     endpoint.route(topic.getId(), new AnycastMessage(handle, topic, content), null);
   }
@@ -425,7 +448,7 @@ public class ScribeImpl implements Scribe, Application {
    * @param child The child to add
    */
   public void addChild(Topic topic, NodeHandle child) {
-    Logger.log(endpoint.getId() + ": Adding child " + child + " to topic " + topic,Logger.EVENT_LOG);
+    Logger.log(endpoint.getId(), ": Adding child ", child, " to topic ", topic,Logger.EVENT_LOG);
     TopicManager manager = (TopicManager) topics.get(topic);
 
     // if we don't know about the topic, we subscribe, otherwise,
@@ -469,7 +492,7 @@ public class ScribeImpl implements Scribe, Application {
    * @param sendDrop Whether or not to send a drop message to the chil
    */
   protected void removeChild(Topic topic, NodeHandle child, boolean sendDrop) {
-    Logger.log(endpoint.getId() + ": Removing child " + child + " from topic " + topic,Logger.EVENT_LOG);
+    Logger.log(endpoint.getId(), ": Removing child ", child, " from topic ", topic,Logger.EVENT_LOG);
 
     if (topics.get(topic) != null) {
       TopicManager manager = (TopicManager) topics.get(topic);
@@ -519,7 +542,7 @@ public class ScribeImpl implements Scribe, Application {
    */
   public boolean forward(final Message message) {  	
   	//System.out.println(endpoint.getId()+" forward "+message); 
-    Logger.log(endpoint.getId() + ": Forward called with " + message,Logger.EVENT_LOG);
+    Logger.log(endpoint.getId(), ": Forward called with ", message,Logger.EVENT_LOG);
     
     
     if (message instanceof AnycastMessage) {
@@ -674,7 +697,7 @@ public class ScribeImpl implements Scribe, Application {
    */
   public void deliver(Id id, Message message)  {
   	//System.out.println(endpoint.getId()+" deliver "+message);
-    Logger.log(endpoint.getId() + ": Deliver called with " + id + " " + message,Logger.EVENT_LOG);
+    Logger.log(endpoint.getId(), ": Deliver called with ", id, " ", message,Logger.EVENT_LOG);
     
     if (message instanceof AnycastMessage) {
       AnycastMessage aMessage = (AnycastMessage) message;
@@ -717,7 +740,7 @@ public class ScribeImpl implements Scribe, Application {
 
       ackMessageReceived(saMessage);
 
-      Logger.log(endpoint.getId() + ": Received subscribe ack message from " + saMessage.getSource() + " for topic " + saMessage.getTopic(),Logger.EVENT_LOG);
+      Logger.log(endpoint.getId(), ": Received subscribe ack message from ", saMessage.getSource(), " for topic ", saMessage.getTopic(),Logger.EVENT_LOG);
 
       if (! saMessage.getSource().isAlive()) {
         Logger.log(endpoint.getId() + ": Received subscribe ack message from " + saMessage.getSource() + " for topic " + saMessage.getTopic(),Logger.EVENT_LOG);
@@ -765,8 +788,8 @@ public class ScribeImpl implements Scribe, Application {
       PublishRequestMessage prMessage = (PublishRequestMessage) message;
       TopicManager manager = (TopicManager) topics.get(prMessage.getTopic());
 
-      Logger.log(endpoint.getId() + ": Received publish request message with data " +
-        prMessage.getContent() + " for topic " + prMessage.getTopic(),Logger.EVENT_LOG);
+      Logger.log(endpoint.getId(), ": Received publish request message with data ",
+        prMessage.getContent(), " for topic ", prMessage.getTopic(),Logger.EVENT_LOG);
 
       // if message is for a non-existant topic, drop it on the floor (we are the root, after all)
       // otherwise, turn it into a publish message, and forward it on
@@ -774,13 +797,16 @@ public class ScribeImpl implements Scribe, Application {
         Logger.log(endpoint.getId() + ": Received publish request message for non-existent topic " +
           prMessage.getTopic() + " - dropping on floor.",Logger.EVENT_LOG);
       } else {
-        deliver(prMessage.getTopic().getId(), new PublishMessage(prMessage.getSource(), prMessage.getTopic(), prMessage.getContent()));
+        if (prMessage.getContents() == null)
+          deliver(prMessage.getTopic().getId(), new PublishMessage(prMessage.getSource(), prMessage.getTopic(), prMessage.getContent()));
+        else
+          deliver(prMessage.getTopic().getId(), new PublishMessage(prMessage.getSource(), prMessage.getTopic(), prMessage.getContents()));
       }
     } else if (message instanceof PublishMessage) {
       PublishMessage pMessage = (PublishMessage) message;
       TopicManager manager = (TopicManager) topics.get(pMessage.getTopic());
 
-      Logger.log(endpoint.getId() + ": Received publish message with data " + pMessage.getContent() + " for topic " + pMessage.getTopic(),Logger.EVENT_LOG);
+      Logger.log(endpoint.getId(), ": Received publish message with data ", pMessage.getContent(), " for topic ", pMessage.getTopic(),Logger.EVENT_LOG);
 
       // if we don't know about this topic, send an unsubscribe message
       // otherwise, we deliver the message to all clients and forward the
@@ -789,18 +815,27 @@ public class ScribeImpl implements Scribe, Application {
         pMessage.setSource(handle);
 
         ScribeClient[] clients = manager.getClients();
+        ScribeContent[] contents = pMessage.getContents();
 
         for (int i = 0; i < clients.length; i++) {
-          Logger.log(endpoint.getId() + ": Delivering publish message with data " + pMessage.getContent() + " for topic " +
-            pMessage.getTopic() + " to client " + clients[i],Logger.EVENT_LOG);
-          clients[i].deliver(pMessage.getTopic(), pMessage.getContent());
+          if (Logger.isLoggable(Logger.EVENT_LOG))
+            Logger.log(endpoint.getId() + ": Delivering publish message with data " + pMessage.getContent() + " for topic " +
+              pMessage.getTopic() + " to client " + clients[i],Logger.EVENT_LOG);
+          if (contents == null)
+            clients[i].deliver(pMessage.getTopic(), pMessage.getContent());
+          else
+            for (int j = 0; j < contents.length; j++)
+              clients[i].deliver(pMessage.getTopic(), contents[j]);
         }
 
+        // the same message, with the same contents, is sent to all children
+
         NodeHandle[] handles = manager.getChildren();
 
         for (int i = 0; i < handles.length; i++) {
-          Logger.log(endpoint.getId() + ": Forwarding publish message with data " + pMessage.getContent() + " for topic " +
-            pMessage.getTopic() + " to child " + handles[i],Logger.EVENT_LOG);
+          if (Logger.isLoggable(Logger.EVENT_LOG))
+            Logger.log(endpoint.getId() + ": Forwarding publish message with data " + pMessage.getContent() + " for topic " +
+              pMessage.getTopic() + " to child " + handles[i],Logger.EVENT_LOG);
           endpoint.route(handles[i].getId(), pMessage, handles[i]);
         }
       } else {
@@ -817,7 +852,7 @@ public class ScribeImpl implements Scribe, Application {
       removeChild(uMessage.getTopic(), uMessage.getSource(), false);
     } else if (message instanceof DropMessage) {
       DropMessage dMessage = (DropMessage) message;
-      Logger.log(endpoint.getId() + ": Received drop message from " + dMessage.getSource() + " for topic " + dMessage.getTopic(),Logger.EVENT_LOG);
+      Logger.log(endpoint.getId(), ": Received drop message from ", dMessage.getSource(), " for topic ", dMessage.getTopic(),Logger.EVENT_LOG);
       
       TopicManager manager = (TopicManager) topics.get(dMessage.getTopic());
 
@@ -869,13 +904,12 @@ public class ScribeImpl implements Scribe, Application {
    * @param joined Whether the node has joined or left
    */
   public void update(NodeHandle handle, boolean joined) {
-    Set set = topics.keySet();
-    Iterator e = set.iterator();
+    Topic[] all = topics.getTopics();
     TopicManager manager;
     Topic topic;
 
-    while(e.hasNext()){
-      topic = (Topic)e.next();
+    for (int i = 0; i < all.length; i++) {
+      topic = all[i];
       manager = (TopicManager)topics.get(topic);
 
       if (joined){
@@ -919,25 +953,35 @@ public class ScribeImpl implements Scribe, Application {
     protected Topic topic;
 
     /**
-     * The current path to the root for this node
+     * The current path to the root for this node, interned
      */
-    protected Id[] pathToRoot;
+    protected TopicRegistry.Path pathToRoot;
 
     /**
      * DESCRIBE THE FIELD
      */
-    protected Vector clients;
+    protected InlineSet clients;
 
     /**
      * DESCRIBE THE FIELD
      */
-    protected Vector children;
+    protected InlineSet children;
 
     /**
      * DESCRIBE THE FIELD
      */
     protected NodeHandle parent;
 
+    /**
+     * Cached array of the clients, or null if they have changed.
+     */
+    private ScribeClient[] clientsArray = null;
+
+    /**
+     * Cached array of the children, or null if they have changed.
+     */
+    private NodeHandle[] childrenArray = null;
+
     /**
      * Constructor for TopicManager.
      *
@@ -969,10 +1013,10 @@ public class ScribeImpl implements Scribe, Application {
      */
     protected TopicManager(Topic topic) {
       this.topic = topic;
-      this.clients = new Vector();
-      this.children = new Vector();
+      this.clients = new InlineSet();
+      this.children = new InlineSet();
 
-      setPathToRoot(new Id[0]);
+      setPathToRoot(EMPTY_PATH);
     }
 
     /**
@@ -985,21 +1029,27 @@ public class ScribeImpl implements Scribe, Application {
     }
 
     /**
-     * Gets the Clients attribute of the TopicManager object
+     * Gets the Clients attribute of the TopicManager object. The array is
+     * cached until the clients change, so it must not be modified.
      *
      * @return The Clients value
      */
     public ScribeClient[] getClients() {
-      return (ScribeClient[]) clients.toArray(new ScribeClient[0]);
+      if (clientsArray == null)
+        clientsArray = (ScribeClient[]) clients.toArray(new ScribeClient[clients.size()]);
+      return clientsArray;
     }
 
     /**
-     * Gets the Children attribute of the TopicManager object
+     * Gets the Children attribute of the TopicManager object. The array is
+     * cached until the children change, so it must not be modified.
      *
      * @return The Children value
      */
     public NodeHandle[] getChildren() {
-      return (NodeHandle[]) children.toArray(new NodeHandle[0]);
+      if (childrenArray == null)
+        childrenArray = (NodeHandle[]) children.toArray(new NodeHandle[children.size()]);
+      return childrenArray;
     }
 
     /**
@@ -1008,24 +1058,23 @@ public class ScribeImpl implements Scribe, Application {
      * @return The PathToRoot value
      */
     public Id[] getPathToRoot() {
-      return pathToRoot;
+      return pathToRoot.getIds();
     }
 
     /**
-     * Sets the PathToRoot attribute of the TopicManager object
+     * Sets the PathToRoot attribute of the TopicManager object. The path
+     * is interned, so it is shared with the topics with the same path.
      *
      * @param pathToRoot The new PathToRoot value
      */
     public void setPathToRoot(Id[] pathToRoot) {
       // build the path to the root for the new node
-      this.pathToRoot = new Id[pathToRoot.length + 1];
-      System.arraycopy(pathToRoot, 0, this.pathToRoot, 0, pathToRoot.length);
-      this.pathToRoot[pathToRoot.length] = endpoint.getId();
+      this.pathToRoot = TopicRegistry.internPath(pathToRoot, endpoint.getId());
 
       // now send the information out to our children
       NodeHandle[] children = getChildren();
       for (int i=0; i<children.length; i++) {
-        if (Arrays.asList(this.pathToRoot).contains(children[i].getId())) {
+        if (Arrays.asList(getPathToRoot()).contains(children[i].getId())) {
           endpoint.route(children[i].getId(), new DropMessage(handle, topic), children[i]);
           removeChild(children[i]);
         } else {
@@ -1049,7 +1098,7 @@ public class ScribeImpl implements Scribe, Application {
       }
 
       parent = handle;
-      setPathToRoot(new Id[0]);
+      setPathToRoot(EMPTY_PATH);
 
       if ((parent != null) && parent.isAlive()) {
         parent.addObserver(this);
@@ -1075,7 +1124,7 @@ public class ScribeImpl implements Scribe, Application {
           setParent(null);
 
           if (clients.size() > 0)
-            sendSubscribe(topic, (ScribeClient) clients.elementAt(0), null, ((NodeHandle) o).getId());
+            sendSubscribe(topic, (ScribeClient) clients.first(), null, ((NodeHandle) o).getId());
           else
             sendSubscribe(topic, null, null, ((NodeHandle) o).getId());
         } else {
@@ -1091,8 +1140,8 @@ public class ScribeImpl implements Scribe, Application {
      * @param client The feature to be added to the Client attribute
      */
     public void addClient(ScribeClient client) {
-      if (!clients.contains(client)) {
-        clients.add(client);
+      if (clients.add(client)) {
+        clientsArray = null;
       }
     }
 
@@ -1103,7 +1152,8 @@ public class ScribeImpl implements Scribe, Application {
      * @return DESCRIBE THE RETURN VALUE
      */
     public boolean removeClient(ScribeClient client) {
-      clients.remove(client);
+      if (clients.remove(client))
+        clientsArray = null;
 
       boolean unsub = ((clients.size() == 0) && (children.size() == 0));
 
@@ -1124,6 +1174,7 @@ public class ScribeImpl implements Scribe, Application {
     public void addChild(NodeHandle child) {
       if ((!children.contains(child)) && child.isAlive()) {
         children.add(child);
+        childrenArray = null;
         child.addObserver(this);
       }
     }
@@ -1135,7 +1186,8 @@ public class ScribeImpl implements Scribe, Application {
      * @return DESCRIBE THE RETURN VALUE
      */
     public boolean removeChild(NodeHandle child) {
-      children.remove(child);
+      if (children.remove(child))
+        childrenArray = null;
       child.deleteObserver(this);
 
       boolean unsub = ((clients.size() == 0) && (children.size() == 0));
@@ -0,0 +1,283 @@
+package planet.scribe;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+import planet.commonapi.Id;
+
+/**
+ * Compact registry of the topics of a ScribeImpl, with the TopicManager of
+ * each topic. It is an open addressing hash table, keyed by the primitive
+ * hash of the topic Id, so it does not build any entry object: each topic
+ * takes only its slot at three parallel arrays.
+ * <br><br>
+ * It also interns the paths to the root of the topics: all topics with an
+ * equal path share the same Path instance, and so the same Id array. The
+ * interned paths are shared by all registries, and they are discarded when
+ * no topic uses them.
+ * <br><br>
+ * As the Hashtable it replaces, all its methods are synchronized.
+ * @see planet.scribe.ScribeImpl
+ */
+public class TopicRegistry implements java.io.Serializable {
+
+    /**
+     * Initial number of slots.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Interned paths, shared by all registries.
+     */
+    private static final WeakHashMap paths = new WeakHashMap();
+
+    /**
+     * Hash of the topic at each slot.
+     */
+    private int[] hashes;
+    /**
+     * Topic at each slot, or null for an empty slot.
+     */
+    private Topic[] topics;
+    /**
+     * TopicManager of the topic at each slot.
+     */
+    private Object[] managers;
+    /**
+     * Number of topics.
+     */
+    private int size = 0;
+
+    /**
+     * Builds an empty registry.
+     */
+    public TopicRegistry() {
+        hashes = new int[INITIAL_CAPACITY];
+        topics = new Topic[INITIAL_CAPACITY];
+        managers = new Object[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Returns the number of topics.
+     * @return The number of topics.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the TopicManager of the <b>topic</b>.
+     * @param topic Topic to look for.
+     * @return Its TopicManager, or null if the topic is not registered.
+     */
+    public synchronized Object get(Topic topic) {
+        int slot = find(topic, hash(topic));
+        return (topics[slot] == null) ? null : managers[slot];
+    }
+
+    /**
+     * Registers the <b>topic</b> with its <b>manager</b>.
+     * @param topic Topic to register.
+     * @param manager TopicManager of the topic.
+     * @return The previous TopicManager of the topic, or null.
+     */
+    public synchronized Object put(Topic topic, Object manager) {
+        int hash = hash(topic);
+        int slot = find(topic, hash);
+        if (topics[slot] != null) {
+            Object previous = managers[slot];
+            managers[slot] = manager;
+            return previous;
+        }
+        hashes[slot] = hash;
+        topics[slot] = topic;
+        managers[slot] = manager;
+        size++;
+        //keeps the load factor up to 3/4
+        if (size * 4 > topics.length * 3) resize(topics.length * 2);
+        return null;
+    }
+
+    /**
+     * Removes the <b>topic</b>.
+     * @param topic Topic to remove.
+     * @return Its TopicManager, or null if the topic was not registered.
+     */
+    public synchronized Object remove(Topic topic) {
+        int slot = find(topic, hash(topic));
+        if (topics[slot] == null) return null;
+        Object previous = managers[slot];
+        int mask = topics.length - 1;
+        //moves back the next topics of the cluster to keep them reachable
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (topics[next] == null) break;
+            int home = hashes[next] & mask;
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                hashes[slot] = hashes[next];
+                topics[slot] = topics[next];
+                managers[slot] = managers[next];
+                slot = next;
+            }
+        }
+        topics[slot] = null;
+        managers[slot] = null;
+        size--;
+        return previous;
+    }
+
+    /**
+     * Returns all registered topics.
+     * @return A new array with all topics.
+     */
+    public synchronized Topic[] getTopics() {
+        Topic[] result = new Topic[size];
+        int count = 0;
+        for (int i = 0; i < topics.length; i++)
+            if (topics[i] != null) result[count++] = topics[i];
+        return result;
+    }
+
+    /**
+     * Finds the slot of the <b>topic</b>, or the empty slot where it must
+     * be inserted.
+     * @param topic Topic to look for.
+     * @param hash Hash of the topic.
+     * @return The slot of the topic, or an empty slot.
+     */
+    private int find(Topic topic, int hash) {
+        int mask = topics.length - 1;
+        int slot = hash & mask;
+        while (topics[slot] != null) {
+            if (hashes[slot] == hash && topics[slot].equals(topic)) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Moves all topics to new arrays of <b>capacity</b> slots.
+     * @param capacity New number of slots, power of two.
+     */
+    private void resize(int capacity) {
+        int[] oldHashes = hashes;
+        Topic[] oldTopics = topics;
+        Object[] oldManagers = managers;
+        hashes = new int[capacity];
+        topics = new Topic[capacity];
+        managers = new Object[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldTopics.length; i++) {
+            if (oldTopics[i] == null) continue;
+            int slot = oldHashes[i] & mask;
+            while (topics[slot] != null)
+                slot = (slot + 1) & mask;
+            hashes[slot] = oldHashes[i];
+            topics[slot] = oldTopics[i];
+            managers[slot] = oldManagers[i];
+        }
+    }
+
+    /**
+     * Computes the hash of the <b>topic</b>, spreading the bits of the hash
+     * code of its Id.
+     * @param topic Any topic.
+     * @return The hash of the topic.
+     */
+    private static int hash(Topic topic) {
+        int h = topic.getId().hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the interned path made of the <b>path</b> followed by
+     * <b>last</b>.
+     * @param path Path to the root of the parent.
+     * @param last Id of the local node.
+     * @return The shared Path with these Ids.
+     */
+    public static Path internPath(Id[] path, Id last) {
+        Id[] ids = new Id[path.length + 1];
+        System.arraycopy(path, 0, ids, 0, path.length);
+        ids[path.length] = last;
+        Path candidate = new Path(ids);
+        synchronized (paths) {
+            WeakReference ref = (WeakReference) paths.get(candidate);
+            Path interned = (ref == null) ? null : (Path) ref.get();
+            if (interned != null) return interned;
+            paths.put(candidate, new WeakReference(candidate));
+            return candidate;
+        }
+    }
+
+    /**
+     * Returns the number of interned paths still in use.
+     * @return The number of interned paths.
+     */
+    public static int getInternedPaths() {
+        synchronized (paths) {
+            return paths.size();
+        }
+    }
+
+    /**
+     * Interned path to the root of a topic. Its Id array is shared, so it
+     * must not be modified.
+     */
+    public static final class Path {
+        /**
+         * Ids of the path, from the root to the local node.
+         */
+        private final Id[] ids;
+        /**
+         * Hash code of the Ids.
+         */
+        private final int hash;
+
+        /**
+         * Builds a path with the <b>ids</b>.
+         * @param ids Ids of the path.
+         */
+        private Path(Id[] ids) {
+            this.ids = ids;
+            int h = 1;
+            for (int i = 0; i < ids.length; i++)
+                h = 31 * h + ids[i].hashCode();
+            hash = h;
+        }
+
+        /**
+         * Returns the Ids of the path.
+         * @return The shared Id array.
+         */
+        public Id[] getIds() {
+            return ids;
+        }
+
+        /**
+         * Compares the Ids of both paths.
+         * @see java.lang.Object#equals(java.lang.Object)
+         * @param o Another object.
+         * @return true if it is a path with equal Ids.
+         */
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Path)) return false;
+            Path other = (Path) o;
+            if (hash != other.hash || ids.length != other.ids.length) return false;
+            for (int i = 0; i < ids.length; i++)
+                if (!ids[i].equals(other.ids[i])) return false;
+            return true;
+        }
+
+        /**
+         * Returns the hash code of the Ids.
+         * @see java.lang.Object#hashCode()
+         * @return The hash code of the path.
+         */
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
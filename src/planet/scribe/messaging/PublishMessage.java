@@ -51,6 +51,9 @@ public class PublishMessage extends ScribeMessage {
   // the content of this message
   protected ScribeContent content;
 
+  // the contents of a batch of publications, or null
+  protected ScribeContent[] contents = null;
+
   /**
    * @param source The source address
    * @param topic Message topic.
@@ -62,6 +65,18 @@ public class PublishMessage extends ScribeMessage {
     this.content = content;
   }
 
+  /**
+   * @param source The source address
+   * @param topic Message topic.
+   * @param contents Contents of a batch of publications.
+   */
+  public PublishMessage(NodeHandle source, Topic topic, ScribeContent[] contents) {
+    super(source, topic);
+
+    this.content = contents[0];
+    this.contents = contents;
+  }
+
   /**
    * Returns the content
    *
@@ -70,8 +85,19 @@ public class PublishMessage extends ScribeMessage {
   public ScribeContent getContent() {
     return content;
   }
+
+  /**
+   * Returns the contents of a batch of publications
+   *
+   * @return The contents, or null if this message has only one content
+   */
+  public ScribeContent[] getContents() {
+    return contents;
+  }
   
   public String toString() {
+    if (contents != null)
+      return "PublishMessage"+topic+":"+contents.length+" contents";
     return "PublishMessage"+topic+":"+content;
   }
 
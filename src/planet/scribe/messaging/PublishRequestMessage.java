@@ -51,6 +51,9 @@ public class PublishRequestMessage extends ScribeMessage {
   // the content of this message
   protected ScribeContent content;
 
+  // the contents of a batch of publications, or null
+  protected ScribeContent[] contents = null;
+
   /**
    * @param source The source address
    * @param topic Message topic.
@@ -62,6 +65,18 @@ public class PublishRequestMessage extends ScribeMessage {
     this.content = content;
   }
 
+  /**
+   * @param source The source address
+   * @param topic Message topic.
+   * @param contents Contents of a batch of publications.
+   */
+  public PublishRequestMessage(NodeHandle source, Topic topic, ScribeContent[] contents) {
+    super(source, topic);
+
+    this.content = contents[0];
+    this.contents = contents;
+  }
+
   /**
    * Returns the content
    *
@@ -71,5 +86,14 @@ public class PublishRequestMessage extends ScribeMessage {
     return content;
   }
 
+  /**
+   * Returns the contents of a batch of publications
+   *
+   * @return The contents, or null if this message has only one content
+   */
+  public ScribeContent[] getContents() {
+    return contents;
+  }
+
 }
 
@@ -0,0 +1,256 @@
+package planet.simulate;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Vector;
+
+import planet.commonapi.Id;
+import planet.commonapi.exception.InitializationException;
+import planet.generic.commonapi.factory.GenericFactory;
+import planet.util.Properties;
+
+/**
+ * This class reads the events of a binary events file, built by the
+ * BinaryEventWriter. The binary format is the following:
+ * <pre>
+ * header : MAGIC (4 bytes) VERSION (1 byte) {IdClass} (UTF) {bits} (int) {valueKind} (1 byte)
+ * record : {flags} (1 byte) {stepDelta} (varint) [{numberOfTimes} (varint)] [{sourceNodeId}] [{destinationNodeId}]
+ * </pre>
+ * Each record is equivalent to a line of the text events file:
+ * <ul>
+ * <li><b>{flags}</b>: the event type (JOIN, LEAVE or FAIL) in the two lowest
+ * bits and the FROM_ANY, TO_ANY and MULTIPLE flags.</li>
+ * <li><b>{stepDelta}</b>: the difference with the step number of the
+ * previous record, zig-zag encoded.</li>
+ * <li><b>{numberOfTimes}</b>: only with the MULTIPLE flag (one in other case).</li>
+ * <li><b>{sourceNodeId}</b>: fixed width Id, only without the FROM_ANY flag
+ * (the <B>ID</b> value of the text format).</li>
+ * <li><b>{destinationNodeId}</b>: fixed width Id, only for JOIN events
+ * without the TO_ANY flag.</li>
+ * </ul>
+ * The Ids are saved with its internal value: a sequence of ints for the
+ * ChordId or a double for the SymphonyId. The header has to match with
+ * the Id class of the current configuration.
+ * @see planet.simulate.BinaryEventWriter
+ * @see planet.simulate.EventParser
+ */
+public class BinaryEventReader {
+
+    /**
+     * Starting bytes of any binary events file.
+     */
+    public static final byte[] MAGIC = {'P','S','E','V'};
+    /**
+     * Version of the binary format.
+     */
+    public static final int VERSION = 1;
+    /**
+     * Value kind for Ids with an int[] value.
+     */
+    public static final int INT_ARRAY_VALUE = 'I';
+    /**
+     * Value kind for Ids with a Double value.
+     */
+    public static final int DOUBLE_VALUE = 'D';
+    /**
+     * Mask of the event type into the flags.
+     */
+    public static final int TYPE_MASK = 0x03;
+    /**
+     * Flag: the source Id is not saved (<b>ID</b> in the text format).
+     */
+    public static final int FROM_ANY = 0x10;
+    /**
+     * Flag: the destination Id is not saved (<b>ID</b> in the text format).
+     */
+    public static final int TO_ANY = 0x20;
+    /**
+     * Flag: the number of times is saved.
+     */
+    public static final int MULTIPLE = 0x40;
+
+    /**
+     * Stream of the binary file.
+     */
+    private DataInputStream in = null;
+    /**
+     * Number of ints of the Ids, or zero for Ids with a double value.
+     */
+    private int idInts;
+    /**
+     * Step number of the last read record.
+     */
+    private int time = 0;
+
+    /**
+     * Opens the binary events file <b>fileName</b> and validates its header
+     * with the current configuration.
+     * @param fileName Path to the binary events file.
+     * @throws FileNotFoundException if the file is not found.
+     * @throws IOException if the file is not a binary events file or its Ids
+     * do not match the current configuration.
+     */
+    public BinaryEventReader(String fileName) throws FileNotFoundException, IOException {
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC) || in.readUnsignedByte() != VERSION)
+            throw new IOException("The file [" + fileName + "] is not a binary events file.");
+        String idClass = in.readUTF();
+        int bits = in.readInt();
+        int kind = in.readUnsignedByte();
+        if (!idClass.equals(Properties.overlayId.getName()) || bits != getIdBits())
+            throw new IOException("The events file [" + fileName + "] contains Ids [" + idClass + "] of [" + bits +
+                    "] bits, and the current configuration uses [" + Properties.overlayId.getName() + "] of [" + getIdBits() + "] bits.");
+        idInts = (kind == INT_ARRAY_VALUE) ? bits / 32 : 0;
+    }
+
+    /**
+     * Shows if the file <b>fileName</b> is a binary events file, looking at its
+     * starting bytes.
+     * @param fileName Path to the file.
+     * @return true if the file starts as a binary events file.
+     */
+    public static boolean isBinary(String fileName) {
+        byte[] magic = new byte[MAGIC.length];
+        try {
+            DataInputStream test = new DataInputStream(new FileInputStream(fileName));
+            try {
+                test.readFully(magic);
+            } finally {
+                test.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return Arrays.equals(magic, MAGIC);
+    }
+
+    /**
+     * Returns the number of bits of the Ids of the current configuration.
+     * @return The number of bits of the Ids.
+     * @throws IOException if the Ids cannot be saved into a binary file.
+     */
+    static int getIdBits() throws IOException {
+        Object value = null;
+        try {
+            value = ((Id) GenericFactory.newInstance(Properties.overlayId)).getValue();
+        } catch (InitializationException e) {
+            throw new IOException("Cannot build an Id: " + e.getMessage());
+        }
+        if (value instanceof int[])
+            return ((int[]) value).length * 32;
+        if (value instanceof Double)
+            return 64;
+        throw new IOException("The Id class [" + Properties.overlayId.getName() + "] cannot be saved into a binary events file.");
+    }
+
+    /**
+     * Parse all the events of the binary file, closing it.
+     * @param fileName Path to the binary events file.
+     * @return A Vector with all loaded events.
+     * @throws FileNotFoundException if the file is not found.
+     * @throws IOException if occurs any problem loading the file.
+     */
+    public static Vector parseEvents(String fileName) throws FileNotFoundException, IOException {
+        Vector events = new Vector();
+        BinaryEventReader reader = new BinaryEventReader(fileName);
+        while (reader.readRecord(events));
+        reader.close();
+        return events;
+    }
+
+    /**
+     * Reads the next record, appending into <b>events</b> the same events
+     * than the EventParser builds for the equivalent text line.
+     * @param events Vector where the events are appended.
+     * @return false if the end of file is reached.
+     * @throws IOException if occurs any problem reading the file.
+     */
+    public boolean readRecord(Vector events) throws IOException {
+        int flags = in.read();
+        if (flags < 0) return false;
+        try {
+            int delta = readVarint();
+            time += (delta >>> 1) ^ -(delta & 1);
+            int times = ((flags & MULTIPLE) != 0) ? readVarint() : 1;
+            int type = Globals.JOIN + (flags & TYPE_MASK);
+            Object from = ((flags & FROM_ANY) != 0) ? null : readValue();
+            Object to = (type != Globals.JOIN || (flags & TO_ANY) != 0) ? null : readValue();
+
+            Id id;
+            Id target;
+            for (int cnt = 0; cnt < times; cnt++) {
+                if (type == Globals.JOIN) {
+                    id = (from == null) ? GenericFactory.buildRandomId() : buildId(from);
+                    target = (to == null) ? null : buildId(to);
+                } else {
+                    id = (from == null) ? null : buildId(from);
+                    target = null;
+                }
+                events.add(new Event(id, target, type, times, time));
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated binary events file.");
+        } catch (InitializationException e) {
+            throw new IOException("Cannot build an Id: " + e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Closes the binary events file.
+     * @throws IOException if occurs any problem closing the file.
+     */
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Reads an unsigned varint.
+     * @return The read value.
+     * @throws IOException if occurs any problem reading the file.
+     */
+    private int readVarint() throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Reads the internal value of an Id.
+     * @return The int[] or Double value of the Id.
+     * @throws IOException if occurs any problem reading the file.
+     */
+    private Object readValue() throws IOException {
+        if (idInts == 0)
+            return new Double(Double.longBitsToDouble(in.readLong()));
+        int[] value = new int[idInts];
+        for (int i = 0; i < idInts; i++)
+            value[i] = in.readInt();
+        return value;
+    }
+
+    /**
+     * Builds a new Id with the internal <b>value</b>.
+     * @param value The int[] or Double value of the Id.
+     * @return A new Id.
+     * @throws InitializationException if the Id cannot be built.
+     */
+    private static Id buildId(Object value) throws InitializationException {
+        Id id = (Id) GenericFactory.newInstance(Properties.overlayId);
+        id.setValue(value);
+        return id;
+    }
+}
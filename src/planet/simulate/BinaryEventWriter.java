@@ -0,0 +1,200 @@
+package planet.simulate;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.StringTokenizer;
+
+import planet.commonapi.Id;
+import planet.commonapi.exception.InitializationException;
+import planet.generic.commonapi.GenericApp;
+import planet.generic.commonapi.factory.GenericFactory;
+import planet.util.Properties;
+
+/**
+ * This class saves events into a binary events file, with the format
+ * described in the BinaryEventReader. The Ids are saved with the Id class
+ * of the current configuration, with a fixed width.
+ * <br><br>
+ * It also converts the text events files, with the format of the
+ * EventParser, to the binary format.
+ * @see planet.simulate.BinaryEventReader
+ * @see planet.simulate.EventParser
+ */
+public class BinaryEventWriter {
+
+    /**
+     * Stream of the binary file.
+     */
+    private DataOutputStream out = null;
+    /**
+     * Step number of the last written record.
+     */
+    private int time = 0;
+
+    /**
+     * Builds the binary events file <b>fileName</b> and writes its header,
+     * with the Id class of the current configuration.
+     * @param fileName Path to the binary events file.
+     * @throws FileNotFoundException if cannot make the new file or cannot
+     * overwrite it.
+     * @throws IOException if the Ids cannot be saved into a binary file.
+     */
+    public BinaryEventWriter(String fileName) throws FileNotFoundException, IOException {
+        int bits = BinaryEventReader.getIdBits();
+        Id zero = null;
+        try {
+            zero = (Id) GenericFactory.newInstance(Properties.overlayId);
+        } catch (InitializationException e) {
+            throw new IOException("Cannot build an Id: " + e.getMessage());
+        }
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+        out.write(BinaryEventReader.MAGIC);
+        out.writeByte(BinaryEventReader.VERSION);
+        out.writeUTF(Properties.overlayId.getName());
+        out.writeInt(bits);
+        out.writeByte((zero.getValue() instanceof int[]) ?
+                BinaryEventReader.INT_ARRAY_VALUE : BinaryEventReader.DOUBLE_VALUE);
+    }
+
+    /**
+     * Writes a record, equivalent to a line of the text events file.
+     * @param time Step number of the event.
+     * @param type Event type: Globals.JOIN, Globals.LEAVE or Globals.FAIL.
+     * @param from Source node Id, or null for any Id (<b>ID</b> in the text format).
+     * @param to Destination node Id for JOIN events, or null for any Id
+     * (<b>ID</b> in the text format).
+     * @param times Number of times of the event.
+     * @throws IOException if occurs any problem writing the file.
+     */
+    public void write(int time, int type, Id from, Id to, int times) throws IOException {
+        if (type < Globals.JOIN || type > Globals.FAIL)
+            throw new IOException("Unknown event type [" + type + "].");
+        int flags = type - Globals.JOIN;
+        if (from == null) flags |= BinaryEventReader.FROM_ANY;
+        if (to == null) flags |= BinaryEventReader.TO_ANY;
+        if (times != 1) flags |= BinaryEventReader.MULTIPLE;
+
+        out.writeByte(flags);
+        int delta = time - this.time;
+        writeVarint((delta << 1) ^ (delta >> 31));
+        this.time = time;
+        if (times != 1) writeVarint(times);
+        if (from != null) writeId(from);
+        if (type == Globals.JOIN && to != null) writeId(to);
+    }
+
+    /**
+     * Closes the binary events file.
+     * @throws IOException if occurs any problem closing the file.
+     */
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Writes an unsigned varint.
+     * @param value Value to write.
+     * @throws IOException if occurs any problem writing the file.
+     */
+    private void writeVarint(int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Writes the internal value of the Id <b>id</b>.
+     * @param id Id to write.
+     * @throws IOException if occurs any problem writing the file.
+     */
+    private void writeId(Id id) throws IOException {
+        Object value = id.getValue();
+        if (value instanceof int[]) {
+            int[] ints = (int[]) value;
+            for (int i = 0; i < ints.length; i++)
+                out.writeInt(ints[i]);
+        } else
+            out.writeLong(Double.doubleToRawLongBits(((Double) value).doubleValue()));
+    }
+
+    /**
+     * Converts the text events file <b>textFile</b> to the binary events
+     * file <b>binaryFile</b>. The Ids are built with the Id class of the
+     * current configuration.
+     * @param textFile Path to the text events file.
+     * @param binaryFile Path to the binary events file.
+     * @return The number of converted lines.
+     * @throws FileNotFoundException if any file is not found.
+     * @throws IOException if occurs any problem with the files.
+     * @throws InitializationException if any Id cannot be built.
+     */
+    public static int convert(String textFile, String binaryFile)
+            throws FileNotFoundException, IOException, InitializationException {
+        BufferedReader in = new BufferedReader(new FileReader(textFile));
+        BinaryEventWriter writer = new BinaryEventWriter(binaryFile);
+        int lines = 0;
+        String line;
+        StringTokenizer st;
+        int time, type, times;
+        Id from, to;
+        while ((line = in.readLine()) != null) {
+            st = new StringTokenizer(line);
+            if (!st.hasMoreTokens()) continue;
+            //'at' token
+            st.nextToken();
+            time = Integer.parseInt(st.nextToken());
+            type = EventParser.getType(st.nextToken());
+            if (type < 0) continue;
+            from = parseId(st.nextToken());
+            to = (type == Globals.JOIN) ? parseId(st.nextToken()) : null;
+            times = Integer.parseInt(st.nextToken());
+            writer.write(time, type, from, to, times);
+            lines++;
+        }
+        in.close();
+        writer.close();
+        return lines;
+    }
+
+    /**
+     * Builds the Id for the <b>token</b>.
+     * @param token Id field of a text events file.
+     * @return The built Id, or null for the <b>ID</b> value.
+     * @throws InitializationException if the Id cannot be built.
+     */
+    private static Id parseId(String token) throws InitializationException {
+        if (token.equalsIgnoreCase("ID"))
+            return null;
+        return GenericFactory.buildId(token);
+    }
+
+    /**
+     * This main application wait two arguments:
+     * <ol>
+     * <li><b>textFile</b>: Filename of the text events file to convert.</li>
+     * <li><b>binaryFile</b>: Filename to save the binary events file.</li>
+     * </ol>
+     * The Ids are built with the configuration of the GENFILEEVENTS key
+     * of the master properties file.
+     * @param args Command line arguments.
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Required arguments: {textFile} {binaryFile}");
+            System.err.println("    {textFile}  : Filename of the text events file to convert.");
+            System.err.println("    {binaryFile}: Filename where to save the binary events file.");
+            System.exit(0);
+        }
+        GenericApp.start("../conf/master.properties", GenFileEvents.MASTER_PROPERTY_NAME, false, true, false, false);
+        int lines = convert(args[0], args[1]);
+        System.out.println("The binary events file is [" + args[1] + "] with [" + lines + "] events.");
+    }
+}
@@ -11,6 +11,7 @@ import java.util.Vector;
 
 import planet.commonapi.Id;
 import planet.generic.commonapi.factory.GenericFactory;
+import planet.util.Properties;
 
 /**
  * This class permits to parser the events file with a concrete text format.
@@ -31,6 +32,9 @@ import planet.generic.commonapi.factory.GenericFactory;
  * This last implementation is generic and permits the use of any
  * implemented Id to load the specified values into the 
  * <b>{sourceNodeId}</b> and <b>{destinationNodeId}</b> fields.
+ * <br><br>
+ * The events files can also be saved with the binary format of the
+ * BinaryEventWriter, which is detected by its starting bytes.
  * @author <a href="mailto: pedro.garcia@urv.net">Pedro Garcia</a>
  * @author <a href="mailto: carles.pairot@urv.net">Carles Pairot</a>
  * @author <a href="mailto: ruben.mondejar@estudiants.urv.es">Ruben Mondejar</a>
@@ -40,13 +44,16 @@ import planet.generic.commonapi.factory.GenericFactory;
 public class EventParser {
     
     /**
-     * Parse the specified <b>fileName</b>.
+     * Parse the specified <b>fileName</b>, as a text or a binary events file.
      * @param fileName Path to the file with the events to load.
      * @return A Vector with all loaded events.
      * @throws FileNotFoundException if the file is not found.
      * @throws IOException if occurs any problem loading the file.
      */
     public static Vector parseEvents(String fileName) throws FileNotFoundException, IOException {
+        if (BinaryEventReader.isBinary(fileName))
+            return BinaryEventReader.parseEvents(fileName);
+
         Vector events = new Vector();
 
         FileReader fis = new FileReader(fileName);
@@ -60,12 +67,31 @@ public class EventParser {
         return events;
     }
 
+    /**
+     * Builds the IScheduler with the events of the specified <b>fileName</b>.
+     * If the SIMULATOR_EVENT_WINDOW property is greater than zero, the file is
+     * read incrementally by a StreamScheduler with this window. Otherwise,
+     * the whole file is loaded into a Scheduler.
+     * @param fileName Path to the file with the events to load.
+     * @return The IScheduler with the events of the file.
+     * @throws FileNotFoundException if the file is not found.
+     * @throws IOException if occurs any problem loading the file.
+     * @see planet.util.Properties#simulatorEventWindow
+     */
+    public static IScheduler buildScheduler(String fileName) throws FileNotFoundException, IOException {
+        if (Properties.simulatorEventWindow > 0)
+            return new StreamScheduler(fileName, Properties.simulatorEventWindow);
+        Scheduler timer = new Scheduler();
+        timer.addEvents(parseEvents(fileName));
+        return timer;
+    }
+
     /**
      * Parse a loaded line from events file.
      * @param line The event to load in text format.
      * @return A Vector with all built events from the line.
      */
-    private static Vector parseLine(String line) {
+    static Vector parseLine(String line) {
         StringTokenizer st = new StringTokenizer(line);
         String token;
 
@@ -180,7 +206,7 @@ public class EventParser {
      * @return The required int value for the <b>type</b> or <B>-1</b> if
      * the type is unknown.
      */
-    private static int getType(String type) {
+    static int getType(String type) {
         type = type.toUpperCase();
         if (type.equals("JOIN")){
             return Globals.JOIN;
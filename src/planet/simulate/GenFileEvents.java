@@ -18,6 +18,12 @@ import planet.generic.commonapi.GenericApp;
  */
 public class GenFileEvents {
 
+    /**
+     * Key of the master properties file with the configuration used to build
+     * the Ids of the events files.
+     */
+    public static final String MASTER_PROPERTY_NAME = "GENFILEEVENTS";
+
     /**
 	 * Generate a set of random ids for nodes to insert to the overlay.
 	 * The generated values are node's id and nodes' bootstrap. All this
@@ -28,7 +34,21 @@ public class GenFileEvents {
 	 */
 	public static void genRandomEvents(String name,int num, int time) 
 			throws IOException,FileNotFoundException, InitializationException {
-		printEvents(name,GenEvents.genRandomIds(num),time);
+		genRandomEvents(name,num,time,false);
+	}
+
+	/**
+	 * Generate a set of random ids for nodes to insert to the overlay,
+	 * saving them into a text or binary events file called <b>name</b>.
+	 * @param name Filename where to save all events.
+	 * @param num Number of nodes to generate.
+	 * @param time Number of steps between any two events.
+	 * @param binary true to save a binary events file.
+	 * @see planet.simulate.BinaryEventWriter
+	 */
+	public static void genRandomEvents(String name,int num, int time, boolean binary) 
+			throws IOException,FileNotFoundException, InitializationException {
+		printEvents(name,GenEvents.genRandomIds(num),time,binary);
 	}
 	
 	/**
@@ -41,7 +61,21 @@ public class GenFileEvents {
 	 */
 	public static void genDistribEvents(String name,int num, int time) throws IOException,FileNotFoundException, InitializationException {
 		
-	    printEvents(name,GenEvents.genDistribEvents(num),time);
+	    genDistribEvents(name,num,time,false);
+	}
+
+	/**
+	 * Build <b>num</b> equidistant Ids, saving them into a text or binary
+	 * events file called <b>name</b>.
+	 * @param name Filename where to save all events.
+	 * @param num Number of nodes to generate.
+	 * @param time Number of steps between any two events.
+	 * @param binary true to save a binary events file.
+	 * @see planet.simulate.BinaryEventWriter
+	 */
+	public static void genDistribEvents(String name,int num, int time, boolean binary) throws IOException,FileNotFoundException, InitializationException {
+		
+	    printEvents(name,GenEvents.genDistribEvents(num),time,binary);
 	}
 
 	/**
@@ -50,13 +84,23 @@ public class GenFileEvents {
 	 * @param ids Object[] with two positions: the first one with the Id[] of the bootstraps;
 	 * the second one with the Id[] of the node Ids itself.
 	 * @param time Number of steps between any two events.
+	 * @param binary true to save a binary events file.
 	 * @throws IOException when any error has ocurred during the printing.
 	 * @throws FileNotFoundException if cannot make the new file or cannot overwrite it.
 	 */
-	private static void printEvents(String name, Object[] ids, int time) throws IOException,FileNotFoundException
+	private static void printEvents(String name, Object[] ids, int time, boolean binary) throws IOException,FileNotFoundException
 	{
 	    Id[] boot = (Id[])ids[0];
 	    Id[] node = (Id[])ids[1];
+		
+	    if (binary) {
+	        BinaryEventWriter writer = new BinaryEventWriter(name);
+	        for(int i=0;i<boot.length;i++) {
+	            writer.write(i*time,Globals.JOIN,node[i],boot[i],1);
+	        }
+	        writer.close();
+	        return;
+	    }
 				
 		PrintStream pr = new PrintStream(new FileOutputStream(name));
 		
@@ -73,19 +117,25 @@ public class GenFileEvents {
 	 * <li><b>name</b>: Filename to save all events.</li>
 	 * <li><b>type</b>: A character: 'R' for Random events; 'D' for distributed events.</li>
 	 * <li><b>num</b>: Number of events to build.</li>
+	 * <li><b>steps</b>: Number of steps between any two events.</li>
+	 * <li><b>format</b>: Optional. A character: 'T' for a text events file (by default);
+	 * 'B' for a binary events file.</li>
 	 * </ol>
+	 * The Ids are built with the configuration of the GENFILEEVENTS key
+	 * of the master properties file.
 	 * @param args Command line arguments.
 	 * @throws Exception
 	 */
 	public static void main(String[] args) throws Exception {
 		
-	    if (args.length!=4)
+	    if (args.length!=4 && args.length!=5)
 	    {
-	        System.err.println("Required arguments: {name} {type} {numEvents} {steps}");
+	        System.err.println("Required arguments: {name} {type} {numEvents} {steps} [{format}]");
 	        System.err.println("    {name}     : Filename where to save all events.");
 	        System.err.println("    {type}     : R for random events or D for distributed events ");
 	        System.err.println("    {numEvents}: Total number of events to build.");
 	        System.err.println("    {steps}    : Number of steps between any two events.");
+	        System.err.println("    {format}   : T for a text events file (by default) or B for a binary events file.");
 	        System.exit(0);
 	    }
 	    
@@ -97,13 +147,15 @@ public class GenFileEvents {
 		
 		String step_time = args[3];
 		int time = Integer.parseInt(step_time);	
-        GenericApp gap = new GenericApp("../conf/master.properties",false,true,false,false);
+		
+		boolean binary = args.length==5 && args[4].charAt(0)=='B';
+        GenericApp.start("../conf/master.properties",MASTER_PROPERTY_NAME,false,true,false,false);
 		
 		if (type.charAt(0)=='R') {
-		  genRandomEvents(name,num,time);
+		  genRandomEvents(name,num,time,binary);
 		}
 		else {
-		  genDistribEvents(name,num,time);
+		  genDistribEvents(name,num,time,binary);
 		} 		
 		System.out.println("The generated events file is ["+name+"]");
 	}
@@ -0,0 +1,160 @@
+package planet.simulate;
+
+import planet.commonapi.Id;
+import planet.commonapi.RouteMessage;
+
+/**
+ * Logs of a thread that are written later. Each log is saved with the
+ * current order of the buffer, and the logs of several buffers are written
+ * mixed by their order. The workers of the ParallelNetworkImpl defer their
+ * logs into a LogBuffer, setting as order the position of the node or the
+ * message in the serial simulation, so the logs appear in the same order
+ * whatever the thread scheduling is.
+ * @see planet.simulate.Logger#defer(LogBuffer)
+ * @see planet.simulate.Logger#writeDeferred(LogBuffer[], int)
+ * @see planet.generic.commonapi.ParallelNetworkImpl
+ */
+public class LogBuffer {
+
+    /**
+     * Order of each saved log.
+     */
+    private long[] orders = new long[16];
+    /**
+     * Saved logs: the text of the log (without the step) or a Trace.
+     */
+    private Object[] entries = new Object[16];
+    /**
+     * Number of saved logs.
+     */
+    private int size = 0;
+    /**
+     * Position of the next log to be written.
+     */
+    private int next = 0;
+    /**
+     * Order for the next logs.
+     */
+    private long order = 0;
+
+    /**
+     * Sets the order of the next logs. It has to be greater or equal than
+     * the order of the previous logs.
+     * @param order Order of the next logs.
+     */
+    public void setOrder(long order) {
+        this.order = order;
+    }
+
+    /**
+     * Saves the text of a log.
+     * @param text Text of the log, without the step.
+     */
+    void text(String text) {
+        add(text);
+    }
+
+    /**
+     * Saves the sending or receiving of a RouteMessage for the trace file.
+     * @param direction MessageTraceReader.SEND or MessageTraceReader.RECEIVE.
+     * @param id Id of the node that sends or receives the message.
+     * @param msg The RouteMessage.
+     */
+    void trace(int direction, Id id, RouteMessage msg) {
+        add(new Trace(direction, id, msg));
+    }
+
+    /**
+     * Shows if there are logs pending to be written.
+     * @return true if there are pending logs.
+     */
+    boolean hasNext() {
+        return next < size;
+    }
+
+    /**
+     * Returns the order of the next pending log.
+     * @return The order of the next log.
+     */
+    long nextOrder() {
+        return orders[next];
+    }
+
+    /**
+     * Returns the next pending log and advances to the following one.
+     * @return The text of the log or a Trace.
+     */
+    Object poll() {
+        Object entry = entries[next];
+        entries[next++] = null;
+        if (next == size) next = size = 0;
+        return entry;
+    }
+
+    /**
+     * Appends the <b>entry</b> with the current order.
+     * @param entry Text of the log or a Trace.
+     */
+    private void add(Object entry) {
+        if (size == entries.length) {
+            long[] newOrders = new long[size << 1];
+            Object[] newEntries = new Object[size << 1];
+            System.arraycopy(orders, 0, newOrders, 0, size);
+            System.arraycopy(entries, 0, newEntries, 0, size);
+            orders = newOrders;
+            entries = newEntries;
+        }
+        orders[size] = order;
+        entries[size++] = entry;
+    }
+
+    /**
+     * Values of a sent or received RouteMessage, saved when it is logged.
+     */
+    static class Trace {
+        /**
+         * MessageTraceReader.SEND or MessageTraceReader.RECEIVE.
+         */
+        int direction;
+        /**
+         * Id of the node that sends or receives the message.
+         */
+        Id id;
+        /**
+         * Id of the source of the message.
+         */
+        Id source;
+        /**
+         * Id of the destination of the message.
+         */
+        Id destination;
+        /**
+         * RouteMessage type.
+         */
+        int type;
+        /**
+         * RouteMessage mode.
+         */
+        int mode;
+        /**
+         * RouteMessage key.
+         */
+        String key;
+
+        /**
+         * Saves the values of the <b>msg</b>.
+         * @param direction MessageTraceReader.SEND or MessageTraceReader.RECEIVE.
+         * @param id Id of the node that sends or receives the message.
+         * @param msg The RouteMessage.
+         */
+        Trace(int direction, Id id, RouteMessage msg) {
+            this.direction = direction;
+            this.id = id;
+            this.source = msg.getSource().getId();
+            this.destination = msg.getDestination().getId();
+            this.type = msg.getType();
+            this.mode = msg.getMode();
+            this.key = msg.getKey();
+        }
+    }
+}
@@ -0,0 +1,455 @@
+package planet.simulate;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import planet.commonapi.Id;
+import planet.commonapi.RouteMessage;
+import planet.commonapi.exception.InitializationException;
+import planet.generic.commonapi.factory.GenericFactory;
+import planet.util.Properties;
+
+/**
+ * Background writer of the Logger. The records are saved into a bounded
+ * ring of reusable slots by the simulation threads, and a daemon thread
+ * formats and writes them by batches:
+ * <ul>
+ * <li>The text records go to the log file, with the same format of the
+ * Logger. Their fragments are formatted by the writer thread, so the
+ * objects that can change after the log invokation (any object that is not
+ * a String, a Number or a Boolean, including the Ids, that are modified in
+ * place) are converted to String when the record is saved. An int fragment
+ * is saved without building any object.</li>
+ * <li>The send and receive records of the RouteMessages go to the trace
+ * file, with the binary format described in the MessageTraceReader.</li>
+ * </ul>
+ * When the ring is full, the simulation threads wait for the writer
+ * thread, so no record is lost.
+ * @see planet.simulate.Logger
+ * @see planet.simulate.MessageTraceReader
+ */
+class LogWriter implements Runnable {
+
+    /**
+     * Number of slots of the ring.
+     */
+    public static final int BUFFER_SIZE = 8192;
+    /**
+     * Record kind: text record.
+     */
+    private static final int TEXT = 0;
+    /**
+     * Record kind: binary record, for the sending and receiving of RouteMessages.
+     */
+    private static final int TRACE = 1;
+
+    /**
+     * A slot of the ring.
+     */
+    private static class Record {
+        /**
+         * TEXT or TRACE.
+         */
+        int kind;
+        /**
+         * Step of the log.
+         */
+        int step;
+        /**
+         * Fragments of the text records.
+         */
+        Object[] parts = new Object[8];
+        /**
+         * Number of used fragments.
+         */
+        int length;
+        /**
+         * Position of the int fragment, or -1 if there is none.
+         */
+        int numberAt = -1;
+        /**
+         * Value of the int fragment.
+         */
+        int number;
+        /**
+         * MessageTraceReader.SEND or MessageTraceReader.RECEIVE.
+         */
+        int direction;
+        /**
+         * RouteMessage type.
+         */
+        int type;
+        /**
+         * RouteMessage mode.
+         */
+        int mode;
+        /**
+         * RouteMessage key.
+         */
+        String key;
+        /**
+         * Values of the node, source and destination Ids for int[] values.
+         */
+        int[] ints;
+        /**
+         * Values of the node, source and destination Ids for Double values.
+         */
+        long[] bits = new long[3];
+    }
+
+    /**
+     * The ring of records.
+     */
+    private Record[] ring;
+    /**
+     * Number of records saved by the simulation threads.
+     */
+    private long tail = 0;
+    /**
+     * Number of records already written by the writer thread.
+     */
+    private long head = 0;
+    /**
+     * Shows if no more records are accepted.
+     */
+    private boolean closed = false;
+    /**
+     * Log file, or null to use System.out for the text records.
+     */
+    private BufferedWriter text = null;
+    /**
+     * Trace file, or null to write the send and receive records as text.
+     */
+    private DataOutputStream trace = null;
+    /**
+     * Number of ints of the int[] Id values, or zero for Double values.
+     */
+    private int idInts = 0;
+    /**
+     * Reused buffer for formatting the text records.
+     */
+    private StringBuffer line = new StringBuffer(256);
+    /**
+     * The writer thread.
+     */
+    private Thread thread;
+
+    /**
+     * Opens the files and starts the writer thread.
+     * @param logFile Path to the log file, or null for using System.out.
+     * @param traceFile Path to the trace file, or null for logging the
+     * RouteMessages as text.
+     * @throws InitializationException if any file cannot be opened or the
+     * Ids cannot be saved into a binary file.
+     */
+    public LogWriter(String logFile, String traceFile) throws InitializationException {
+        try {
+            if (traceFile != null) {
+                int bits = BinaryEventReader.getIdBits();
+                Object value = ((Id) GenericFactory.newInstance(Properties.overlayId)).getValue();
+                idInts = (value instanceof int[]) ? bits / 32 : 0;
+                trace = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(traceFile), 65536));
+                trace.write(MessageTraceReader.MAGIC);
+                trace.writeByte(MessageTraceReader.VERSION);
+                trace.writeUTF(Properties.overlayId.getName());
+                trace.writeInt(bits);
+                trace.writeByte((idInts > 0) ? BinaryEventReader.INT_ARRAY_VALUE : BinaryEventReader.DOUBLE_VALUE);
+            }
+            if (logFile != null)
+                text = new BufferedWriter(new FileWriter(logFile), 65536);
+        } catch (IOException e) {
+            throw new InitializationException("Cannot open the log files: " + e.getMessage());
+        }
+        ring = new Record[BUFFER_SIZE];
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = new Record();
+            ring[i].ints = new int[3 * idInts];
+        }
+        thread = new Thread(this, "Logger");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Shows if the text records are written by this writer.
+     * @return true if there is a log file.
+     */
+    public boolean hasText() {
+        return text != null;
+    }
+
+    /**
+     * Shows if the send and receive records are written by this writer.
+     * @return true if there is a trace file.
+     */
+    public boolean hasTrace() {
+        return trace != null;
+    }
+
+    /**
+     * Saves a text record, with the fragments <b>p0</b> to <b>p4</b>.
+     * Only the first <b>length</b> fragments are used.
+     * @param step Step of the log.
+     * @param length Number of fragments.
+     * @param p0 First fragment.
+     * @param p1 Second fragment.
+     * @param p2 Third fragment.
+     * @param p3 Fourth fragment.
+     * @param p4 Fifth fragment.
+     */
+    public synchronized void text(int step, int length, Object p0, Object p1, Object p2, Object p3, Object p4) {
+        Record r = acquire();
+        if (r == null) return;
+        r.kind = TEXT;
+        r.step = step;
+        r.length = length;
+        r.numberAt = -1;
+        Object[] parts = r.parts;
+        parts[0] = freeze(p0);
+        if (length > 1) parts[1] = freeze(p1);
+        if (length > 2) parts[2] = freeze(p2);
+        if (length > 3) parts[3] = freeze(p3);
+        if (length > 4) parts[4] = freeze(p4);
+        //only an empty ring can have the writer thread waiting
+        if (++tail - head == 1) notifyAll();
+    }
+
+    /**
+     * Saves a text record with the fragments <b>p0</b>, <b>p1</b> and
+     * <b>p2</b>, without building any object for the int fragment.
+     * @param step Step of the log.
+     * @param p0 First fragment.
+     * @param p1 Second fragment.
+     * @param p2 Third fragment.
+     */
+    public synchronized void text(int step, String p0, int p1, String p2) {
+        Record r = acquire();
+        if (r == null) return;
+        r.kind = TEXT;
+        r.step = step;
+        r.length = 3;
+        r.numberAt = 1;
+        r.number = p1;
+        r.parts[0] = p0;
+        r.parts[2] = p2;
+        if (++tail - head == 1) notifyAll();
+    }
+
+    /**
+     * Saves a text record with the <b>msgs</b> and <b>objs</b> fragments
+     * interleaved.
+     * @param step Step of the log.
+     * @param msgs String fragments.
+     * @param objs Object fragments.
+     */
+    public synchronized void text(int step, String[] msgs, Object[] objs) {
+        Record r = acquire();
+        if (r == null) return;
+        r.kind = TEXT;
+        r.step = step;
+        r.length = msgs.length * 2;
+        r.numberAt = -1;
+        if (r.parts.length < r.length)
+            r.parts = new Object[r.length];
+        for (int i = 0; i < msgs.length; i++) {
+            r.parts[2 * i] = msgs[i];
+            r.parts[2 * i + 1] = freeze(objs[i]);
+        }
+        if (++tail - head == 1) notifyAll();
+    }
+
+    /**
+     * Saves a binary record of the sending or receiving of <b>msg</b>.
+     * @param step Step of the log.
+     * @param direction MessageTraceReader.SEND or MessageTraceReader.RECEIVE.
+     * @param id Id of the node that sends or receives the message.
+     * @param msg The RouteMessage.
+     */
+    public synchronized void trace(int step, int direction, Id id, RouteMessage msg) {
+        Record r = acquire();
+        if (r == null) return;
+        r.kind = TRACE;
+        r.step = step;
+        r.direction = direction;
+        r.type = msg.getType();
+        r.mode = msg.getMode();
+        r.key = msg.getKey();
+        copyId(r, 0, id);
+        copyId(r, 1, msg.getSource().getId());
+        copyId(r, 2, msg.getDestination().getId());
+        if (++tail - head == 1) notifyAll();
+    }
+
+    /**
+     * Saves a binary record of the sending or receiving of a RouteMessage
+     * deferred at a LogBuffer.
+     * @param step Step of the log.
+     * @param t Values of the RouteMessage.
+     */
+    public synchronized void trace(int step, LogBuffer.Trace t) {
+        Record r = acquire();
+        if (r == null) return;
+        r.kind = TRACE;
+        r.step = step;
+        r.direction = t.direction;
+        r.type = t.type;
+        r.mode = t.mode;
+        r.key = t.key;
+        copyId(r, 0, t.id);
+        copyId(r, 1, t.source);
+        copyId(r, 2, t.destination);
+        if (++tail - head == 1) notifyAll();
+    }
+
+    /**
+     * Waits until all the saved records are written and the files flushed.
+     */
+    public synchronized void flush() {
+        while (head < tail && thread.isAlive()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes all the saved records, stops the writer thread and closes the
+     * files. No more records are accepted.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+        }
+        try {
+            if (text != null) text.close();
+            if (trace != null) trace.close();
+        } catch (IOException e) {
+            System.err.println("Cannot close the log files: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the records by batches, until the writer is closed.
+     */
+    public void run() {
+        long from, to;
+        while (true) {
+            synchronized (this) {
+                while (head == tail && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (head == tail) return;
+                from = head;
+                to = tail;
+            }
+            //the slots between from and to are only used by this thread
+            try {
+                for (long i = from; i < to; i++)
+                    write(ring[(int) (i % ring.length)]);
+                if (text != null) text.flush();
+                if (trace != null) trace.flush();
+            } catch (IOException e) {
+                System.err.println("Cannot write the log files: " + e.getMessage());
+            }
+            synchronized (this) {
+                head = to;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits for a free slot.
+     * @return The free slot, or null if the writer is closed.
+     */
+    private Record acquire() {
+        while (tail - head >= ring.length && !closed) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                return null;
+            }
+        }
+        if (closed) return null;
+        return ring[(int) (tail % ring.length)];
+    }
+
+    /**
+     * Writes the record <b>r</b> and releases its references.
+     * @param r The record.
+     * @throws IOException if occurs any problem writing the files.
+     */
+    private void write(Record r) throws IOException {
+        if (r.kind == TEXT) {
+            line.setLength(0);
+            line.append("LOGGER at ").append(r.step).append(" : ");
+            for (int i = 0; i < r.length; i++) {
+                if (i == r.numberAt)
+                    line.append(r.number);
+                else
+                    line.append(r.parts[i]);
+                r.parts[i] = null;
+            }
+            if (text != null) {
+                text.write(line.toString());
+                text.newLine();
+            } else
+                System.out.println(line);
+        } else {
+            trace.writeByte(r.direction);
+            trace.writeInt(r.step);
+            if (idInts > 0)
+                for (int i = 0; i < r.ints.length; i++)
+                    trace.writeInt(r.ints[i]);
+            else
+                for (int i = 0; i < r.bits.length; i++)
+                    trace.writeLong(r.bits[i]);
+            trace.writeInt(r.type);
+            trace.writeInt(r.mode);
+            trace.writeUTF((r.key == null) ? "" : r.key);
+            r.key = null;
+        }
+    }
+
+    /**
+     * Copies the value of <b>id</b> into the <b>index</b> position of the record.
+     * @param r The record.
+     * @param index 0 for the node, 1 for the source and 2 for the destination.
+     * @param id The Id.
+     */
+    private void copyId(Record r, int index, Id id) {
+        Object value = id.getValue();
+        if (idInts > 0)
+            System.arraycopy((int[]) value, 0, r.ints, index * idInts, idInts);
+        else
+            r.bits[index] = Double.doubleToRawLongBits(((Double) value).doubleValue());
+    }
+
+    /**
+     * Returns an object that does not change until it is formatted.
+     * @param obj Fragment of a text record.
+     * @return The same <b>obj</b> when it is a String, a Number, a Boolean
+     * or null, or its String representation in other case.
+     */
+    private static Object freeze(Object obj) {
+        if (obj == null || obj instanceof String || obj instanceof Number ||
+                obj instanceof Boolean)
+            return obj;
+        return String.valueOf(obj);
+    }
+}
@@ -1,7 +1,23 @@
 package planet.simulate;
 import planet.commonapi.Id;
 import planet.commonapi.RouteMessage;
+import planet.commonapi.exception.InitializationException;
 /**
+ * Logs of the simulation, filtered by level. The level has to be tested
+ * with isLoggable() before building any expensive message, or the
+ * parameterized methods have to be used, so the fragments are only joined
+ * when the message is logged.
+ * <br><br>
+ * By default, the logs are written to System.out by the calling thread.
+ * With setOutput(), the logs are saved into a bounded buffer and written
+ * by a background thread into a log file, and the sent and received
+ * RouteMessages can be saved into a binary trace file (see the
+ * MessageTraceReader).
+ * <br><br>
+ * A thread can defer its logs into a LogBuffer with defer(), to write
+ * them later in a given order with writeDeferred().
+ * @see planet.simulate.MessageTraceReader
+ * @see planet.simulate.LogBuffer
  * @author Pedro Garca
  * @author Ruben Mondejar
  * @author Jordi Pujol
@@ -49,6 +65,22 @@ public class Logger {
 	 */
 	private static String[] msgsS = {"Node id ", " send message to ", " from ",
 			" type ", " mode ", " key ", " content "};
+	/**
+	 * Background writer, or null to write the logs to System.out.
+	 */
+	private static LogWriter writer = null;
+	/**
+	 * Buffer of each thread that defers its logs.
+	 */
+	private static ThreadLocal deferred = new ThreadLocal();
+	
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				Logger.close();
+			}
+		});
+	}
 	
 	/**
 	 * Sets the level of logs to be applied.
@@ -59,6 +91,91 @@ public class Logger {
 		level = lvl;
 	}
 	
+	/**
+	 * Shows if the logs with priority <b>lvl</b> are written.
+	 * 
+	 * @param lvl Priority of the log.
+	 * @return true if the log is written.
+	 */
+	public static boolean isLoggable(int lvl) {
+		return level >= lvl;
+	}
+	
+	/**
+	 * Sets where to write the logs, closing the previous files.
+	 * 
+	 * @param logFile Path to the log file, or null to write the logs to 
+	 * System.out.
+	 * @param traceFile Path to the binary trace file for the sent and 
+	 * received RouteMessages, or null to log them as text.
+	 * @throws InitializationException if any file cannot be opened.
+	 */
+	public static synchronized void setOutput(String logFile, String traceFile) throws InitializationException {
+		close();
+		if (logFile != null || traceFile != null)
+			writer = new LogWriter(logFile, traceFile);
+	}
+	
+	/**
+	 * Waits until all the logs are written.
+	 */
+	public static void flush() {
+		LogWriter current = writer;
+		if (current != null) current.flush();
+	}
+	
+	/**
+	 * Writes all the pending logs and closes the log files. Next logs are 
+	 * written to System.out.
+	 */
+	public static synchronized void close() {
+		if (writer != null) {
+			LogWriter old = writer;
+			writer = null;
+			old.close();
+		}
+	}
+	
+	/**
+	 * Defers the next logs of the current thread into the <b>buffer</b>,
+	 * until they are written with writeDeferred().
+	 * 
+	 * @param buffer Buffer for the next logs, or null to write them
+	 * directly.
+	 */
+	public static void defer(LogBuffer buffer) {
+		deferred.set(buffer);
+	}
+	
+	/**
+	 * Writes the logs deferred into the first <b>count</b> buffers, mixed
+	 * by their order. The logs with the same order are written following
+	 * the position of their buffers at <b>buffers</b>.
+	 * 
+	 * @param buffers Buffers with deferred logs.
+	 * @param count Number of buffers to write.
+	 */
+	public static void writeDeferred(LogBuffer[] buffers, int count) {
+		LogBuffer first = null;
+		Object entry = null;
+		while (true) {
+			first = null;
+			for (int i = 0; i < count; i++)
+				if (buffers[i].hasNext() && (first == null || buffers[i].nextOrder() < first.nextOrder()))
+					first = buffers[i];
+			if (first == null) return;
+			entry = first.poll();
+			LogWriter current = writer;
+			if (entry instanceof LogBuffer.Trace) {
+				if (current != null && current.hasTrace())
+					current.trace(step, (LogBuffer.Trace) entry);
+			} else if (current != null && current.hasText())
+				current.text(step, 1, entry, null, null, null, null);
+			else
+				System.out.println("LOGGER at " + step + " : " + entry);
+		}
+	}
+	
 	/**
 	 * Sets the actual step in run.
 	 * 
@@ -85,7 +202,14 @@ public class Logger {
 	 */
 	public static void log(String msg, int lvl) {
 		if (level >= lvl) {
-			System.out.println("LOGGER at " + step + " : " + msg);
+			LogBuffer buffer = (LogBuffer) deferred.get();
+			LogWriter current = writer;
+			if (buffer != null)
+				buffer.text(msg);
+			else if (current != null && current.hasText())
+				current.text(step, 1, msg, null, null, null, null);
+			else
+				System.out.println("LOGGER at " + step + " : " + msg);
 		}
 	}
 	
@@ -101,7 +225,14 @@ public class Logger {
 	 */
 	public static void log(String msg, int p1, String msg1, int lvl) {
 		if (level >= lvl) {
-			System.out.println("LOGGER at " + step + " : " + msg + p1 + msg1);
+			LogBuffer buffer = (LogBuffer) deferred.get();
+			LogWriter current = writer;
+			if (buffer != null)
+				buffer.text(msg + p1 + msg1);
+			else if (current != null && current.hasText())
+				current.text(step, msg, p1, msg1);
+			else
+				System.out.println("LOGGER at " + step + " : " + msg + p1 + msg1);
 		}
 	}
 	
@@ -113,6 +244,15 @@ public class Logger {
 	 */
 	public static void logSend(Id id, RouteMessage msg, int lvl) {
 		if (level >= lvl) {
+			LogWriter current = writer;
+			if (current != null && current.hasTrace()) {
+				LogBuffer buffer = (LogBuffer) deferred.get();
+				if (buffer != null)
+					buffer.trace(MessageTraceReader.SEND, id, msg);
+				else
+					current.trace(step, MessageTraceReader.SEND, id, msg);
+				return;
+			}
 			Object[] objs = {id, msg.getDestination().getId(), msg.getSource().getId(),
 					Globals.typeToString(msg.getType()), Globals.typeToString(msg.getMode()),
 					msg.getKey(), msg.getMessage()};
@@ -128,6 +268,15 @@ public class Logger {
 	 */
 	public static void logReceive(Id id, RouteMessage msg, int lvl) {
 		if (level >= lvl) {
+			LogWriter current = writer;
+			if (current != null && current.hasTrace()) {
+				LogBuffer buffer = (LogBuffer) deferred.get();
+				if (buffer != null)
+					buffer.trace(MessageTraceReader.RECEIVE, id, msg);
+				else
+					current.trace(step, MessageTraceReader.RECEIVE, id, msg);
+				return;
+			}
 			Object[] objs = {id, msg.getSource().getId(), msg.getDestination().getId(),
 					Globals.typeToString(msg.getType()), Globals.typeToString(msg.getMode()),
 					msg.getKey(), msg.getMessage()};
@@ -143,7 +292,14 @@ public class Logger {
 	 */
 	public static void log(String msg, Object obj, int lvl) {
 		if (level >= lvl) {
-			System.out.println("LOGGER at " + step + " : " + msg + obj);
+			LogBuffer buffer = (LogBuffer) deferred.get();
+			LogWriter current = writer;
+			if (buffer != null)
+				buffer.text(msg + obj);
+			else if (current != null && current.hasText())
+				current.text(step, 2, msg, obj, null, null, null);
+			else
+				System.out.println("LOGGER at " + step + " : " + msg + obj);
 		}
 	}
 	
@@ -159,7 +315,14 @@ public class Logger {
 	 */
 	public static void log(Object obj, String msg, Object obj2, int lvl) {
 		if (level >= lvl) {
-			System.out.println("LOGGER at " + step + " : " + obj + msg + obj2);
+			LogBuffer buffer = (LogBuffer) deferred.get();
+			LogWriter current = writer;
+			if (buffer != null)
+				buffer.text("" + obj + msg + obj2);
+			else if (current != null && current.hasText())
+				current.text(step, 3, obj, msg, obj2, null, null);
+			else
+				System.out.println("LOGGER at " + step + " : " + obj + msg + obj2);
 		}
 	}
 	
@@ -175,7 +338,39 @@ public class Logger {
 	 */
 	public static void log(String msg, Object obj, String msg2, int lvl) {
 		if (level >= lvl) {
-			System.out.println("LOGGER at " + step + " : " + msg + obj + msg2);
+			LogBuffer buffer = (LogBuffer) deferred.get();
+			LogWriter current = writer;
+			if (buffer != null)
+				buffer.text(msg + obj + msg2);
+			else if (current != null && current.hasText())
+				current.text(step, 3, msg, obj, msg2, null, null);
+			else
+				System.out.println("LOGGER at " + step + " : " + msg + obj + msg2);
+		}
+	}
+	
+	/**
+	 * Logs the following string:
+	 * <pre>
+	 *    obj + msg + obj2 + msg2 + obj3
+	 * </pre>
+	 * @param obj First object to be logged.
+	 * @param msg Message to be logged at second term.
+	 * @param obj2 Object to be logged at third term.
+	 * @param msg2 Message to be logged at fourth term.
+	 * @param obj3 Last object to be logged.
+	 * @param lvl Priority of the log.
+	 */
+	public static void log(Object obj, String msg, Object obj2, String msg2, Object obj3, int lvl) {
+		if (level >= lvl) {
+			LogBuffer buffer = (LogBuffer) deferred.get();
+			LogWriter current = writer;
+			if (buffer != null)
+				buffer.text("" + obj + msg + obj2 + msg2 + obj3);
+			else if (current != null && current.hasText())
+				current.text(step, 5, obj, msg, obj2, msg2, obj3);
+			else
+				System.out.println("LOGGER at " + step + " : " + obj + msg + obj2 + msg2 + obj3);
 		}
 	}
 	
@@ -193,11 +388,21 @@ public class Logger {
 	 */
 	public static void log(String[] msgs, Object[] objs, int lvl) {
 		if (level >= lvl) {
-			String result = "";
+			LogBuffer buffer = (LogBuffer) deferred.get();
+			LogWriter current = writer;
+			if (buffer == null && current != null && current.hasText()) {
+				current.text(step, msgs, objs);
+				return;
+			}
+			StringBuffer result = new StringBuffer();
+			if (buffer == null) result.append("LOGGER at ").append(step).append(" : ");
 			for (int i = 0; i < msgs.length; i++) {
-				result = result + msgs[i] + objs[i];
+				result.append(msgs[i]).append(objs[i]);
 			}
-			System.out.println("LOGGER at " + step + " : " + result);
+			if (buffer != null)
+				buffer.text(result.toString());
+			else
+				System.out.println(result);
 		}
 	}
 }
@@ -0,0 +1,260 @@
+package planet.simulate;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import planet.commonapi.Id;
+import planet.commonapi.exception.InitializationException;
+import planet.generic.commonapi.factory.GenericFactory;
+import planet.util.Properties;
+
+/**
+ * This class reads the trace file of RouteMessages, written by the Logger
+ * when the SIMULATOR_LOG_TRACE_FILE property is used. The binary format
+ * is the following:
+ * <pre>
+ * header : MAGIC (4 bytes) VERSION (1 byte) {IdClass} (UTF) {bits} (int) {valueKind} (1 byte)
+ * record : {direction} (1 byte) {step} (int) {nodeId} {sourceId} {destinationId} {type} (int) {mode} (int) {key} (UTF)
+ * </pre>
+ * Each record is equivalent to a Logger.logSend() or Logger.logReceive()
+ * line, without the content of the message:
+ * <ul>
+ * <li><b>{direction}</b>: SEND or RECEIVE.</li>
+ * <li><b>{nodeId}</b>: fixed width Id of the node that sends or receives
+ * the message.</li>
+ * <li><b>{sourceId}</b> and <b>{destinationId}</b>: fixed width Ids of the
+ * source and destination of the message.</li>
+ * <li><b>{key}</b>: the key of the message, or empty for null keys.</li>
+ * </ul>
+ * The header and the Ids are saved as in the BinaryEventReader, and the
+ * header has to match with the Id class of the current configuration.
+ * @see planet.simulate.Logger
+ * @see planet.simulate.BinaryEventReader
+ */
+public class MessageTraceReader {
+
+    /**
+     * Starting bytes of any trace file.
+     */
+    public static final byte[] MAGIC = {'P','S','M','T'};
+    /**
+     * Version of the binary format.
+     */
+    public static final int VERSION = 1;
+    /**
+     * Direction: the message is sent.
+     */
+    public static final int SEND = 'S';
+    /**
+     * Direction: the message is received.
+     */
+    public static final int RECEIVE = 'R';
+
+    /**
+     * Stream of the trace file.
+     */
+    private DataInputStream in = null;
+    /**
+     * Number of ints of the int[] Id values, or zero for Double values.
+     */
+    private int idInts;
+
+    /* fields of the last read record */
+    private int direction;
+    private int step;
+    private Id node;
+    private Id source;
+    private Id destination;
+    private int type;
+    private int mode;
+    private String key;
+
+    /**
+     * Opens the trace file <b>fileName</b> and reads its header.
+     * @param fileName Path to the trace file.
+     * @throws FileNotFoundException if the file is not found.
+     * @throws IOException if the file is not a trace file or its Ids
+     * do not match the current configuration.
+     */
+    public MessageTraceReader(String fileName) throws FileNotFoundException, IOException {
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC) || in.readUnsignedByte() != VERSION)
+            throw new IOException("The file [" + fileName + "] is not a trace file.");
+        String idClass = in.readUTF();
+        int bits = in.readInt();
+        int kind = in.readUnsignedByte();
+        if (!idClass.equals(Properties.overlayId.getName()) || bits != BinaryEventReader.getIdBits())
+            throw new IOException("The trace file [" + fileName + "] contains Ids [" + idClass + "] of [" + bits +
+                    "] bits, and the current configuration uses [" + Properties.overlayId.getName() + "] of [" +
+                    BinaryEventReader.getIdBits() + "] bits.");
+        idInts = (kind == BinaryEventReader.INT_ARRAY_VALUE) ? bits / 32 : 0;
+    }
+
+    /**
+     * Reads the next record.
+     * @return false if the end of file is reached.
+     * @throws IOException if occurs any problem reading the file.
+     */
+    public boolean readRecord() throws IOException {
+        try {
+            direction = in.readUnsignedByte();
+        } catch (EOFException e) {
+            return false;
+        }
+        step = in.readInt();
+        try {
+            node = buildId(readValue());
+            source = buildId(readValue());
+            destination = buildId(readValue());
+        } catch (InitializationException e) {
+            throw new IOException("Cannot build an Id: " + e.getMessage());
+        }
+        type = in.readInt();
+        mode = in.readInt();
+        key = in.readUTF();
+        return true;
+    }
+
+    /**
+     * Closes the trace file.
+     * @throws IOException if occurs any problem closing the file.
+     */
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * @return SEND or RECEIVE.
+     */
+    public int getDirection() {
+        return direction;
+    }
+
+    /**
+     * @return The step of the record.
+     */
+    public int getStep() {
+        return step;
+    }
+
+    /**
+     * @return The Id of the node that sends or receives the message.
+     */
+    public Id getNode() {
+        return node;
+    }
+
+    /**
+     * @return The Id of the source of the message.
+     */
+    public Id getSource() {
+        return source;
+    }
+
+    /**
+     * @return The Id of the destination of the message.
+     */
+    public Id getDestination() {
+        return destination;
+    }
+
+    /**
+     * @return The type of the message.
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * @return The mode of the message.
+     */
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * @return The key of the message, or empty for null keys.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the last read record with the text format of the Logger.
+     * @return The record as text.
+     */
+    public String toString() {
+        StringBuffer line = new StringBuffer("LOGGER at ").append(step).append(" : Node id ").append(node);
+        if (direction == SEND)
+            line.append(" send message to ").append(destination).append(" from ").append(source);
+        else
+            line.append(" receive message from ").append(source).append(" to ").append(destination);
+        return line.append(" type ").append(Globals.typeToString(type))
+                .append(" mode ").append(Globals.typeToString(mode))
+                .append(" key ").append(key).toString();
+    }
+
+    /**
+     * Reads the internal value of an Id.
+     * @return The int[] or Double value of the Id.
+     * @throws IOException if occurs any problem reading the file.
+     */
+    private Object readValue() throws IOException {
+        if (idInts == 0)
+            return new Double(Double.longBitsToDouble(in.readLong()));
+        int[] value = new int[idInts];
+        for (int i = 0; i < idInts; i++)
+            value[i] = in.readInt();
+        return value;
+    }
+
+    /**
+     * Builds a new Id with the internal <b>value</b>.
+     * @param value The int[] or Double value of the Id.
+     * @return A new Id.
+     * @throws InitializationException if the Id cannot be built.
+     */
+    private static Id buildId(Object value) throws InitializationException {
+        Id id = (Id) GenericFactory.newInstance(Properties.overlayId);
+        id.setValue(value);
+        return id;
+    }
+
+    /**
+     * This main application wait two arguments:
+     * <ol>
+     * <li><b>master</b>: Key of the master properties file with the
+     * configuration used to write the trace file.</li>
+     * <li><b>traceFile</b>: Filename of the trace file.</li>
+     * </ol>
+     * and prints all its records as text. The log files of the configuration
+     * are not opened, so the trace file is not overwritten.
+     * @param args Command line arguments.
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Required arguments: {master} {traceFile}");
+            System.err.println("    {master}   : Key of the master properties file with the simulation configuration.");
+            System.err.println("    {traceFile}: Filename of the trace file.");
+            System.exit(0);
+        }
+        Properties.init("../conf/master.properties", args[0]);
+        Properties.simulatorLogFile = null;
+        Properties.simulatorLogTraceFile = null;
+        GenericFactory.init();
+        Properties.postinit();
+        GenericFactory.postinit();
+        MessageTraceReader reader = new MessageTraceReader(args[1]);
+        while (reader.readRecord())
+            System.out.println(reader);
+        reader.close();
+    }
+}
@@ -9,6 +9,8 @@ import planet.commonapi.Id;
 import planet.commonapi.Network;
 import planet.commonapi.NodeHandle;
 import planet.commonapi.exception.InitializationException;
+import planet.generic.commonapi.NetworkCheckpointWriter;
+import planet.generic.commonapi.NetworkSnapshotWriter;
 import planet.generic.commonapi.factory.GenericFactory;
 import planet.io.NoReplacingOutputStream;
 import planet.util.Properties;
@@ -36,6 +38,7 @@ public class NetworkSimulator implements ISimulator, java.io.Serializable {
   private Network network = null;
   private TreeMap nodeHandles = null;
   private int eventsProcessed = 0;
+  private transient NetworkCheckpointWriter checkpoints = null;
   
   /**
    * Constructor, create a new simulation with a determinate event scheduler
@@ -121,16 +124,23 @@ public class NetworkSimulator implements ISimulator, java.io.Serializable {
   }
   
   /**
-   * Serialize the specified network.
+   * Serialize the specified network. The network is saved as a compact
+   * snapshot when all its nodes support it, and with the Java serialization
+   * in other case.
+   * @see planet.generic.commonapi.NetworkSnapshotWriter
    */
   public static void saveState(Network network) {
 	try {
      NoReplacingOutputStream out = new NoReplacingOutputStream(
              Properties.serializedOutputFile,
              Properties.serializedOutputFileReplaced);
-	 ObjectOutputStream os = new ObjectOutputStream(out);
      System.out.println("NOTICE: saving actual state to file ["+out.getFilename()+"]");
      
+     if (NetworkSnapshotWriter.isSupported(network)) {
+         new NetworkSnapshotWriter(out).write(network);
+         return;
+     }
+	 ObjectOutputStream os = new ObjectOutputStream(out);
 	 os.writeObject (network);
 	 os.close();
 	}
@@ -139,6 +149,31 @@ public class NetworkSimulator implements ISimulator, java.io.Serializable {
 	} 
   }
   
+  /**
+   * Saves a checkpoint of the network. The first checkpoint is a snapshot of
+   * the whole network, and the next ones only save the changed nodes. When
+   * the network cannot be saved as a snapshot, the whole network is
+   * serialized at each checkpoint.
+   * @see planet.generic.commonapi.NetworkCheckpointWriter
+   */
+  public void checkpoint() {
+	try {
+     if (!NetworkSnapshotWriter.isSupported(network)) {
+         saveState(network);
+         return;
+     }
+     if (checkpoints == null)
+         checkpoints = new NetworkCheckpointWriter(Properties.serializedOutputFile,
+                 Properties.serializedOutputFileReplaced);
+     String filename = checkpoints.checkpoint(network);
+     Logger.log("NetworkSimulator: checkpoint saved to file [",(Object)filename,"]",Logger.EVENT_LOG);
+     Logger.log("NetworkSimulator: checkpoint of ",checkpoints.getSavedNodes()," nodes",Logger.EVENT_LOG);
+	}
+	catch (Exception ex) {
+	  ex.printStackTrace();
+	} 
+  }
+  
   /**
    * Executes only one step of simulation.
    * @return return true if the simulation is not been finished. 
@@ -153,8 +188,11 @@ public class NetworkSimulator implements ISimulator, java.io.Serializable {
   	boolean moreSteps = network.simulate();
   	//updates the actual number of time step
   	time++; 	
+  	//saves the periodic checkpoints
+  	if (Properties.serializedCheckpointSteps > 0 && time%Properties.serializedCheckpointSteps==0)
+  		checkpoint();
   	//make some logs
-  	if (time%1000==0) {
+  	if (time%1000==0 && Logger.isLoggable(Logger.EVENT_LOG)) {
   		Logger.log("NetworkSimulator: Simulation time "+time+" and num nodes "+network.size(),Logger.EVENT_LOG);	          
   		Logger.log("NetworkSimulator: Ratio estabilitzacio "+Results.getStabRate(),Logger.EVENT_LOG);
   	}     
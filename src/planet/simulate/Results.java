@@ -13,23 +13,26 @@ import planet.commonapi.Id;
  *  Average total messages / time unit (t)
  *  Average hops/message (specific)
  *  Total number of messages
+ *
+ *  The stress of the nodes and the hops of the messages are kept into
+ *  primitive arrays, by node slot, so they can be enabled on big networks
+ *  without building objects for each message. Use snapshot() to take a
+ *  copy of them and resetNodeResults() to clear them.
  */
 public class Results {
     
-    private static Hashtable results = new Hashtable();
     private static Hashtable lookups = new Hashtable();
     private static Hashtable inserts = new Hashtable();
-	private static Hashtable hops = new Hashtable();
     private static int ringSize = 0;
     private static int stabRate = 0;
     private static int traffic = 0;	
  
       
-    public static void incStabRate() {
+    public static synchronized void incStabRate() {
       stabRate++;
     }
     
-	public static void clearStabRate() {
+	public static synchronized void clearStabRate() {
 	  stabRate=0;
 	}
 	
@@ -37,15 +40,15 @@ public class Results {
 		return stabRate;
 	}
     
-	public static void incTraffic() {
+	public static synchronized void incTraffic() {
       traffic++;
 	}
     
-	public static void decTraffic() {
+	public static synchronized void decTraffic() {
 	  traffic--;
 	}
 	
-	public static void incTrafficBy(int inc) {
+	public static synchronized void incTrafficBy(int inc) {
 		traffic = traffic + inc;
 	}
 	
@@ -55,88 +58,278 @@ public class Results {
 	
 	
         
-    //type --> in/out    
-    public static void numMessagesTime(Id id, int step, int num, String type) {
-      updateNodeStress(id,num,type);
-	  addMaxMessages(id,step,num,type);	
+    /**
+     * Type of the stress of the incoming messages.
+     */
+    public static final String IN = "in";
+    /**
+     * Type of the stress of the outgoing messages.
+     */
+    public static final String OUT = "out";
+    /**
+     * Initial number of node slots.
+     */
+    private static final int SLOTS = 256;
+    /**
+     * Initial capacity of the hops table (a power of two).
+     */
+    private static final int HOPS = 1024;
+
+    /**
+     * Slot (as Integer values) of each node (as Id keys).
+     */
+    private static HashMap slots = new HashMap();
+    /**
+     * Id of each node, by its slot.
+     */
+    private static Id[] ids = new Id[SLOTS];
+    /**
+     * Number of nodes with a slot.
+     */
+    private static int nodes = 0;
+    /**
+     * Stress of the incoming messages, by node slot.
+     */
+    private static int[] stressIn = new int[SLOTS];
+    /**
+     * Stress of the outgoing messages, by node slot.
+     */
+    private static int[] stressOut = new int[SLOTS];
+    /**
+     * Maximum number of incoming messages at a step, by node slot, or -1.
+     */
+    private static int[] maxIn = newMaximums(SLOTS);
+    /**
+     * Step of the maximum number of incoming messages, by node slot.
+     */
+    private static int[] maxInStep = new int[SLOTS];
+    /**
+     * Maximum number of outgoing messages at a step, by node slot, or -1.
+     */
+    private static int[] maxOut = newMaximums(SLOTS);
+    /**
+     * Step of the maximum number of outgoing messages, by node slot.
+     */
+    private static int[] maxOutStep = new int[SLOTS];
+    /**
+     * Hops table: node slot of the source of each message, or -1 if the
+     * entry is empty. It is an open addressing table, with linear probing.
+     */
+    private static int[] hopSources = newEmptySources(HOPS);
+    /**
+     * Hops table: key of each message.
+     */
+    private static String[] hopKeys = new String[HOPS];
+    /**
+     * Hops table: number of hops of each message.
+     */
+    private static int[] hopCounts = new int[HOPS];
+    /**
+     * Number of entries of the hops table.
+     */
+    private static int hopEntries = 0;
+
+    /**
+     * Returns the slot of the node <b>id</b>, giving it a new one the first
+     * time. The nodes can keep their slot to update their stress without
+     * any lookup.
+     * @param id Id of the node.
+     * @return The slot of the node.
+     */
+    public static synchronized int getNodeSlot(Id id) {
+      Integer slot = (Integer) slots.get(id);
+      if (slot != null) return slot.intValue();
+      if (nodes == ids.length) {
+        int length = nodes * 2;
+        Id[] grownIds = new Id[length];
+        System.arraycopy(ids, 0, grownIds, 0, nodes);
+        ids = grownIds;
+        stressIn = grow(stressIn, length, 0);
+        stressOut = grow(stressOut, length, 0);
+        maxIn = grow(maxIn, length, -1);
+        maxInStep = grow(maxInStep, length, 0);
+        maxOut = grow(maxOut, length, -1);
+        maxOutStep = grow(maxOutStep, length, 0);
+      }
+      ids[nodes] = id;
+      slots.put(id, new Integer(nodes));
+      return nodes++;
     }
-    
-	private static void updateNodeStress(Id id, int num, String type){
-      
-	  Hashtable node_info;
-	  Integer stress;
-      
-	  if (results.containsKey(id)) {
-		node_info = (Hashtable) results.get(id);      
-		if (node_info.containsKey("Stress "+type)) {
-		  stress = (Integer) node_info.get("Stress "+type);
-		  int value = stress.intValue();
-		  value+=num;		  	 
-		  node_info.put("Stress "+type,new Integer(value));
-		  results.put(id,node_info);		  		  	  
-		}
-		else {		  		  	 
-		  node_info.put("Stress "+type,new Integer(num));		  
-		  results.put(id,node_info);		
-		}				          	
+
+    /**
+     * Copies the <b>counters</b> into a new array of <b>length</b> slots.
+     * @param counters Current counters.
+     * @param length New length.
+     * @param empty Value of the new slots.
+     * @return The new array.
+     */
+    private static int[] grow(int[] counters, int length, int empty) {
+      int[] grown = new int[length];
+      System.arraycopy(counters, 0, grown, 0, counters.length);
+      if (empty != 0)
+        Arrays.fill(grown, counters.length, length, empty);
+      return grown;
+    }
+
+    /**
+     * Builds the maximums of <b>length</b> nodes, without any value.
+     * @param length Number of nodes.
+     * @return The new array.
+     */
+    private static int[] newMaximums(int length) {
+      int[] maximums = new int[length];
+      Arrays.fill(maximums, -1);
+      return maximums;
+    }
+
+    /**
+     * Builds the sources of an empty hops table.
+     * @param length Capacity of the table.
+     * @return The new array.
+     */
+    private static int[] newEmptySources(int length) {
+      int[] sources = new int[length];
+      Arrays.fill(sources, -1);
+      return sources;
+    }
+
+    /**
+     * Adds <b>num</b> messages of the <b>type</b> (IN or OUT) to the
+     * stress of the node <b>id</b>, and updates its maximum number of
+     * messages at a step.
+     * @param id Id of the node.
+     * @param step Current step.
+     * @param num Number of messages at this step.
+     * @param type IN or OUT.
+     */
+    public static synchronized void numMessagesTime(Id id, int step, int num, String type) {
+      numMessagesTime(getNodeSlot(id), step, num, IN.equals(type));
+    }
+
+    /**
+     * Adds <b>num</b> messages to the stress of the node at the
+     * <b>slot</b>, and updates its maximum number of messages at a step.
+     * @param slot Slot of the node.
+     * @param step Current step.
+     * @param num Number of messages at this step.
+     * @param in true for the incoming messages, false for the outgoing ones.
+     * @see #getNodeSlot(Id)
+     */
+    public static synchronized void numMessagesTime(int slot, int step, int num, boolean in) {
+      if (in) {
+        stressIn[slot] += num;
+        if (num > maxIn[slot]) {
+          maxIn[slot] = num;
+          maxInStep[slot] = step;
+        }
+      } else {
+        stressOut[slot] += num;
+        if (num > maxOut[slot]) {
+          maxOut[slot] = num;
+          maxOutStep[slot] = step;
+        }
+      }
+    }
+
+	/**
+	 * Counts a new hop of the message with the key <b>key_msg</b> sent by
+	 * the node <b>source</b>.
+	 * @param source Id of the source node.
+	 * @param key_msg Key of the message.
+	 */
+	public static synchronized void updateHopsMsg(Id source, String key_msg){
+	  int slot = getNodeSlot(source);
+	  int entry = findHops(slot, key_msg);
+	  if (hopSources[entry] >= 0) {
+	    hopCounts[entry]++;
+	    return;
 	  }
-	  else {		
-		node_info = new Hashtable();	 
-		node_info.put("Stress "+type,new Integer(num));
-		results.put(id,node_info);		
-	  }	  
+	  hopSources[entry] = slot;
+	  hopKeys[entry] = key_msg;
+	  hopCounts[entry] = 1;
+	  if (++hopEntries * 2 > hopSources.length)
+	    rehashHops();
 	}
-			
-	private static void addMaxMessages(Id id, int step, int num ,String type){
-      
-	  Hashtable node_info;
-	  Vector max;
-      
-	  if (results.containsKey(id)) {
-		node_info = (Hashtable) results.get(id);      
-		if (node_info.containsKey("Num max "+type)) {
-		  max = (Vector) node_info.get("Num max "+type);
-		  int value = ((Integer) max.get(1)).intValue();
-		  if (num>value) {		 
-		    max.clear();
-			max.add(new Integer(step));
-			max.add(new Integer(num));	 
-			node_info.put("Num max "+type,max);
-			results.put(id,node_info);
-		  }		  	  
-		}
-		else {
-		  max = new Vector();
-		  max.add(new Integer(step));
-		  max.add(new Integer(num));	 
-		  node_info.put("Num max "+type,max);
-		  results.put(id,node_info);		
-		}				          	
-	  }
-	  else {		
-		max = new Vector();
-		max.add(new Integer(step));
-		max.add(new Integer(num));
-		
-		node_info = new Hashtable();	 
-		node_info.put("Num max "+type,max);
-		results.put(id,node_info);		
-	  }	  
+
+	/**
+	 * Returns the number of hops of the message with the key <b>key_msg</b>
+	 * sent by the node <b>source</b>.
+	 * @param source Id of the source node.
+	 * @param key_msg Key of the message.
+	 * @return The number of hops, or zero if the message is unknown.
+	 */
+	public static synchronized int getHopsMsg(Id source, String key_msg) {
+	  Integer slot = (Integer) slots.get(source);
+	  if (slot == null) return 0;
+	  int entry = findHops(slot.intValue(), key_msg);
+	  return (hopSources[entry] >= 0) ? hopCounts[entry] : 0;
 	}
-	
-	public static void updateHopsMsg(Id source, String key_msg){      
-          
-      String identif = source+" "+key_msg;
-      
-	  if (hops.containsKey(identif)) {
-	    int num = ((Integer) hops.get(identif)).intValue();
-		hops.put(identif,new Integer(num++));		  		  		  	  
+
+	/**
+	 * Finds the entry of the hops table for the message, or the empty entry
+	 * where it must be saved.
+	 * @param slot Slot of the source node.
+	 * @param key Key of the message.
+	 * @return The position of the entry.
+	 */
+	private static int findHops(int slot, String key) {
+	  int mask = hopSources.length - 1;
+	  int h = slot * 0x9E3779B9 + (key == null ? 0 : key.hashCode());
+	  int entry = (h ^ (h >>> 16)) & mask;
+	  while (hopSources[entry] >= 0 &&
+	         (hopSources[entry] != slot || !(key == null ? hopKeys[entry] == null : key.equals(hopKeys[entry]))))
+	    entry = (entry + 1) & mask;
+	  return entry;
+	}
+
+	/**
+	 * Doubles the capacity of the hops table.
+	 */
+	private static void rehashHops() {
+	  int[] sources = hopSources;
+	  String[] keys = hopKeys;
+	  int[] counts = hopCounts;
+	  hopSources = newEmptySources(sources.length * 2);
+	  hopKeys = new String[sources.length * 2];
+	  hopCounts = new int[sources.length * 2];
+	  int entry;
+	  for (int i = 0; i < sources.length; i++) {
+	    if (sources[i] < 0) continue;
+	    entry = findHops(sources[i], keys[i]);
+	    hopSources[entry] = sources[i];
+	    hopKeys[entry] = keys[i];
+	    hopCounts[entry] = counts[i];
 	  }
-	  else {		  		  	 
-	    hops.put(identif,new Integer(1));
-	  }		  	  
 	}
-	
+
+	/**
+	 * Returns a copy of the current stress of all nodes. It is not modified
+	 * by the next updates.
+	 * @return The stress of all nodes.
+	 */
+	public static synchronized Snapshot snapshot() {
+	  return new Snapshot();
+	}
+
+	/**
+	 * Clears the stress of all nodes and the number of hops of all messages.
+	 */
+	public static synchronized void resetNodeResults() {
+	  slots.clear();
+	  ids = new Id[SLOTS];
+	  nodes = 0;
+	  stressIn = new int[SLOTS];
+	  stressOut = new int[SLOTS];
+	  maxIn = newMaximums(SLOTS);
+	  maxInStep = new int[SLOTS];
+	  maxOut = newMaximums(SLOTS);
+	  maxOutStep = new int[SLOTS];
+	  hopSources = newEmptySources(HOPS);
+	  hopKeys = new String[HOPS];
+	  hopCounts = new int[HOPS];
+	  hopEntries = 0;
+	}
+
 	public static void addInsert(String key,String dest) {
 		inserts.put(key,dest);
 	}
@@ -176,24 +369,21 @@ public class Results {
 	  Logger.log("************************",Logger.PRINT_LOG);
 	  Logger.log(" **   Node Results    **",Logger.PRINT_LOG);
 	  Logger.log("************************",Logger.PRINT_LOG);
-      Collection c = results.keySet();
-      ringSize = c.size();
-      Iterator it = c.iterator();
-      while (it.hasNext()) {
-      	Id id = (Id) it.next();
-      	Logger.log(" *** Results of node "+id,Logger.PRINT_LOG);
-		Hashtable node_info = (Hashtable) results.get(id);
-		int link_stress = ((Integer) node_info.get("Stress in")).intValue();
+      Snapshot nodeResults = snapshot();
+      ringSize = 0;
+      for (int i = 0; i < nodeResults.size(); i++) {
+        if (nodeResults.getMaxIn(i) < 0 && nodeResults.getMaxOut(i) < 0) continue;
+        ringSize++;
+      	Logger.log(" *** Results of node "+nodeResults.getId(i),Logger.PRINT_LOG);
+		int link_stress = nodeResults.getStressIn(i);
 		Logger.log(" * Link stress :"+link_stress,Logger.PRINT_LOG);		
 		
-		int node_stress = link_stress + ((Integer) node_info.get("Stress out")).intValue();      	
+		int node_stress = link_stress + nodeResults.getStressOut(i);
 		Logger.log(" * Node stress :"+node_stress,Logger.PRINT_LOG);		
 		
-		Vector max_in = (Vector) node_info.get("Num max in");
-		Logger.log(" * Max number in messages :"+max_in.get(1)+" at step "+max_in.get(0),Logger.PRINT_LOG);		    
+		Logger.log(" * Max number in messages :"+nodeResults.getMaxIn(i)+" at step "+nodeResults.getMaxInStep(i),Logger.PRINT_LOG);
 		
-		Vector max_out = (Vector) node_info.get("Num max out");
-		Logger.log(" * Max number out messages :"+max_out.get(1)+" at step "+max_out.get(0),Logger.PRINT_LOG);		
+		Logger.log(" * Max number out messages :"+nodeResults.getMaxOut(i)+" at step "+nodeResults.getMaxOutStep(i),Logger.PRINT_LOG);
 			    
 		total_in_msg+=link_stress;
 		total_out_msg+=node_stress-link_stress;
@@ -214,4 +404,61 @@ public class Results {
 	  if (steps>0) Logger.log(" * Average messages/steps      "+total_n_msg/steps,Logger.PRINT_LOG);
 	  Logger.log(" * Stabilize Global Rate "+stabRate,Logger.PRINT_LOG);
     }
+
+    /**
+     * Copy of the stress of all nodes at a moment, built by
+     * <b>Results.snapshot()</b>. The nodes are identified by their slot,
+     * from zero to size()-1.
+     */
+    public static class Snapshot implements java.io.Serializable {
+      private Id[] ids;
+      private int[] stressIn;
+      private int[] stressOut;
+      private int[] maxIn;
+      private int[] maxInStep;
+      private int[] maxOut;
+      private int[] maxOutStep;
+
+      /**
+       * Copies the current stress of all nodes.
+       */
+      private Snapshot() {
+        ids = new Id[nodes];
+        System.arraycopy(Results.ids, 0, ids, 0, nodes);
+        stressIn = copy(Results.stressIn);
+        stressOut = copy(Results.stressOut);
+        maxIn = copy(Results.maxIn);
+        maxInStep = copy(Results.maxInStep);
+        maxOut = copy(Results.maxOut);
+        maxOutStep = copy(Results.maxOutStep);
+      }
+
+      /**
+       * Copies the counters of the nodes with a slot.
+       * @param counters Counters by node slot.
+       * @return A copy of the counters.
+       */
+      private int[] copy(int[] counters) {
+        int[] copy = new int[ids.length];
+        System.arraycopy(counters, 0, copy, 0, ids.length);
+        return copy;
+      }
+
+      /** @return The number of nodes. */
+      public int size() { return ids.length; }
+      /** @param slot Slot of the node. @return The Id of the node. */
+      public Id getId(int slot) { return ids[slot]; }
+      /** @param slot Slot of the node. @return The number of incoming messages. */
+      public int getStressIn(int slot) { return stressIn[slot]; }
+      /** @param slot Slot of the node. @return The number of outgoing messages. */
+      public int getStressOut(int slot) { return stressOut[slot]; }
+      /** @param slot Slot of the node. @return The maximum number of incoming messages at a step, or -1. */
+      public int getMaxIn(int slot) { return maxIn[slot]; }
+      /** @param slot Slot of the node. @return The step of the maximum number of incoming messages. */
+      public int getMaxInStep(int slot) { return maxInStep[slot]; }
+      /** @param slot Slot of the node. @return The maximum number of outgoing messages at a step, or -1. */
+      public int getMaxOut(int slot) { return maxOut[slot]; }
+      /** @param slot Slot of the node. @return The step of the maximum number of outgoing messages. */
+      public int getMaxOutStep(int slot) { return maxOutStep[slot]; }
+    }
 }
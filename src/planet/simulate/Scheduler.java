@@ -1,11 +1,14 @@
 package planet.simulate;
 
-import planet.util.OrderedList;
-import java.util.*;
+import java.util.Vector;
+
+import planet.util.CalendarQueue;
 
 /**
  * This class implements the interface IScheduler and manage
- * events to produce to simulated network.
+ * events to produce to simulated network. The events are saved into a
+ * calendar queue, so adding and getting events are O(1) amortized
+ * operations, and the steps without events do not build any object.
  * @author <a href="mailto: pedro.garcia@urv.net">Pedro Garcia</a>
  * @author <a href="mailto: jordi.pujol@estudiants.urv.es">Jordi Pujol</a>
  * 14-jul-2005
@@ -17,25 +20,21 @@ import java.util.*;
 public class Scheduler implements IScheduler, java.io.Serializable {
 
     /**
-     * The specified internal value for the attribute <b>nextAlarm</b> to
-     * show that there are no more alerts (events).
-     */
-    private static final int NO_MORE_ALERTS = -1;
-    /**
-     * Shows the time step for the next alarm (event).
+     * Pending alarms (events), ordered by their time step.
      */
-	private int nextAlarm;
+	private CalendarQueue alarms = null;
     /**
-     * Ordered list of alarms (events).
+     * Vector returned by <b>getEvents(int)</b>. It is reused on each step.
      */
-	private OrderedList alarms = null;
+	private Vector events = null;
 	
 
     /**
      * Initializes this Scheduler.
      */
 	public Scheduler(){
-        nextAlarm = NO_MORE_ALERTS;
+        alarms = new CalendarQueue();
+        events = new Vector();
 	}
 	
     /**
@@ -45,62 +44,32 @@ public class Scheduler implements IScheduler, java.io.Serializable {
      * @see planet.simulate.IScheduler#addEvents(java.util.Vector)
      */
 	public void addEvents(Vector events) {
-        if (events == null || events.size()==0) return;
+        if (events == null) return;
         
-        Iterator it = events.iterator();
-
-        Vector list = null;
-        Event e = null;
-        int time = 0;
+        for (int i = 0; i < events.size(); i++)
+            addEvent((IEvent) events.get(i));
+	}
 
-        //adds the first element into the list.
-        if (alarms == null)
-        {
-            list = new Vector();
-            e = (Event) it.next();
-            list.add(e);
-            alarms = new OrderedList(list,e.getTime());
-        }
-        
-        //adds the rest
-        while (it.hasNext())
-        {
-			e = (Event) it.next();
-			time = e.getTime();
-			
-			if (!alarms.contains(time)){
-				list = new Vector();
-				list.add(e);
-				alarms.insert(new OrderedList(list,time));
-			}else {
-				list = (Vector)alarms.get(time);
-				list.add(e);
-			}
-		}
-		nextAlarm = alarms.value();
+    /**
+     * Adds the <b>event</b> into the current scheduler.
+     * @param event Event to add.
+     */
+	public void addEvent(IEvent event) {
+        alarms.insert(event.getTime(), event);
 	}
 
     /**
-     * Gets all alerts occurred at <b>time</b> time.
+     * Gets all alerts occurred at <b>time</b> time. The returned Vector
+     * is reused by the next invocation of this method.
      * @param time Number of step which obtain all its alerts.
      * @return All alerts occurred at <b>time</b> time.
      * @see planet.simulate.IScheduler#getEvents(int)
      */
 	public Vector getEvents(int time){
-		Vector events = new Vector();
-		Iterator it;
-		
-		if (nextAlarm==time)
-        {
-			Vector evts = (Vector)alarms.get(time);
-			events.addAll(evts);
-			alarms = alarms.pop();
-			
-            if (alarms == null)
-                nextAlarm = NO_MORE_ALERTS;
-            else
-                nextAlarm = alarms.value();
-		}
+		if (!events.isEmpty())
+			events.clear();
+		if (!alarms.isEmpty())
+			alarms.extract(time, events);
 		return events;
 	}
 	
@@ -110,7 +79,7 @@ public class Scheduler implements IScheduler, java.io.Serializable {
      * @see planet.simulate.IScheduler#hasNext()
      */
 	public boolean hasNext() {
-	  return nextAlarm != NO_MORE_ALERTS;
+	  return !alarms.isEmpty();
 	}
 
     /**
@@ -120,6 +89,6 @@ public class Scheduler implements IScheduler, java.io.Serializable {
      */
     public String toString()
     {
-        return "Scheduler: nextAlarm = "+nextAlarm+", alarms = "+alarms;
+        return "Scheduler: alarms = "+alarms;
     }
 }
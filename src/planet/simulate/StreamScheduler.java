@@ -0,0 +1,181 @@
+package planet.simulate;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Vector;
+
+/**
+ * This IScheduler reads the events file incrementally, with the same text
+ * format than the EventParser. It only keeps in memory the events of a
+ * look-ahead window of steps: at each step, the lines of the file with a
+ * step number up to the current step plus the window are parsed and added
+ * to an internal Scheduler. In this way, the memory used does not depend on
+ * the length of the events file.
+ * <br><br>
+ * The binary events files, built by the BinaryEventWriter, are also
+ * accepted and read record by record.
+ * <br><br>
+ * The events file has to be ordered by step number. Unordered lines are
+ * accepted only inside the window; the events of a line with a step number
+ * already simulated are never produced.
+ * <br><br>
+ * It can be used directly by the NetworkSimulator:
+ * <pre>
+ * NetworkSimulator sim = new NetworkSimulator(new StreamScheduler(fileName,window));
+ * </pre>
+ * @see planet.simulate.EventParser
+ * @see planet.simulate.BinaryEventReader
+ */
+public class StreamScheduler implements IScheduler {
+
+    /**
+     * Reader of the events file. It is null once the whole file is read.
+     */
+    private BufferedReader in = null;
+    /**
+     * Reader of the binary events file. It is null for text events files
+     * and once the whole file is read.
+     */
+    private BinaryEventReader binary = null;
+    /**
+     * Number of steps to read in advance.
+     */
+    private int window;
+    /**
+     * Events already read and not produced.
+     */
+    private Scheduler pending = null;
+    /**
+     * Events of the last read line, when they are out of the window.
+     */
+    private Vector held = null;
+    /**
+     * Step number of the events of the last read line.
+     */
+    private int heldTime;
+
+    /**
+     * Opens the events file <b>fileName</b> to read it incrementally.
+     * @param fileName Path to the file with the events to load.
+     * @param window Number of steps to read in advance.
+     * @throws FileNotFoundException if the file is not found.
+     * @throws IOException if the binary events file does not match the
+     * current configuration.
+     */
+    public StreamScheduler(String fileName, int window) throws FileNotFoundException, IOException {
+        if (BinaryEventReader.isBinary(fileName))
+            this.binary = new BinaryEventReader(fileName);
+        else
+            this.in  = new BufferedReader(new FileReader(fileName));
+        this.window  = window;
+        this.pending = new Scheduler();
+    }
+
+    /**
+     * Adds all the Event instances within <b>events</b> into the current
+     * scheduler, with the events read from the file.
+     * @param events Unordered list of events.
+     * @see planet.simulate.IScheduler#addEvents(java.util.Vector)
+     */
+    public void addEvents(Vector events) {
+        pending.addEvents(events);
+    }
+
+    /**
+     * Gets all alerts occurred at <b>time</b> time, reading before the
+     * events file up to the step <b>time</b> plus the window.
+     * The returned Vector is reused by the next invocation of this method.
+     * @param time Number of step which obtain all its alerts.
+     * @return All alerts occurred at <b>time</b> time.
+     * @see planet.simulate.IScheduler#getEvents(int)
+     */
+    public Vector getEvents(int time) {
+        read(time + window);
+        return pending.getEvents(time);
+    }
+
+    /**
+     * Shows if there are more alerts, in memory or in the events file.
+     * @return true if there are more alerts.
+     * @see planet.simulate.IScheduler#hasNext()
+     */
+    public boolean hasNext() {
+        return in != null || binary != null || held != null || pending.hasNext();
+    }
+
+    /**
+     * Reads the events file up to the first line with a step number greater
+     * than <b>limit</b>, which is held until the window reaches it.
+     * @param limit Last step number to read.
+     */
+    private void read(int limit) {
+        while (true) {
+            if (held == null) {
+                if (binary != null) {
+                    held = readRecord();
+                    if (held == null) return;
+                } else {
+                    if (in == null) return;
+                    String line = readLine();
+                    if (line == null) return;
+                    held = EventParser.parseLine(line);
+                }
+                if (held.isEmpty()) {
+                    held = null;
+                    continue;
+                }
+                heldTime = ((IEvent) held.get(0)).getTime();
+            }
+            if (heldTime > limit) return;
+            pending.addEvents(held);
+            held = null;
+        }
+    }
+
+    /**
+     * Reads the next not empty line of the events file, closing it at the end.
+     * @return The next not empty line, or null if the end of file is reached.
+     */
+    private String readLine() {
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.trim().length() > 0)
+                    return line;
+            }
+            in.close();
+        } catch (IOException e) {
+            Logger.log("Cannot read the events file: " + e.getMessage(), Logger.ERROR_LOG);
+        }
+        in = null;
+        return null;
+    }
+
+    /**
+     * Reads the next record of the binary events file, closing it at the end.
+     * @return The events of the next record, or null if the end of file is reached.
+     */
+    private Vector readRecord() {
+        try {
+            Vector events = new Vector();
+            if (binary.readRecord(events))
+                return events;
+            binary.close();
+        } catch (IOException e) {
+            Logger.log("Cannot read the events file: " + e.getMessage(), Logger.ERROR_LOG);
+        }
+        binary = null;
+        return null;
+    }
+
+    /**
+     * Shows the string representation of the current scheduler.
+     * @return The string representation of the current scheduler.
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return "StreamScheduler: window = " + window + ", pending = " + pending;
+    }
+}
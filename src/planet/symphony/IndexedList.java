@@ -0,0 +1,93 @@
+package planet.symphony;
+
+import java.util.AbstractList;
+import java.util.Vector;
+
+/**
+ * List of long distance links of a SymphonyNode that keeps its RoutingIndex
+ * updated. All modifications of an AbstractList are done by the add(int,
+ * Object), remove(int) and set(int, Object) methods, so every NodeHandle
+ * added to or removed from this list, by the node or by its behaviours, is
+ * added to or removed from the index.
+ * @see planet.symphony.RoutingIndex
+ */
+public class IndexedList extends AbstractList implements java.io.Serializable {
+
+    /**
+     * NodeHandles of the list.
+     */
+    private Vector list;
+    /**
+     * Routing index to be updated.
+     */
+    private RoutingIndex index;
+
+    /**
+     * Builds an empty list that updates the <b>index</b>.
+     * @param index Routing index of the node.
+     * @param capacity Initial capacity of the list.
+     */
+    public IndexedList(RoutingIndex index, int capacity) {
+        this.index = index;
+        list = new Vector(capacity, 1);
+    }
+
+    /**
+     * Returns the NodeHandle at <b>i</b>.
+     * @see java.util.List#get(int)
+     * @param i Position of the list.
+     * @return The NodeHandle at the position.
+     */
+    public Object get(int i) {
+        return list.get(i);
+    }
+
+    /**
+     * Returns the number of NodeHandles.
+     * @see java.util.Collection#size()
+     * @return The size of the list.
+     */
+    public int size() {
+        return list.size();
+    }
+
+    /**
+     * Inserts the <b>element</b> at the position <b>i</b>, and adds it to
+     * the index.
+     * @see java.util.List#add(int, java.lang.Object)
+     * @param i Position of the list.
+     * @param element NodeHandle to be inserted.
+     */
+    public void add(int i, Object element) {
+        list.add(i, element);
+        index.add(element);
+        modCount++;
+    }
+
+    /**
+     * Removes the NodeHandle at <b>i</b>, from the list and from the index.
+     * @see java.util.List#remove(int)
+     * @param i Position of the list.
+     * @return The removed NodeHandle.
+     */
+    public Object remove(int i) {
+        Object removed = list.remove(i);
+        index.remove(removed);
+        modCount++;
+        return removed;
+    }
+
+    /**
+     * Replaces the NodeHandle at <b>i</b>, also at the index.
+     * @see java.util.List#set(int, java.lang.Object)
+     * @param i Position of the list.
+     * @param element New NodeHandle.
+     * @return The replaced NodeHandle.
+     */
+    public Object set(int i, Object element) {
+        Object replaced = list.set(i, element);
+        index.remove(replaced);
+        index.add(element);
+        return replaced;
+    }
+}
@@ -0,0 +1,178 @@
+package planet.symphony;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+import planet.commonapi.NodeHandle;
+
+/**
+ * Routing index of a SymphonyNode: all NodeHandles of its neighbour set
+ * (including the local node), its outcomming and its incomming long distance
+ * links, sorted by their position on the ring. The positions are saved as
+ * primitive doubles, so the closest node to any position is found with a
+ * binary search, without any SymphonyId access.
+ * <br><br>
+ * A node may be at several sets at the same time, so each position keeps
+ * how many times it has been added, and it is removed only when it has been
+ * removed from all sets. The index is updated incrementally by the
+ * SortedKList of neighbours and by the IndexedList of each long distance
+ * set.
+ * @see planet.symphony.SymphonyNode#route(planet.commonapi.NodeHandle)
+ * @see planet.symphony.IndexedList
+ */
+public class RoutingIndex implements java.io.Serializable {
+
+    /**
+     * Sorted positions on the ring.
+     */
+    private double[] positions;
+    /**
+     * NodeHandle at each position.
+     */
+    private NodeHandle[] handles;
+    /**
+     * Number of sets that contain the NodeHandle at each position.
+     */
+    private int[] references;
+    /**
+     * Number of positions in use.
+     */
+    private int size = 0;
+
+    /**
+     * Builds an empty index.
+     * @param capacity Initial number of positions.
+     */
+    public RoutingIndex(int capacity) {
+        capacity = Math.max(capacity, 1);
+        positions = new double[capacity];
+        handles = new NodeHandle[capacity];
+        references = new int[capacity];
+    }
+
+    /**
+     * Returns the number of distinct NodeHandles of the index.
+     * @return The number of NodeHandles.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the NodeHandle at <b>index</b>, in ring order.
+     * @param index Index from zero to size()-1.
+     * @return The NodeHandle at the index.
+     */
+    public NodeHandle get(int index) {
+        return handles[index];
+    }
+
+    /**
+     * Adds a reference to the <b>handle</b>.
+     * @param handle NodeHandle added to any set.
+     */
+    public void add(Object handle) {
+        NodeHandle nh = (NodeHandle) handle;
+        double position = ((SymphonyId) nh.getId()).getDoubleValue();
+        int index = search(position);
+        if (index < size && positions[index] == position) {
+            references[index]++;
+            return;
+        }
+        if (size == positions.length) grow();
+        System.arraycopy(positions, index, positions, index + 1, size - index);
+        System.arraycopy(handles, index, handles, index + 1, size - index);
+        System.arraycopy(references, index, references, index + 1, size - index);
+        positions[index] = position;
+        handles[index] = nh;
+        references[index] = 1;
+        size++;
+    }
+
+    /**
+     * Adds a reference to all NodeHandles of the <b>c</b> collection.
+     * @param c Collection of NodeHandles.
+     */
+    public void addAll(Collection c) {
+        Iterator it = c.iterator();
+        while (it.hasNext())
+            add(it.next());
+    }
+
+    /**
+     * Removes a reference to the <b>handle</b>, and the handle itself when
+     * it has not any more references.
+     * @param handle NodeHandle removed from any set.
+     */
+    public void remove(Object handle) {
+        double position = ((SymphonyId) ((NodeHandle) handle).getId()).getDoubleValue();
+        int index = search(position);
+        if (index == size || positions[index] != position) return;
+        if (--references[index] > 0) return;
+        size--;
+        System.arraycopy(positions, index + 1, positions, index, size - index);
+        System.arraycopy(handles, index + 1, handles, index, size - index);
+        System.arraycopy(references, index + 1, references, index, size - index);
+        handles[size] = null;
+    }
+
+    /**
+     * Removes all NodeHandles.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++)
+            handles[i] = null;
+        size = 0;
+    }
+
+    /**
+     * Finds the NodeHandle with the shortest distance to the <b>position</b>,
+     * with the same criteria as the SymphonyNode routing: the absolute
+     * difference of the positions, without turning around the ring.
+     * @param position Position of the destination.
+     * @return The closest NodeHandle, or null if the index is empty.
+     */
+    public NodeHandle closest(double position) {
+        if (size == 0) return null;
+        int index = search(position);
+        if (index == size) return handles[size - 1];
+        if (index == 0) return handles[0];
+        if (position - positions[index - 1] <= positions[index] - position)
+            return handles[index - 1];
+        return handles[index];
+    }
+
+    /**
+     * Finds the first position equal to or greater than the <b>position</b>.
+     * @param position Position to look for.
+     * @return The index of the found position, or size() if there is not any.
+     */
+    private int search(double position) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (positions[middle] < position)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Doubles the capacity of the index.
+     */
+    private void grow() {
+        int capacity = positions.length * 2;
+        double[] newPositions = new double[capacity];
+        NodeHandle[] newHandles = new NodeHandle[capacity];
+        int[] newReferences = new int[capacity];
+        System.arraycopy(positions, 0, newPositions, 0, size);
+        System.arraycopy(handles, 0, newHandles, 0, size);
+        System.arraycopy(references, 0, newReferences, 0, size);
+        positions = newPositions;
+        handles = newHandles;
+        references = newReferences;
+    }
+}
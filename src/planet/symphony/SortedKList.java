@@ -46,6 +46,8 @@ public class SortedKList implements java.io.Serializable {
     private Vector farthestNeighbours = null;
     /** For internal uses in the addAll() method. */
     private Vector addAllVector = null;
+    /** Routing index updated with all insertions and removals, or null. */
+    private RoutingIndex index = null;
     
 	/**
      * Create a new SortedKList using the Comparer interface to
@@ -73,6 +75,17 @@ public class SortedKList implements java.io.Serializable {
     	return listOrder;
     }
     
+    /**
+     * Sets the routing index to be updated with all insertions and removals
+     * of this list, and adds to it the current elements.
+     * @param index Routing index of the node.
+     */
+    public void setIndex(RoutingIndex index) {
+        this.index = index;
+        for (int i = 0; i < list.size(); i++)
+            index.add(list.get(i));
+    }
+    
     /**
      * Adds a object to the sortedKList.
      * @param o Object to add.
@@ -92,11 +105,13 @@ public class SortedKList implements java.io.Serializable {
             remakeNeighbours = true;
             remakeFarthestNeighbours = true;
 			list.insertElementAt(o, insertAt);
+            if (index != null) index.add(o);
     		while (list.size() > k + 1) 
             {
                 if (!o.equals(list.get(k/2+1)))
                     toRemove.add(list.get(k/2+1));
-                list.remove(k/2 + 1);
+                Object removed = list.remove(k/2 + 1);
+                if (index != null) index.remove(removed);
             }
 		    return list.contains(o); //can be removed
     	}
@@ -205,7 +220,8 @@ public class SortedKList implements java.io.Serializable {
         remakePredecessors = true;
         remakeNeighbours = true;
         remakeFarthestNeighbours = true;
-    	list.remove(pred);
+    	Object removed = list.remove(pred);
+    	if (index != null) index.remove(removed);
     	return true; 
     }
     /**
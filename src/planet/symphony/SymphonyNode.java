@@ -1,4 +1,5 @@
 package planet.symphony;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Hashtable;
@@ -16,6 +17,11 @@ import planet.commonapi.NodeHandle;
 import planet.commonapi.RouteMessage;
 import planet.commonapi.exception.InitializationException;
 import planet.commonapi.results.ResultsConstraint;
+import planet.generic.commonapi.NetworkSnapshotReader;
+import planet.generic.commonapi.NetworkSnapshotWriter;
+import planet.generic.commonapi.SnapshotNode;
+import planet.generic.commonapi.StabilizedNode;
+import planet.generic.commonapi.StabilizedRing;
 import planet.generic.commonapi.behaviours.BehavioursPatternImpl;
 import planet.generic.commonapi.factory.GenericFactory;
 import planet.results.LinkStateResults;
@@ -40,6 +46,7 @@ import planet.util.timer.TimerTaskImpl;
 
 public class SymphonyNode
 	extends planet.generic.commonapi.NodeImpl 
+	implements SnapshotNode, StabilizedNode
 {
 	
 	/* ******************  CONSTANTS FOR MODE OF ROUTEMESSAGE *******/
@@ -110,6 +117,8 @@ public class SymphonyNode
 	private List incommingSet;
 	private List outcommingSet;
 	public SortedKList neighbourSet; // with order !!!
+	/** All NodeHandles of the three sets, sorted by their position on the ring. */
+	private RoutingIndex routingIndex;
     
 	private double n;
 	
@@ -163,8 +172,9 @@ public class SymphonyNode
     public SymphonyNode() throws InitializationException {
         super();
         alive = true;
-        outcommingSet = new Vector(SymphonyNode.getLongDistanceNumber(),1);
-        incommingSet = new Vector(SymphonyNode.getLongDistanceNumber(),1);
+        routingIndex = new RoutingIndex(SymphonyNode.getSuccessorsNumber()*2 + SymphonyNode.getLongDistanceNumber()*2 + 1);
+        outcommingSet = new IndexedList(routingIndex, SymphonyNode.getLongDistanceNumber());
+        incommingSet = new IndexedList(routingIndex, SymphonyNode.getLongDistanceNumber());
         fixedNeighbours = false;
         statisticStabilized = false;
         modifiedNeighbours = true;
@@ -571,14 +581,8 @@ public class SymphonyNode
 		int retries = 10;
 	
 		while (true) {
-			SymphonyId symId = (SymphonyId) id;
-			double x = symId.getDoubleValue() + Math.exp(Math.log((double) n) * (r.nextDouble() - 1.0));
-			int i = (int) x;
-			x -= i;
-			Id xid = new SymphonyId().setValues(x);
-			NodeHandle succ = getSucc();
-			NodeHandle pred = getPred();
-			if (!xid.between(pred.getId(), id) && !xid.between(id, succ.getId())) 
+			Id xid = drawLongDistance(r);
+			if (xid != null) 
 				try {
                     NodeHandle xidNH = GenericFactory.buildNodeHandle(xid, true);
 					return buildMessage(nodeHandle, xidNH, route(xidNH), QUERY_CONNECT, REFRESH, null);
@@ -593,6 +597,23 @@ public class SymphonyNode
 		}
 	}
 
+    /**
+     * Draws the Id of a new long distance link, with the harmonic
+     * distribution of the estimated network size.
+     * @param random Random generator to use.
+     * @return The drawn Id, or null if it is between the predecessor and
+     * the successor.
+     */
+    private Id drawLongDistance(Random random) {
+        double x = ((SymphonyId) id).getDoubleValue() + Math.exp(Math.log((double) n) * (random.nextDouble() - 1.0));
+        int i = (int) x;
+        x -= i;
+        Id xid = new SymphonyId().setValues(x);
+        if (xid.between(getPred().getId(), id) || xid.between(id, getSucc().getId()))
+            return null;
+        return xid;
+    }
+
     /**
      * Evaluates if its network context has changed. In afirmative case, a
      * new long distance query is sent.
@@ -843,49 +864,11 @@ public class SymphonyNode
 		return alive;
 	}
 
-    /**
-     * Having a node destination <b>to</b>, calculates the shortest path to it,
-     * passing by the <b>a</b> node or <b>b</b> node.
-     * @param to Destination node.
-     * @param a  The first candidate to arrive to the destination node.
-     * @param b  The second candidate to arrive to the destination node.
-     * @return The <b>a</b> candidate if has the shortest path to <b>to</b> node,
-     * or <b> in other case.
-     */
-	private NodeHandle bestOf(NodeHandle to, NodeHandle a, NodeHandle b) {
-		if (a == null)
-			return b;			
-		if (b == null)
-			return a;
-		double lena = Math.abs(((SymphonyId) to.getId()).getDoubleValue() - ((SymphonyId)a.getId()).getDoubleValue());
-		double lenb = Math.abs(((SymphonyId) to.getId()).getDoubleValue() - ((SymphonyId)b.getId()).getDoubleValue());
-		if (lena <= lenb)
-			return a;
-		else
-			return b;
-	}
-    
-    /**
-     * Having a node destination <b>to</b>, calculates the shortest path to it,
-     * passing by the <b>a</b> node or <b>b</b> node.
-     * @param to Destination node.
-     * @param a  The first candidate to arrive to the destination node.
-     * @param it NodeHandle iterator with another candidates to arrive to the
-     * destination node.
-     * @return The NodeHandle with the shortest path to destination node.
-     */
-    private NodeHandle bestOf(NodeHandle to, NodeHandle a, Vector values) {
-        NodeHandle candidate = a;
-        for (int i = 0; i < values.size(); i++)
-        {
-            candidate = bestOf(to, candidate, (NodeHandle) values.get(i));
-        }
-        return candidate;
-    }
-	
     /**
      * Returns the NodeHandle with the shortest path to the destination node,
-     * using all internal routing information.
+     * using all internal routing information: the neighbour set, and the
+     * outcomming and incomming long distance links. The closest one is found
+     * with a binary search on the routing index.
      * @param to Destination node.
      * @return   The best node to route any RouteMessage to the node <b>to</b>.
      */
@@ -894,13 +877,7 @@ public class SymphonyNode
 			return getSucc();
 		}
 
-		NodeHandle candidate = null;
-
-        candidate = bestOf(to, candidate, (Vector)neighbourSet.getSortedSet());
-		candidate = bestOf(to, candidate, (Vector)outcommingSet);
-		candidate = bestOf(to, candidate, (Vector)incommingSet);
-		
-		return candidate;
+		return routingIndex.closest(((SymphonyId) to.getId()).getDoubleValue());
 	}
 
     /**
@@ -910,8 +887,19 @@ public class SymphonyNode
 	private void sendData(RouteMessage message) {
 		//planet.results.LinkStateResults.newMessage(message);
 		//planet.results.LinkStateResults.updateOutcoming(this.id);
-        sendMessage(message);
+        //counted before, so a rejected message is discounted when it is dropped
         Results.incTraffic();
+        sendMessage(message);
+	}
+
+	/**
+	 * Discounts the traffic of the discarded DATA messages.
+	 * @param msg The discarded message.
+	 * @see planet.generic.commonapi.NodeImpl#messageDropped(planet.commonapi.RouteMessage)
+	 */
+	protected void messageDropped(RouteMessage msg) {
+		if (msg.getType() == DATA) Results.decTraffic();
+		super.messageDropped(msg);
 	}
 
 	/**
@@ -1166,6 +1154,126 @@ public class SymphonyNode
 	}
 	/* END ************************ RESULTS ****************************/
     
+    /**
+     * Sets the neighbour set of a stabilized Symphony ring, with the
+     * previous and next nodes of the ring, and the estimated network size
+     * from them. The node is marked as stabilized when its neighbour set
+     * is full, as it had no neighbour changes for the statistic steps.
+     * @see planet.generic.commonapi.StabilizedNode#joinStabilized(planet.generic.commonapi.StabilizedRing, int, java.util.Random)
+     * @param ring The sorted ring of all nodes.
+     * @param position Position of this node at the <b>ring</b>.
+     * @param random Not used.
+     */
+    public void joinStabilized(StabilizedRing ring, int position, Random random) {
+        int successors = SymphonyNode.getSuccessorsNumber();
+        incommingSet.clear();
+        outcommingSet.clear();
+        newNeighbourSet();
+        for (int i = 1; i <= successors; i++) {
+            neighbourSet.add(ring.getHandle(position + i));
+            neighbourSet.add(ring.getHandle(position - i));
+        }
+        n = estimation();
+        retriesNewLongDistance = 0;
+        requestedNewLongDistance = false;
+        alive = true;
+        fixedNeighbours = (getNeighbourSet().size() - 1) == successors * 2;
+        statisticStabilized = fixedNeighbours;
+        statisticStabilizationSteps = fixedNeighbours ? 0 : successors*24;
+        modifiedNeighbours = false;
+    }
+    
+    /**
+     * Sets the long distance links, drawn with the harmonic distribution
+     * as getNewLongDistance() does. Each drawn link is accepted by the
+     * node responsible of its Id with the same conditions of the
+     * QueryConnectBehaviour, and it is drawn again when it is rejected, up
+     * to ten times per link.
+     * @see planet.generic.commonapi.StabilizedNode#linkStabilized(planet.generic.commonapi.StabilizedRing, int, java.util.Random)
+     * @param ring The sorted ring of all nodes.
+     * @param position Position of this node at the <b>ring</b>.
+     * @param random Random generator of the network.
+     */
+    public void linkStabilized(StabilizedRing ring, int position, Random random) {
+        int links = SymphonyNode.getLongDistanceNumber();
+        Id xid = null;
+        SymphonyNode target = null;
+        for (int tries = links * 10; outcommingSet.size() < links && tries > 0; tries--) {
+            xid = drawLongDistance(random);
+            if (xid == null) continue;
+            target = (SymphonyNode) ring.getNode(ring.findSuccessor(xid));
+            if (!neighbourSetContains(target.nodeHandle) && !outcommingSet.contains(target.nodeHandle)
+                    && target.acceptLongDistance(nodeHandle))
+                outcommingSet.add(target.nodeHandle);
+        }
+    }
+    
+    /**
+     * Accepts the <b>source</b> node as an incomming long distance link,
+     * with the conditions of the QueryConnectBehaviour.
+     * @param source NodeHandle of the node that requests the link.
+     * @return true if the link is accepted.
+     */
+    private boolean acceptLongDistance(NodeHandle source) {
+        if (neighbourSetContains(source) || outcommingSet.contains(source))
+            return false;
+        if (incommingSet.contains(source))
+            return true;
+        if (incommingSet.size() < SymphonyNode.getLongDistanceNumber()) {
+            incommingSet.add(source);
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Saves the long distance links, the neighbour set (without the local
+     * node), the estimated network size and the stabilization flags.
+     * @see planet.generic.commonapi.SnapshotNode#writeState(planet.generic.commonapi.NetworkSnapshotWriter)
+     * @param out Writer of the snapshot.
+     * @throws IOException if occurs any problem writing the snapshot.
+     */
+    public void writeState(NetworkSnapshotWriter out) throws IOException {
+        out.writeHandles(incommingSet);
+        out.writeHandles(outcommingSet);
+        out.writeHandles(neighbourSet.getNeighbourSet());
+        out.writeDouble(n);
+        out.writeInt(retriesNewLongDistance);
+        out.writeBoolean(requestedNewLongDistance);
+        out.writeBoolean(alive);
+        out.writeBoolean(fixedNeighbours);
+        out.writeBoolean(statisticStabilized);
+        out.writeInt(statisticStabilizationSteps);
+        out.writeBoolean(modifiedNeighbours);
+    }
+    
+    /**
+     * Loads the state saved by writeState(). The neighbour set is rebuilt
+     * adding each neighbour to a new empty set, as in setValues().
+     * @see planet.generic.commonapi.SnapshotNode#readState(planet.generic.commonapi.NetworkSnapshotReader)
+     * @param in Reader of the snapshot.
+     * @throws IOException if occurs any problem reading the snapshot.
+     */
+    public void readState(NetworkSnapshotReader in) throws IOException {
+        incommingSet.clear();
+        in.readHandles(incommingSet);
+        outcommingSet.clear();
+        in.readHandles(outcommingSet);
+        Vector neighbours = new Vector();
+        in.readHandles(neighbours);
+        newNeighbourSet();
+        for (int i = 0; i < neighbours.size(); i++)
+            neighbourSet.add(neighbours.get(i));
+        n = in.readDouble();
+        retriesNewLongDistance = in.readInt();
+        requestedNewLongDistance = in.readBoolean();
+        alive = in.readBoolean();
+        fixedNeighbours = in.readBoolean();
+        statisticStabilized = in.readBoolean();
+        statisticStabilizationSteps = in.readInt();
+        modifiedNeighbours = in.readBoolean();
+    }
+    
     
     /** Sets the new Id.
      * @param newId New Id.
@@ -1175,8 +1283,20 @@ public class SymphonyNode
      */
     public Node setValues(Id newId) throws InitializationException {
         super.setValues(newId);
+        newNeighbourSet();
+        return this;
+    }
+    
+    /**
+     * Builds a new neighbour set with only the local node, and rebuilds the
+     * routing index with it and the current long distance links.
+     */
+    private void newNeighbourSet() {
         //F is the number of successors ==> F predecessors and F successors
         neighbourSet = new SortedKList(new IdComparer(this.nodeHandle), this.nodeHandle, SymphonyNode.getSuccessorsNumber()*2);
-        return this;
+        routingIndex.clear();
+        routingIndex.addAll(incommingSet);
+        routingIndex.addAll(outcommingSet);
+        neighbourSet.setIndex(routingIndex);
     }
 }
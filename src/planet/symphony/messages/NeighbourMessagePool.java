@@ -12,8 +12,6 @@ public class NeighbourMessagePool {
     
     /** The pool of NeighbourMessage is based on a stack. */
     private static Stack pool = null;
-    /** A temporal NeighbourMessage for internal uses. */
-    private static NeighbourMessage temp = null;
     /** Number of created NeighbourMessages. */
     public static int createdMessages;
     /** Number of reused NeighbourMessages. */
@@ -36,7 +34,7 @@ public class NeighbourMessagePool {
      * Returns an existing NeighbourMessage if exists or a new NeighbourMessage.
      * @return An existing or a new NeighbourMessage.
      */
-    public static NeighbourMessage getMessage()
+    public static synchronized NeighbourMessage getMessage()
     {
         if (pool.size()>0)
         {
@@ -55,9 +53,9 @@ public class NeighbourMessagePool {
      * @param value The internal value for the NeighbourMessage.
      * @return An existing or a new NeighbourMessage with the specified internal value.
      */
-    public static NeighbourMessage getMessage(java.util.Collection value)
+    public static synchronized NeighbourMessage getMessage(java.util.Collection value)
     {
-        temp = getMessage();
+        NeighbourMessage temp = getMessage();
         temp.neighbourhoodSet = value;
         return temp;
     }
@@ -66,7 +64,7 @@ public class NeighbourMessagePool {
      * Free the unused NeighbourMessage <b>msg</b>
      * @param msg An unused NeighbourMessage.
      */
-    public static void freeMessage(NeighbourMessage msg)
+    public static synchronized void freeMessage(NeighbourMessage msg)
     {
         freeMessages++;
         msg.neighbourhoodSet = null;
@@ -0,0 +1,228 @@
+package planet.test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import planet.dht.ByteArrayStorage;
+
+/**
+ * Checks the planet.dht.ByteArrayStorage: insertion, replacement of values
+ * with the same and with a different length, removal, compaction of the
+ * arena and serialization. Each case runs with the arena in the Java heap
+ * and with a direct arena.
+ */
+public class ByteArrayStorageTest extends TestCase {
+	/**
+	 * Number of keys of each case.
+	 */
+	private static final int KEYS = 500;
+
+	public ByteArrayStorageTest(String name) {
+		super(name);
+	}
+
+	public static junit.framework.Test suite() {
+		return new TestSuite(ByteArrayStorageTest.class);
+	}
+
+	public void testPut() {
+		checkPut(new ByteArrayStorage());
+		checkPut(new ByteArrayStorage(true));
+	}
+
+	public void testReplace() {
+		checkReplace(new ByteArrayStorage());
+		checkReplace(new ByteArrayStorage(true));
+	}
+
+	public void testRemove() {
+		checkRemove(new ByteArrayStorage());
+		checkRemove(new ByteArrayStorage(true));
+	}
+
+	public void testCompaction() {
+		checkCompaction(new ByteArrayStorage());
+		checkCompaction(new ByteArrayStorage(true));
+	}
+
+	public void testSerialization() throws Exception {
+		checkSerialization(new ByteArrayStorage());
+		checkSerialization(new ByteArrayStorage(true));
+	}
+
+	/**
+	 * New keys are added, and all of them are found with their values.
+	 * @param storage Empty store.
+	 */
+	private void checkPut(ByteArrayStorage storage) {
+		for (int i = 0; i < KEYS; i++)
+			assertEquals("put new " + i, true, storage.put(key(i), value(i, 0)));
+		assertEquals("size", KEYS, storage.size());
+		for (int i = 0; i < KEYS; i++) {
+			assertEquals("contains " + i, true, storage.containsKey(key(i)));
+			assertEquals("get " + i, true, Arrays.equals(value(i, 0), storage.get(key(i))));
+		}
+		assertEquals("absent key", null, storage.get(key(KEYS)));
+		assertEquals("absent contains", false, storage.containsKey(key(KEYS)));
+		byte[][] keys = {key(3), key(KEYS), key(7)};
+		byte[][] values = storage.getAll(keys);
+		assertEquals("getAll 3", true, Arrays.equals(value(3, 0), values[0]));
+		assertEquals("getAll absent", null, values[1]);
+		assertEquals("getAll 7", true, Arrays.equals(value(7, 0), values[2]));
+	}
+
+	/**
+	 * A value of the same length is replaced in place; a value of a
+	 * different length is appended, and both leave the other keys intact.
+	 * @param storage Empty store.
+	 */
+	private void checkReplace(ByteArrayStorage storage) {
+		for (int i = 0; i < KEYS; i++)
+			storage.put(key(i), value(i, 0));
+		int used = storage.getUsedBytes();
+		for (int i = 0; i < KEYS; i += 2)
+			assertEquals("replace same length " + i, false, storage.put(key(i), value(i + 1, 0)));
+		assertEquals("replaced in place", used, storage.getUsedBytes());
+		assertEquals("size after same length", KEYS, storage.size());
+		for (int i = 1; i < KEYS; i += 2)
+			assertEquals("replace other length " + i, false, storage.put(key(i), value(i, 5)));
+		assertEquals("size after other length", KEYS, storage.size());
+		for (int i = 0; i < KEYS; i++) {
+			byte[] expected = (i % 2 == 0) ? value(i + 1, 0) : value(i, 5);
+			assertEquals("get replaced " + i, true, Arrays.equals(expected, storage.get(key(i))));
+		}
+	}
+
+	/**
+	 * Removed keys are not found any more, and the keys of the same clusters
+	 * remain reachable.
+	 * @param storage Empty store.
+	 */
+	private void checkRemove(ByteArrayStorage storage) {
+		for (int i = 0; i < KEYS; i++)
+			storage.put(key(i), value(i, 0));
+		for (int i = 0; i < KEYS; i += 3)
+			assertEquals("remove " + i, true, storage.remove(key(i)));
+		assertEquals("remove absent", false, storage.remove(key(0)));
+		assertEquals("remove never put", false, storage.remove(key(KEYS)));
+		int removed = (KEYS + 2) / 3;
+		assertEquals("size", KEYS - removed, storage.size());
+		for (int i = 0; i < KEYS; i++) {
+			if (i % 3 == 0)
+				assertEquals("removed " + i, null, storage.get(key(i)));
+			else
+				assertEquals("kept " + i, true, Arrays.equals(value(i, 0), storage.get(key(i))));
+		}
+		//the removed keys can be added again
+		for (int i = 0; i < KEYS; i += 3)
+			assertEquals("put again " + i, true, storage.put(key(i), value(i, 2)));
+		assertEquals("size after put again", KEYS, storage.size());
+		assertEquals("get again", true, Arrays.equals(value(0, 2), storage.get(key(0))));
+	}
+
+	/**
+	 * The garbage of replaced and removed values is compacted, keeping the
+	 * arena up to twice the live pairs, and all values survive the copy.
+	 * @param storage Empty store.
+	 */
+	private void checkCompaction(ByteArrayStorage storage) {
+		for (int i = 0; i < KEYS; i++)
+			storage.put(key(i), value(i, 0));
+		for (int round = 1; round <= 20; round++) {
+			for (int i = 0; i < KEYS; i++)
+				storage.put(key(i), value(i, round));
+			checkUsedBytes(storage, "round " + round, liveBytes(0, KEYS, round));
+		}
+		for (int i = 0; i < KEYS; i++)
+			assertEquals("get compacted " + i, true, Arrays.equals(value(i, 20), storage.get(key(i))));
+		//removals also leave garbage to compact
+		for (int i = 10; i < KEYS; i++)
+			storage.remove(key(i));
+		checkUsedBytes(storage, "after remove", liveBytes(0, 10, 20));
+		for (int i = 0; i < 10; i++)
+			assertEquals("get after remove " + i, true, Arrays.equals(value(i, 20), storage.get(key(i))));
+	}
+
+	/**
+	 * The pairs written by writeObject() are read back in a store of the
+	 * same kind.
+	 * @param storage Empty store.
+	 * @throws Exception if the store cannot be serialized.
+	 */
+	private void checkSerialization(ByteArrayStorage storage) throws Exception {
+		for (int i = 0; i < KEYS; i++)
+			storage.put(key(i), value(i, i % 4));
+		for (int i = 0; i < KEYS; i += 5)
+			storage.remove(key(i));
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(storage);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		ByteArrayStorage copy = (ByteArrayStorage) in.readObject();
+		in.close();
+		assertEquals("offHeap", storage.isOffHeap(), copy.isOffHeap());
+		assertEquals("size", storage.size(), copy.size());
+		for (int i = 0; i < KEYS; i++)
+			assertEquals("get copy " + i, true, Arrays.equals(storage.get(key(i)), copy.get(key(i))));
+		//the copy is usable
+		assertEquals("put at copy", true, copy.put(key(0), value(0, 0)));
+		assertEquals("get put at copy", true, Arrays.equals(value(0, 0), copy.get(key(0))));
+	}
+
+	/**
+	 * Checks that the used bytes of the arena are at most twice the
+	 * <b>live</b> bytes, or the live bytes plus the minimum garbage to
+	 * compact.
+	 * @param storage The store.
+	 * @param msg Message of the failure.
+	 * @param live Bytes of the stored pairs.
+	 */
+	private void checkUsedBytes(ByteArrayStorage storage, String msg, int live) {
+		int used = storage.getUsedBytes();
+		assertEquals(msg + ": used " + used + " for " + live + " live bytes", true,
+				used <= Math.max(2 * live, live + ByteArrayStorage.INITIAL_ARENA));
+	}
+
+	/**
+	 * Returns the bytes of the pairs from <b>first</b> to <b>last</b> - 1,
+	 * with their values of the <b>round</b>.
+	 * @param first First key.
+	 * @param last Last key, exclusive.
+	 * @param round Round of the values.
+	 * @return The bytes of the pairs, with their headers.
+	 */
+	private static int liveBytes(int first, int last, int round) {
+		int bytes = 0;
+		for (int i = first; i < last; i++)
+			bytes += 8 + key(i).length + value(i, round).length;
+		return bytes;
+	}
+
+	/**
+	 * Builds the key number <b>i</b>.
+	 * @param i Number of the key.
+	 * @return The bytes of the key.
+	 */
+	private static byte[] key(int i) {
+		return ("key-" + i).getBytes();
+	}
+
+	/**
+	 * Builds the value of the key <b>i</b> at the <b>round</b>: its length
+	 * changes with the round.
+	 * @param i Number of the key.
+	 * @param round Number of the round.
+	 * @return The bytes of the value.
+	 */
+	private static byte[] value(int i, int round) {
+		byte[] value = new byte[16 + (round % 3) * 8 + round];
+		for (int j = 0; j < value.length; j++)
+			value[j] = (byte) (i * 31 + j + round);
+		return value;
+	}
+}
@@ -0,0 +1,199 @@
+package planet.test;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import planet.chord.ChordId;
+import planet.chord.ChordLongId;
+import planet.chord.ChordProperties;
+import planet.commonapi.Id;
+import planet.commonapi.exception.InitializationException;
+import planet.generic.commonapi.GenericApp;
+import planet.util.Properties;
+
+/**
+ * Checks that the ChordLongId and the ChordId give the same results for the
+ * same values, so that the OVERLAY_ID of any Chord configuration can be
+ * changed between them. The values are built randomly, with 32, 64, 96, 128
+ * and 160 bits, including values near to zero and to the maximum, and equal
+ * values.
+ */
+public class ChordLongIdTest extends TestCase {
+	/**
+	 * Number of bits of the keys to test.
+	 */
+	private static final int[] BITS = {32, 64, 96, 128, 160};
+	/**
+	 * Number of random values for each number of bits.
+	 */
+	private static final int VALUES = 2000;
+
+	private Random random;
+	private BigInteger max;
+
+	public ChordLongIdTest(String name) throws InitializationException {
+		super(name);
+	}
+
+	protected void setUp() {
+		try {
+            //arguments: properties file, application level, events, results, serialization
+            GenericApp.start("../conf/master.properties",TestNames.IDTEST,false,false,false,false);
+		} catch (Exception e1) {
+			e1.printStackTrace();
+		}
+        if (! (Properties.overlayPropertiesInstance instanceof ChordProperties))
+            throw new Error("This test only runs under Chord implementation.");
+	}
+
+	public static junit.framework.Test suite() {
+		return new TestSuite(ChordLongIdTest.class);
+	}
+
+	/**
+	 * Sets the number of bits per key and restarts the random values.
+	 * @param bits Number of bits per key.
+	 */
+	private void setBits(int bits) {
+		((ChordProperties)Properties.overlayPropertiesInstance).bitsPerKey = bits;
+		max = BigInteger.ONE.shiftLeft(bits);
+		random = new Random(bits);
+	}
+
+	/**
+	 * Builds the value number <b>i</b>: a random value, or a value near to
+	 * zero or to the maximum.
+	 * @param bits Number of bits per key.
+	 * @param i Number of the value.
+	 * @return The value.
+	 */
+	private BigInteger value(int bits, int i) {
+		switch (i % 8) {
+		case 0:
+			return BigInteger.valueOf(random.nextInt(3));
+		case 1:
+			return max.subtract(BigInteger.valueOf(random.nextInt(3) + 1));
+		default:
+			return new BigInteger(bits, random);
+		}
+	}
+
+	/**
+	 * Both implementations have the same order.
+	 */
+	public void testCompareTo() {
+		for (int b = 0; b < BITS.length; b++) {
+			setBits(BITS[b]);
+			for (int i = 0; i < VALUES; i++) {
+				BigInteger x = value(BITS[b], i);
+				BigInteger y = (i % 5 == 0) ? x : value(BITS[b], i + 3);
+				assertEquals("compareTo " + x + " " + y,
+						sign(new ChordId().setValues(x).compareTo(new ChordId().setValues(y))),
+						sign(new ChordLongId().setValues(x).compareTo(new ChordLongId().setValues(y))));
+				assertEquals("equals " + x + " " + y, x.equals(y),
+						new ChordLongId().setValues(x).equals(new ChordLongId().setValues(y)));
+			}
+		}
+	}
+
+	/**
+	 * Both implementations have the same between(), betweenE() and
+	 * clockwise() results.
+	 */
+	public void testBetween() {
+		for (int b = 0; b < BITS.length; b++) {
+			setBits(BITS[b]);
+			for (int i = 0; i < VALUES; i++) {
+				BigInteger x = value(BITS[b], i);
+				BigInteger y = value(BITS[b], i + 3);
+				BigInteger z = (i % 7 == 0) ? x : (i % 11 == 0) ? y : value(BITS[b], i + 5);
+				Id cx = new ChordId().setValues(x);
+				Id cy = new ChordId().setValues(y);
+				Id cz = new ChordId().setValues(z);
+				Id lx = new ChordLongId().setValues(x);
+				Id ly = new ChordLongId().setValues(y);
+				Id lz = new ChordLongId().setValues(z);
+				String values = x + " " + y + " " + z;
+				assertEquals("between " + values, cx.between(cy, cz), lx.between(ly, lz));
+				assertEquals("betweenE " + values, cx.betweenE(cy, cz), lx.betweenE(ly, lz));
+				assertEquals("clockwise " + values, cx.clockwise(cy), lx.clockwise(ly));
+			}
+		}
+	}
+
+	/**
+	 * Both implementations have the same sum, modulo 2^bitsPerKey.
+	 */
+	public void testAdd() {
+		for (int b = 0; b < BITS.length; b++) {
+			setBits(BITS[b]);
+			for (int i = 0; i < VALUES; i++) {
+				BigInteger x = value(BITS[b], i);
+				BigInteger y = value(BITS[b], i + 1);
+				Id sum = new ChordId().setValues(x).add(new ChordId().setValues(y));
+				ChordLongId lx = (ChordLongId) new ChordLongId().setValues(x);
+				assertEquals("add " + x + " " + y, sum.toString(),
+						lx.add(new ChordLongId().setValues(y)).toString());
+				//in place, the int[] value already built is updated
+				lx.getValue();
+				lx.add(new ChordLongId().setValues(y), lx);
+				assertEquals("add in place " + x + " " + y, true,
+						Arrays.equals((int[]) sum.getValue(), (int[]) lx.getValue()));
+			}
+		}
+	}
+
+	/**
+	 * Both implementations have the same subtraction, modulo 2^bitsPerKey.
+	 */
+	public void testSubtract() {
+		for (int b = 0; b < BITS.length; b++) {
+			setBits(BITS[b]);
+			for (int i = 0; i < VALUES; i++) {
+				BigInteger x = value(BITS[b], i);
+				BigInteger y = value(BITS[b], i + 1);
+				Id difference = new ChordId().setValues(x).subtract(new ChordId().setValues(y));
+				ChordLongId lx = (ChordLongId) new ChordLongId().setValues(x);
+				assertEquals("subtract " + x + " " + y, difference.toString(),
+						lx.subtract(new ChordLongId().setValues(y)).toString());
+				lx.getValue();
+				lx.subtract(new ChordLongId().setValues(y), lx);
+				assertEquals("subtract in place " + x + " " + y, true,
+						Arrays.equals((int[]) difference.getValue(), (int[]) lx.getValue()));
+			}
+		}
+	}
+
+	/**
+	 * Both implementations have the same shifts to the left and to the
+	 * right, filling with zeros and with ones.
+	 */
+	public void testShift() {
+		for (int b = 0; b < BITS.length; b++) {
+			setBits(BITS[b]);
+			for (int i = 0; i < VALUES; i++) {
+				BigInteger x = value(BITS[b], i);
+				int cnt = random.nextInt(BITS[b] + 2);
+				int fill = i & 1;
+				ChordId cx = (ChordId) new ChordId().setValues(x);
+				ChordLongId lx = (ChordLongId) new ChordLongId().setValues(x);
+				assertEquals("shift left " + x + " " + cnt, cx.shift(-cnt, 0).toString(),
+						lx.shift(-cnt, 0).toString());
+				assertEquals("shift right " + x + " " + cnt + " " + fill, cx.shift(cnt, fill).toString(),
+						lx.shift(cnt, fill).toString());
+				assertEquals("digit " + x, cx.getDigit(i % (BITS[b] / 4), 4), lx.getDigit(i % (BITS[b] / 4), 4));
+			}
+		}
+	}
+
+	/**
+	 * Returns the sign of a comparison.
+	 * @param comparison Result of a compareTo().
+	 * @return -1, 0 or 1.
+	 */
+	private static int sign(int comparison) {
+		return (comparison < 0) ? -1 : (comparison > 0) ? 1 : 0;
+	}
+}
@@ -1,14 +1,12 @@
 package planet.test;
 
-import java.util.Vector;
-
 import planet.commonapi.Network;
 import planet.generic.commonapi.GenericApp;
 import planet.generic.commonapi.factory.GenericFactory;
 import planet.generic.commonapi.factory.Topology;
 import planet.simulate.EventParser;
+import planet.simulate.IScheduler;
 import planet.simulate.NetworkSimulator;
-import planet.simulate.Scheduler;
 import planet.util.Properties;
 
 /**
@@ -36,9 +34,7 @@ public class SimTest {
         GenericApp.restart(false,true,false,false);
 		
 		//load events
-		Vector events = EventParser.parseEvents(Properties.simulatorEventFile);
-		Scheduler timer = new Scheduler();
-		timer.addEvents(events);
+		IScheduler timer = EventParser.buildScheduler(Properties.simulatorEventFile);
 			
 		long t1,t2,t3,t4;
 		
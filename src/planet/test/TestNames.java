@@ -25,6 +25,7 @@ public class TestNames {
     public static final String BROADCAST_BROADCASTTEST         = "BROADCAST_BROADCASTTEST";
     public static final String DHT_DHTTEST                     = "DHT_DHTTEST";
     public static final String DHT2_DHTTEST                    = "DHT2_DHTTEST";
+    public static final String DHTSTORAGE_DHTWORKLOAD          = "DHTSTORAGE_DHTWORKLOAD";
     public static final String FACTORY_TESTAPPFACTORY          = "FACTORY_TESTAPPFACTORY";
     public static final String FACTORY_TESTENDPOINTFACTORY     = "FACTORY_TESTENDPOINTFACTORY";
     public static final String FACTORY_TESTIDFACTORY           = "FACTORY_TESTIDFACTORY";
@@ -33,6 +34,7 @@ public class TestNames {
     public static final String FACTORY_TESTNODEHANDLEFACTORY   = "FACTORY_TESTNODEHANDLEFACTORY";
     public static final String GML_GMLTOPOLOGY_GMLTOPOLOGYTEST = "GML_GMLTOPOLOGY_GMLTOPOLOGYTEST";
     public static final String HELLOWORLD_DHTPEERTEST          = "HELLOWORLD_DHTPEERTEST";
+    public static final String PARALLEL_PARALLELSIMTEST        = "PARALLEL_PARALLELSIMTEST";
     public static final String SCRIBE_SCRIBEPEERTEST           = "SCRIBE_SCRIBEPEERTEST";
     public static final String SCRIBE_SCRIBETEST               = "SCRIBE_SCRIBETEST";
     public static final String SERIALIZE_GENSERIALIZEDFILE     = "SERIALIZE_GENSERIALIZEDFILE";
@@ -0,0 +1,213 @@
+package planet.test.dhtstorage;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Vector;
+
+import planet.commonapi.Application;
+import planet.commonapi.Network;
+import planet.commonapi.Node;
+import planet.commonapi.exception.InitializationException;
+import planet.dht.ByteArrayStorage;
+import planet.dht.DHTApplication;
+import planet.dht.DHTListener;
+import planet.generic.commonapi.GenericApp;
+import planet.generic.commonapi.factory.GenericFactory;
+import planet.test.TestNames;
+
+/**
+ * Storage workload over the planet.dht.DHTApplication. It builds the
+ * network of the DHTSTORAGE_DHTWORKLOAD configuration, inserts
+ * <b>keys</b> pairs from random nodes, and then sends <b>lookups</b>
+ * lookups of random keys from random nodes, <b>rate</b> operations per
+ * step. It shows the latency of the lookups in steps and the throughput of
+ * finished lookups per step.
+ * <br><br>
+ * Usage, from the <b>bin</b> directory:
+ * <pre>
+ *    java planet.test.dhtstorage.DHTWorkload [keys [lookups [rate [valueSize [offheap]]]]]
+ * </pre>
+ */
+public class DHTWorkload extends GenericApp implements DHTListener {
+
+    /**
+     * Maximum number of steps to wait for the pending inserts and lookups.
+     */
+    public static final int MAX_WAITING_STEPS = 10000;
+    /**
+     * Seed of the random generator of the workload.
+     */
+    public static final long SEED = 0x444854L;
+
+    /**
+     * Number of finished lookups with each latency.
+     */
+    private int[] latencies = new int[64];
+    /**
+     * Number of finished lookups.
+     */
+    private long completed = 0;
+    /**
+     * Number of finished lookups whose key was found.
+     */
+    private long found = 0;
+
+    /**
+     * Runs the workload.
+     * @param keys Number of inserted pairs.
+     * @param lookups Number of lookups.
+     * @param rate Number of operations per step.
+     * @param valueSize Number of bytes of each value.
+     * @param offHeap true to store the pairs out of the Java heap.
+     * @throws InitializationException if the network cannot be built.
+     */
+    public DHTWorkload(int keys, int lookups, int rate, int valueSize, boolean offHeap) throws InitializationException {
+        //arguments: properties file, application level, events, results, serialization
+        super("../conf/master.properties", TestNames.DHTSTORAGE_DHTWORKLOAD, true, false, false, false);
+
+        long t1 = System.currentTimeMillis();
+        Network network = GenericFactory.buildNetwork();
+        network.stabilize();
+        network.registerApplicationAll();
+        DHTApplication[] apps = getApplications(network);
+        for (int i = 0; i < apps.length; i++) {
+            if (offHeap) apps[i].setStorage(new ByteArrayStorage(true));
+            apps[i].setListener(this);
+        }
+        long t2 = System.currentTimeMillis();
+        System.out.println(apps.length + " nodes built in [" + GenericApp.timeElapsedInSeconds(t1, t2) + "] seconds.");
+
+        Random random = new Random(SEED);
+
+        //INSERTION: rate pairs per step, from random nodes
+        t1 = System.currentTimeMillis();
+        int first = network.getSimulatedSteps();
+        for (int inserted = 0; inserted < keys; ) {
+            for (int i = 0; i < rate && inserted < keys; i++, inserted++) {
+                byte[] value = new byte[valueSize];
+                random.nextBytes(value);
+                apps[random.nextInt(apps.length)].insert(key(inserted), value);
+            }
+            network.simulate();
+        }
+        //the messages lost by full queues are not stored
+        for (int waiting = 0; waiting < MAX_WAITING_STEPS && network.simulate(); waiting++);
+        t2 = System.currentTimeMillis();
+        long stored = 0;
+        long reserved = 0;
+        for (int i = 0; i < apps.length; i++) {
+            stored += apps[i].getStorage().size();
+            reserved += apps[i].getStorage().getReservedBytes();
+        }
+        System.out.println(stored + " keys stored of " + keys + " with [" + (network.getSimulatedSteps() - first)
+                + "] steps and [" + GenericApp.timeElapsedInSeconds(t1, t2) + "] seconds, using ["
+                + reserved + "] bytes" + (offHeap ? " off-heap." : "."));
+
+        //LOOKUPS: rate lookups per step, from random nodes
+        t1 = System.currentTimeMillis();
+        first = network.getSimulatedSteps();
+        for (int sent = 0; sent < lookups; ) {
+            for (int i = 0; i < rate && sent < lookups; i++, sent++)
+                apps[random.nextInt(apps.length)].lookup(key(random.nextInt(Math.max(keys, 1))));
+            network.simulate();
+        }
+        for (int waiting = 0; completed < lookups && waiting < MAX_WAITING_STEPS; waiting++)
+            network.simulate();
+        int steps = network.getSimulatedSteps() - first;
+        t2 = System.currentTimeMillis();
+
+        System.out.println(completed + " lookups finished of " + lookups + " (" + found + " found) with ["
+                + steps + "] steps and [" + GenericApp.timeElapsedInSeconds(t1, t2) + "] seconds.");
+        System.out.println("Throughput: " + ((steps == 0) ? 0.0 : (double) completed / steps) + " lookups per step.");
+        System.out.println("Latency (steps): mean[" + mean() + "] p50[" + percentile(0.5) + "] p99["
+                + percentile(0.99) + "] max[" + percentile(1.0) + "]");
+    }
+
+    /**
+     * Counts a finished lookup.
+     * @see planet.dht.DHTListener#lookupCompleted(byte[], byte[], int)
+     */
+    public void lookupCompleted(byte[] key, byte[] value, int latency) {
+        if (latency >= latencies.length) {
+            int[] grown = new int[Math.max(latencies.length * 2, latency + 1)];
+            System.arraycopy(latencies, 0, grown, 0, latencies.length);
+            latencies = grown;
+        }
+        latencies[latency]++;
+        completed++;
+        if (value != null) found++;
+    }
+
+    /**
+     * Returns the mean latency of the finished lookups.
+     * @return The mean latency in steps.
+     */
+    private double mean() {
+        if (completed == 0) return 0.0;
+        long total = 0;
+        for (int i = 0; i < latencies.length; i++)
+            total += (long) i * latencies[i];
+        return (double) total / completed;
+    }
+
+    /**
+     * Returns the latency under which there are the <b>fraction</b> of the
+     * finished lookups.
+     * @param fraction Fraction of the lookups, from 0 to 1.
+     * @return The latency in steps.
+     */
+    private int percentile(double fraction) {
+        long required = (long) Math.ceil(fraction * completed);
+        long count = 0;
+        for (int i = 0; i < latencies.length; i++) {
+            count += latencies[i];
+            if (count >= required && count > 0) return i;
+        }
+        return 0;
+    }
+
+    /**
+     * Builds the key number <b>i</b>.
+     * @param i Number of the key.
+     * @return The bytes of the key.
+     */
+    private static byte[] key(int i) {
+        return ("key-" + i).getBytes();
+    }
+
+    /**
+     * Returns the DHTApplications of all nodes of the <b>network</b>.
+     * @param network The network.
+     * @return The registered DHTApplications.
+     */
+    private static DHTApplication[] getApplications(Network network) {
+        Vector apps = new Vector();
+        Iterator it = network.iterator();
+        while (it.hasNext()) {
+            Application[] registered = ((Node) it.next()).getRegisteredApplications();
+            for (int i = 0; i < registered.length; i++)
+                if (registered[i] instanceof DHTApplication) apps.add(registered[i]);
+        }
+        return (DHTApplication[]) apps.toArray(new DHTApplication[apps.size()]);
+    }
+
+    /**
+     * Runs the workload with the arguments of the command line, or with
+     * 10000 keys, 10000 lookups, 100 operations per step and values of 64
+     * bytes in the Java heap by default.
+     * @param args keys, lookups, rate, valueSize and "offheap".
+     */
+    public static void main(String[] args) {
+        try {
+            int keys = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+            int lookups = (args.length > 1) ? Integer.parseInt(args[1]) : 10000;
+            int rate = (args.length > 2) ? Integer.parseInt(args[2]) : 100;
+            int valueSize = (args.length > 3) ? Integer.parseInt(args[3]) : 64;
+            boolean offHeap = (args.length > 4) && args[4].equalsIgnoreCase("offheap");
+            new DHTWorkload(keys, lookups, Math.max(rate, 1), valueSize, offHeap);
+        } catch (InitializationException e) {
+            System.out.println("Error during the initialization of the DHT workload");
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package planet.test.parallel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.TreeSet;
+
+import planet.commonapi.Network;
+import planet.commonapi.Node;
+import planet.generic.commonapi.GenericApp;
+import planet.generic.commonapi.NetworkImpl;
+import planet.generic.commonapi.ParallelNetworkImpl;
+import planet.generic.commonapi.factory.Topology;
+import planet.simulate.EventParser;
+import planet.simulate.IScheduler;
+import planet.simulate.Logger;
+import planet.simulate.NetworkSimulator;
+import planet.test.TestNames;
+import planet.util.Properties;
+
+/**
+ * This test use an event file in the "bin/data" directory, specified into
+ * the current configuration. The same events are simulated with the serial
+ * NetworkImpl and with the ParallelNetworkImpl, showing the time elapsed for
+ * each one and checking that both simulations have the same output: the
+ * same logs and message traces, byte by byte, and the same final state of
+ * the network, that is, the same number of steps and, for every node, the
+ * same predecessor, successor and links.
+ */
+public class ParallelSimTest {
+
+	/**
+	 * Initialize the simulator context and run the test.
+	 * @param args Nothing.
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		//init context
+	    //arguments: properties file, application level, events, results, serialization
+		GenericApp.start("../conf/master.properties",TestNames.PARALLEL_PARALLELSIMTEST,false,true,false,false);
+
+		//ensure network size to 0 to be able to add events
+		Properties.factoriesNetworkSize = 0;
+		Properties.factoriesNetworkTopology = Topology.RANDOM;
+
+		File serialLog = File.createTempFile("serial", ".log");
+		File serialTrace = File.createTempFile("serial", ".trace");
+		File parallelLog = File.createTempFile("parallel", ".log");
+		File parallelTrace = File.createTempFile("parallel", ".trace");
+		Network serial = simulate(NetworkImpl.class, serialLog, serialTrace);
+		Network parallel = simulate(ParallelNetworkImpl.class, parallelLog, parallelTrace);
+
+		compare("logs", serialLog, parallelLog);
+		compare("message traces", serialTrace, parallelTrace);
+
+		String serialState = getState(serial);
+		String parallelState = getState(parallel);
+		if (serialState.equals(parallelState))
+			System.out.println("Both networks have the same state.");
+		else
+			System.out.println("ERROR: The networks have different states.\nSerial:\n"+serialState+"\nParallel:\n"+parallelState);
+	}
+
+	/**
+	 * Simulates the events of the current configuration with the
+	 * <b>network</b> implementation, up to its stabilization. All the logs
+	 * are written into the <b>log</b> file, and the sent and received
+	 * messages into the <b>trace</b> file.
+	 * @param network Network implementation to use.
+	 * @param log Log file.
+	 * @param trace Trace file.
+	 * @return The stabilized network.
+	 * @throws Exception if any error occurs.
+	 */
+	private static Network simulate(Class network, File log, File trace) throws Exception {
+		Properties.factoriesNetwork = network;
+		Properties.simulatorLogLevel = Logger.MSG_LOG;
+		Properties.simulatorLogFile = log.getPath();
+		Properties.simulatorLogTraceFile = trace.getPath();
+		GenericApp.restart(false,true,false,false);
+
+		//load events
+		IScheduler timer = EventParser.buildScheduler(Properties.simulatorEventFile);
+
+		long t1 = System.currentTimeMillis();
+		NetworkSimulator sim = new NetworkSimulator(timer);
+		sim.stabilize();
+		long t2 = System.currentTimeMillis();
+		Logger.close();
+		Network net = sim.getInternalNetwork();
+		System.out.println(network.getName()+": simulation time ["+GenericApp.timeElapsedInSeconds(t1,t2)+"] seconds for ["+net.size()+"] nodes with ["+net.getSimulatedSteps()+"] steps.");
+		return net;
+	}
+
+	/**
+	 * Shows if the <b>serial</b> and <b>parallel</b> files are equal. The
+	 * files are removed when they are equal, and kept in other case.
+	 * @param what Description of the contents.
+	 * @param serial File of the serial simulation.
+	 * @param parallel File of the parallel simulation.
+	 * @throws IOException if any file cannot be read.
+	 */
+	private static void compare(String what, File serial, File parallel) throws IOException {
+		if (sameContents(serial, parallel)) {
+			System.out.println("Both simulations have the same "+what+".");
+			serial.delete();
+			parallel.delete();
+		} else
+			System.out.println("ERROR: The simulations have different "+what+": "+serial+" and "+parallel);
+	}
+
+	/**
+	 * Compares the contents of two files.
+	 * @param a First file.
+	 * @param b Second file.
+	 * @return true if both files have the same bytes.
+	 * @throws IOException if any file cannot be read.
+	 */
+	private static boolean sameContents(File a, File b) throws IOException {
+		if (a.length() != b.length()) return false;
+		InputStream inA = new FileInputStream(a);
+		InputStream inB = new FileInputStream(b);
+		try {
+			byte[] bufA = new byte[65536];
+			byte[] bufB = new byte[65536];
+			int read = 0;
+			while ((read = inA.read(bufA)) > 0) {
+				int offset = 0;
+				while (offset < read) {
+					int readB = inB.read(bufB, offset, read - offset);
+					if (readB < 0) return false;
+					offset += readB;
+				}
+				for (int i = 0; i < read; i++)
+					if (bufA[i] != bufB[i]) return false;
+			}
+			return true;
+		} finally {
+			inA.close();
+			inB.close();
+		}
+	}
+
+	/**
+	 * Builds a description of the state of all nodes of the <b>network</b>,
+	 * in ring order.
+	 * @param network Network to describe.
+	 * @return The state of the network.
+	 */
+	private static String getState(Network network) {
+		StringBuffer state = new StringBuffer();
+		state.append("steps ").append(network.getSimulatedSteps()).append('\n');
+		Iterator it = network.iterator();
+		Node aNode = null;
+		while (it.hasNext()) {
+			aNode = (Node)it.next();
+			state.append(aNode.getId())
+				.append(" pred ").append(aNode.getPred())
+				.append(" succ ").append(aNode.getSucc())
+				.append(" links ").append(new TreeSet(aNode.getAllLinks()))
+				.append('\n');
+		}
+		return state.toString();
+	}
+}
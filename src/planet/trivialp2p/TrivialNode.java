@@ -149,7 +149,7 @@ public class TrivialNode extends NodeImpl {
      * @see planet.commonapi.Node#routeData(java.lang.String, planet.commonapi.NodeHandle, planet.commonapi.NodeHandle, planet.commonapi.Message)
      */
     public void routeData(String appId, NodeHandle to, NodeHandle nextHop, Message msg) {
-        RouteMessage data = buildMessage(GenericFactory.generateKey(),nodeHandle,to,nextHop,DATA,REQUEST,appId,msg);
+        RouteMessage data = buildMessage(generateKey(),nodeHandle,to,nextHop,DATA,REQUEST,appId,msg);
         if (data!=null)
         {
             Results.incTraffic();
@@ -157,6 +157,16 @@ public class TrivialNode extends NodeImpl {
         }
     }
 
+    /**
+     * Discounts the traffic of the discarded DATA messages.
+     * @param msg The discarded message.
+     * @see planet.generic.commonapi.NodeImpl#messageDropped(planet.commonapi.RouteMessage)
+     */
+    protected void messageDropped(RouteMessage msg) {
+        if (msg.getType() == DATA) Results.decTraffic();
+        super.messageDropped(msg);
+    }
+
     /**
      * Do nothing. Only sets to false the alive flag.
      * @see planet.commonapi.Node#fail()
@@ -0,0 +1,294 @@
+package planet.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * This class offers a calendar queue: a collection of objects ordered
+ * using an int value as order key, with O(1) amortized insertion and
+ * extraction.
+ * <br><br>
+ * The keys are distributed into a circular array of buckets (one key per
+ * bucket and turn) and each bucket keeps an ordered chain of its items.
+ * The items are saved into parallel arrays of primitive values and linked
+ * by their indexes, so no object is built for each item. The number of
+ * buckets is doubled when the queue contains more than two items per bucket.
+ * <br><br>
+ * The items with the same key are extracted in the same order in which
+ * they were inserted.
+ */
+public class CalendarQueue implements java.io.Serializable {
+
+    /**
+     * Value for an empty link.
+     */
+    private static final int NONE = -1;
+    /**
+     * Initial number of buckets. It has to be a power of two.
+     */
+    private static final int INITIAL_BUCKETS = 64;
+
+    /**
+     * First item of each bucket.
+     */
+    private int[] heads;
+    /**
+     * Last item of each bucket.
+     */
+    private int[] tails;
+    /**
+     * Mask to obtain the bucket of a key (number of buckets - 1).
+     */
+    private int mask;
+    /**
+     * Saved data of each item.
+     */
+    private Object[] elems;
+    /**
+     * Order key of each item.
+     */
+    private int[] keys;
+    /**
+     * Next item in the same bucket.
+     */
+    private int[] next;
+    /**
+     * First item of the list of free items.
+     */
+    private int free;
+    /**
+     * Number of items used at least once.
+     */
+    private int used;
+    /**
+     * Number of items in the queue.
+     */
+    private int size;
+
+    /**
+     * Builds an empty calendar queue.
+     */
+    public CalendarQueue() {
+        heads = new int[INITIAL_BUCKETS];
+        tails = new int[INITIAL_BUCKETS];
+        Arrays.fill(heads, NONE);
+        Arrays.fill(tails, NONE);
+        mask = INITIAL_BUCKETS - 1;
+        elems = new Object[INITIAL_BUCKETS];
+        keys = new int[INITIAL_BUCKETS];
+        next = new int[INITIAL_BUCKETS];
+        free = NONE;
+        used = 0;
+        size = 0;
+    }
+
+    /**
+     * Inserts the <b>elem</b> with the order key <b>value</b>. It is
+     * placed after all the items with the same key.
+     * @param value The order key.
+     * @param elem Data to save.
+     */
+    public void insert(int value, Object elem) {
+        int item = newItem();
+        elems[item] = elem;
+        keys[item] = value;
+        link(item, value & mask);
+        size++;
+        if (size > (heads.length << 1))
+            resize();
+    }
+
+    /**
+     * Extracts all the items with the order key <b>value</b>, appending them
+     * into <b>to</b> following their insertion order.
+     * @param value The order key to be extracted.
+     * @param to Collection where the items are appended.
+     * @return The number of extracted items.
+     */
+    public int extract(int value, Collection to) {
+        int bucket = value & mask;
+        int prev = NONE;
+        int item = heads[bucket];
+        int found = 0;
+        int nextItem;
+        while (item != NONE && keys[item] <= value) {
+            nextItem = next[item];
+            if (keys[item] == value) {
+                //unlink the item
+                if (prev == NONE)
+                    heads[bucket] = nextItem;
+                else
+                    next[prev] = nextItem;
+                if (tails[bucket] == item)
+                    tails[bucket] = prev;
+                to.add(elems[item]);
+                releaseItem(item);
+                found++;
+            } else
+                prev = item;
+            item = nextItem;
+        }
+        size -= found;
+        return found;
+    }
+
+    /**
+     * Requests if exists the key <b>value</b> into the queue.
+     * @param value The key to be found.
+     * @return true if this key is found into the queue.
+     */
+    public boolean contains(int value) {
+        int item = heads[value & mask];
+        while (item != NONE && keys[item] < value)
+            item = next[item];
+        return item != NONE && keys[item] == value;
+    }
+
+    /**
+     * Returns the lowest order key into the queue that is greater than or
+     * equal to <b>from</b>. The buckets of one turn are visited from the
+     * bucket of <b>from</b>, so a close key is found soon; only if there is
+     * no key in this turn all the items are visited.
+     * @param from The lowest order key to be returned.
+     * @return The lowest order key greater than or equal to <b>from</b>, or
+     * Integer.MAX_VALUE if there is none.
+     */
+    public int nextKey(int from) {
+        if (size == 0) return Integer.MAX_VALUE;
+        int item;
+        long value;
+        for (int i = 0; i < heads.length; i++) {
+            value = (long) from + i;
+            if (value > Integer.MAX_VALUE) break;
+            item = heads[(int) value & mask];
+            while (item != NONE && keys[item] < value)
+                item = next[item];
+            if (item != NONE && keys[item] == value)
+                return (int) value;
+        }
+        //no key in this turn: the lowest one of all items
+        int lowest = Integer.MAX_VALUE;
+        for (int bucket = 0; bucket < heads.length; bucket++) {
+            item = heads[bucket];
+            while (item != NONE && keys[item] < from)
+                item = next[item];
+            if (item != NONE && keys[item] < lowest)
+                lowest = keys[item];
+        }
+        return lowest;
+    }
+
+    /**
+     * Returns the number of items into the queue.
+     * @return The number of items into the queue.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Shows if the queue is empty.
+     * @return true if the queue has no items.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the index of an unused item, growing the arrays of items if
+     * necessary.
+     * @return The index of an unused item.
+     */
+    private int newItem() {
+        int item;
+        if (free != NONE) {
+            item = free;
+            free = next[item];
+            return item;
+        }
+        if (used == keys.length) {
+            int length = keys.length << 1;
+            Object[] newElems = new Object[length];
+            int[] newKeys = new int[length];
+            int[] newNext = new int[length];
+            System.arraycopy(elems, 0, newElems, 0, used);
+            System.arraycopy(keys, 0, newKeys, 0, used);
+            System.arraycopy(next, 0, newNext, 0, used);
+            elems = newElems;
+            keys = newKeys;
+            next = newNext;
+        }
+        return used++;
+    }
+
+    /**
+     * Adds the <b>item</b> to the list of free items.
+     * @param item Index of the item to release.
+     */
+    private void releaseItem(int item) {
+        elems[item] = null;
+        next[item] = free;
+        free = item;
+    }
+
+    /**
+     * Links the <b>item</b> into the <b>bucket</b>, after all the items
+     * with a key lower than or equal to its key.
+     * @param item Index of the item to link.
+     * @param bucket Bucket where the item is linked.
+     */
+    private void link(int item, int bucket) {
+        int value = keys[item];
+        int tail = tails[bucket];
+        next[item] = NONE;
+        if (tail == NONE) {
+            heads[bucket] = item;
+            tails[bucket] = item;
+        } else if (keys[tail] <= value) {
+            //usual case: the keys are inserted in ascending order
+            next[tail] = item;
+            tails[bucket] = item;
+        } else if (keys[heads[bucket]] > value) {
+            next[item] = heads[bucket];
+            heads[bucket] = item;
+        } else {
+            int prev = heads[bucket];
+            while (keys[next[prev]] <= value)
+                prev = next[prev];
+            next[item] = next[prev];
+            next[prev] = item;
+        }
+    }
+
+    /**
+     * Doubles the number of buckets, distributing the items of each bucket
+     * between two new buckets. The order of each chain is kept.
+     */
+    private void resize() {
+        int[] oldHeads = heads;
+        heads = new int[oldHeads.length << 1];
+        tails = new int[oldHeads.length << 1];
+        Arrays.fill(heads, NONE);
+        Arrays.fill(tails, NONE);
+        mask = heads.length - 1;
+        int item;
+        int nextItem;
+        for (int bucket = 0; bucket < oldHeads.length; bucket++) {
+            item = oldHeads[bucket];
+            while (item != NONE) {
+                nextItem = next[item];
+                link(item, keys[item] & mask);
+                item = nextItem;
+            }
+        }
+    }
+
+    /**
+     * Shows the number of items and buckets of this queue.
+     * @return String representation of this queue.
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return "CalendarQueue: items=" + size + ", buckets=" + heads.length;
+    }
+}
@@ -14,7 +14,7 @@ public class KeyGen implements java.io.Serializable {
     this.MAX = MAX;
   }
 
-  public String generateKey() {
+  public synchronized String generateKey() {
     cnt++;
     if (cnt>MAX) cnt = ini;
 
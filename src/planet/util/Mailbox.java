@@ -0,0 +1,528 @@
+package planet.util;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Message queue of the nodes, safe for many concurrent producers and a single
+ * consumer (MPSC) without locks.
+ * <br><br>
+ * The messages are saved into a linked list of array segments, that grows on
+ * demand: no segment is built until the first message arrives, the first
+ * segment is small and the next ones are sized according to the number of
+ * pending messages, up to MAX_SEGMENT. The consumed segments are kept by the
+ * consumer, and each time the mailbox becomes empty the whole chain is
+ * cleared and reused, so that a mailbox with a steady traffic does not build
+ * new segments. While the chain is cleared the producers wait.
+ * <br><br>
+ * The <b>capacity</b> limits the number of pending messages, and the
+ * <b>policy</b> decides what to do on overflow:
+ * <ul>
+ * <li><b>DROP_TAIL</b>: the new message is rejected.</li>
+ * <li><b>DROP_HEAD</b>: the new message is accepted and the oldest messages
+ * over the capacity are discarded by the consumer, and given to the
+ * DropHandler of the mailbox.</li>
+ * <li><b>BACKPRESSURE</b>: the new message is rejected, and the producer is
+ * expected to keep it and retry later. The producer that takes it from its
+ * own mailbox calls hold() to count the overflow once per message.</li>
+ * </ul>
+ * Each overflow (rejected or discarded message) is counted, for this
+ * mailbox and for all mailboxes, instead of throwing an exception.
+ * <br><br>
+ * The methods offer(), size() and isEmpty() can be invoked by any thread.
+ * The rest of the methods must only be invoked by the consumer.
+ */
+public class Mailbox implements java.io.Serializable {
+
+    /**
+     * Overflow policy: the new message is rejected.
+     */
+    public static final int DROP_TAIL = 0;
+    /**
+     * Overflow policy: the oldest messages are discarded.
+     */
+    public static final int DROP_HEAD = 1;
+    /**
+     * Overflow policy: the new message is rejected to be retried later.
+     */
+    public static final int BACKPRESSURE = 2;
+    /**
+     * String representation of the overflow policies.
+     */
+    public static final String[] POLICIES = {"DROP_TAIL", "DROP_HEAD", "BACKPRESSURE"};
+    /**
+     * Capacity of an unbounded mailbox.
+     */
+    public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    /**
+     * Size of the first segment.
+     */
+    private static final int MIN_SEGMENT = 8;
+    /**
+     * Maximum size of a segment.
+     */
+    private static final int MAX_SEGMENT = 1024;
+    /**
+     * Maximum number of slots of the segments kept to be reused.
+     */
+    private static final int MAX_KEPT_SLOTS = 4 * MAX_SEGMENT;
+    /**
+     * Value of the <b>size</b> field while the consumer clears the chain.
+     */
+    private static final int CLEARING = -1;
+
+    /**
+     * Atomic access to the <b>size</b> field.
+     */
+    private static final AtomicIntegerFieldUpdater SIZE =
+        AtomicIntegerFieldUpdater.newUpdater(Mailbox.class, "size");
+    /**
+     * Atomic access to the <b>overflows</b> field.
+     */
+    private static final AtomicIntegerFieldUpdater OVERFLOWS =
+        AtomicIntegerFieldUpdater.newUpdater(Mailbox.class, "overflows");
+    /**
+     * Atomic access to the <b>tail</b> field.
+     */
+    private static final AtomicReferenceFieldUpdater TAIL =
+        AtomicReferenceFieldUpdater.newUpdater(Mailbox.class, Segment.class, "tail");
+    /**
+     * Number of overflows of all mailboxes.
+     */
+    private static final AtomicLong totalOverflows = new AtomicLong();
+
+    /**
+     * Maximum number of pending messages.
+     */
+    private int capacity;
+    /**
+     * Overflow policy.
+     */
+    private int policy;
+    /**
+     * Number of pending messages.
+     */
+    private volatile int size = 0;
+    /**
+     * Number of overflows of this mailbox.
+     */
+    private volatile int overflows = 0;
+    /**
+     * Segment where the producers are adding messages.
+     */
+    private volatile Segment tail = null;
+    /**
+     * First segment ever built, until the consumer takes it.
+     */
+    private volatile Segment first = null;
+    /**
+     * Segment where the consumer is taking messages.
+     */
+    private Segment head = null;
+    /**
+     * Position of the next message to take at the <b>head</b> segment.
+     */
+    private int headSlot = 0;
+    /**
+     * Consumed segments, linked by their <b>consumed</b> field, to be
+     * reused when the mailbox becomes empty.
+     */
+    private Segment consumed = null;
+    /**
+     * Value at the head held back with the BACKPRESSURE policy.
+     */
+    private Object held = null;
+    /**
+     * Receives the messages discarded with the DROP_HEAD policy.
+     */
+    private transient DropHandler dropHandler = null;
+
+    /**
+     * Builds an empty mailbox.
+     * @param capacity Maximum number of pending messages.
+     * @param policy Overflow policy: DROP_TAIL, DROP_HEAD or BACKPRESSURE.
+     */
+    public Mailbox(int capacity, int policy) {
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    /**
+     * Returns the overflow policy with the name <b>name</b>.
+     * @param name Name of the policy.
+     * @return The overflow policy, or -1 if it is unknown.
+     */
+    public static int getPolicy(String name) {
+        for (int i = 0; i < POLICIES.length; i++) {
+            if (POLICIES[i].equalsIgnoreCase(name.trim()))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Sets the receiver of the messages discarded with the DROP_HEAD policy.
+     * @param dropHandler The receiver of the discarded messages, or null to
+     * forget them.
+     */
+    public void setDropHandler(DropHandler dropHandler) {
+        this.dropHandler = dropHandler;
+    }
+
+    /**
+     * Adds the <b>value</b> at the tail of the mailbox. It can be invoked
+     * by any thread. With the BACKPRESSURE policy, the rejected values are
+     * not counted as overflows here, because the producer retries them.
+     * @param value The value to add.
+     * @return false if the value has been rejected by the overflow policy.
+     * @see #hold(Object)
+     */
+    public boolean offer(Object value) {
+        int current;
+        while (true) {
+            current = size;
+            if (current == CLEARING) {
+                //the consumer is clearing the chain
+                Thread.yield();
+                continue;
+            }
+            if (current >= capacity && policy != DROP_HEAD) {
+                if (policy == DROP_TAIL) overflow();
+                return false;
+            }
+            if (SIZE.compareAndSet(this, current, current + 1)) break;
+        }
+
+        Segment segment = tail;
+        int slot;
+        while (true) {
+            if (segment == null) {
+                segment = new Segment(MIN_SEGMENT);
+                if (TAIL.compareAndSet(this, null, segment))
+                    first = segment;
+                else
+                    segment = tail;
+                continue;
+            }
+            slot = Segment.RESERVED.getAndIncrement(segment);
+            if (slot < segment.length) {
+                segment.slots.lazySet(slot, value);
+                return true;
+            }
+            //the segment is full: link the next one
+            Segment next = segment.next;
+            if (next == null) {
+                Segment candidate = new Segment(nextLength(current));
+                next = segment.casNext(candidate) ? candidate : segment.next;
+            }
+            TAIL.compareAndSet(this, segment, next);
+            segment = next;
+        }
+    }
+
+    /**
+     * Removes and returns the value at the head of the mailbox. Only for
+     * the consumer.
+     * @return The value at the head, or null if the mailbox is empty.
+     */
+    public Object poll() {
+        return take(true);
+    }
+
+    /**
+     * Returns the value at the head of the mailbox, without removing it.
+     * Only for the consumer.
+     * @return The value at the head, or null if the mailbox is empty.
+     */
+    public Object peek() {
+        return take(false);
+    }
+
+    /**
+     * Holds back the <b>value</b> at the head, because its recipient has
+     * rejected it with the BACKPRESSURE policy. The overflow is counted
+     * only the first time, and not for the next retries. Only for the
+     * consumer.
+     * @param value The value at the head, taken with peek().
+     * @return true if it is the first time that the value is held back.
+     */
+    public boolean hold(Object value) {
+        if (held == value) return false;
+        held = value;
+        overflow();
+        return true;
+    }
+
+    /**
+     * Returns the number of pending messages. With the DROP_HEAD policy it
+     * can be greater than the capacity until the consumer discards the
+     * oldest messages.
+     * @return The number of pending messages.
+     */
+    public int size() {
+        int current = size;
+        return (current == CLEARING) ? 0 : current;
+    }
+
+    /**
+     * Shows if there are no pending messages.
+     * @return true if the mailbox is empty.
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Removes all pending messages. Only for the consumer, when there are
+     * no concurrent producers.
+     */
+    public void clear() {
+        head = null;
+        headSlot = 0;
+        first = null;
+        tail = null;
+        consumed = null;
+        held = null;
+        size = 0;
+    }
+
+    /**
+     * Returns the pending messages in order, without removing them. Only
+     * for the consumer, when there are no concurrent producers.
+     * @return An array with the pending messages.
+     */
+    public Object[] toArray() {
+        Object[] values = new Object[size()];
+        Segment segment = (head != null) ? head : first;
+        int slot = (head != null) ? headSlot : 0;
+        int count = 0;
+        while (segment != null && count < values.length) {
+            if (slot == segment.length) {
+                segment = segment.next;
+                slot = 0;
+            } else
+                values[count++] = segment.slots.get(slot++);
+        }
+        return values;
+    }
+
+    /**
+     * Returns the maximum number of pending messages.
+     * @return The capacity of this mailbox.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the overflow policy.
+     * @return DROP_TAIL, DROP_HEAD or BACKPRESSURE.
+     */
+    public int getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Returns the number of rejected or discarded messages of this mailbox.
+     * @return The number of overflows of this mailbox.
+     */
+    public int getOverflows() {
+        return overflows;
+    }
+
+    /**
+     * Returns the number of rejected or discarded messages of all mailboxes.
+     * @return The number of overflows of all mailboxes.
+     */
+    public static long getTotalOverflows() {
+        return totalOverflows.get();
+    }
+
+    /**
+     * Counts a new overflow.
+     */
+    private void overflow() {
+        OVERFLOWS.incrementAndGet(this);
+        totalOverflows.incrementAndGet();
+    }
+
+    /**
+     * Returns the size of a new segment for <b>pending</b> messages: the
+     * next power of two, between MIN_SEGMENT and MAX_SEGMENT.
+     * @param pending Number of pending messages.
+     * @return The size of the new segment.
+     */
+    private static int nextLength(int pending) {
+        int length = MIN_SEGMENT;
+        while (length < pending && length < MAX_SEGMENT)
+            length <<= 1;
+        return length;
+    }
+
+    /**
+     * Takes the value at the head of the mailbox, discarding before the
+     * oldest messages over the capacity with the DROP_HEAD policy. The
+     * discarded messages are given to the DropHandler.
+     * @param remove true to remove the value.
+     * @return The value at the head, or null if the mailbox is empty.
+     */
+    private Object take(boolean remove) {
+        if (policy == DROP_HEAD) {
+            Object dropped;
+            while (size > capacity && (dropped = next(true)) != null) {
+                overflow();
+                if (dropHandler != null) dropHandler.dropped(dropped);
+            }
+        }
+        return next(remove);
+    }
+
+    /**
+     * Takes the value at the head of the mailbox.
+     * @param remove true to remove the value.
+     * @return The value at the head, or null if the mailbox is empty or the
+     * next value is still being added.
+     */
+    private Object next(boolean remove) {
+        if (head == null) {
+            head = first;
+            if (head == null) return null;
+            first = null;
+        }
+        if (headSlot == head.length) {
+            Segment next = head.next;
+            if (next == null) return null;
+            //keeps the consumed segment to be reused; its next field can
+            //still be read by a producer
+            head.consumed = consumed;
+            consumed = head;
+            head = next;
+            headSlot = 0;
+        }
+        Object value = head.slots.get(headSlot);
+        if (value != null && remove) {
+            head.slots.lazySet(headSlot, null);
+            headSlot++;
+            if (value == held) held = null;
+            if (SIZE.decrementAndGet(this) == 0) recycle();
+        }
+        return value;
+    }
+
+    /**
+     * Clears the chain of segments when the mailbox is empty, so that the
+     * next values are added from the first slot of the consumed segments.
+     * The producers wait while the <b>size</b> is CLEARING. There is no
+     * producer using the segments: every producer counts its value before
+     * using them, and all counted values have already been taken.
+     */
+    private void recycle() {
+        if (!SIZE.compareAndSet(this, 0, CLEARING)) return;
+        //the current segment, the next empty ones and the consumed ones
+        Segment chain = head;
+        Segment last = head;
+        int kept = last.length;
+        last.reserved = 0;
+        while (last.next != null && kept + last.next.length <= MAX_KEPT_SLOTS) {
+            last = last.next;
+            last.reserved = 0;
+            kept += last.length;
+        }
+        Segment segment = consumed;
+        while (segment != null && kept + segment.length <= MAX_KEPT_SLOTS) {
+            Segment following = segment.consumed;
+            segment.consumed = null;
+            segment.reserved = 0;
+            last.next = segment;
+            last = segment;
+            kept += segment.length;
+            segment = following;
+        }
+        last.next = null;
+        consumed = null;
+        head = chain;
+        headSlot = 0;
+        tail = chain;
+        size = 0;
+    }
+
+    /**
+     * Shows the state of this mailbox.
+     * @return String representation of this mailbox.
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return "<Mailbox: size=" + size + ", capacity=" + capacity + ", policy=" +
+            POLICIES[policy] + ", overflows=" + overflows + ">";
+    }
+
+    /**
+     * Receiver of the messages discarded with the DROP_HEAD policy, so that
+     * the owner of the mailbox can release them.
+     */
+    public interface DropHandler {
+        /**
+         * Receives a message discarded by the consumer.
+         * @param value The discarded message.
+         */
+        public void dropped(Object value);
+    }
+
+    /**
+     * Array segment of the mailbox.
+     */
+    private static class Segment implements java.io.Serializable {
+        /**
+         * Atomic access to the <b>next</b> field.
+         */
+        private static final AtomicReferenceFieldUpdater NEXT =
+            AtomicReferenceFieldUpdater.newUpdater(Segment.class, Segment.class, "next");
+        /**
+         * Atomic access to the <b>reserved</b> field.
+         */
+        private static final AtomicIntegerFieldUpdater RESERVED =
+            AtomicIntegerFieldUpdater.newUpdater(Segment.class, "reserved");
+
+        /**
+         * Number of slots.
+         */
+        private final int length;
+        /**
+         * Saved values.
+         */
+        private final AtomicReferenceArray slots;
+        /**
+         * Number of reserved slots (it can be greater than the length).
+         */
+        private volatile int reserved = 0;
+        /**
+         * Next segment.
+         */
+        private volatile Segment next = null;
+        /**
+         * Next consumed segment, only for the consumer.
+         */
+        private Segment consumed = null;
+
+        /**
+         * Builds an empty segment.
+         * @param length Number of slots.
+         */
+        private Segment(int length) {
+            this.length = length;
+            this.slots = new AtomicReferenceArray(length);
+        }
+
+        /**
+         * Sets the next segment, if it is not set yet.
+         * @param segment The next segment.
+         * @return true if the next segment has been set.
+         */
+        private boolean casNext(Segment segment) {
+            return NEXT.compareAndSet(this, null, segment);
+        }
+    }
+}
@@ -88,6 +88,11 @@ public class Properties {
 
     /* OPTIONAL ATTRIBUTES */
     /* Factories: */
+    /**
+     * Factories property: Default key specified in the properties file that
+     * identifies if the new networks are built already stabilized.
+     */
+    public static final String FACTORIES_NETWORKSTABILIZED                      = "FACTORIES_NETWORKSTABILIZED";
     /**
      * Factories property: The default ApplicationFactory key specified in the properties file.
      */
@@ -145,11 +150,32 @@ public class Properties {
     public static final String SIMULATOR_PROCESSED_MESSAGES                     = "SIMULATOR_PROCESSED_MESSAGES";
 
     /* OPTIONAL */
+    /**
+     * Simulator property: Default key specified in the properties file that
+     * identifies the overflow policy of the node queues.
+     */
+    public static final String SIMULATOR_QUEUE_POLICY                           = "SIMULATOR_QUEUE_POLICY";
+    /**
+     * Simulator property: Default key specified in the properties file that
+     * identifies the log filename.
+     */
+    public static final String SIMULATOR_LOG_FILE                               = "SIMULATOR_LOG_FILE";
+    /**
+     * Simulator property: Default key specified in the properties file that
+     * identifies the binary trace filename of the RouteMessages.
+     */
+    public static final String SIMULATOR_LOG_TRACE_FILE                         = "SIMULATOR_LOG_TRACE_FILE";
     /**
      * Simulator property: Default key specified in the properties file that
      * identifies the events filename to load.
      */
     public static final String SIMULATOR_EVENT_FILE                             = "SIMULATOR_EVENT_FILE";
+    /**
+     * Simulator property: Default key specified in the properties file that
+     * identifies the look-ahead window (in steps) for reading the events file
+     * incrementally.
+     */
+    public static final String SIMULATOR_EVENT_WINDOW                           = "SIMULATOR_EVENT_WINDOW";
     
 
     /* *********************** SERIALIZATION PROPERTIES NAMES ***********************/
@@ -170,6 +196,11 @@ public class Properties {
      * that identifies if the output file must be replaced with new outputs.
      */
     public static final String SERIALIZATION_REPLACE_OUTPUT_FILE                = "SERIALIZATION_REPLACE_OUTPUT_FILE";
+    /**
+     * Serialization property: Default key specified in the properties file
+     * that identifies the number of steps between checkpoints of the network.
+     */
+    public static final String SERIALIZATION_CHECKPOINT_STEPS                   = "SERIALIZATION_CHECKPOINT_STEPS";
     
     
     /* *********************** BEHAVIOURS PROPERTIES NAMES ***********************/
@@ -333,6 +364,12 @@ public class Properties {
 
     /* OPTIONAL ATTRIBUTES */
     /* Factories: */
+    /**
+     * Factories property: Shows if the new networks are built already
+     * stabilized, computing the routing state of their nodes instead of
+     * simulating their joining.
+     */
+    public static boolean factoriesNetworkStabilized                            = false;
     /**
      * Factories property: The ApplicationFactory implementation to use in current simulation.
      */
@@ -405,10 +442,32 @@ public class Properties {
     public static int simulatorProcessedMessages                                = 0;
 
     /* OPTIONAL */
+    /**
+     * Simulator property: The overflow policy of the node queues
+     * (Mailbox.DROP_TAIL, Mailbox.DROP_HEAD or Mailbox.BACKPRESSURE).
+     * By default, Mailbox.DROP_TAIL.
+     */
+    public static int simulatorQueuePolicy                                      = Mailbox.DROP_TAIL;
+    /**
+     * Simulator property: The log filename. By default (null), the logs are
+     * written to System.out.
+     */
+    public static String simulatorLogFile                                       = null;
+    /**
+     * Simulator property: The binary trace filename for the sent and received
+     * RouteMessages. By default (null), they are logged as text.
+     */
+    public static String simulatorLogTraceFile                                  = null;
     /**
      * Simulator property: The events filename to be loaded.
      */
     public static String simulatorEventFile                                     = null;
+    /**
+     * Simulator property: The look-ahead window (in steps) for reading the
+     * events file incrementally. When it is zero, the whole events file is
+     * loaded before the simulation.
+     */
+    public static int simulatorEventWindow                                      = 0;
     
 
     /* *********************** SERIALIZATION PROPERTIES NAMES ***********************/
@@ -429,6 +488,12 @@ public class Properties {
      * with new outputs.
      */
     public static boolean serializedOutputFileReplaced                          = true;
+    /**
+     * Serialization property: Identifies the number of steps between 
+     * checkpoints of the network. The first checkpoint is a snapshot and the
+     * next ones only save the changed nodes. Zero disables the checkpoints.
+     */
+    public static int serializedCheckpointSteps                                 = 0;
     
     
     /* *********************** BEHAVIOURS PROPERTIES NAMES ***********************/
@@ -638,6 +703,7 @@ public class Properties {
         factoriesRouteMessage          = null;
         factoriesNetworkTopology       = null;
         factoriesNetworkSize           = 0;
+        factoriesNetworkStabilized     = false;
         
         factoriesApplicationFactory    = null;
         factoriesEndPointFactory       = null;
@@ -652,13 +718,18 @@ public class Properties {
         simulatorEnvironment           = null;
         simulatorQueueSize             = 0;
         simulatorProcessedMessages     = 0;
+        simulatorQueuePolicy           = Mailbox.DROP_TAIL;
+        simulatorLogFile               = null;
+        simulatorLogTraceFile          = null;
 
         simulatorEventFile             = null;
+        simulatorEventWindow           = 0;
         
         /* Serialization attributes: */
         serializedInputFile            = null;
         serializedOutputFile           = null;
         serializedOutputFileReplaced   = true;
+        serializedCheckpointSteps      = 0;
         
         /* Behaviours attributes: */
         behavioursFactory              = null; 
@@ -803,6 +874,9 @@ public class Properties {
         if (Properties.factoriesNetworkSize < 0) {
             throw new InitializationException("The network size '"+Properties.factoriesNetworkSize+"' are invalid. Must be equal to or greater than zero.");
         }
+        String stabilized = properties.getProperty(FACTORIES_NETWORKSTABILIZED);
+        if (stabilized != null && stabilized.trim().length() > 0)
+            Properties.factoriesNetworkStabilized = PropertiesWrapper.getValueAsBoolean(stabilized,FACTORIES_NETWORKSTABILIZED);
         
         //testing interfaces implementation
         Interfaces.ensureImplementedInterfaceOrClass(Properties.factoriesNetworkFactory,   Interfaces.FACTORIES_NETWORKFACTORY,   FACTORIES_NETWORKFACTORY);
@@ -829,10 +903,36 @@ public class Properties {
         Properties.simulatorEnvironment       = properties.getProperty(SIMULATOR_ENVIRONMENT);
         Properties.simulatorQueueSize         = properties.getPropertyAsInt(SIMULATOR_QUEUE_SIZE);
         Properties.simulatorProcessedMessages = properties.getPropertyAsInt(SIMULATOR_PROCESSED_MESSAGES);
+        String policy = properties.getProperty(SIMULATOR_QUEUE_POLICY);
+        if (policy != null && policy.trim().length() > 0)
+            Properties.simulatorQueuePolicy   = Mailbox.getPolicy(policy);
+        String logFile = properties.getProperty(SIMULATOR_LOG_FILE);
+        if (logFile != null && logFile.trim().length() > 0)
+            Properties.simulatorLogFile       = logFile.trim();
+        String traceFile = properties.getProperty(SIMULATOR_LOG_TRACE_FILE);
+        if (traceFile != null && traceFile.trim().length() > 0)
+            Properties.simulatorLogTraceFile  = traceFile.trim();
         
         //testing the correctness of the values
         ensureValidSimulatorEnvironment(Properties.simulatorEnvironment);
         ensureValidPrintLevel(Properties.simulatorPrintLevel);
+        ensureValidQueuePolicy(Properties.simulatorQueuePolicy, policy);
+    }
+    
+    /**
+     * Test if the <b>policy</b> is a valid overflow policy.
+     * @param policy The value to be tested.
+     * @param name The value found at the properties file.
+     * @throws InitializationException if the <b>policy</b> has an 
+     * incorrect value.
+     */
+    private static void ensureValidQueuePolicy(int policy, String name) throws InitializationException
+    {
+        if (policy < 0)
+            throw new InitializationException("The overflow policy specified at property '"+
+                    Properties.SIMULATOR_QUEUE_POLICY+"' is unknown (found '"+name+"'). The correct values are: "+
+                    Mailbox.POLICIES[Mailbox.DROP_TAIL]+", "+Mailbox.POLICIES[Mailbox.DROP_HEAD]+", "+
+                    Mailbox.POLICIES[Mailbox.BACKPRESSURE]);
     }
     
     /**
@@ -961,6 +1061,9 @@ public class Properties {
         Properties.activatedEvents    = true;
         
         Properties.simulatorEventFile = properties.getProperty(SIMULATOR_EVENT_FILE);
+        String window = properties.getProperty(SIMULATOR_EVENT_WINDOW);
+        if (window != null && window.trim().length() > 0)
+            Properties.simulatorEventWindow = PropertiesWrapper.getValueAsInt(window,SIMULATOR_EVENT_WINDOW);
     }
     
     /**
@@ -981,6 +1084,9 @@ public class Properties {
         Properties.serializedInputFile          = properties.getProperty(SERIALIZATION_INPUT_FILE);
         Properties.serializedOutputFile         = properties.getProperty(SERIALIZATION_OUTPUT_FILE);
         Properties.serializedOutputFileReplaced = properties.getPropertyAsBoolean(SERIALIZATION_REPLACE_OUTPUT_FILE);
+        String checkpoint = properties.getProperty(SERIALIZATION_CHECKPOINT_STEPS);
+        if (checkpoint != null && checkpoint.trim().length() > 0)
+            Properties.serializedCheckpointSteps = PropertiesWrapper.getValueAsInt(checkpoint,SERIALIZATION_CHECKPOINT_STEPS);
     }
     
     /**
@@ -7,6 +7,11 @@ import java.util.Vector;
  * This class has all its members statics to permit 
  * in a simulation envirionment controls
  * all timers and to inform them of the actual step of simulation.
+ * <br><br>
+ * It contains the TimingWheel shared by all the timers of the simulation:
+ * the SimulationTimerImpl instances and the timer tasks of the nodes.
+ * The networks advance it one step at the beginning of each simulation
+ * step.
  * @author <a href="mailto: jordi.pujol@estudiants.urv.es">Jordi Pujol</a>
  * Date: 05/05/2004
  */
@@ -18,14 +23,30 @@ public class ControlTimer {
 	/**
 	 * To contain all timers.
 	 */
-	private static Vector timers = null;
+	private static Vector timers = new Vector();
+	/**
+	 * Timing wheel shared by all timers.
+	 */
+	private static TimingWheel wheel = new TimingWheel();
 	
 	/**
 	 * Initialize the ControlTimer to permit adding Timers.
-	 * It must be invoked before its fully use.
+	 * It must be invoked before its fully use. The current step is set to
+	 * zero and all scheduled tasks and delayed deliveries are discarded.
 	 */
 	public static void init() {
 		timers = new Vector();
+		wheel = new TimingWheel();
+		DelayedDeliveryService.reset();
+		currentStep = 0;
+	}
+	
+	/**
+	 * Returns the timing wheel shared by all timers.
+	 * @return The shared TimingWheel.
+	 */
+	public static TimingWheel getWheel() {
+		return wheel;
 	}
 	
 	/**
@@ -37,13 +58,15 @@ public class ControlTimer {
 	}
 	
 	/**
-	 * Iterate for all active Timers to inform the actual step.
+	 * Advances the shared timing wheel up to the step <b>step</b>, and
+	 * iterate for all active Timers to inform the actual step.
 	 * @param step Actual simulation step.
 	 */
 	public static void currentStep(int step) {
 		//nothing does if this step is passed.
 		if (step <= currentStep) return;
 		currentStep = step;
+		wheel.advanceTo(step);
 		Iterator it = timers.iterator();
 		while (it.hasNext()) {
 			SimulationTimer t = (SimulationTimer)it.next();
@@ -53,10 +76,18 @@ public class ControlTimer {
 	}
 	
 	/**
-	 * Sets the current step.
+	 * Advances one step.
+	 */
+	public static void nextStep() {
+		currentStep(currentStep + 1);
+	}
+	
+	/**
+	 * Sets the current step, without running the tasks due until it.
 	 * @param step Current step
 	 */
 	public static void setCurrentStep(int step) {
 		currentStep = step;
+		wheel.setTime(step);
 	}
 }
@@ -0,0 +1,224 @@
+package planet.util.timer;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import planet.util.Properties;
+
+/**
+ * This class has all its members statics to offer a shared service of
+ * delayed deliveries, instead of a thread for each delayed message.
+ * <br><br>
+ * The service depends on the simulator environment:
+ * <ul>
+ * <li>SIMULATION: the deliveries are scheduled on the shared TimingWheel
+ * of the ControlTimer, and the delay is a number of simulation steps. So,
+ * the deliveries are run by the simulation thread, in step order.</li>
+ * <li>EXPERIMENTAL: the deliveries are scheduled on a single daemon thread
+ * of a ScheduledThreadPoolExecutor, built on its first use, and the delay is
+ * a number of milliseconds.</li>
+ * </ul>
+ * Any delivery can be cancelled before its activation. The number of pending
+ * deliveries is available as the queue depth, with its maximum value since
+ * the last reset.
+ * @see planet.util.timer.ControlTimer
+ * @see planet.generic.commonapi.EndPointImpl#scheduleMessage(planet.commonapi.RouteMessage, long)
+ */
+public class DelayedDeliveryService {
+
+    /**
+     * Executor of the EXPERIMENTAL environment, or null if it is not built.
+     */
+    private static ScheduledThreadPoolExecutor executor = null;
+    /**
+     * Number of pending deliveries.
+     */
+    private static int queueDepth = 0;
+    /**
+     * Maximum number of pending deliveries since the last reset.
+     */
+    private static int maxQueueDepth = 0;
+
+    /**
+     * Schedules the <b>task</b> for only one execution after <b>delay</b>
+     * steps in the SIMULATION environment, or <b>delay</b> milliseconds
+     * in the EXPERIMENTAL environment.
+     * @param task TimerTask with the delivery to do.
+     * @param delay Number of steps or milliseconds to wait for.
+     * @return The scheduled delivery, to permit cancel it.
+     */
+    public static Delivery schedule(TimerTask task, long delay) {
+        Delivery delivery = new Delivery(task);
+        enqueued();
+        if (isExperimental())
+            delivery.future = getExecutor().schedule(delivery, Math.max(delay, 0), TimeUnit.MILLISECONDS);
+        else
+            delivery.entry = ControlTimer.getWheel().schedule(delivery, delay, 0);
+        return delivery;
+    }
+
+    /**
+     * Cancels the <b>delivery</b>, if it has not been activated yet. The
+     * cancel() method of its TimerTask is invoked only in that case.
+     * @param delivery Delivery to cancel.
+     * @return true if the delivery has been prevented.
+     */
+    public static boolean cancel(Delivery delivery) {
+        if (delivery == null || !delivery.finish()) return false;
+        if (delivery.future != null)
+            delivery.future.cancel(false);
+        else
+            ControlTimer.getWheel().cancel(delivery.entry);
+        delivery.task.cancel();
+        return true;
+    }
+
+    /**
+     * Returns the number of pending deliveries.
+     * @return The current queue depth.
+     */
+    public static synchronized int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Returns the maximum number of pending deliveries since the last reset.
+     * @return The maximum queue depth.
+     */
+    public static synchronized int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * Discards all pending deliveries and resets the queue depth. The
+     * ControlTimer invokes it when it discards its TimingWheel.
+     */
+    public static synchronized void reset() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        queueDepth = 0;
+        maxQueueDepth = 0;
+    }
+
+    /**
+     * Shows if the deliveries are scheduled in milliseconds.
+     * @return true if the simulator runs in the EXPERIMENTAL environment.
+     */
+    private static boolean isExperimental() {
+        return Properties.SIMULATOR_EXPERIMENTAL_ENVIRONMENT.equals(Properties.simulatorEnvironment);
+    }
+
+    /**
+     * Returns the executor of the EXPERIMENTAL environment, building it on
+     * its first use.
+     * @return The shared executor.
+     */
+    private static synchronized ScheduledThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "DelayedDeliveryService");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            executor.setRemoveOnCancelPolicy(true);
+        }
+        return executor;
+    }
+
+    /**
+     * Counts a new pending delivery.
+     */
+    private static synchronized void enqueued() {
+        queueDepth++;
+        if (queueDepth > maxQueueDepth) maxQueueDepth = queueDepth;
+    }
+
+    /**
+     * Counts an activated or cancelled delivery.
+     */
+    private static synchronized void dequeued() {
+        if (queueDepth > 0) queueDepth--;
+    }
+
+    /**
+     * Delivery scheduled on the service. It is activated or cancelled only
+     * once.
+     */
+    public static class Delivery implements TimerTask, Runnable {
+        /**
+         * TimerTask with the delivery to do.
+         */
+        private TimerTask task;
+        /**
+         * Entry of the TimingWheel, at the SIMULATION environment.
+         */
+        private TimingWheel.Entry entry = null;
+        /**
+         * Future of the executor, at the EXPERIMENTAL environment.
+         */
+        private ScheduledFuture future = null;
+        /**
+         * Shows if it has been activated or cancelled.
+         */
+        private boolean finished = false;
+
+        /**
+         * Builds a pending delivery.
+         * @param task TimerTask with the delivery to do.
+         */
+        private Delivery(TimerTask task) {
+            this.task = task;
+        }
+
+        /**
+         * Marks this delivery as finished, if it was pending.
+         * @return true if it was pending.
+         */
+        private synchronized boolean finish() {
+            if (finished) return false;
+            finished = true;
+            dequeued();
+            return true;
+        }
+
+        /**
+         * Runs the TimerTask, if this delivery is still pending.
+         * @see planet.util.timer.TimerTask#run()
+         */
+        public void run() {
+            if (finish()) task.run();
+        }
+
+        /**
+         * Cancels this delivery.
+         * @see planet.util.timer.TimerTask#cancel()
+         * @return true if the delivery has been prevented.
+         */
+        public boolean cancel() {
+            return DelayedDeliveryService.cancel(this);
+        }
+
+        /**
+         * Shows if this delivery has been activated or cancelled.
+         * @see planet.util.timer.TimerTask#isFinished()
+         * @return true if it is not pending.
+         */
+        public synchronized boolean isFinished() {
+            return finished;
+        }
+
+        /**
+         * Returns the TimerTask with the delivery to do.
+         * @return The TimerTask of this delivery.
+         */
+        public TimerTask getTask() {
+            return task;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package planet.util.timer;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implements a Timer for the real execution context, where the TimerTasks
+ * of all instances are run by a small pool of daemon threads shared by all
+ * of them, one per available processor, instead of a thread for each
+ * Timer. So, a network with thousands of nodes does not need thousands of
+ * timer threads.
+ * <br><br>
+ * Each instance keeps its own scheduled TimerTasks, so its cancel() method
+ * cancels only the TimerTasks of its node. The TimerTasks may be any
+ * implementation of the TimerTask interface, and a TimerTask that has been
+ * cancelled by itself is not run any more.
+ * <br><br>
+ * The timer lag, that is, the time between the expected activation of a
+ * TimerTask and the moment it starts to run, is measured for all
+ * activations and available as a metric.
+ */
+public class SharedTimer implements Timer {
+
+    /**
+     * Executor shared by all instances, or null if it is not built.
+     */
+    private static ScheduledThreadPoolExecutor executor = null;
+    /**
+     * Number of activations since the last reset.
+     */
+    private static long activations = 0;
+    /**
+     * Total lag, in millis, of all activations since the last reset.
+     */
+    private static long totalLag = 0;
+    /**
+     * Maximum lag, in millis, of any activation since the last reset.
+     */
+    private static long maxLag = 0;
+
+    /**
+     * Scheduled TimerTasks of this Timer.
+     */
+    private transient HashSet scheduled = new HashSet();
+
+    /**
+     * Builds a new Timer, without any TimerTask.
+     */
+    public SharedTimer() {
+    }
+
+    /**
+     * Sets a new TimerTask to schedule for only one activation.
+     * @see planet.util.timer.Timer#setTimerTask(planet.util.timer.TimerTask, long)
+     * @param task TimerTask with the job to do.
+     * @param delay Time in millis for the first invocation.
+     */
+    public void setTimerTask(TimerTask task, long delay) {
+        setTimerTask(task, delay, 0);
+    }
+
+    /**
+     * Sets a new TimerTask to schedule periodicly, with <b>period</b> millis
+     * between the end of an activation and the start of the next one.
+     * @see planet.util.timer.Timer#setTimerTask(planet.util.timer.TimerTask, long, long)
+     * @param task TimerTask with the job to do.
+     * @param delay Time in millis for the first invocation.
+     * @param period Time in millis between each activation of this TimerTask,
+     * or zero for only one activation.
+     */
+    public synchronized void setTimerTask(TimerTask task, long delay, long period) {
+        if (scheduled == null) scheduled = new HashSet();
+        delay = Math.max(delay, 0);
+        Scheduled s = new Scheduled(task, System.currentTimeMillis() + delay, period);
+        scheduled.add(s);
+        if (period > 0)
+            s.future = getExecutor().scheduleWithFixedDelay(s, delay, period, TimeUnit.MILLISECONDS);
+        else
+            s.future = getExecutor().schedule(s, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancels all TimerTasks of this Timer. The TimerTasks of the other
+     * instances are not modified.
+     * @see planet.util.timer.Timer#cancel()
+     */
+    public synchronized void cancel() {
+        if (scheduled == null) return;
+        Iterator it = scheduled.iterator();
+        while (it.hasNext()) {
+            Scheduled s = (Scheduled) it.next();
+            if (s.future != null) s.future.cancel(false);
+            s.task.cancel();
+        }
+        scheduled.clear();
+    }
+
+    /**
+     * Returns the number of TimerTasks scheduled by this Timer.
+     * @return The number of scheduled TimerTasks.
+     */
+    public synchronized int size() {
+        return (scheduled == null) ? 0 : scheduled.size();
+    }
+
+    /**
+     * Removes the <b>s</b> TimerTask of this Timer, once it has finished.
+     * @param s Finished TimerTask.
+     */
+    private synchronized void finished(Scheduled s) {
+        if (scheduled != null) scheduled.remove(s);
+    }
+
+    /**
+     * Returns the number of activations since the last reset.
+     * @return The number of activations.
+     */
+    public static synchronized long getActivations() {
+        return activations;
+    }
+
+    /**
+     * Returns the mean timer lag since the last reset.
+     * @return The mean lag in millis, or zero if there is not any activation.
+     */
+    public static synchronized double getMeanLag() {
+        return (activations == 0) ? 0.0 : (double) totalLag / activations;
+    }
+
+    /**
+     * Returns the maximum timer lag since the last reset.
+     * @return The maximum lag in millis.
+     */
+    public static synchronized long getMaxLag() {
+        return maxLag;
+    }
+
+    /**
+     * Resets the timer lag metrics.
+     */
+    public static synchronized void resetMetrics() {
+        activations = 0;
+        totalLag = 0;
+        maxLag = 0;
+    }
+
+    /**
+     * Counts an activation with a lag of <b>lag</b> millis.
+     * @param lag Lag of the activation.
+     */
+    private static synchronized void activated(long lag) {
+        lag = Math.max(lag, 0);
+        activations++;
+        totalLag += lag;
+        if (lag > maxLag) maxLag = lag;
+    }
+
+    /**
+     * Returns the executor shared by all instances, building it on its
+     * first use.
+     * @return The shared executor.
+     */
+    private static synchronized ScheduledThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            executor = new ScheduledThreadPoolExecutor(Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactory() {
+                        private int count = 0;
+                        public synchronized Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "SharedTimer-" + (count++));
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            executor.setRemoveOnCancelPolicy(true);
+        }
+        return executor;
+    }
+
+    /**
+     * TimerTask scheduled on the shared executor.
+     */
+    private class Scheduled implements Runnable {
+        /**
+         * TimerTask with the job to do.
+         */
+        private TimerTask task;
+        /**
+         * Expected time, in millis, of the next activation.
+         */
+        private long expected;
+        /**
+         * Time in millis between activations, or zero.
+         */
+        private long period;
+        /**
+         * Future of the executor.
+         */
+        private ScheduledFuture future = null;
+
+        /**
+         * Builds a TimerTask to be scheduled.
+         * @param task TimerTask with the job to do.
+         * @param expected Expected time of the first activation.
+         * @param period Time between activations, or zero.
+         */
+        private Scheduled(TimerTask task, long expected, long period) {
+            this.task = task;
+            this.expected = expected;
+            this.period = period;
+        }
+
+        /**
+         * Runs the TimerTask, if it has not been cancelled, and measures
+         * its lag.
+         * @see java.lang.Runnable#run()
+         */
+        public void run() {
+            if (task.isFinished()) {
+                if (future != null) future.cancel(false);
+                finished(this);
+                return;
+            }
+            activated(System.currentTimeMillis() - expected);
+            try {
+                task.run();
+            } finally {
+                if (period > 0)
+                    expected = System.currentTimeMillis() + period;
+                else
+                    finished(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,489 @@
+package planet.util.timer;
+
+import java.io.IOException;
+import java.util.Vector;
+
+/**
+ * Hierarchical timing wheel for the simulation environment, where the time
+ * is measured in steps. It is shared by all timers of the simulation (see
+ * ControlTimer).
+ * <br><br>
+ * The wheel has LEVELS levels of SLOTS slots each. Each slot is a doubly
+ * linked list of entries, so a task is scheduled and cancelled in constant
+ * time. The level 0 contains the entries due at the next SLOTS steps, one
+ * slot per step; each upper level covers SLOTS times the steps of the level
+ * below. When the time reaches a new turn of a level, the entries of the
+ * current slot of the upper level are moved down. So, advancing one step
+ * only visits the entries that are due at this step.
+ * <br><br>
+ * The entries due at the same step are run in the order in which they
+ * were scheduled. The periodic entries are scheduled again just before each
+ * activation, at <b>period</b> steps from their previous deadline, until
+ * their TimerTask is finished.
+ */
+public class TimingWheel implements SimulationTimer {
+
+    /**
+     * Number of bits of the slot index of each level.
+     */
+    private static final int SLOT_BITS = 8;
+    /**
+     * Number of slots of each level.
+     */
+    public static final int SLOTS = 1 << SLOT_BITS;
+    /**
+     * Number of levels.
+     */
+    public static final int LEVELS = 4;
+    /**
+     * Mask to obtain the slot index.
+     */
+    private static final int MASK = SLOTS - 1;
+
+    /**
+     * First entry of each slot, per level.
+     */
+    private transient Entry[][] heads;
+    /**
+     * Last entry of each slot, per level.
+     */
+    private transient Entry[][] tails;
+    /**
+     * Entries beyond the range of the upper level, in order of scheduling.
+     */
+    private transient Entry overflow;
+    /**
+     * Last entry beyond the range of the upper level.
+     */
+    private transient Entry overflowTail;
+    /**
+     * Current step.
+     */
+    private transient long now;
+    /**
+     * Number of scheduled entries.
+     */
+    private transient int size;
+
+    /**
+     * Builds an empty timing wheel at step zero.
+     */
+    public TimingWheel() {
+        clear(0);
+    }
+
+    /**
+     * Removes all entries and sets the current step.
+     * @param time The new current step.
+     */
+    private void clear(long time) {
+        heads = new Entry[LEVELS][SLOTS];
+        tails = new Entry[LEVELS][SLOTS];
+        overflow = null;
+        overflowTail = null;
+        now = time;
+        size = 0;
+    }
+
+    /**
+     * Schedules the <b>task</b> after <b>delay</b> steps, and after each
+     * <b>period</b> steps if it is greater than zero. A delay lower than
+     * one step means the next step.
+     * @param task TimerTask with the job to do.
+     * @param delay Number of steps to wait for the first activation.
+     * @param period Number of steps between activations, or zero for only
+     * one activation.
+     * @return The scheduled entry, to permit cancel it.
+     */
+    public synchronized Entry schedule(TimerTask task, long delay, long period) {
+        Entry entry = new Entry(task, now + Math.max(delay, 1), Math.max(period, 0));
+        link(entry);
+        size++;
+        return entry;
+    }
+
+    /**
+     * Cancels the scheduled <b>entry</b>. Its TimerTask is not modified.
+     * @param entry Entry to cancel.
+     * @return true if the entry was scheduled.
+     */
+    public synchronized boolean cancel(Entry entry) {
+        if (entry == null || !entry.isScheduled()) return false;
+        unlink(entry);
+        size--;
+        return true;
+    }
+
+    /**
+     * Schedules the <b>task</b> for only one execution after <b>delay</b>
+     * steps.
+     * @see planet.util.timer.Timer#setTimerTask(planet.util.timer.TimerTask, long)
+     * @param task TimerTask with action to do after delay steps.
+     * @param delay Number of steps to wait for to schedule the task.
+     */
+    public void setTimerTask(TimerTask task, long delay) {
+        schedule(task, delay, 0);
+    }
+
+    /**
+     * Schedules the <b>task</b> for repeatly execution, the first time
+     * after <b>delay</b> steps, and others after <b>period</b> steps.
+     * @see planet.util.timer.Timer#setTimerTask(planet.util.timer.TimerTask, long, long)
+     * @param task TimerTask with action to do after delay steps, and
+     * after period steps.
+     * @param delay Number of steps to wait for to schedule the task.
+     * @param period Number of steps to wait for others scheduling of the task.
+     */
+    public void setTimerTask(TimerTask task, long delay, long period) {
+        schedule(task, delay, period);
+    }
+
+    /**
+     * Cancels all scheduled entries, keeping the current step.
+     * @see planet.util.timer.Timer#cancel()
+     */
+    public synchronized void cancel() {
+        clear(now);
+    }
+
+    /**
+     * Advances the wheel up to the step <b>step</b>.
+     * @see planet.util.timer.SimulationTimer#currentStep(int)
+     * @param step Current step in simulation.
+     */
+    public void currentStep(int step) {
+        advanceTo(step);
+    }
+
+    /**
+     * Advances the wheel step by step up to <b>time</b>, running all the
+     * due entries. Nothing is done if <b>time</b> is not after the current
+     * step.
+     * @param time The new current step.
+     */
+    public synchronized void advanceTo(long time) {
+        while (now < time)
+            advance();
+    }
+
+    /**
+     * Advances the wheel one step, running the due entries.
+     */
+    public synchronized void advance() {
+        now++;
+        //moves down the entries of the upper levels that start a new turn
+        if ((now & ((1L << (SLOT_BITS * LEVELS)) - 1)) == 0)
+            cascade(detachOverflow());
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((now & ((1L << (SLOT_BITS * level)) - 1)) == 0)
+                cascade(detach(level, (int)(now >>> (SLOT_BITS * level)) & MASK));
+        }
+
+        //runs the due entries, which can schedule or cancel other entries
+        int slot = (int)now & MASK;
+        Entry entry = null;
+        while ((entry = heads[0][slot]) != null) {
+            unlink(entry);
+            if (entry.task.isFinished()) {
+                size--;
+            } else if (entry.period > 0) {
+                entry.deadline += entry.period;
+                link(entry);
+                entry.task.run();
+            } else {
+                size--;
+                entry.task.run();
+            }
+        }
+    }
+
+    /**
+     * Sets the current step, without running the entries due until it.
+     * The entries are kept, and the entries that were due before the new
+     * current step are due at the next step.
+     * @param time The new current step.
+     */
+    public synchronized void setTime(long time) {
+        Vector entries = new Vector(size);
+        for (int level = 0; level < LEVELS; level++)
+            for (int slot = 0; slot < SLOTS; slot++)
+                collect(heads[level][slot], entries);
+        collect(overflow, entries);
+        clear(time);
+        Entry entry = null;
+        for (int i = 0; i < entries.size(); i++) {
+            entry = (Entry)entries.get(i);
+            entry.next = null;
+            entry.prev = null;
+            if (entry.deadline <= now) entry.deadline = now + 1;
+            link(entry);
+            size++;
+        }
+    }
+
+    /**
+     * Returns the current step.
+     * @return The current step.
+     */
+    public long getTime() {
+        return now;
+    }
+
+    /**
+     * Returns the number of scheduled entries.
+     * @return The number of scheduled entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds the list of entries started by <b>entry</b> to <b>to</b>.
+     * @param entry First entry of the list.
+     * @param to Vector where the entries are added.
+     */
+    private static void collect(Entry entry, Vector to) {
+        while (entry != null) {
+            to.add(entry);
+            entry = entry.next;
+        }
+    }
+
+    /**
+     * Links the entry to the slot of the lowest level that contains
+     * its deadline.
+     * @param entry Entry to link.
+     */
+    private void link(Entry entry) {
+        int level = 0;
+        while (level < LEVELS &&
+                (entry.deadline >>> (SLOT_BITS * (level + 1))) != (now >>> (SLOT_BITS * (level + 1))))
+            level++;
+        entry.level = level;
+        if (level == LEVELS) {
+            //beyond the range of the wheel, appended as the other slots
+            entry.slot = 0;
+            entry.prev = overflowTail;
+            entry.next = null;
+            if (overflowTail == null)
+                overflow = entry;
+            else
+                overflowTail.next = entry;
+            overflowTail = entry;
+            return;
+        }
+        int slot = (int)(entry.deadline >>> (SLOT_BITS * level)) & MASK;
+        entry.slot = slot;
+        Entry tail = tails[level][slot];
+        entry.prev = tail;
+        entry.next = null;
+        if (tail == null)
+            heads[level][slot] = entry;
+        else
+            tail.next = entry;
+        tails[level][slot] = entry;
+    }
+
+    /**
+     * Unlinks the entry from its slot.
+     * @param entry Entry to unlink.
+     */
+    private void unlink(Entry entry) {
+        if (entry.level == LEVELS) {
+            if (entry.prev == null) overflow = entry.next;
+            else entry.prev.next = entry.next;
+            if (entry.next == null) overflowTail = entry.prev;
+            else entry.next.prev = entry.prev;
+        } else {
+            if (entry.prev == null) heads[entry.level][entry.slot] = entry.next;
+            else entry.prev.next = entry.next;
+            if (entry.next == null) tails[entry.level][entry.slot] = entry.prev;
+            else entry.next.prev = entry.prev;
+        }
+        entry.next = null;
+        entry.prev = null;
+        entry.level = -1;
+    }
+
+    /**
+     * Detaches all entries of the slot.
+     * @param level Level of the slot.
+     * @param slot Index of the slot.
+     * @return The first entry of the slot, or null if it is empty.
+     */
+    private Entry detach(int level, int slot) {
+        Entry first = heads[level][slot];
+        heads[level][slot] = null;
+        tails[level][slot] = null;
+        return first;
+    }
+
+    /**
+     * Detaches all entries beyond the range of the wheel.
+     * @return The first of these entries, or null if there are none.
+     */
+    private Entry detachOverflow() {
+        Entry first = overflow;
+        overflow = null;
+        overflowTail = null;
+        return first;
+    }
+
+    /**
+     * Links again the detached list of entries started by <b>entry</b>,
+     * following their order.
+     * @param entry First entry of the list.
+     */
+    private void cascade(Entry entry) {
+        Entry next = null;
+        while (entry != null) {
+            next = entry.next;
+            entry.next = null;
+            entry.prev = null;
+            link(entry);
+            entry = next;
+        }
+    }
+
+    /**
+     * Shows the current step and the number of scheduled entries.
+     * @return String representation of this wheel.
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return "TimingWheel: step=" + now + ", entries=" + size;
+    }
+
+    /**
+     * Saves the current step and the scheduled entries, in the order of
+     * their slots.
+     * @param stream ObjectOutputStream to save the actual state.
+     * @throws IOException if occurs any problem during serialization.
+     */
+    private synchronized void writeObject(java.io.ObjectOutputStream stream)
+    throws IOException {
+        Vector entries = new Vector(size);
+        for (int level = 0; level < LEVELS; level++)
+            for (int slot = 0; slot < SLOTS; slot++)
+                collect(heads[level][slot], entries);
+        collect(overflow, entries);
+        stream.writeLong(now);
+        stream.writeInt(entries.size());
+        Entry entry = null;
+        for (int i = 0; i < entries.size(); i++) {
+            entry = (Entry)entries.get(i);
+            stream.writeObject(entry.task);
+            stream.writeLong(entry.deadline);
+            stream.writeLong(entry.period);
+        }
+    }
+
+    /**
+     * Reads the current step and the scheduled entries.
+     * @param stream ObjectInputStream to read the state.
+     * @throws IOException if occurs any problem during deserialization.
+     * @throws ClassNotFoundException if the class of any TimerTask
+     * is not found.
+     */
+    private void readObject(java.io.ObjectInputStream stream)
+    throws IOException, ClassNotFoundException {
+        clear(stream.readLong());
+        int entries = stream.readInt();
+        Entry entry = null;
+        for (int i = 0; i < entries; i++) {
+            entry = new Entry((TimerTask)stream.readObject(), 0, 0);
+            entry.deadline = stream.readLong();
+            entry.period = stream.readLong();
+            link(entry);
+            size++;
+        }
+    }
+
+    /**
+     * Scheduled TimerTask of the wheel.
+     */
+    public static class Entry {
+        /**
+         * TimerTask to run.
+         */
+        private TimerTask task;
+        /**
+         * Step of the next activation.
+         */
+        private long deadline;
+        /**
+         * Number of steps between activations, or zero.
+         */
+        private long period;
+        /**
+         * Level of its slot, LEVELS if it is beyond the range of the
+         * wheel, or -1 if it is not scheduled.
+         */
+        private int level = -1;
+        /**
+         * Index of its slot.
+         */
+        private int slot = 0;
+        /**
+         * Previous entry of its slot.
+         */
+        private Entry prev = null;
+        /**
+         * Next entry of its slot.
+         */
+        private Entry next = null;
+
+        /**
+         * Builds a not scheduled entry.
+         * @param task TimerTask to run.
+         * @param deadline Step of the first activation.
+         * @param period Number of steps between activations, or zero.
+         */
+        private Entry(TimerTask task, long deadline, long period) {
+            this.task = task;
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        /**
+         * Returns the TimerTask of this entry.
+         * @return The TimerTask of this entry.
+         */
+        public TimerTask getTask() {
+            return task;
+        }
+
+        /**
+         * Returns the step of the next activation.
+         * @return The step of the next activation.
+         */
+        public long getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * Returns the number of steps between activations.
+         * @return The period, or zero for only one activation.
+         */
+        public long getPeriod() {
+            return period;
+        }
+
+        /**
+         * Shows if this entry is waiting for its next activation.
+         * @return true if this entry is scheduled.
+         */
+        public boolean isScheduled() {
+            return level >= 0;
+        }
+
+        /**
+         * Return the information of this entry in String format.
+         * @see java.lang.Object#toString()
+         * @return The information of this entry in String format.
+         */
+        public String toString() {
+            return "{" + task + " next[" + deadline + "] period[" + period + "]}";
+        }
+    }
+}